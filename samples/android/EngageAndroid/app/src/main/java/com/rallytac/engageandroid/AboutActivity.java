@@ -38,7 +38,7 @@ import java.util.Date;
 public class AboutActivity extends
                                 AppCompatActivity
                            implements
-                                LicenseActivationTask.ITaskCompletionNotification,
+                                LicenseActivationClient.ITaskCompletionNotification,
                                 LicenseDeactivationTask.ITaskCompletionNotification
 
 {
@@ -272,6 +272,7 @@ public class AboutActivity extends
         Globals.getSharedPreferencesEditor().putString(PreferenceKeys.USER_LICENSING_KEY, "");
         Globals.getSharedPreferencesEditor().putString(PreferenceKeys.USER_LICENSING_ACTIVATION_CODE, "");
         Globals.getSharedPreferencesEditor().apply();
+        Globals.getLicenseActivationClient().clearLastGood();
 
         // Put the new license into effect
         Globals.getEngageApplication().getEngine().engageUpdateLicense(getString(R.string.licensing_entitlement), "", "", getString(R.string.manufacturer_id));
@@ -288,10 +289,17 @@ public class AboutActivity extends
 
             Log.i(TAG, "saving licensing [" + getString(R.string.licensing_entitlement) + "] [" + key + "] [" + ac + "]"); //NON-NLS
 
+            boolean keyChanged = !key.equals(Globals.getSharedPreferences().getString(PreferenceKeys.USER_LICENSING_KEY, ""));
+
             Globals.getSharedPreferencesEditor().putString(PreferenceKeys.USER_LICENSING_KEY, key);
             Globals.getSharedPreferencesEditor().putString(PreferenceKeys.USER_LICENSING_ACTIVATION_CODE, ac);
             Globals.getSharedPreferencesEditor().apply();
 
+            if(keyChanged)
+            {
+                Globals.getLicenseActivationClient().clearLastGood();
+            }
+
             // Put the new license into effect
             Globals.getEngageApplication().getEngine().engageUpdateLicense(getString(R.string.licensing_entitlement), key, ac, getString(R.string.manufacturer_id));
 
@@ -726,10 +734,8 @@ public class AboutActivity extends
             String stringToHash = key + _activeLd._ld._deviceId + entitlementKey;
             String hValue = Utils.md5HashOfString(stringToHash);
 
-            LicenseActivationTask lat = new LicenseActivationTask(url, getString(R.string.licensing_entitlement), key, ac, _activeLd._ld._deviceId, hValue, this);
-
             _progressDialog = Utils.showProgressMessage(this, getString(R.string.obtaining_activation_code), _progressDialog);
-            lat.execute();
+            Globals.getLicenseActivationClient().activate(new LicenseActivationClient.Request(url, getString(R.string.licensing_entitlement), key, ac, _activeLd._ld._deviceId, hValue), this);
         }
         catch (Exception e)
         {
@@ -69,6 +69,7 @@ public class ActiveConfiguration
         public int minIntervalMs;
         public int accuracy;
         public float minDisplacement;
+        public boolean adaptive;
 
         public LocationConfiguration()
         {
@@ -82,6 +83,7 @@ public class ActiveConfiguration
             minIntervalMs = intervalMs;
             accuracy = Constants.DEF_LOCATION_ACCURACY;
             minDisplacement = Constants.DEF_LOCATION_MIN_DISPLACEMENT;
+            adaptive = Constants.DEF_LOCATION_ADAPTIVE;
         }
     }
 
@@ -1399,69 +1401,12 @@ public class ActiveConfiguration
 
     private static ActiveConfiguration parseLegacyQrCode(String str, String pwd) throws Exception
     {
-        String encryptedString = str;
-
-        // Look for the "/??" to see if there's a deflection URL
-        int endOfDeflection = encryptedString.indexOf(Constants.QR_DEFLECTION_URL_SEP);
-
-        // If it's there, strip it off
-        if (endOfDeflection > 0)
-        {
-            encryptedString = encryptedString.substring(endOfDeflection + Constants.QR_DEFLECTION_URL_SEP.length());
-        }
-
-        // Now we have a string with is Base91 encoded, we need to decode that
-        byte[] base91DecodedBytes = Base91.decode(encryptedString.getBytes(Utils.getEngageCharSet()));
-        if (base91DecodedBytes == null)
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decode_failed));
-        }
-
-        // It may be encrypted, so decrypt if we have a password
-        if (!Utils.isEmptyString(pwd))
-        {
-            String pwdHexString = Utils.toHexString(pwd.getBytes(Utils.getEngageCharSet()));
-
-            base91DecodedBytes = Globals.getEngageApplication().getEngine().decryptSimple(base91DecodedBytes, pwdHexString);
-            if (base91DecodedBytes == null)
-            {
-                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decrypt_failed));
-            }
-        }
-
-        // Next, we decompress the data
-        byte[] decompressed = Utils.inflate(base91DecodedBytes);
-        if (decompressed == null)
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decompress_failed));
-        }
-
-        // Now we have a string which should have a valid header
-        String qrCodeDataString = new String(decompressed, Utils.getEngageCharSet());
-
-        // Make sure it has our header
-        if (!qrCodeDataString.startsWith(Constants.QR_CODE_HEADER))
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_invalid));
-        }
-
-        // Strip the first part of the header
-        qrCodeDataString = qrCodeDataString.substring(Constants.QR_CODE_HEADER.length());
-
-        // Now, check the version - its "nnn"
-        int checkVersion = Integer.parseInt(Constants.QR_VERSION);
-        int qrVersion = Integer.parseInt(qrCodeDataString.substring(0, 3));
-        if (qrVersion != checkVersion)
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scn_invalid_version));
-        }
-
-        // Strip the version
-        qrCodeDataString = qrCodeDataString.substring(3);
+        // Decode, decrypt, decompress and validate the header and version in one pass
+        String json = QrMissionDecoder.decodeLegacy(str, pwd);
 
         // Finally, we have our JSON data as a string, create that object and handle it
         ActiveConfiguration ac = new ActiveConfiguration();
-        if (!ac.parseTemplate(qrCodeDataString))
+        if (!ac.parseTemplate(json))
         {
             throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_cannot_parse));
         }
@@ -1471,88 +1416,50 @@ public class ActiveConfiguration
 
     private static ActiveConfiguration parseNewQrCode(String str, String pwd) throws Exception
     {
-        return null;
-        /* TODO: parseNewQrCode
-        String workingStr = str;
-
-        // Strip off the header
-        workingStr = workingStr.substring(Constants.QR_CODE_HEADER.length() + Constants.QR_VERSION.length());
-
-        // The rest is a byte array, put our chars into it
-        byte[] ba = workingStr.get
-
-        // Look for the "/??" to see if there's a deflection URL
-        int endOfDeflection = encryptedString.indexOf("/??");
+        String json;
 
-        // If it's there, strip it off
-        if (endOfDeflection > 0)
+        // The header and version are in the clear at the front of the string
+        int qrVersion = QrMissionDecoder.getNewFormatVersion(str);
+        if (qrVersion == Integer.parseInt(Constants.QR_VERSION))
         {
-            encryptedString = encryptedString.substring(endOfDeflection + 3);
+            json = QrMissionDecoder.decodeNewFormat(str, pwd);
         }
-
-        // Now we have a string with is Base91 encoded, we need to decode that
-        byte[] base91DecodedBytes = Base91.decode(encryptedString.getBytes(Utils.getEngageCharSet()));
-        if (base91DecodedBytes == null)
+        else if (qrVersion == Integer.parseInt(Constants.QR_VERSION_BINARY))
         {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decode_failed));
-        }
+            JSONObject root;
 
-        // It may be encrypted, so decrypt if we have a password
-        if (!Utils.isEmptyString(pwd))
-        {
-            String pwdHexString = Utils.toHexString(pwd.getBytes(Utils.getEngageCharSet()));
-
-            base91DecodedBytes = Globals.getEngageApplication().getEngine().decryptSimple(base91DecodedBytes, pwdHexString);
-            if (base91DecodedBytes == null)
+            try
             {
-                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decrypt_failed));
+                root = QrMissionDecoder.decodeBinaryFormat(str, pwd);
+            }
+            catch (SimpleMessageException sme)
+            {
+                throw sme;
+            }
+            catch (Exception e)
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_cannot_parse));
             }
-        }
-
-        // Next, we decompress the data
-        byte[] decompressed = Utils.inflate(base91DecodedBytes);
-        if (decompressed == null)
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decompress_failed));
-        }
-
-        // Now we have a string which should have a valid header
-        String qrCodeDataString = new String(decompressed, Utils.getEngageCharSet());
 
-        // Make sure it has our header
-        if (!qrCodeDataString.startsWith(Constants.QR_CODE_HEADER))
-        {
-            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_invalid));
+            json = root.toString();
         }
-
-        // Strip the first part of the header
-        qrCodeDataString = qrCodeDataString.substring(Constants.QR_CODE_HEADER.length());
-
-        // Now, check the version - its "nnn"
-        int checkVersion = Integer.parseInt(Constants.QR_VERSION);
-        int qrVersion = Integer.parseInt(qrCodeDataString.substring(0, 3));
-        if (qrVersion != checkVersion)
+        else
         {
             throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scn_invalid_version));
         }
 
-        // Strip the version
-        qrCodeDataString = qrCodeDataString.substring(3);
-
-        // Finally, we have our JSON data as a string, create that object and handle it
         ActiveConfiguration ac = new ActiveConfiguration();
-        if (!ac.parseTemplate(qrCodeDataString))
+        if (!ac.parseTemplate(json))
         {
             throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_cannot_parse));
         }
 
         return ac;
-        */
     }
 
     public static ActiveConfiguration parseEncryptedQrCodeString(String str, String pwd) throws Exception
     {
-        if(str.startsWith(Constants.QR_CODE_HEADER))
+        if(QrMissionDecoder.isNewFormat(str))
         {
             return parseNewQrCode(str, pwd);
         }
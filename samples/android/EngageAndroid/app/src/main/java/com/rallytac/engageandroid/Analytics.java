@@ -113,4 +113,22 @@ public class Analytics
     public static final String MISSION_UPLOAD_REQUESTED = "MISS_UPLOAD_REQUESTED";//NON-NLS
 
     public static final String NEW_LICENSE_FROM_USER = "NEW_LICENSE_FROM_USER";//NON-NLS
+
+    // Sampled rather than counted every time
+    public static final String[] HIGH_FREQUENCY =
+    {
+        GROUP_RX_STARTED,
+        GROUP_RX_ENDED,
+        GROUP_ASSET_DISCOVERED,
+        GROUP_ASSET_UNDISCOVERED,
+        GROUP_TIMELINE_REPORT,
+        GROUP_HEALTH_REPORT,
+        GROUP_STATS_REPORT,
+        GROUP_RP_RT_100,
+        GROUP_RP_RT_75,
+        GROUP_RP_RT_50,
+        GROUP_RP_RT_25,
+        GROUP_RP_RT_10,
+        GROUP_RP_RT_0
+    };
 }
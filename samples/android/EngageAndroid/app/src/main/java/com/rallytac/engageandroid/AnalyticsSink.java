@@ -0,0 +1,349 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import com.google.firebase.analytics.FirebaseAnalytics;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Takes analytics events off whatever thread they happen on - usually the UI thread in the
+// middle of an engine event - as cheaply as possible.  Recording an event is a lookup in a
+// fixed-size table and an atomic add; nothing is allocated and nothing waits.  Every so often
+// the table is flushed on the scheduler's thread: each event that happened since the last
+// flush goes to Firebase once, with how many times it happened (and the sum and max of its
+// value if it has one).
+//
+// The chattiest events (see Analytics.HIGH_FREQUENCY) are sampled by rate: the first
+// ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE of them in a flush interval are all counted, and only
+// past that does one in every ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE touch the shared counters,
+// weighted to stand in for the ones skipped.  So an event that's on the list but rare in a
+// given interval is still counted exactly.  The max still sees every value - a peak can't be
+// scaled back up from a sample - and starts over with every flush.
+public class AnalyticsSink
+{
+    private static String TAG = AnalyticsSink.class.getSimpleName();
+
+    private static final String PARAM_COUNT = "count";//NON-NLS
+    private static final String PARAM_SAMPLE_RATE = "sampleRate";//NON-NLS
+
+    private final int _capacity = Constants.ANALYTICS_MAX_EVENT_TYPES;
+    private final AtomicReferenceArray<String> _names = new AtomicReferenceArray<>(_capacity);
+    private final AtomicReferenceArray<String> _valueKeys = new AtomicReferenceArray<>(_capacity);
+    private final AtomicLongArray _counts = new AtomicLongArray(_capacity);
+    private final AtomicLongArray _sums = new AtomicLongArray(_capacity);
+    private final AtomicLongArray _maxes = new AtomicLongArray(_capacity);
+    private final boolean[] _sampled = new boolean[_capacity];
+
+    // Deliberately not atomic - losing the odd tick just shifts which event gets sampled.
+    // Only the recording side writes these; a flush moves _interval on and the next event in
+    // a slot sees that and starts its count over.
+    private final int[] _sampleTicks = new int[_capacity];
+    private final int[] _sampleTicksInterval = new int[_capacity];
+    private volatile int _interval = 0;
+
+    // Only touched by flush()
+    private final long[] _flushedCounts = new long[_capacity];
+    private final long[] _flushedSums = new long[_capacity];
+
+    private final AtomicLong _overflowed = new AtomicLong(0);
+    private volatile FirebaseAnalytics _firebaseAnalytics = null;
+    private AppScheduler.Task _flushTask = null;
+    private long _starts = 0;
+
+    private long _flushes = 0;
+    private long _eventsSent = 0;
+
+    public AnalyticsSink()
+    {
+        for(String name : Analytics.HIGH_FREQUENCY)
+        {
+            int slot = slotFor(name);
+            if(slot >= 0)
+            {
+                _sampled[slot] = true;
+            }
+        }
+    }
+
+    public synchronized void start(FirebaseAnalytics firebaseAnalytics)
+    {
+        _firebaseAnalytics = firebaseAnalytics;
+        _starts++;
+
+        if(_flushTask == null)
+        {
+            _flushTask = Globals.getAppScheduler().scheduleAligned("analyticsFlush", Constants.ANALYTICS_FLUSH_INTERVAL_MS, new AppScheduler.ITask()//NON-NLS
+            {
+                @Override
+                public boolean run()
+                {
+                    flush();
+                    return true;
+                }
+            });
+        }
+    }
+
+    // Whatever's outstanding is sent on the way out
+    public void stop()
+    {
+        final long stopping;
+
+        synchronized (this)
+        {
+            if(_flushTask != null)
+            {
+                _flushTask.cancel();
+                _flushTask = null;
+            }
+
+            stopping = _starts;
+        }
+
+        Globals.getAppScheduler().scheduleOnce("analyticsFinalFlush", 0, new Runnable()//NON-NLS
+        {
+            @Override
+            public void run()
+            {
+                flush();
+
+                // Unless we've been started again since (FirebaseAnalytics is a singleton, so
+                // the instance alone can't tell us that)
+                synchronized (AnalyticsSink.this)
+                {
+                    if(_starts == stopping)
+                    {
+                        _firebaseAnalytics = null;
+                    }
+                }
+            }
+        });
+    }
+
+    public void record(String eventName)
+    {
+        if(_firebaseAnalytics == null)
+        {
+            return;
+        }
+
+        int slot = slotFor(eventName);
+        if(slot < 0)
+        {
+            return;
+        }
+
+        int weight = takeSample(slot);
+        if(weight == 0)
+        {
+            return;
+        }
+
+        _counts.addAndGet(slot, weight);
+    }
+
+    public void record(String eventName, String valueKey, long value)
+    {
+        if(_firebaseAnalytics == null)
+        {
+            return;
+        }
+
+        int slot = slotFor(eventName);
+        if(slot < 0)
+        {
+            return;
+        }
+
+        // Ahead of sampling; nearly always a read and nothing more
+        long max;
+        do
+        {
+            max = _maxes.get(slot);
+        } while(value > max && !_maxes.compareAndSet(slot, max, value));
+
+        int weight = takeSample(slot);
+        if(weight == 0)
+        {
+            return;
+        }
+
+        if(_valueKeys.get(slot) == null)
+        {
+            _valueKeys.compareAndSet(slot, null, valueKey);
+        }
+
+        _sums.addAndGet(slot, value * weight);
+        _counts.addAndGet(slot, weight);
+    }
+
+    // How many events this one counts for: 1 while under the rate for this interval, then
+    // the rate for one in every rate events and 0 (skip it) for the rest
+    private int takeSample(int slot)
+    {
+        if(!_sampled[slot])
+        {
+            return 1;
+        }
+
+        int interval = _interval;
+        if(_sampleTicksInterval[slot] != interval)
+        {
+            _sampleTicksInterval[slot] = interval;
+            _sampleTicks[slot] = 0;
+        }
+
+        int ticks = ++_sampleTicks[slot];
+        if(ticks <= Constants.ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE)
+        {
+            return 1;
+        }
+
+        return (((ticks % Constants.ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE) == 0) ? Constants.ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE : 0);
+    }
+
+    // Open addressing on the name's hash; a name gets a slot the first time it's seen and
+    // keeps it.  Returns -1 if the table is full.
+    private int slotFor(String name)
+    {
+        int mask = (_capacity - 1);
+        int slot = (name.hashCode() & mask);
+
+        for(int probes = 0; probes < _capacity; probes++)
+        {
+            String existing = _names.get(slot);
+            if(existing == null)
+            {
+                if(_names.compareAndSet(slot, null, name))
+                {
+                    return slot;
+                }
+
+                existing = _names.get(slot);
+            }
+
+            if(existing == name || existing.equals(name))
+            {
+                return slot;
+            }
+
+            slot = ((slot + 1) & mask);
+        }
+
+        _overflowed.incrementAndGet();
+        return -1;
+    }
+
+    private synchronized void flush()
+    {
+        FirebaseAnalytics fa = _firebaseAnalytics;
+        int sent = 0;
+
+        // Sampling starts over with the next event in each slot
+        _interval++;
+
+        for(int slot = 0; slot < _capacity; slot++)
+        {
+            String name = _names.get(slot);
+            if(name == null)
+            {
+                continue;
+            }
+
+            // Whether or not anything gets reported, the next interval's max starts afresh
+            long max = _maxes.getAndSet(slot, 0);
+
+            long count = _counts.get(slot);
+            long delta = (count - _flushedCounts[slot]);
+            if(delta == 0)
+            {
+                continue;
+            }
+
+            long sum = _sums.get(slot);
+            long sumDelta = (sum - _flushedSums[slot]);
+            _flushedCounts[slot] = count;
+            _flushedSums[slot] = sum;
+
+            if(fa == null)
+            {
+                continue;
+            }
+
+            Bundle b = new Bundle();
+
+            // Past the rate the count is partly an estimate
+            b.putLong(PARAM_COUNT, delta);
+            if(_sampled[slot] && delta > Constants.ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE)
+            {
+                b.putInt(PARAM_SAMPLE_RATE, Constants.ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE);
+            }
+
+            String valueKey = _valueKeys.get(slot);
+            if(valueKey != null)
+            {
+                b.putLong(valueKey + "_avg", sumDelta / delta);//NON-NLS
+                b.putLong(valueKey + "_max", max);//NON-NLS
+            }
+
+            try
+            {
+                fa.logEvent(name, b);
+                sent++;
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        _flushes++;
+        _eventsSent += sent;
+
+        if(sent > 0)
+        {
+            Log.d(TAG, "flushed " + sent + " event types");//NON-NLS
+        }
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            JSONObject counts = new JSONObject();
+            for(int slot = 0; slot < _capacity; slot++)
+            {
+                String name = _names.get(slot);
+                long count = _counts.get(slot);
+                if(name != null && count > 0)
+                {
+                    counts.put(name, count);
+                }
+            }
+
+            rc.put("enabled", (_firebaseAnalytics != null));//NON-NLS
+            rc.put("flushes", _flushes);//NON-NLS
+            rc.put("eventsSent", _eventsSent);//NON-NLS
+            rc.put("overflowed", _overflowed.get());//NON-NLS
+            rc.put("counts", counts);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
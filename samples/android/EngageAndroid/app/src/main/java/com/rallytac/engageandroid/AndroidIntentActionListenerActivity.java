@@ -53,7 +53,11 @@ public class AndroidIntentActionListenerActivity extends AppCompatActivity
 
                 ActiveConfiguration ac = Globals.getEngageApplication().processScannedQrCode(scannedString, null);
 
-                Toast.makeText(this, String.format(getString(R.string.loaded_mission_fmt), ac.getMissionName()), Toast.LENGTH_LONG).show();
+                // A frame of a multi-QR mission reports its own progress
+                if(ac != null)
+                {
+                    Toast.makeText(this, String.format(getString(R.string.loaded_mission_fmt), ac.getMissionName()), Toast.LENGTH_LONG).show();
+                }
                 finish();
             }
         }
@@ -0,0 +1,380 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// One small thread pool for all of the app's timed work instead of a java.util.Timer (and
+// its thread) per job.  Tasks are registered by name - scheduling a name that's already
+// registered replaces the old task - and the registry can be dumped for diagnostics.
+//
+// Periodic tasks reschedule themselves after each run with a little jitter so that jobs
+// with the same interval don't all wake together.  A run that throws or returns false
+// counts as a failure and the next run is pushed out, doubling each time up to a limit,
+// until one succeeds.
+//
+// Tasks scheduled as aligned instead run on the boundaries of a shared wake window so that
+// the device wakes once per window for all of them rather than once per task.  Their
+// intervals are rounded up to whole windows and they get no jitter.
+public class AppScheduler
+{
+    private static String TAG = AppScheduler.class.getSimpleName();
+
+    private static final double JITTER_FRACTION = 0.1;
+    private static final int MAX_BACKOFF_SHIFT = 4;
+    private static final long MAX_BACKOFF_MS = (5 * 60 * 1000);
+
+    public interface ITask
+    {
+        // Return false (or throw) if the run failed
+        boolean run() throws Exception;
+    }
+
+    public class Task implements Runnable
+    {
+        private final String _name;
+        private final long _intervalMs;
+        private final boolean _aligned;
+        private final ITask _body;
+        private ScheduledFuture<?> _future = null;
+        private boolean _cancelled = false;
+
+        private long _runs = 0;
+        private long _failures = 0;
+        private int _consecutiveFailures = 0;
+        private long _lastRunAt = 0;
+        private long _lastDurationMs = 0;
+        private long _nextRunAt = 0;
+        private String _lastError = null;
+
+        private Task(String name, long intervalMs, boolean aligned, ITask body)
+        {
+            _name = name;
+            _intervalMs = intervalMs;
+            _aligned = aligned;
+            _body = body;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public void cancel()
+        {
+            synchronized (AppScheduler.this)
+            {
+                cancelLocked(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (AppScheduler.this)
+            {
+                if(_cancelled)
+                {
+                    return;
+                }
+            }
+
+            long started = Utils.nowMs();
+            boolean ok;
+            String error = null;
+
+            try
+            {
+                ok = _body.run();
+            }
+            catch (Exception e)
+            {
+                ok = false;
+                error = e.getClass().getSimpleName() + ": " + e.getMessage();//NON-NLS
+                Log.w(TAG, _name + " failed: " + error);//NON-NLS
+            }
+
+            synchronized (AppScheduler.this)
+            {
+                _runs++;
+                _lastRunAt = started;
+                _lastDurationMs = Utils.nowMs() - started;
+
+                if(ok)
+                {
+                    _consecutiveFailures = 0;
+                }
+                else
+                {
+                    _failures++;
+                    _consecutiveFailures++;
+                    _lastError = error;
+                }
+
+                if(_cancelled)
+                {
+                    return;
+                }
+
+                if(_intervalMs <= 0)
+                {
+                    _cancelled = true;
+                    if(_tasks.get(_name) == this)
+                    {
+                        _tasks.remove(_name);
+                    }
+                }
+                else
+                {
+                    submitLocked(this, nextDelay());
+                }
+            }
+        }
+
+        private long nextDelay()
+        {
+            long delay = _intervalMs;
+
+            if(_consecutiveFailures > 0)
+            {
+                delay = Math.min(_intervalMs << Math.min(_consecutiveFailures, MAX_BACKOFF_SHIFT),
+                                 Math.max(_intervalMs, MAX_BACKOFF_MS));
+            }
+
+            if(_aligned && _wakeWindowMs > 0)
+            {
+                return delayToBoundary(roundUpToWindow(delay));
+            }
+
+            return jitter(delay);
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor _executor;
+    private final LinkedHashMap<String, Task> _tasks = new LinkedHashMap<>();
+    private final Random _random = new Random();
+    private long _wakeWindowMs = 0;
+
+    public AppScheduler(int threads)
+    {
+        _executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory()
+        {
+            private int _count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r)
+            {
+                _count++;
+                Thread t = new Thread(r, TAG + "-" + _count);//NON-NLS
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        _executor.setRemoveOnCancelPolicy(true);
+    }
+
+    // Zero turns alignment off and aligned tasks run like any other periodic task.  Takes
+    // effect as each aligned task is next rescheduled.
+    public synchronized void setWakeWindowMs(long windowMs)
+    {
+        _wakeWindowMs = Math.max(windowMs, 0);
+    }
+
+    public synchronized long getWakeWindowMs()
+    {
+        return _wakeWindowMs;
+    }
+
+    // Runs body every intervalMs (give or take the jitter) starting after initialDelayMs
+    public synchronized Task schedulePeriodic(String name, long initialDelayMs, long intervalMs, ITask body)
+    {
+        Task t = new Task(name, Math.max(intervalMs, 1), false, body);
+        register(t);
+        submitLocked(t, initialDelayMs);
+        return t;
+    }
+
+    // Runs body on wake window boundaries, every intervalMs rounded up to whole windows,
+    // starting at the first boundary after intervalMs
+    public synchronized Task scheduleAligned(String name, long intervalMs, ITask body)
+    {
+        Task t = new Task(name, Math.max(intervalMs, 1), true, body);
+        register(t);
+
+        if(_wakeWindowMs > 0)
+        {
+            submitLocked(t, delayToBoundary(roundUpToWindow(t._intervalMs)));
+        }
+        else
+        {
+            submitLocked(t, jitter(t._intervalMs));
+        }
+
+        return t;
+    }
+
+    // Runs body once after delayMs.  One-shots run exactly when asked - no jitter.
+    public synchronized Task scheduleOnce(String name, long delayMs, final Runnable body)
+    {
+        Task t = new Task(name, 0, false, new ITask()
+        {
+            @Override
+            public boolean run()
+            {
+                body.run();
+                return true;
+            }
+        });
+
+        register(t);
+        submitLocked(t, delayMs);
+        return t;
+    }
+
+    public synchronized void cancel(String name)
+    {
+        Task t = _tasks.get(name);
+        if(t != null)
+        {
+            cancelLocked(t);
+        }
+    }
+
+    public synchronized boolean isScheduled(String name)
+    {
+        return _tasks.containsKey(name);
+    }
+
+    public synchronized void shutdown()
+    {
+        for(Task t : new ArrayList<>(_tasks.values()))
+        {
+            cancelLocked(t);
+        }
+
+        _executor.shutdownNow();
+    }
+
+    private void register(Task t)
+    {
+        Task existing = _tasks.get(t._name);
+        if(existing != null)
+        {
+            Log.d(TAG, "replacing " + t._name);//NON-NLS
+            cancelLocked(existing);
+        }
+
+        _tasks.put(t._name, t);
+    }
+
+    private void cancelLocked(Task t)
+    {
+        t._cancelled = true;
+        if(t._future != null)
+        {
+            t._future.cancel(false);
+            t._future = null;
+        }
+
+        if(_tasks.get(t._name) == t)
+        {
+            _tasks.remove(t._name);
+        }
+    }
+
+    private void submitLocked(Task t, long delayMs)
+    {
+        if(_executor.isShutdown())
+        {
+            return;
+        }
+
+        delayMs = Math.max(delayMs, 0);
+        t._nextRunAt = Utils.nowMs() + delayMs;
+        t._future = _executor.schedule(t, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private long roundUpToWindow(long delayMs)
+    {
+        return Math.max(((delayMs + _wakeWindowMs - 1) / _wakeWindowMs) * _wakeWindowMs, _wakeWindowMs);
+    }
+
+    // Aligned runs land on (or a little after) a boundary, so a delay of whole windows from
+    // now is snapped to the boundary nearest to it
+    private long delayToBoundary(long delayMs)
+    {
+        long now = Utils.nowMs();
+        long next = ((now + delayMs + (_wakeWindowMs / 2)) / _wakeWindowMs) * _wakeWindowMs;
+        if(next <= now)
+        {
+            next += _wakeWindowMs;
+        }
+
+        return next - now;
+    }
+
+    private long jitter(long delayMs)
+    {
+        long range = (long) (delayMs * JITTER_FRACTION);
+        if(range <= 0)
+        {
+            return delayMs;
+        }
+
+        return delayMs - range + (long) (_random.nextDouble() * range * 2);
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        long now = Utils.nowMs();
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            JSONArray list = new JSONArray();
+            for(Task t : _tasks.values())
+            {
+                JSONObject obj = new JSONObject();
+                obj.put("name", t._name);//NON-NLS
+                obj.put("intervalMs", t._intervalMs);//NON-NLS
+                obj.put("aligned", t._aligned);//NON-NLS
+                obj.put("runs", t._runs);//NON-NLS
+                obj.put("failures", t._failures);//NON-NLS
+                obj.put("consecutiveFailures", t._consecutiveFailures);//NON-NLS
+                obj.put("lastRunAt", t._lastRunAt);//NON-NLS
+                obj.put("lastDurationMs", t._lastDurationMs);//NON-NLS
+                obj.put("nextRunInMs", Math.max(t._nextRunAt - now, 0));//NON-NLS
+                if(t._lastError != null)
+                {
+                    obj.put("lastError", t._lastError);//NON-NLS
+                }
+
+                list.put(obj);
+            }
+
+            rc.put("wakeWindowMs", _wakeWindowMs);//NON-NLS
+            rc.put("tasks", list);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
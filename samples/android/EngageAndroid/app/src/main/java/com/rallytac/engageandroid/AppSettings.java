@@ -0,0 +1,423 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+// Typed, in-memory copy of the user settings that get read on periodic and event-driven
+// paths.  Values are parsed once; when a preference changes only that value is re-read
+// into a copy of the current snapshot, which is then published.  Readers just take the
+// current snapshot - no locking, map lookups or string parsing - and must treat it as
+// read-only.
+public class AppSettings implements SharedPreferences.OnSharedPreferenceChangeListener
+{
+    private static String TAG = AppSettings.class.getSimpleName();
+
+    public static class Snapshot implements Cloneable
+    {
+        // Identity and networking
+        public String nodeId;
+        public String userId;
+        public String userDisplayName;
+        public String userAlias;
+        public String networkInterfaceName;
+        public boolean multicastFailoverEnabled;
+        public int multicastFailoverSecs;
+        public int wakeWindowSecs;
+
+        // User interface, notifications and audio
+        public int uiMode;
+        public boolean showTextMessaging;
+        public boolean notifyNodeJoin;
+        public boolean notifyNodeLeave;
+        public boolean notifyNewAudioRx;
+        public boolean notifyNetworkError;
+        public boolean notifyVibrations;
+        public boolean notifyPttEveryTime;
+        public float pttToneLevel;
+        public float errorToneLevel;
+        public float notificationToneLevel;
+        public int speakerOutputBoostFactor;
+        public boolean pttLatching;
+        public boolean pttVoiceControl;
+        public int audioInputDeviceId;
+        public int audioOutputDeviceId;
+
+        // Location
+        public boolean locationShared;
+        public int locationAccuracy;
+        public int locationIntervalSecs;
+        public float locationMinDisplacement;
+        public boolean locationAdaptive;
+
+        // Experimental
+        public boolean discoverSsdpAssets;
+        public boolean discoverTrelliswareAssets;
+        public boolean discoverCistechGv1Assets;
+        public String cistechGv1DiscoveryAddress;
+        public int cistechGv1DiscoveryPort;
+        public int cistechGv1DiscoveryTimeoutSecs;
+        public boolean reportDevicePower;
+        public boolean reportDeviceConnectivity;
+
+        // Human biometrics simulation
+        public boolean hbmEnabled;
+        public int hbmIntervalSecs;
+        public boolean hbmHeartRate;
+        public boolean hbmSkinTemp;
+        public boolean hbmCoreTemp;
+        public boolean hbmBloodHydration;
+        public boolean hbmBloodOxygenation;
+        public boolean hbmFatigueLevel;
+        public boolean hbmTaskEffectiveness;
+
+        private Snapshot copy()
+        {
+            try
+            {
+                return (Snapshot) clone();
+            }
+            catch (CloneNotSupportedException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final String[] KEYS =
+    {
+        PreferenceKeys.USER_NODE_ID,
+        PreferenceKeys.USER_ID,
+        PreferenceKeys.USER_DISPLAY_NAME,
+        PreferenceKeys.USER_ALIAS_ID,
+        PreferenceKeys.NETWORK_BINDING_NIC_NAME,
+        PreferenceKeys.NETWORK_MULTICAST_FAILOVER_ENABLED,
+        PreferenceKeys.NETWORK_MULTICAST_FAILOVER_SECS,
+        PreferenceKeys.USER_WAKE_WINDOW_SECS,
+
+        PreferenceKeys.UI_MODE,
+        PreferenceKeys.UI_SHOW_TEXT_MESSAGING,
+        PreferenceKeys.USER_NOTIFY_NODE_JOIN,
+        PreferenceKeys.USER_NOTIFY_NODE_LEAVE,
+        PreferenceKeys.USER_NOTIFY_NEW_AUDIO_RX,
+        PreferenceKeys.USER_NOTIFY_NETWORK_ERROR,
+        PreferenceKeys.USER_NOTIFY_VIBRATIONS,
+        PreferenceKeys.USER_NOTIFY_PTT_EVERY_TIME,
+        PreferenceKeys.USER_TONE_LEVEL_PTT,
+        PreferenceKeys.USER_TONE_LEVEL_ERROR,
+        PreferenceKeys.USER_TONE_LEVEL_NOTIFICATION,
+        PreferenceKeys.USER_SPEAKER_OUTPUT_BOOST_FACTOR,
+        PreferenceKeys.USER_UI_PTT_LATCHING,
+        PreferenceKeys.USER_UI_PTT_VOICE_CONTROL,
+        PreferenceKeys.USER_AUDIO_INPUT_DEVICE,
+        PreferenceKeys.USER_AUDIO_OUTPUT_DEVICE,
+
+        PreferenceKeys.USER_LOCATION_SHARED,
+        PreferenceKeys.USER_LOCATION_ACCURACY,
+        PreferenceKeys.USER_LOCATION_INTERVAL_SECS,
+        PreferenceKeys.USER_LOCATION_MIN_DISPLACEMENT,
+        PreferenceKeys.USER_LOCATION_ADAPTIVE,
+
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_SSDP_DISCOVERY,
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_TRELLISWARE_DISCOVERY,
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_CISTECH_GV1_DISCOVERY,
+        PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_ADDRESS,
+        PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_PORT,
+        PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_TIMEOUT_SECS,
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_POWER,
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_CONNECTIVITY,
+
+        PreferenceKeys.USER_EXPERIMENT_ENABLE_HBM,
+        PreferenceKeys.USER_EXPERIMENT_HBM_INTERVAL_SECS,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_HEART_RATE,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_SKIN_TEMP,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_CORE_TEMP,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_HYDRO,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_OXY,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_FATIGUE_LEVEL,
+        PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_TASK_EFFECTIVENESS_LEVEL
+    };
+
+    private final SharedPreferences _sp;
+    private volatile Snapshot _current;
+
+    public AppSettings(SharedPreferences sp)
+    {
+        _sp = sp;
+
+        Snapshot s = new Snapshot();
+        for(String key : KEYS)
+        {
+            load(s, key);
+        }
+
+        _current = s;
+
+        // SharedPreferences only holds a weak reference to its listeners - we're kept alive by Globals
+        _sp.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    public Snapshot get()
+    {
+        return _current;
+    }
+
+    @Override
+    public synchronized void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+    {
+        Snapshot next = _current.copy();
+
+        // A null key means everything was cleared
+        if(key == null)
+        {
+            for(String k : KEYS)
+            {
+                load(next, k);
+            }
+        }
+        else if(!load(next, key))
+        {
+            return;
+        }
+
+        _current = next;
+    }
+
+    // Returns false if the key isn't one we cache
+    private boolean load(Snapshot s, String key)
+    {
+        if(key.equals(PreferenceKeys.USER_NODE_ID))
+        {
+            s.nodeId = _sp.getString(key, Constants.DEF_USER_NODE_ID);
+        }
+        else if(key.equals(PreferenceKeys.USER_ID))
+        {
+            s.userId = _sp.getString(key, Constants.DEF_USER_ID);
+        }
+        else if(key.equals(PreferenceKeys.USER_DISPLAY_NAME))
+        {
+            s.userDisplayName = _sp.getString(key, Constants.DEF_USER_DISPLAY_NAME);
+        }
+        else if(key.equals(PreferenceKeys.USER_ALIAS_ID))
+        {
+            s.userAlias = _sp.getString(key, Constants.DEF_USER_ALIAS_ID);
+        }
+        else if(key.equals(PreferenceKeys.NETWORK_BINDING_NIC_NAME))
+        {
+            s.networkInterfaceName = _sp.getString(key, Constants.DEF_BINDING_NIC_NAME);
+        }
+        else if(key.equals(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_ENABLED))
+        {
+            s.multicastFailoverEnabled = _sp.getBoolean(key, Constants.DEF_MULTICAST_FAILOVER_ENABLED);
+        }
+        else if(key.equals(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_SECS))
+        {
+            s.multicastFailoverSecs = getIntFromString(key, Constants.DEF_MULTICAST_FAILOVER_THRESHOLD_SECS);
+        }
+        else if(key.equals(PreferenceKeys.USER_WAKE_WINDOW_SECS))
+        {
+            s.wakeWindowSecs = getIntFromString(key, Constants.DEF_WAKE_WINDOW_SECS);
+        }
+        else if(key.equals(PreferenceKeys.UI_MODE))
+        {
+            s.uiMode = _sp.getInt(key, Constants.DEF_UI_MODE.ordinal());
+        }
+        else if(key.equals(PreferenceKeys.UI_SHOW_TEXT_MESSAGING))
+        {
+            s.showTextMessaging = _sp.getBoolean(key, Constants.DEF_UI_SHOW_TEXT_MESSAGING);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_NODE_JOIN))
+        {
+            s.notifyNodeJoin = _sp.getBoolean(key, Constants.DEF_NOTIFY_NODE_JOIN);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_NODE_LEAVE))
+        {
+            s.notifyNodeLeave = _sp.getBoolean(key, Constants.DEF_NOTIFY_NODE_LEAVE);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_NEW_AUDIO_RX))
+        {
+            s.notifyNewAudioRx = _sp.getBoolean(key, Constants.DEF_NOTIFY_NEW_AUDIO_RX);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_NETWORK_ERROR))
+        {
+            s.notifyNetworkError = _sp.getBoolean(key, Constants.DEF_NOTIFY_NETWORK_ERROR);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_VIBRATIONS))
+        {
+            s.notifyVibrations = _sp.getBoolean(key, Constants.DEF_NOTIFY_VIBRATIONS);
+        }
+        else if(key.equals(PreferenceKeys.USER_NOTIFY_PTT_EVERY_TIME))
+        {
+            s.notifyPttEveryTime = _sp.getBoolean(key, Constants.DEF_NOTIFY_PTT_EVERY_TIME);
+        }
+        else if(key.equals(PreferenceKeys.USER_TONE_LEVEL_PTT))
+        {
+            s.pttToneLevel = getFloatFromString(key, Constants.DEF_PTT_TONE_LEVEL);
+        }
+        else if(key.equals(PreferenceKeys.USER_TONE_LEVEL_ERROR))
+        {
+            s.errorToneLevel = getFloatFromString(key, Constants.DEF_ERROR_TONE_LEVEL);
+        }
+        else if(key.equals(PreferenceKeys.USER_TONE_LEVEL_NOTIFICATION))
+        {
+            s.notificationToneLevel = getFloatFromString(key, Constants.DEF_PTT_TONE_LEVEL);
+        }
+        else if(key.equals(PreferenceKeys.USER_SPEAKER_OUTPUT_BOOST_FACTOR))
+        {
+            s.speakerOutputBoostFactor = _sp.getInt(key, Constants.DEF_SPEAKER_OUTPUT_BOOST_FACTOR);
+        }
+        else if(key.equals(PreferenceKeys.USER_UI_PTT_LATCHING))
+        {
+            s.pttLatching = _sp.getBoolean(key, Constants.DEF_USER_UI_PTT_LATCHING);
+        }
+        else if(key.equals(PreferenceKeys.USER_UI_PTT_VOICE_CONTROL))
+        {
+            s.pttVoiceControl = _sp.getBoolean(key, Constants.DEF_USER_UI_PTT_VOICE_CONTROL);
+        }
+        else if(key.equals(PreferenceKeys.USER_AUDIO_INPUT_DEVICE))
+        {
+            s.audioInputDeviceId = getIntFromString(key, Constants.INVALID_AUDIO_DEVICE_ID);
+        }
+        else if(key.equals(PreferenceKeys.USER_AUDIO_OUTPUT_DEVICE))
+        {
+            s.audioOutputDeviceId = getIntFromString(key, Constants.INVALID_AUDIO_DEVICE_ID);
+        }
+        else if(key.equals(PreferenceKeys.USER_LOCATION_SHARED))
+        {
+            s.locationShared = _sp.getBoolean(key, Constants.DEF_LOCATION_ENABLED);
+        }
+        else if(key.equals(PreferenceKeys.USER_LOCATION_ACCURACY))
+        {
+            s.locationAccuracy = getIntFromString(key, Constants.DEF_LOCATION_ACCURACY);
+        }
+        else if(key.equals(PreferenceKeys.USER_LOCATION_INTERVAL_SECS))
+        {
+            s.locationIntervalSecs = getIntFromString(key, Constants.DEF_LOCATION_INTERVAL_SECS);
+        }
+        else if(key.equals(PreferenceKeys.USER_LOCATION_MIN_DISPLACEMENT))
+        {
+            s.locationMinDisplacement = getFloatFromString(key, Constants.DEF_LOCATION_MIN_DISPLACEMENT);
+        }
+        else if(key.equals(PreferenceKeys.USER_LOCATION_ADAPTIVE))
+        {
+            s.locationAdaptive = _sp.getBoolean(key, Constants.DEF_LOCATION_ADAPTIVE);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_SSDP_DISCOVERY))
+        {
+            s.discoverSsdpAssets = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_TRELLISWARE_DISCOVERY))
+        {
+            s.discoverTrelliswareAssets = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_CISTECH_GV1_DISCOVERY))
+        {
+            s.discoverCistechGv1Assets = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_ADDRESS))
+        {
+            s.cistechGv1DiscoveryAddress = _sp.getString(key, "");
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_PORT))
+        {
+            s.cistechGv1DiscoveryPort = getIntFromString(key, 0);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_TIMEOUT_SECS))
+        {
+            s.cistechGv1DiscoveryTimeoutSecs = getIntFromString(key, 0);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_POWER))
+        {
+            s.reportDevicePower = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_CONNECTIVITY))
+        {
+            s.reportDeviceConnectivity = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_ENABLE_HBM))
+        {
+            s.hbmEnabled = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_INTERVAL_SECS))
+        {
+            s.hbmIntervalSecs = getIntFromString(key, 0);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_HEART_RATE))
+        {
+            s.hbmHeartRate = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_SKIN_TEMP))
+        {
+            s.hbmSkinTemp = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_CORE_TEMP))
+        {
+            s.hbmCoreTemp = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_HYDRO))
+        {
+            s.hbmBloodHydration = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_OXY))
+        {
+            s.hbmBloodOxygenation = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_FATIGUE_LEVEL))
+        {
+            s.hbmFatigueLevel = _sp.getBoolean(key, false);
+        }
+        else if(key.equals(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_TASK_EFFECTIVENESS_LEVEL))
+        {
+            s.hbmTaskEffectiveness = _sp.getBoolean(key, false);
+        }
+        else
+        {
+            return false;
+        }
+
+        return true;
+    }
+
+    // List and edit-text preferences hold their values as strings
+    private int getIntFromString(String key, int def)
+    {
+        String val = _sp.getString(key, null);
+        if(Utils.isEmptyString(val))
+        {
+            return def;
+        }
+
+        try
+        {
+            return Integer.parseInt(val.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            Log.w(TAG, "bad value '" + val + "' for " + key);//NON-NLS
+            return def;
+        }
+    }
+
+    private float getFloatFromString(String key, float def)
+    {
+        String val = _sp.getString(key, null);
+        if(Utils.isEmptyString(val))
+        {
+            return def;
+        }
+
+        try
+        {
+            return Float.parseFloat(val.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            Log.w(TAG, "bad value '" + val + "' for " + key);//NON-NLS
+            return def;
+        }
+    }
+}
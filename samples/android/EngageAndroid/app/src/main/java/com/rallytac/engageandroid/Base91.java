@@ -1,6 +1,9 @@
 package com.rallytac.engageandroid;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * basE91 encoding/decoding routines
@@ -38,7 +41,7 @@ class Base91
     private static final byte[] ENCODING_TABLE;
     private static final byte[] DECODING_TABLE;
     private static final int BASE;
-    private static final float AVERAGE_ENCODING_RATIO = 1.2297f;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII"); //NON-NLS
 
     static {
         String ts = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!#$%&()*+,./:;<=>?@[]^_`{|}~\""; //NON-NLS
@@ -53,73 +56,317 @@ class Base91
             DECODING_TABLE[ENCODING_TABLE[i]] = (byte) i;
     }
 
+    /**
+     * Upper bound of the number of characters produced when encoding len bytes.
+     * Every pair of output characters consumes at least 13 bits, plus at most
+     * two characters for the trailing bits.
+     */
+    public static int maxEncodedLength(int len) {
+        return ((int) (((long) len * 8) / 13) * 2) + 2;
+    }
+
+    /**
+     * Upper bound of the number of bytes produced when decoding len characters.
+     * Every pair of input characters yields at most 14 bits, plus at most one
+     * byte for a trailing single character.
+     */
+    public static int maxDecodedLength(int len) {
+        return (int) (((long) (len / 2) * 14) / 8) + 1;
+    }
+
     public static byte[] encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    public static byte[] encode(byte[] data, int ofs, int len) {
+        byte[] output = new byte[maxEncodedLength(len)];
+        int count = encode(data, ofs, len, output, 0);
+        return (count == output.length) ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Encodes into a caller-supplied array which must have at least
+     * maxEncodedLength(len) bytes available from outOfs.  Returns the number
+     * of characters written.
+     */
+    public static int encode(byte[] data, int ofs, int len, byte[] output, int outOfs) {
+        Encoder encoder = new Encoder();
+        int pos = encoder.update(data, ofs, len, output, outOfs);
+        pos += encoder.finish(output, outOfs + pos);
+        return pos;
+    }
+
+    /**
+     * Encodes the remaining bytes of data into output, advancing both buffers.
+     * Throws BufferOverflowException, with neither buffer advanced, unless
+     * output has maxEncodedLength(data.remaining()) bytes remaining.
+     */
+    public static void encode(ByteBuffer data, ByteBuffer output) {
+        Encoder encoder = new Encoder();
+        encoder.update(data, output);
+        encoder.finish(output);
+    }
+
+    /**
+     * Encodes directly into a String without an intermediate trimmed copy.
+     */
+    public static String encodeToString(byte[] data, int ofs, int len) {
+        byte[] output = new byte[maxEncodedLength(len)];
+        int count = encode(data, ofs, len, output, 0);
+        return new String(output, 0, count, US_ASCII);
+    }
+
+    public static byte[] decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    public static byte[] decode(byte[] data, int ofs, int len) {
+        byte[] output = new byte[maxDecodedLength(len)];
+        int count = decode(data, ofs, len, output, 0);
+        return (count == output.length) ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Decodes characters start to end of str without first converting the
+     * string to a byte array.
+     */
+    public static byte[] decode(CharSequence str, int start, int end) {
+        byte[] output = new byte[maxDecodedLength(end - start)];
+        Decoder decoder = new Decoder();
+        int count = decoder.update(str, start, end, output, 0);
+        count += decoder.finish(output, count);
+        return (count == output.length) ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Decodes into a caller-supplied array which must have at least
+     * maxDecodedLength(len) bytes available from outOfs.  Returns the number
+     * of bytes written.
+     */
+    public static int decode(byte[] data, int ofs, int len, byte[] output, int outOfs) {
+        Decoder decoder = new Decoder();
+        int pos = decoder.update(data, ofs, len, output, outOfs);
+        pos += decoder.finish(output, outOfs + pos);
+        return pos;
+    }
+
+    /**
+     * Decodes the remaining characters of data into output, advancing both buffers.
+     * Throws BufferOverflowException, with neither buffer advanced, unless
+     * output has maxDecodedLength(data.remaining()) bytes remaining.
+     */
+    public static void decode(ByteBuffer data, ByteBuffer output) {
+        Decoder decoder = new Decoder();
+        decoder.update(data, output);
+        decoder.finish(output);
+    }
+
+    /**
+     * Incremental encoder.  Input may be fed in arbitrarily sized pieces; each
+     * update() writes at most maxEncodedLength(len) characters and finish()
+     * writes at most two.
+     */
+    public static final class Encoder {
+        private int ebq = 0;
+        private int en = 0;
+
+        public int update(byte[] data, int ofs, int len, byte[] output, int outOfs) {
+            int q = ebq;
+            int n = en;
+            int pos = outOfs;
+            int end = ofs + len;
+
+            for (int i = ofs; i < end; ++i) {
+                q |= (data[i] & 255) << n;
+                n += 8;
+                if (n > 13) {
+                    int ev = q & 8191;
+
+                    if (ev > 88) {
+                        q >>= 13;
+                        n -= 13;
+                    } else {
+                        ev = q & 16383;
+                        q >>= 14;
+                        n -= 14;
+                    }
+                    output[pos++] = ENCODING_TABLE[ev % BASE];
+                    output[pos++] = ENCODING_TABLE[ev / BASE];
+                }
+            }
+
+            ebq = q;
+            en = n;
+            return pos - outOfs;
+        }
+
+        /**
+         * Throws BufferOverflowException, with neither buffer advanced, if
+         * output has less than maxEncodedLength(data.remaining()) remaining.
+         */
+        public void update(ByteBuffer data, ByteBuffer output) {
+            if (output.remaining() < maxEncodedLength(data.remaining()))
+                throw new BufferOverflowException();
 
-        int estimatedSize = (int) Math.ceil(data.length * AVERAGE_ENCODING_RATIO);
-        ByteArrayOutputStream output = new ByteArrayOutputStream(estimatedSize);
-
-        int ebq = 0;
-        int en = 0;
-        for (int i = 0; i < data.length; ++i) {
-            ebq |= (data[i] & 255) << en;
-            en += 8;
-            if (en > 13) {
-                int ev = ebq & 8191;
-
-                if (ev > 88) {
-                    ebq >>= 13;
-                    en -= 13;
-                } else {
-                    ev = ebq & 16383;
-                    ebq >>= 14;
-                    en -= 14;
+            if (data.hasArray() && output.hasArray()) {
+                int len = data.remaining();
+                int count = update(data.array(), data.arrayOffset() + data.position(), len,
+                                   output.array(), output.arrayOffset() + output.position());
+                data.position(data.position() + len);
+                output.position(output.position() + count);
+            } else {
+                byte[] one = new byte[1];
+                byte[] pair = new byte[2];
+                while (data.hasRemaining()) {
+                    one[0] = data.get();
+                    output.put(pair, 0, update(one, 0, 1, pair, 0));
                 }
-                output.write(ENCODING_TABLE[ev % BASE]);
-                output.write(ENCODING_TABLE[ev / BASE]);
             }
         }
 
-        if (en > 0) {
-            output.write(ENCODING_TABLE[ebq % BASE]);
-            if (en > 7 || ebq > 90) {
-                output.write(ENCODING_TABLE[ebq / BASE]);
+        public int finish(byte[] output, int outOfs) {
+            int pos = outOfs;
+
+            if (en > 0) {
+                output[pos++] = ENCODING_TABLE[ebq % BASE];
+                if (en > 7 || ebq > 90) {
+                    output[pos++] = ENCODING_TABLE[ebq / BASE];
+                }
             }
+
+            ebq = 0;
+            en = 0;
+            return pos - outOfs;
         }
 
-        return output.toByteArray();
+        public void finish(ByteBuffer output) {
+            byte[] tail = new byte[2];
+            output.put(tail, 0, finish(tail, 0));
+        }
     }
 
-    public static byte[] decode(byte[] data) {
+    /**
+     * Incremental decoder.  Characters outside the alphabet are skipped, so
+     * input may be fed in arbitrarily sized pieces (including splits between
+     * the two characters of a pair).
+     */
+    public static final class Decoder {
+        private int dbq = 0;
+        private int dn = 0;
+        private int dv = -1;
+
+        public int update(byte[] data, int ofs, int len, byte[] output, int outOfs) {
+            int q = dbq;
+            int n = dn;
+            int v = dv;
+            int pos = outOfs;
+            int end = ofs + len;
 
-        int dbq = 0;
-        int dn = 0;
-        int dv = -1;
-
-        int estimatedSize = Math.round(data.length / AVERAGE_ENCODING_RATIO);
-        ByteArrayOutputStream output = new ByteArrayOutputStream(estimatedSize);
-
-        for (int i = 0; i < data.length; ++i) {
-            if (DECODING_TABLE[data[i]] == -1)
-                continue;
-            if (dv == -1)
-                dv = DECODING_TABLE[data[i]];
-            else {
-                dv += DECODING_TABLE[data[i]] * BASE;
-                dbq |= dv << dn;
-                dn += (dv & 8191) > 88 ? 13 : 14;
-                do {
-                    output.write((byte) dbq);
-                    dbq >>= 8;
-                    dn -= 8;
-                } while (dn > 7);
-                dv = -1;
+            for (int i = ofs; i < end; ++i) {
+                int d = DECODING_TABLE[data[i] & 255];
+                if (d == -1)
+                    continue;
+                if (v == -1)
+                    v = d;
+                else {
+                    v += d * BASE;
+                    q |= v << n;
+                    n += (v & 8191) > 88 ? 13 : 14;
+                    do {
+                        output[pos++] = (byte) q;
+                        q >>= 8;
+                        n -= 8;
+                    } while (n > 7);
+                    v = -1;
+                }
             }
+
+            dbq = q;
+            dn = n;
+            dv = v;
+            return pos - outOfs;
         }
 
-        if (dv != -1) {
-            output.write((byte) (dbq | dv << dn));
+        public int update(CharSequence str, int start, int end, byte[] output, int outOfs) {
+            int q = dbq;
+            int n = dn;
+            int v = dv;
+            int pos = outOfs;
+
+            for (int i = start; i < end; ++i) {
+                char c = str.charAt(i);
+                int d = (c < 256) ? DECODING_TABLE[c] : -1;
+                if (d == -1)
+                    continue;
+                if (v == -1)
+                    v = d;
+                else {
+                    v += d * BASE;
+                    q |= v << n;
+                    n += (v & 8191) > 88 ? 13 : 14;
+                    do {
+                        output[pos++] = (byte) q;
+                        q >>= 8;
+                        n -= 8;
+                    } while (n > 7);
+                    v = -1;
+                }
+            }
+
+            dbq = q;
+            dn = n;
+            dv = v;
+            return pos - outOfs;
+        }
+
+        /**
+         * Throws BufferOverflowException, with neither buffer advanced, if
+         * output has too little remaining for the worst case: a character
+         * left over from the previous update() pairs up with this input.
+         */
+        public void update(ByteBuffer data, ByteBuffer output) {
+            int pending = (dv == -1) ? 0 : 1;
+            if (output.remaining() < maxDecodedLength(data.remaining() + pending))
+                throw new BufferOverflowException();
+
+            if (data.hasArray() && output.hasArray()) {
+                int len = data.remaining();
+                int count = update(data.array(), data.arrayOffset() + data.position(), len,
+                                   output.array(), output.arrayOffset() + output.position());
+                data.position(data.position() + len);
+                output.position(output.position() + count);
+            } else {
+                byte[] one = new byte[1];
+                byte[] pair = new byte[2];
+                while (data.hasRemaining()) {
+                    one[0] = data.get();
+                    output.put(pair, 0, update(one, 0, 1, pair, 0));
+                }
+            }
+        }
+
+        public int finish(byte[] output, int outOfs) {
+            int count = 0;
+
+            if (dv != -1) {
+                output[outOfs] = (byte) (dbq | dv << dn);
+                count = 1;
+            }
+
+            dbq = 0;
+            dn = 0;
+            dv = -1;
+            return count;
         }
 
-        return output.toByteArray();
+        public void finish(ByteBuffer output) {
+            if (dv != -1) {
+                output.put((byte) (dbq | dv << dn));
+            }
+
+            dbq = 0;
+            dn = 0;
+            dv = -1;
+        }
     }
 }
@@ -0,0 +1,567 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+
+// Compact binary representation of a mission template for QR codes.  The JSON tree is
+// written as tagged values: integers are zig-zag varints, GUIDs are 16 raw bytes, hex
+// strings (crypto passwords) and dotted IPv4 addresses are stored as raw bytes and
+// object keys found in KEY_DICTIONARY are a single varint.  Anything that doesn't fit
+// one of the compact forms falls back to a plain UTF-8 string so the round trip is exact.
+public class BinaryMissionCodec
+{
+    private static String TAG = BinaryMissionCodec.class.getSimpleName();
+
+    private static final int TAG_NULL = 0x00;
+    private static final int TAG_FALSE = 0x01;
+    private static final int TAG_TRUE = 0x02;
+    private static final int TAG_INT = 0x03;
+    private static final int TAG_DOUBLE = 0x04;
+    private static final int TAG_STRING = 0x05;
+    private static final int TAG_GUID = 0x06;
+    private static final int TAG_HEX = 0x07;
+    private static final int TAG_IPV4 = 0x08;
+    private static final int TAG_HEX_UPPER = 0x09;
+    private static final int TAG_OBJECT = 0x10;
+    private static final int TAG_ARRAY = 0x11;
+
+    // Missions are a few levels deep; anything much deeper is garbage (or hostile) and
+    // would otherwise run the decoder out of stack
+    private static final int MAX_NESTING_DEPTH = 32;
+
+    // NOTE: Entries may only ever be appended - the index is what goes on the wire
+    private static final String[] KEY_DICTIONARY =
+    {
+        "id", "name", "description", "modPin", "groups", "type", "cryptoPassword",//NON-NLS
+        "rx", "tx", "address", "port", "txAudio", "encoder", "fdx", "framingMs",//NON-NLS
+        "maxTxSecs", "noHdrExt", "audio", "inputId", "inputGain", "outputId",//NON-NLS
+        "outputGain", "timeline", "enabled", "maxAudioTimeMs", "presence", "format",//NON-NLS
+        "intervalSecs", "forceOnAudioTransmit", "listenOnly", "rallypoint", "use",//NON-NLS
+        "host", "blockAdvertising", "meta", "version", "created", "multicastFailoverPolicy",//NON-NLS
+        "source", "useRp", "rpAddress", "rpPort", "mcId", "mcAddress", "mcPort",//NON-NLS
+        "mcCryptoPassword", "rallypoints", "certificate", "certificateKey", "verifyPeer",//NON-NLS
+        "allowSelfSignedCertificate", "txPriority", "txFlags", "enableAudioLevels"//NON-NLS
+    };
+
+    private static final HashMap<String, Integer> KEY_INDEX = new HashMap<>();
+
+    static
+    {
+        for(int x = 0; x < KEY_DICTIONARY.length; x++)
+        {
+            KEY_INDEX.put(KEY_DICTIONARY[x], x);
+        }
+    }
+
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();//NON-NLS
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();//NON-NLS
+
+    public static byte[] encode(JSONObject root) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        writeValue(bos, root);
+        return bos.toByteArray();
+    }
+
+    public static JSONObject decode(byte[] data, int ofs, int len) throws Exception
+    {
+        Reader rdr = new Reader(data, ofs, len);
+        Object rc = rdr.readValue(0);
+        if(!(rc instanceof JSONObject) || rdr._pos != rdr._end)
+        {
+            throw new IllegalArgumentException("malformed binary mission");//NON-NLS
+        }
+
+        return (JSONObject) rc;
+    }
+
+    private static void writeValue(ByteArrayOutputStream bos, Object value) throws Exception
+    {
+        if(value == null || value == JSONObject.NULL)
+        {
+            bos.write(TAG_NULL);
+        }
+        else if(value instanceof Boolean)
+        {
+            bos.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        }
+        else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+        {
+            bos.write(TAG_INT);
+            writeVarint(bos, zigZag(((Number) value).longValue()));
+        }
+        else if(value instanceof Number)
+        {
+            double d = ((Number) value).doubleValue();
+            if(d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < (double) Long.MAX_VALUE && (d != 0.0 || 1 / d > 0))
+            {
+                bos.write(TAG_INT);
+                writeVarint(bos, zigZag((long) d));
+            }
+            else
+            {
+                bos.write(TAG_DOUBLE);
+                long bits = Double.doubleToLongBits(d);
+                for(int x = 56; x >= 0; x -= 8)
+                {
+                    bos.write((int) (bits >>> x));
+                }
+            }
+        }
+        else if(value instanceof JSONObject)
+        {
+            JSONObject obj = (JSONObject) value;
+            bos.write(TAG_OBJECT);
+            writeVarint(bos, obj.length());
+
+            Iterator<String> keys = obj.keys();
+            while(keys.hasNext())
+            {
+                String key = keys.next();
+                Integer idx = KEY_INDEX.get(key);
+                if(idx != null)
+                {
+                    writeVarint(bos, idx + 1);
+                }
+                else
+                {
+                    writeVarint(bos, 0);
+                    writeString(bos, key);
+                }
+
+                writeValue(bos, obj.get(key));
+            }
+        }
+        else if(value instanceof JSONArray)
+        {
+            JSONArray arr = (JSONArray) value;
+            bos.write(TAG_ARRAY);
+            writeVarint(bos, arr.length());
+            for(int x = 0; x < arr.length(); x++)
+            {
+                writeValue(bos, arr.get(x));
+            }
+        }
+        else
+        {
+            String s = value.toString();
+            byte[] raw;
+
+            if((raw = parseGuid(s)) != null)
+            {
+                bos.write(TAG_GUID);
+                bos.write(raw, 0, raw.length);
+            }
+            else if((raw = parseHex(s, HEX_LOWER)) != null)
+            {
+                bos.write(TAG_HEX);
+                writeVarint(bos, raw.length);
+                bos.write(raw, 0, raw.length);
+            }
+            else if((raw = parseHex(s, HEX_UPPER)) != null)
+            {
+                bos.write(TAG_HEX_UPPER);
+                writeVarint(bos, raw.length);
+                bos.write(raw, 0, raw.length);
+            }
+            else if((raw = parseIpv4(s)) != null)
+            {
+                bos.write(TAG_IPV4);
+                bos.write(raw, 0, raw.length);
+            }
+            else
+            {
+                bos.write(TAG_STRING);
+                writeString(bos, s);
+            }
+        }
+    }
+
+    private static long zigZag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v)
+    {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream bos, long v)
+    {
+        while((v & ~0x7FL) != 0)
+        {
+            bos.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+
+        bos.write((int) v);
+    }
+
+    private static void writeString(ByteArrayOutputStream bos, String s)
+    {
+        byte[] ba = s.getBytes(Utils.getEngageCharSet());
+        writeVarint(bos, ba.length);
+        bos.write(ba, 0, ba.length);
+    }
+
+    // "{xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx}" in lower case as produced by Utils.generateMissionId() et al
+    private static byte[] parseGuid(String s)
+    {
+        if(s.length() != 38 || s.charAt(0) != '{' || s.charAt(37) != '}')
+        {
+            return null;
+        }
+
+        byte[] rc = new byte[16];
+        int pos = 0;
+        for(int x = 1; x < 37; )
+        {
+            if(x == 9 || x == 14 || x == 19 || x == 24)
+            {
+                if(s.charAt(x) != '-')
+                {
+                    return null;
+                }
+
+                x++;
+                continue;
+            }
+
+            int hi = hexValue(s.charAt(x), HEX_LOWER);
+            int lo = hexValue(s.charAt(x + 1), HEX_LOWER);
+            if(hi < 0 || lo < 0)
+            {
+                return null;
+            }
+
+            rc[pos++] = (byte) ((hi << 4) | lo);
+            x += 2;
+        }
+
+        return rc;
+    }
+
+    private static String formatGuid(byte[] data, int ofs)
+    {
+        StringBuilder sb = new StringBuilder(38);
+        sb.append('{');
+        for(int x = 0; x < 16; x++)
+        {
+            if(x == 4 || x == 6 || x == 8 || x == 10)
+            {
+                sb.append('-');
+            }
+
+            int v = data[ofs + x] & 0xff;
+            sb.append(HEX_LOWER[v >>> 4]);
+            sb.append(HEX_LOWER[v & 0x0f]);
+        }
+        sb.append('}');
+
+        return sb.toString();
+    }
+
+    // Single-case hex of at least 16 characters (shorter ones aren't worth the tag)
+    private static byte[] parseHex(String s, char[] digits)
+    {
+        int len = s.length();
+        if(len < 16 || (len % 2) != 0)
+        {
+            return null;
+        }
+
+        byte[] rc = new byte[len / 2];
+        for(int x = 0; x < len; x += 2)
+        {
+            int hi = hexValue(s.charAt(x), digits);
+            int lo = hexValue(s.charAt(x + 1), digits);
+            if(hi < 0 || lo < 0)
+            {
+                return null;
+            }
+
+            rc[x / 2] = (byte) ((hi << 4) | lo);
+        }
+
+        return rc;
+    }
+
+    private static int hexValue(char c, char[] digits)
+    {
+        if(c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        else if(c >= digits[10] && c <= digits[15])
+        {
+            return c - digits[10] + 10;
+        }
+
+        return -1;
+    }
+
+    private static String formatHex(byte[] data, int ofs, int len, char[] digits)
+    {
+        char[] chars = new char[len * 2];
+        for(int x = 0; x < len; x++)
+        {
+            int v = data[ofs + x] & 0xff;
+            chars[x * 2] = digits[v >>> 4];
+            chars[(x * 2) + 1] = digits[v & 0x0f];
+        }
+
+        return new String(chars);
+    }
+
+    // Canonical dotted quad only (no leading zeroes) so that formatting it back is exact
+    private static byte[] parseIpv4(String s)
+    {
+        int len = s.length();
+        if(len < 7 || len > 15)
+        {
+            return null;
+        }
+
+        byte[] rc = new byte[4];
+        int octet = 0;
+        int value = -1;
+        int digits = 0;
+
+        for(int x = 0; x <= len; x++)
+        {
+            char c = (x < len) ? s.charAt(x) : '.';
+            if(c == '.')
+            {
+                if(digits == 0 || octet > 3)
+                {
+                    return null;
+                }
+
+                rc[octet++] = (byte) value;
+                value = -1;
+                digits = 0;
+            }
+            else if(c >= '0' && c <= '9')
+            {
+                if(value == 0)
+                {
+                    return null;
+                }
+
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                digits++;
+                if(value > 255)
+                {
+                    return null;
+                }
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        return (octet == 4) ? rc : null;
+    }
+
+    private static class Reader
+    {
+        private final byte[] _data;
+        private int _pos;
+        private final int _end;
+
+        Reader(byte[] data, int ofs, int len)
+        {
+            _data = data;
+            _pos = ofs;
+            _end = ofs + len;
+        }
+
+        private int readByte()
+        {
+            if(_pos >= _end)
+            {
+                throw new IllegalArgumentException("truncated binary mission");//NON-NLS
+            }
+
+            return _data[_pos++] & 0xff;
+        }
+
+        private long readVarint()
+        {
+            long rc = 0;
+            int shift = 0;
+            int b;
+
+            do
+            {
+                if(shift > 63)
+                {
+                    throw new IllegalArgumentException("varint too long");//NON-NLS
+                }
+
+                b = readByte();
+                rc |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+
+            return rc;
+        }
+
+        private int readLength()
+        {
+            long len = readVarint();
+            if(len < 0 || len > (_end - _pos))
+            {
+                throw new IllegalArgumentException("bad length in binary mission");//NON-NLS
+            }
+
+            return (int) len;
+        }
+
+        private String readString()
+        {
+            int len = readLength();
+            String rc = new String(_data, _pos, len, Utils.getEngageCharSet());
+            _pos += len;
+            return rc;
+        }
+
+        private void checkDepth(int depth)
+        {
+            if(depth >= MAX_NESTING_DEPTH)
+            {
+                throw new IllegalArgumentException("binary mission nested too deeply");//NON-NLS
+            }
+        }
+
+        Object readValue(int depth) throws Exception
+        {
+            int tag = readByte();
+
+            switch(tag)
+            {
+                case TAG_NULL:
+                    return JSONObject.NULL;
+
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+
+                case TAG_INT:
+                {
+                    long v = unZigZag(readVarint());
+                    if(v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE)
+                    {
+                        return (int) v;
+                    }
+
+                    return v;
+                }
+
+                case TAG_DOUBLE:
+                {
+                    long bits = 0;
+                    for(int x = 0; x < 8; x++)
+                    {
+                        bits = (bits << 8) | readByte();
+                    }
+
+                    // JSON has no NaN or infinity - the encoder never writes them
+                    double rc = Double.longBitsToDouble(bits);
+                    if(Double.isNaN(rc) || Double.isInfinite(rc))
+                    {
+                        throw new IllegalArgumentException("non-finite number in binary mission");//NON-NLS
+                    }
+
+                    return rc;
+                }
+
+                case TAG_STRING:
+                    return readString();
+
+                case TAG_GUID:
+                {
+                    if(_end - _pos < 16)
+                    {
+                        throw new IllegalArgumentException("truncated binary mission");//NON-NLS
+                    }
+
+                    String rc = formatGuid(_data, _pos);
+                    _pos += 16;
+                    return rc;
+                }
+
+                case TAG_HEX:
+                case TAG_HEX_UPPER:
+                {
+                    int len = readLength();
+                    String rc = formatHex(_data, _pos, len, (tag == TAG_HEX) ? HEX_LOWER : HEX_UPPER);
+                    _pos += len;
+                    return rc;
+                }
+
+                case TAG_IPV4:
+                    return readByte() + "." + readByte() + "." + readByte() + "." + readByte();
+
+                case TAG_OBJECT:
+                {
+                    checkDepth(depth);
+
+                    JSONObject rc = new JSONObject();
+                    int count = readLength();
+                    for(int x = 0; x < count; x++)
+                    {
+                        String key;
+                        long keyRef = readVarint();
+                        if(keyRef == 0)
+                        {
+                            key = readString();
+                        }
+                        else if(keyRef > 0 && keyRef <= KEY_DICTIONARY.length)
+                        {
+                            key = KEY_DICTIONARY[(int) keyRef - 1];
+                        }
+                        else
+                        {
+                            throw new IllegalArgumentException("unknown key in binary mission");//NON-NLS
+                        }
+
+                        rc.put(key, readValue(depth + 1));
+                    }
+
+                    return rc;
+                }
+
+                case TAG_ARRAY:
+                {
+                    checkDepth(depth);
+
+                    JSONArray rc = new JSONArray();
+                    int count = readLength();
+                    for(int x = 0; x < count; x++)
+                    {
+                        rc.put(readValue(depth + 1));
+                    }
+
+                    return rc;
+                }
+
+                default:
+                    throw new IllegalArgumentException("unknown tag in binary mission");//NON-NLS
+            }
+        }
+    }
+}
@@ -17,9 +17,10 @@ import android.content.IntentFilter;
 import android.media.AudioManager;
 import android.util.Log;
 
+import org.json.JSONObject;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.UUID;
@@ -37,6 +38,10 @@ public class BluetoothManager
     private static final UUID BT_UUID_SECURE = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");//NON-NLS
     private static final UUID BT_UUID_NON_SECURE = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");//NON-NLS
 
+    // Indexes into the matcher's commands
+    private static final int PTT_ON = 0;
+    private static final int PTT_OFF = 1;
+
     private Context _ctx;
     private String _desiredDeviceAddress = null;
     private String _pttOnString = null;
@@ -49,6 +54,16 @@ public class BluetoothManager
     private IBtNotification _notificationSink;
     private IPushToTalkRequestHandler _pttRequestHandler;
 
+    private long _connects = 0;
+    private long _connectFailures = 0;
+    private long _reconnectDelayMs = 0;
+    private long _bytesRead = 0;
+    private long _pttOnCount = 0;
+    private long _pttOffCount = 0;
+
+    // From the bytes coming off the socket to the PTT request having been handed over
+    private final LatencyHistogram _dispatchLatencyUs = new LatencyHistogram();
+
     public BluetoothManager(Context ctx,
                             IBtNotification notificationSink,
                             IPushToTalkRequestHandler pttRequestHandler)
@@ -328,11 +343,48 @@ public class BluetoothManager
         _readerThread = null;
     }
 
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("connects", _connects);//NON-NLS
+            rc.put("connectFailures", _connectFailures);//NON-NLS
+            rc.put("reconnectDelayMs", _reconnectDelayMs);//NON-NLS
+            rc.put("bytesRead", _bytesRead);//NON-NLS
+            rc.put("pttOn", _pttOnCount);//NON-NLS
+            rc.put("pttOff", _pttOffCount);//NON-NLS
+            rc.put("dispatchLatencyUs", _dispatchLatencyUs.toJson());//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+
+    private synchronized void recordDispatch(int command, long latencyUs)
+    {
+        if(command == PTT_ON)
+        {
+            _pttOnCount++;
+        }
+        else
+        {
+            _pttOffCount++;
+        }
+
+        _dispatchLatencyUs.record(latencyUs);
+    }
+
     private class ReaderThread extends Thread
     {
         private BluetoothSocket mmSocket;
         private BluetoothDevice mmDevice;
-        private boolean running = true;
+        private volatile boolean running = true;
+        private final PttCommandMatcher _matcher = new PttCommandMatcher(_pttOnString, _pttOffString);
 
         public ReaderThread(BluetoothDevice device)
         {
@@ -344,6 +396,7 @@ public class BluetoothManager
             InputStream is;
             byte[] buffer = new byte[1024];
             int bytesRead;
+            long reconnectDelayMs = Constants.BT_RECONNECT_MIN_DELAY_MS;
 
             //_bluetoothAdapter.cancelDiscovery();
 
@@ -358,12 +411,15 @@ public class BluetoothManager
                 }
                 catch (IOException connectException)
                 {
-                    connectException.printStackTrace();
+                    Log.w(TAG, "cannot connect to " + mmDevice.toString() + " - retrying in " + reconnectDelayMs + "ms: " + connectException.getMessage());//NON-NLS
 
-                    // Unable to connect; close the socket and return.
+                    // Unable to connect; close the socket and try again in a while
                     try
                     {
-                        mmSocket.close();
+                        if(mmSocket != null)
+                        {
+                            mmSocket.close();
+                        }
                     }
                     catch (IOException closeException)
                     {
@@ -371,14 +427,23 @@ public class BluetoothManager
                         closeException.printStackTrace();
                     }
 
+                    synchronized (BluetoothManager.this)
+                    {
+                        _connectFailures++;
+                        _reconnectDelayMs = reconnectDelayMs;
+                    }
+
+                    // Cancelling interrupts this so we don't hold up a stop
                     try
                     {
-                        Thread.sleep(500);
+                        Thread.sleep(reconnectDelayMs);
                     }
-                    catch (Exception e)
+                    catch (InterruptedException e)
                     {
+                        break;
                     }
 
+                    reconnectDelayMs = Math.min(reconnectDelayMs * 2, Constants.BT_RECONNECT_MAX_DELAY_MS);
                     continue;
                 }
 
@@ -387,32 +452,55 @@ public class BluetoothManager
                     break;
                 }
 
+                reconnectDelayMs = Constants.BT_RECONNECT_MIN_DELAY_MS;
+                synchronized (BluetoothManager.this)
+                {
+                    _connects++;
+                    _reconnectDelayMs = 0;
+                }
+
                 Log.d(TAG, "connected to " + mmDevice.toString());//NON-NLS
                 enableBluetoothRecording(_ctx);
                 _notificationSink.onBluetoothDeviceConnected();
 
+                // Anything half-matched belonged to the last connection
+                _matcher.reset();
+
                 while( running )
                 {
                     try
                     {
                         bytesRead = is.read(buffer);
-                        if(bytesRead > 0)
+                        if(bytesRead < 0)
                         {
-                            if(running)
+                            break;
+                        }
+
+                        long arrivedAt = System.nanoTime();
+
+                        for(int x = 0; x < bytesRead && running; x++)
+                        {
+                            int command = _matcher.next(buffer[x]);
+                            if(command == PTT_ON)
+                            {
+                                _pttRequestHandler.requestPttOn(0, 0);
+                            }
+                            else if(command == PTT_OFF)
+                            {
+                                _pttRequestHandler.requestPttOff();
+                            }
+                            else
                             {
-                                buffer[bytesRead] = 0;
-                                String s = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
-                                Log.d(TAG, "read " + bytesRead + " bytes [" + s + "]");//NON-NLS//NON-NLS
-
-                                if(s.compareTo(_pttOnString) == 0)
-                                {
-                                    _pttRequestHandler.requestPttOn(0, 0);
-                                }
-                                else if(s.compareTo(_pttOffString) == 0)
-                                {
-                                    _pttRequestHandler.requestPttOff();
-                                }
+                                continue;
                             }
+
+                            recordDispatch(command, (System.nanoTime() - arrivedAt) / 1000);
+                            Log.d(TAG, (command == PTT_ON ? "ptt on" : "ptt off"));//NON-NLS
+                        }
+
+                        synchronized (BluetoothManager.this)
+                        {
+                            _bytesRead += bytesRead;
                         }
                     }
                     catch (Exception e)
@@ -431,10 +519,14 @@ public class BluetoothManager
         public void cancel()
         {
             running = false;
+            interrupt();
 
             try
             {
-                mmSocket.close();
+                if(mmSocket != null)
+                {
+                    mmSocket.close();
+                }
             }
             catch (IOException e)
             {
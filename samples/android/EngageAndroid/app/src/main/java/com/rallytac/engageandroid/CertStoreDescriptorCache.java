@@ -0,0 +1,285 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Remembers what the engine told us about each certificate store file so that listing the
+// stores doesn't mean opening every one of them with every password we know.  Entries are
+// keyed by path and only good while the file's size and modification time are unchanged.
+// The lot is saved to disk so that it survives restarts.
+//
+// Stores the engine can't read aren't remembered - they're asked about again next time in
+// case a password has been added since.
+public class CertStoreDescriptorCache
+{
+    private static String TAG = CertStoreDescriptorCache.class.getSimpleName();
+
+    private static final String CACHE_FILE_NAME = "certstore-descriptors.json";//NON-NLS
+
+    public interface IDescriptorListener
+    {
+        // descriptor is null if the file isn't (or is no longer) a store we can read
+        void onCertStoreDescriptorReady(String path, JSONObject descriptor);
+    }
+
+    private static class Entry
+    {
+        public long size;
+        public long mtime;
+        public JSONObject descriptor;
+    }
+
+    private final Context _ctx;
+    private final File _cacheFile;
+    private final Handler _uiHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService _worker = Executors.newSingleThreadExecutor();
+    private HashMap<String, Entry> _entries = null;
+
+    public CertStoreDescriptorCache(Context ctx)
+    {
+        _ctx = ctx;
+        _cacheFile = new File(ctx.getFilesDir(), CACHE_FILE_NAME);
+
+        // Get it off disk before anyone needs it
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ensureLoaded();
+            }
+        });
+    }
+
+    // Cheap enough for the UI thread - a stat of the file and a map lookup
+    public synchronized JSONObject getCached(String path)
+    {
+        ensureLoaded();
+
+        Entry e = _entries.get(path);
+        if(e == null)
+        {
+            return null;
+        }
+
+        File f = new File(path);
+        if(f.length() != e.size || f.lastModified() != e.mtime)
+        {
+            return null;
+        }
+
+        return e.descriptor;
+    }
+
+    public synchronized void put(String path, JSONObject descriptor)
+    {
+        update(path, descriptor);
+        saveSoon();
+    }
+
+    public synchronized void remove(String path)
+    {
+        ensureLoaded();
+
+        if(_entries.remove(path) != null)
+        {
+            saveSoon();
+        }
+    }
+
+    // Queries the engine in the background for every path that isn't cached (or has changed)
+    // and tells the listener, on the UI thread, about each one that it asked about.  Entries
+    // for paths that aren't in the list any more are dropped.
+    public void refresh(final List<String> paths, final IDescriptorListener listener)
+    {
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ArrayList<String> stale = new ArrayList<>();
+
+                synchronized (CertStoreDescriptorCache.this)
+                {
+                    ensureLoaded();
+
+                    HashSet<String> wanted = new HashSet<>(paths);
+                    Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+                    while(it.hasNext())
+                    {
+                        if(!wanted.contains(it.next().getKey()))
+                        {
+                            it.remove();
+                        }
+                    }
+
+                    for(String path : paths)
+                    {
+                        if(getCached(path) == null)
+                        {
+                            stale.add(path);
+                        }
+                    }
+                }
+
+                Log.d(TAG, "refresh: " + paths.size() + " stores, " + stale.size() + " to query");//NON-NLS
+
+                for(final String path : stale)
+                {
+                    final JSONObject descriptor = Globals.getEngageApplication().getCertificateStoreDescriptorForFile(path);
+
+                    update(path, descriptor);
+
+                    if(listener != null)
+                    {
+                        _uiHandler.post(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                listener.onCertStoreDescriptorReady(path, descriptor);
+                            }
+                        });
+                    }
+                }
+
+                save();
+            }
+        });
+    }
+
+    private synchronized void update(String path, JSONObject descriptor)
+    {
+        ensureLoaded();
+
+        if(descriptor == null)
+        {
+            _entries.remove(path);
+        }
+        else
+        {
+            File f = new File(path);
+            Entry e = new Entry();
+            e.size = f.length();
+            e.mtime = f.lastModified();
+            e.descriptor = descriptor;
+            _entries.put(path, e);
+        }
+    }
+
+    private synchronized void ensureLoaded()
+    {
+        if(_entries != null)
+        {
+            return;
+        }
+
+        _entries = new HashMap<>();
+
+        try
+        {
+            if(_cacheFile.exists())
+            {
+                JSONObject root = new JSONObject(Utils.readTextFile(_ctx, Uri.fromFile(_cacheFile)));
+                Iterator<String> keys = root.keys();
+                while(keys.hasNext())
+                {
+                    String path = keys.next();
+                    JSONObject obj = root.getJSONObject(path);
+
+                    Entry e = new Entry();
+                    e.size = obj.getLong("size");//NON-NLS
+                    e.mtime = obj.getLong("mtime");//NON-NLS
+                    e.descriptor = obj.getJSONObject("descriptor");//NON-NLS
+                    _entries.put(path, e);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "discarding unreadable descriptor cache: " + e.getMessage());//NON-NLS
+            _entries.clear();
+            _cacheFile.delete();
+        }
+    }
+
+    private void saveSoon()
+    {
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                save();
+            }
+        });
+    }
+
+    private void save()
+    {
+        String text;
+
+        synchronized (this)
+        {
+            try
+            {
+                JSONObject root = new JSONObject();
+                for(Map.Entry<String, Entry> me : _entries.entrySet())
+                {
+                    JSONObject obj = new JSONObject();
+                    obj.put("size", me.getValue().size);//NON-NLS
+                    obj.put("mtime", me.getValue().mtime);//NON-NLS
+                    obj.put("descriptor", me.getValue().descriptor);//NON-NLS
+                    root.put(me.getKey(), obj);
+                }
+
+                text = root.toString();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        File tmp = new File(_cacheFile.getAbsolutePath() + ".tmp");//NON-NLS
+
+        try
+        {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            fos.write(text.getBytes(Utils.getEngageCharSet()));
+            fos.close();
+
+            if(!tmp.renameTo(_cacheFile))
+            {
+                throw new Exception("rename failed");//NON-NLS
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot save descriptor cache: " + e.getMessage());//NON-NLS
+            tmp.delete();
+        }
+    }
+}
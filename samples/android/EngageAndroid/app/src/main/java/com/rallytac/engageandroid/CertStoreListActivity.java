@@ -241,9 +241,12 @@ public class CertStoreListActivity extends AppCompatActivity
         }
     }
 
+    // What's already known about is shown straight away - new or changed stores turn up as
+    // the engine is asked about them in the background
     private void loadStores(String sourceDirectory)
     {
         _stores = new ArrayList<>();
+        ArrayList<String> paths = new ArrayList<>();
 
         try
         {
@@ -253,10 +256,13 @@ public class CertStoreListActivity extends AppCompatActivity
             {
                 for (File file : allContents)
                 {
-                    CertStore cs = loadStoreFrom(file.getAbsolutePath());
-                    if(cs != null)
+                    String path = file.getAbsolutePath();
+                    paths.add(path);
+
+                    JSONObject descriptor = Globals.getCertStoreDescriptorCache().getCached(path);
+                    if(descriptor != null)
                     {
-                        _stores.add(cs);
+                        _stores.add(makeStore(path, descriptor));
                     }
                 }
             }
@@ -265,6 +271,53 @@ public class CertStoreListActivity extends AppCompatActivity
         {
             e.printStackTrace();
         }
+
+        Globals.getCertStoreDescriptorCache().refresh(paths, new CertStoreDescriptorCache.IDescriptorListener()
+        {
+            @Override
+            public void onCertStoreDescriptorReady(String path, JSONObject descriptor)
+            {
+                onStoreDescriptorUpdated(path, descriptor);
+            }
+        });
+    }
+
+    private void onStoreDescriptorUpdated(String path, JSONObject descriptor)
+    {
+        if(isFinishing())
+        {
+            return;
+        }
+
+        int pos = -1;
+        for(int x = 0; x < _stores.size(); x++)
+        {
+            if(_stores.get(x)._fileName.compareTo(path) == 0)
+            {
+                pos = x;
+                break;
+            }
+        }
+
+        if(pos >= 0)
+        {
+            _stores.remove(pos);
+        }
+
+        if(descriptor != null)
+        {
+            CertStore cs = makeStore(path, descriptor);
+            if(pos >= 0)
+            {
+                _stores.add(pos, cs);
+            }
+            else
+            {
+                _stores.add(cs);
+            }
+        }
+
+        _adapter.notifyDataSetChanged();
     }
 
     private void selectFileForImport()
@@ -404,12 +457,9 @@ public class CertStoreListActivity extends AppCompatActivity
                 bos.close();
 
                 // Add the certstore to our list of stores
-                CertStore cs = loadStoreFrom(fo.getAbsolutePath());
-                if(cs != null)
-                {
-                    _stores.add(cs);
-                    _adapter.notifyDataSetChanged();
-                }
+                Globals.getCertStoreDescriptorCache().put(fo.getAbsolutePath(), descriptor);
+                _stores.add(makeStore(fo.getAbsolutePath(), descriptor));
+                _adapter.notifyDataSetChanged();
             }
             catch (Exception e)
             {
@@ -423,24 +473,12 @@ public class CertStoreListActivity extends AppCompatActivity
         }
     }
 
-    private CertStore loadStoreFrom(String fn)
+    private CertStore makeStore(String fn, JSONObject descriptor)
     {
         CertStore rc = new CertStore();
 
-        try
-        {
-            rc._fileName = fn;
-            rc._descriptor = Globals.getEngageApplication().getCertificateStoreDescriptorForFile(fn);
-            if(rc._descriptor == null)
-            {
-                throw new Exception("Cannot get certificate store descriptor");//NON-NLS
-            }
-        }
-        catch (Exception e)
-        {
-            rc = null;
-            e.printStackTrace();
-        }
+        rc._fileName = fn;
+        rc._descriptor = descriptor;
 
         return rc;
     }
@@ -500,6 +538,7 @@ public class CertStoreListActivity extends AppCompatActivity
                                 {
                                     File f = new File(cs._fileName);
                                     f.delete();
+                                    Globals.getCertStoreDescriptorCache().remove(cs._fileName);
                                     _stores.remove(c);
                                     _adapter.notifyDataSetChanged();
 
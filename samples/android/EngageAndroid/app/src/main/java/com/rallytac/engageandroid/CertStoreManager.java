@@ -0,0 +1,462 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.rallytac.engage.engine.Engine;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Set;
+
+// Looks after the copy of the certificate store that the engine opens.  The copy is only
+// re-written when the source's content has changed - a source whose path, size and time
+// haven't changed isn't even read - and the password that opened a store last time (by the
+// store's content hash) is tried first instead of working through every password we have.
+//
+// Passwords aren't kept here, only a hash of each salted with the store's hash.
+public class CertStoreManager
+{
+    private static String TAG = CertStoreManager.class.getSimpleName();
+
+    private static final int IO_BUFFER_SIZE = (64 * 1024);
+
+    // Where the active copy came from and what it looked like when we wrote it
+    private static class State
+    {
+        public String source = "";
+        public long sourceSize = -1;
+        public long sourceMtime = -1;
+        public String hash = "";
+        public long activeSize = -1;
+        public long activeMtime = -1;
+
+        public static State fromJson(String s)
+        {
+            State rc = new State();
+
+            try
+            {
+                if(!Utils.isEmptyString(s))
+                {
+                    JSONObject obj = new JSONObject(s);
+                    rc.source = obj.optString("source", "");//NON-NLS
+                    rc.sourceSize = obj.optLong("sourceSize", -1);//NON-NLS
+                    rc.sourceMtime = obj.optLong("sourceMtime", -1);//NON-NLS
+                    rc.hash = obj.optString("hash", "");//NON-NLS
+                    rc.activeSize = obj.optLong("activeSize", -1);//NON-NLS
+                    rc.activeMtime = obj.optLong("activeMtime", -1);//NON-NLS
+                }
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                rc = new State();
+            }
+
+            return rc;
+        }
+
+        public String toJson()
+        {
+            JSONObject obj = new JSONObject();
+
+            try
+            {
+                obj.put("source", source);//NON-NLS
+                obj.put("sourceSize", sourceSize);//NON-NLS
+                obj.put("sourceMtime", sourceMtime);//NON-NLS
+                obj.put("hash", hash);//NON-NLS
+                obj.put("activeSize", activeSize);//NON-NLS
+                obj.put("activeMtime", activeMtime);//NON-NLS
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+
+            return obj.toString();
+        }
+    }
+
+    private final Context _ctx;
+    private final SharedPreferences _sp;
+    private final File _activeFile;
+
+    private long _opens = 0;
+    private long _rewrites = 0;
+    private long _passwordAttempts = 0;
+
+    public CertStoreManager(Context ctx, SharedPreferences sp)
+    {
+        _ctx = ctx;
+        _sp = sp;
+        _activeFile = new File(ctx.getFilesDir(), ctx.getString(R.string.certstore_active_fn));
+    }
+
+    public String getActiveFileName()
+    {
+        return _activeFile.getAbsolutePath();
+    }
+
+    // Opens sourcePath (or the built-in store if there isn't one) in the engine by way of
+    // the active copy
+    public synchronized boolean open(Engine engine, String sourcePath, Set<String> passwords)
+    {
+        boolean rc = false;
+        long started = Utils.nowMs();
+
+        try
+        {
+            String hash = materialize(sourcePath);
+
+            for(String pwd : orderPasswords(hash, passwords))
+            {
+                _passwordAttempts++;
+                if(engine.engageOpenCertStore(_activeFile.getAbsolutePath(), pwd) == 0)
+                {
+                    rememberPassword(hash, pwd);
+                    rc = true;
+                    break;
+                }
+            }
+
+            if(!rc)
+            {
+                forgetPassword(hash);
+            }
+
+            _opens++;
+            Log.i(TAG, "open " + (rc ? "succeeded" : "failed") + " in " + (Utils.nowMs() - started) + "ms");//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            rc = false;
+        }
+
+        return rc;
+    }
+
+    // Makes sure the active copy holds the source's content and returns its hash
+    private String materialize(String sourcePath) throws Exception
+    {
+        boolean fromFile = !Utils.isEmptyString(sourcePath);
+        File sourceFile = (fromFile ? new File(sourcePath) : null);
+
+        String source;
+        long sourceSize;
+        long sourceMtime;
+
+        if(fromFile)
+        {
+            source = sourceFile.getAbsolutePath();
+            sourceSize = sourceFile.length();
+            sourceMtime = sourceFile.lastModified();
+        }
+        else
+        {
+            // The built-in store can only change when the app does
+            source = "res:" + R.raw.android_engage_default_certstore;//NON-NLS
+            sourceSize = -1;
+            sourceMtime = _ctx.getPackageManager().getPackageInfo(_ctx.getPackageName(), 0).lastUpdateTime;
+        }
+
+        State state = State.fromJson(_sp.getString(PreferenceKeys.CERT_STORE_ACTIVE_STATE, null));
+        boolean activeIntact = (_activeFile.exists()
+                                && _activeFile.length() == state.activeSize
+                                && _activeFile.lastModified() == state.activeMtime);
+
+        if(activeIntact
+                && state.source.equals(source)
+                && state.sourceSize == sourceSize
+                && state.sourceMtime == sourceMtime)
+        {
+            return state.hash;
+        }
+
+        String hash = (fromFile ? hashFile(sourceFile) : hashResource());
+
+        if(!activeIntact || !hash.equals(state.hash))
+        {
+            Log.i(TAG, "writing active cert store from " + source);//NON-NLS
+            writeActive(sourceFile);
+            _rewrites++;
+        }
+
+        state.source = source;
+        state.sourceSize = sourceSize;
+        state.sourceMtime = sourceMtime;
+        state.hash = hash;
+        state.activeSize = _activeFile.length();
+        state.activeMtime = _activeFile.lastModified();
+
+        _sp.edit().putString(PreferenceKeys.CERT_STORE_ACTIVE_STATE, state.toJson()).apply();
+
+        return hash;
+    }
+
+    // Written alongside and renamed into place so the engine never sees half a store
+    private void writeActive(File sourceFile) throws Exception
+    {
+        File tmp = new File(_activeFile.getAbsolutePath() + ".tmp");//NON-NLS
+
+        if(sourceFile != null)
+        {
+            FileInputStream fis = new FileInputStream(sourceFile);
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try
+            {
+                FileChannel in = fis.getChannel();
+                FileChannel out = fos.getChannel();
+                long size = in.size();
+                long pos = 0;
+
+                while(pos < size)
+                {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+            }
+            finally
+            {
+                fis.close();
+                fos.close();
+            }
+        }
+        else
+        {
+            InputStream is = _ctx.getResources().openRawResource(R.raw.android_engage_default_certstore);
+            OutputStream os = new FileOutputStream(tmp);
+            try
+            {
+                byte[] buffer = new byte[IO_BUFFER_SIZE];
+                int len;
+                while((len = is.read(buffer)) > 0)
+                {
+                    os.write(buffer, 0, len);
+                }
+            }
+            finally
+            {
+                is.close();
+                os.close();
+            }
+        }
+
+        if(!tmp.renameTo(_activeFile))
+        {
+            tmp.delete();
+            throw new Exception("cannot replace active certificate store");//NON-NLS
+        }
+    }
+
+    private static String hashFile(File f) throws Exception
+    {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+        FileInputStream fis = new FileInputStream(f);
+
+        try
+        {
+            FileChannel ch = fis.getChannel();
+            long size = ch.size();
+
+            if(size >= Constants.CERTSTORE_MMAP_THRESHOLD_BYTES)
+            {
+                md.update(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            else
+            {
+                byte[] buffer = new byte[IO_BUFFER_SIZE];
+                int len;
+                while((len = fis.read(buffer)) > 0)
+                {
+                    md.update(buffer, 0, len);
+                }
+            }
+        }
+        finally
+        {
+            fis.close();
+        }
+
+        return Utils.bytesToHex(md.digest());
+    }
+
+    private String hashResource() throws Exception
+    {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+        InputStream is = _ctx.getResources().openRawResource(R.raw.android_engage_default_certstore);
+
+        try
+        {
+            byte[] buffer = new byte[IO_BUFFER_SIZE];
+            int len;
+            while((len = is.read(buffer)) > 0)
+            {
+                md.update(buffer, 0, len);
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+
+        return Utils.bytesToHex(md.digest());
+    }
+
+    private static String hashPassword(String storeHash, String pwd)
+    {
+        String rc;
+
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+            md.update(storeHash.getBytes(Utils.getEngageCharSet()));
+            md.update((byte) 0);
+            md.update(pwd.getBytes(Utils.getEngageCharSet()));
+            rc = Utils.bytesToHex(md.digest());
+        }
+        catch (Exception e)
+        {
+            rc = "";
+        }
+
+        return rc;
+    }
+
+    // Most recently used first
+    private JSONArray loadHints()
+    {
+        JSONArray rc;
+
+        try
+        {
+            rc = new JSONArray(_sp.getString(PreferenceKeys.CERT_STORE_PASSWORD_HINTS, "[]"));//NON-NLS
+        }
+        catch (Exception e)
+        {
+            rc = new JSONArray();
+        }
+
+        return rc;
+    }
+
+    private String findHint(String storeHash)
+    {
+        JSONArray hints = loadHints();
+        for(int x = 0; x < hints.length(); x++)
+        {
+            JSONObject h = hints.optJSONObject(x);
+            if(h != null && storeHash.equals(h.optString("store")))//NON-NLS
+            {
+                return h.optString("pwd");//NON-NLS
+            }
+        }
+
+        return null;
+    }
+
+    private ArrayList<String> orderPasswords(String storeHash, Set<String> passwords)
+    {
+        ArrayList<String> rc = new ArrayList<>(passwords);
+        String hint = findHint(storeHash);
+
+        if(hint != null)
+        {
+            for(int x = 0; x < rc.size(); x++)
+            {
+                if(hashPassword(storeHash, rc.get(x)).equals(hint))
+                {
+                    rc.add(0, rc.remove(x));
+                    break;
+                }
+            }
+        }
+
+        return rc;
+    }
+
+    private void rememberPassword(String storeHash, String pwd)
+    {
+        try
+        {
+            JSONArray hints = loadHints();
+            JSONArray updated = new JSONArray();
+
+            JSONObject h = new JSONObject();
+            h.put("store", storeHash);//NON-NLS
+            h.put("pwd", hashPassword(storeHash, pwd));//NON-NLS
+            updated.put(h);
+
+            for(int x = 0; x < hints.length() && updated.length() < Constants.CERTSTORE_MAX_PASSWORD_HINTS; x++)
+            {
+                JSONObject old = hints.optJSONObject(x);
+                if(old != null && !storeHash.equals(old.optString("store")))//NON-NLS
+                {
+                    updated.put(old);
+                }
+            }
+
+            _sp.edit().putString(PreferenceKeys.CERT_STORE_PASSWORD_HINTS, updated.toString()).apply();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void forgetPassword(String storeHash)
+    {
+        if(findHint(storeHash) == null)
+        {
+            return;
+        }
+
+        JSONArray hints = loadHints();
+        JSONArray updated = new JSONArray();
+
+        for(int x = 0; x < hints.length(); x++)
+        {
+            JSONObject old = hints.optJSONObject(x);
+            if(old != null && !storeHash.equals(old.optString("store")))//NON-NLS
+            {
+                updated.put(old);
+            }
+        }
+
+        _sp.edit().putString(PreferenceKeys.CERT_STORE_PASSWORD_HINTS, updated.toString()).apply();
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("opens", _opens);//NON-NLS
+            rc.put("rewrites", _rewrites);//NON-NLS
+            rc.put("passwordAttempts", _passwordAttempts);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
@@ -0,0 +1,330 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+// Splits an encoded mission across several QR codes ("frames") and puts it back together
+// again.  Each frame is QR_CODE_HEADER + QR_VERSION_CHUNKED + Base91(frame) where frame is:
+//
+//      transferId      4 bytes     random per transfer so frames from different missions don't mix
+//      payloadVersion  1 byte      QR version of the reassembled payload (legacy or binary)
+//      index           2 bytes     0..dataFrames-1 for data, dataFrames.. for parity
+//      dataFrames      2 bytes
+//      parityGroup     1 byte      data frames per XOR parity frame, 0 for none
+//      totalLength     4 bytes     length of the reassembled payload
+//      chunk           n bytes     all chunks are the same size, the last one zero-padded
+//      crc32           4 bytes     over everything above
+//
+// Frames may be scanned in any order.  With parity enabled, any one missing data frame in a
+// parity group is rebuilt from the others.
+public class ChunkedQrTransfer
+{
+    private static String TAG = ChunkedQrTransfer.class.getSimpleName();
+
+    private static final int FRAME_HEADER_SIZE = 14;
+    private static final int FRAME_CRC_SIZE = 4;
+
+    public static ArrayList<String> buildFrames(int payloadVersion, byte[] data, int chunkSize, int parityGroup)
+    {
+        ArrayList<String> rc = new ArrayList<>();
+
+        int dataFrames = (data.length + chunkSize - 1) / chunkSize;
+        int parityFrames = (parityGroup > 0) ? ((dataFrames + parityGroup - 1) / parityGroup) : 0;
+        int transferId = new Random().nextInt();
+        String prefix = Constants.QR_CODE_HEADER + Constants.QR_VERSION_CHUNKED;
+
+        byte[] frame = new byte[FRAME_HEADER_SIZE + chunkSize + FRAME_CRC_SIZE];
+        ByteBuffer bb = ByteBuffer.wrap(frame);
+        byte[] parity = new byte[chunkSize];
+
+        for(int index = 0; index < dataFrames + parityFrames; index++)
+        {
+            bb.clear();
+            bb.putInt(transferId);
+            bb.put((byte) payloadVersion);
+            bb.putShort((short) index);
+            bb.putShort((short) dataFrames);
+            bb.put((byte) parityGroup);
+            bb.putInt(data.length);
+
+            if(index < dataFrames)
+            {
+                int ofs = index * chunkSize;
+                int len = Math.min(chunkSize, data.length - ofs);
+                bb.put(data, ofs, len);
+                for(int x = len; x < chunkSize; x++)
+                {
+                    bb.put((byte) 0);
+                }
+            }
+            else
+            {
+                int first = (index - dataFrames) * parityGroup;
+                int last = Math.min(first + parityGroup, dataFrames);
+
+                Arrays.fill(parity, (byte) 0);
+                for(int chunk = first; chunk < last; chunk++)
+                {
+                    int ofs = chunk * chunkSize;
+                    int len = Math.min(chunkSize, data.length - ofs);
+                    for(int x = 0; x < len; x++)
+                    {
+                        parity[x] ^= data[ofs + x];
+                    }
+                }
+
+                bb.put(parity);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(frame, 0, bb.position());
+            bb.putInt((int) crc.getValue());
+
+            rc.add(prefix + Base91.encodeToString(frame, 0, bb.position()));
+        }
+
+        return rc;
+    }
+
+    // True if the scanned string (after any deflection URL) is a chunk frame
+    public static boolean isChunkFrame(String str)
+    {
+        return QrMissionDecoder.getNewFormatVersion(str) == Integer.parseInt(Constants.QR_VERSION_CHUNKED);
+    }
+
+    public static class Reassembler
+    {
+        private int _transferId;
+        private int _payloadVersion;
+        private int _dataFrames = 0;
+        private int _parityGroup;
+        private int _totalLength;
+        private int _chunkSize;
+        private byte[][] _chunks;
+        private byte[][] _parity;
+        private int _chunksReceived = 0;
+        private int _framesRejected = 0;
+        private String _password;
+
+        public void setPassword(String pwd)
+        {
+            _password = pwd;
+        }
+
+        public String getPassword()
+        {
+            return _password;
+        }
+
+        public boolean isStarted()
+        {
+            return (_dataFrames > 0);
+        }
+
+        public boolean isComplete()
+        {
+            return (isStarted() && _chunksReceived == _dataFrames);
+        }
+
+        public int getFramesNeeded()
+        {
+            return _dataFrames;
+        }
+
+        public int getFramesReceived()
+        {
+            return _chunksReceived;
+        }
+
+        public int getFramesRejected()
+        {
+            return _framesRejected;
+        }
+
+        public int getPayloadVersion()
+        {
+            return _payloadVersion;
+        }
+
+        public void reset()
+        {
+            _dataFrames = 0;
+            _chunks = null;
+            _parity = null;
+            _chunksReceived = 0;
+            _framesRejected = 0;
+            _password = null;
+        }
+
+        // Returns true if the frame was valid and belonged to this (or a new) transfer.  A
+        // frame from a different transfer than the one in progress starts over.
+        public boolean offer(String str)
+        {
+            int start = QrMissionDecoder.getDataOffset(str) + Constants.QR_CODE_HEADER.length() + Constants.QR_VERSION_CHUNKED.length();
+            byte[] frame = Base91.decode(str, start, str.length());
+
+            if(frame.length <= FRAME_HEADER_SIZE + FRAME_CRC_SIZE)
+            {
+                _framesRejected++;
+                return false;
+            }
+
+            ByteBuffer bb = ByteBuffer.wrap(frame);
+
+            CRC32 crc = new CRC32();
+            crc.update(frame, 0, frame.length - FRAME_CRC_SIZE);
+            if((int) crc.getValue() != bb.getInt(frame.length - FRAME_CRC_SIZE))
+            {
+                _framesRejected++;
+                return false;
+            }
+
+            int transferId = bb.getInt();
+            int payloadVersion = bb.get() & 0xff;
+            int index = bb.getShort() & 0xffff;
+            int dataFrames = bb.getShort() & 0xffff;
+            int parityGroup = bb.get() & 0xff;
+            int totalLength = bb.getInt();
+            int chunkSize = frame.length - FRAME_HEADER_SIZE - FRAME_CRC_SIZE;
+
+            // Every data frame but the last has to be full, so the total has to reach into the
+            // last one - otherwise getData() would be copying a negative length
+            if(dataFrames == 0
+                    || totalLength <= (long) (dataFrames - 1) * chunkSize
+                    || totalLength > (long) dataFrames * chunkSize)
+            {
+                _framesRejected++;
+                return false;
+            }
+
+            boolean sameTransfer = (isStarted() && transferId == _transferId && chunkSize == _chunkSize);
+
+            // A frame claiming to be part of this transfer has to describe it the same way
+            if(sameTransfer && (payloadVersion != _payloadVersion
+                                    || dataFrames != _dataFrames
+                                    || totalLength != _totalLength
+                                    || parityGroup != _parityGroup))
+            {
+                _framesRejected++;
+                return false;
+            }
+
+            if(!sameTransfer)
+            {
+                String pwd = _password;
+                reset();
+                _password = pwd;
+
+                _transferId = transferId;
+                _payloadVersion = payloadVersion;
+                _dataFrames = dataFrames;
+                _parityGroup = parityGroup;
+                _totalLength = totalLength;
+                _chunkSize = chunkSize;
+                _chunks = new byte[dataFrames][];
+                _parity = new byte[(parityGroup > 0) ? ((dataFrames + parityGroup - 1) / parityGroup) : 0][];
+            }
+
+            byte[] chunk = new byte[chunkSize];
+            bb.get(chunk);
+
+            if(index < _dataFrames)
+            {
+                if(_chunks[index] == null)
+                {
+                    _chunks[index] = chunk;
+                    _chunksReceived++;
+                    recoverGroup(index / Math.max(_parityGroup, 1));
+                }
+            }
+            else if(index - _dataFrames < _parity.length)
+            {
+                int group = index - _dataFrames;
+                if(_parity[group] == null)
+                {
+                    _parity[group] = chunk;
+                    recoverGroup(group);
+                }
+            }
+            else
+            {
+                _framesRejected++;
+                return false;
+            }
+
+            return true;
+        }
+
+        // If exactly one data chunk in the group is missing and we have its parity, rebuild it
+        private void recoverGroup(int group)
+        {
+            if(_parityGroup == 0 || group >= _parity.length || _parity[group] == null)
+            {
+                return;
+            }
+
+            int first = group * _parityGroup;
+            int last = Math.min(first + _parityGroup, _dataFrames);
+            int missing = -1;
+
+            for(int x = first; x < last; x++)
+            {
+                if(_chunks[x] == null)
+                {
+                    if(missing != -1)
+                    {
+                        return;
+                    }
+
+                    missing = x;
+                }
+            }
+
+            if(missing == -1)
+            {
+                return;
+            }
+
+            byte[] rebuilt = _parity[group].clone();
+            for(int x = first; x < last; x++)
+            {
+                if(x != missing)
+                {
+                    for(int y = 0; y < _chunkSize; y++)
+                    {
+                        rebuilt[y] ^= _chunks[x][y];
+                    }
+                }
+            }
+
+            // The last chunk's padding is zero, which the XOR above leaves as-is
+            _chunks[missing] = rebuilt;
+            _chunksReceived++;
+        }
+
+        public byte[] getData()
+        {
+            if(!isComplete())
+            {
+                return null;
+            }
+
+            byte[] rc = new byte[_totalLength];
+            for(int x = 0; x < _dataFrames; x++)
+            {
+                int ofs = x * _chunkSize;
+                System.arraycopy(_chunks[x], 0, rc, ofs, Math.min(_chunkSize, _totalLength - ofs));
+            }
+
+            return rc;
+        }
+    }
+}
@@ -9,12 +9,26 @@ public class Constants
 {
     public static String QR_CODE_HEADER = "&*3$e1@E";//NON-NLS
     public static String QR_VERSION = "001";//NON-NLS
+    public static String QR_VERSION_BINARY = "002";//NON-NLS
+    public static String QR_VERSION_CHUNKED = "003";//NON-NLS
     public static String QR_DEFLECTION_URL_SEP = "/??";//NON-NLS
 
     public enum UiMode {vSingle, vMulti}
 
     public final static int PTT_KEY_DOUBLE_CLICK_LATCH_THRESHOLD_MS = 500;
 
+    // A PTT source that comes back down within this long of letting go was chattering, not
+    // releasing.  The last few presses are traced for diagnostics.
+    public final static long PTT_RELEASE_DEBOUNCE_MS = 40;
+    public final static int PTT_TRACE_HISTORY = 32;
+
+    // Analytics events are counted as they happen and sent to Firebase in batches.  The
+    // table of event types is fixed-size (a power of two), and the chattiest events are
+    // only counted one in every so many times.
+    public final static long ANALYTICS_FLUSH_INTERVAL_MS = 60000;
+    public final static int ANALYTICS_MAX_EVENT_TYPES = 256;
+    public final static int ANALYTICS_HIGH_FREQUENCY_SAMPLE_RATE = 8;
+
     public final static int LAUNCH_TIMEOUT_MS = 5000;
 
     public final static int MIN_IP_PORT = 1;
@@ -54,6 +68,7 @@ public class Constants
     public final static int DEF_LOCATION_INTERVAL_SECS = 60;
     public final static int DEF_LOCATION_MIN_INTERVAL_SECS = 60;
     public final static float DEF_LOCATION_MIN_DISPLACEMENT = (float)5.0;
+    public final static boolean DEF_LOCATION_ADAPTIVE = true;
 
     public final static boolean DEF_MULTICAST_FAILOVER_ENABLED = true;
     public final static int DEF_MULTICAST_FAILOVER_THRESHOLD_SECS = 10;
@@ -62,6 +77,11 @@ public class Constants
 
     public final static int QR_CODE_WIDTH = 800;
     public final static int QR_CODE_HEIGHT = 800;
+    public final static int QR_CODE_MAX_SINGLE_CODE_CHARS = 1200;
+    public final static int QR_CODE_CHUNK_SIZE = 600;
+    public final static int QR_CODE_CHUNK_PARITY_GROUP = 4;
+    public final static int QR_CODE_CHUNK_FRAME_INTERVAL_MS = 1000;
+    public final static int QR_CODE_MAX_INFLATED_BYTES = (2 * 1024 * 1024);
 
     public final static int RX_IDLE_SECS_BEFORE_NOTIFICATION = 30;
     public final static int TX_IDLE_SECS_BEFORE_NOTIFICATION = (RX_IDLE_SECS_BEFORE_NOTIFICATION / 2);
@@ -73,16 +93,64 @@ public class Constants
     public final static boolean DEF_NOTIFY_VIBRATIONS = true;
     public final static boolean DEF_NOTIFY_PTT_EVERY_TIME = false;
 
-    public final static int GROUP_HEALTH_CHECK_TIMER_INITIAL_DELAY_MS = 2000;
+    public final static int TIMELINE_PAGE_SIZE = 25;
+
+    // An hour of history per group at one sample every 10 seconds
+    public final static int GROUP_STATS_POLL_INTERVAL_MS = 10000;
+    public final static int GROUP_STATS_HISTORY_SAMPLES = 360;
+
+    // Threads shared by everything that runs on AppScheduler
+    public final static int APP_SCHEDULER_THREADS = 2;
+
+    // Periodic background work is lined up on these windows so the device wakes once per
+    // window; the batch itself wants to run every second, which rounds up to every window
+    public final static int DEF_WAKE_WINDOW_SECS = 5;
+    public final static int WAKE_BATCH_INTERVAL_MS = 1000;
+
+    // Cert stores at least this big are memory-mapped rather than read through a buffer
+    // when they're hashed.  We remember which password opened the last few stores.
+    public final static int CERTSTORE_MMAP_THRESHOLD_BYTES = (256 * 1024);
+    public final static int CERTSTORE_MAX_PASSWORD_HINTS = 16;
+
     public final static int GROUP_HEALTH_CHECK_TIMER_INTERVAL_MS = 2000;
     public final static int GROUP_HEALTH_CHECK_NETWORK_ERROR_NOTIFICATION_MIN_INTERVAL_MS = 10000;
 
+    // Mission downloads are retried (resuming where they got to) with a growing delay, and
+    // the last few downloaded missions are kept for conditional re-fetching
+    public final static int MISSION_DOWNLOAD_CONNECT_TIMEOUT_MS = 15000;
+    public final static int MISSION_DOWNLOAD_READ_TIMEOUT_MS = 30000;
+    public final static int MISSION_DOWNLOAD_MAX_ATTEMPTS = 4;
+    public final static int MISSION_DOWNLOAD_RETRY_DELAY_MS = 2000;
+    public final static int MISSION_DOWNLOAD_RETRY_MAX_DELAY_MS = 16000;
+    public final static int MISSION_DOWNLOAD_MAX_CACHED = 16;
+
+    // Publishing a batch of missions to the hub
+    public final static int MISSION_UPLOAD_PARALLEL_TRANSFERS = 4;
+    public final static int MISSION_UPLOAD_CONNECT_TIMEOUT_MS = 15000;
+    public final static int MISSION_UPLOAD_READ_TIMEOUT_MS = 30000;
+    public final static int MISSION_UPLOAD_MAX_ATTEMPTS = 4;
+    public final static int MISSION_UPLOAD_RETRY_BASE_DELAY_MS = 1000;
+    public final static int MISSION_UPLOAD_RETRY_MAX_DELAY_MS = 15000;
+
     public static final String MISSION_DATABASE_NAME = "MissionDatabase";//NON-NLS
     public static final String MISSION_EDIT_EXTRA_JSON = "MissionJson";//NON-NLS
     public static final String MISSION_ACTIVATED_ID = "ActivatedMissionId";//NON-NLS
 
     public static final long MIN_LICENSE_ACTIVATION_DELAY_MS = 60000;
     public static final long MAX_LICENSE_ACTIVATION_DELAY_MS = (86400 * 1000);
+    public final static int MAX_LICENSE_ACTIVATION_BACKOFF_SHIFT = 6;
+
+    // Talking to the online licensing system
+    public final static int LICENSE_ACTIVATION_CONNECT_TIMEOUT_MS = 10000;
+    public final static int LICENSE_ACTIVATION_READ_TIMEOUT_MS = 10000;
+    public final static int LICENSE_ACTIVATION_MAX_ATTEMPTS = 3;
+    public final static int LICENSE_ACTIVATION_RETRY_BASE_DELAY_MS = 2000;
+    public final static int LICENSE_ACTIVATION_RETRY_MAX_DELAY_MS = 20000;
+    public final static long LICENSE_ACTIVATION_REUSE_MS = (15 * 60 * 1000);
+
+    // Reconnecting to a Bluetooth PTT accessory that isn't answering backs off to this
+    public final static long BT_RECONNECT_MIN_DELAY_MS = 250;
+    public final static long BT_RECONNECT_MAX_DELAY_MS = 30000;
 
     public final static boolean DEF_USER_UI_PTT_LATCHING = false;
     public final static boolean DEF_USER_UI_PTT_VOICE_CONTROL = false;
@@ -0,0 +1,286 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Locale;
+
+// Live view of rallypoint latency/connection history, per-group stats, location/PD counts
+// and the scheduled background tasks, with the option of sharing the lot as a JSON snapshot
+public class DiagnosticsActivity extends AppCompatActivity
+{
+    private static String TAG = DiagnosticsActivity.class.getSimpleName();
+
+    private static final int REFRESH_INTERVAL_MS = 1000;
+    private static final long GROUP_STATS_WINDOW_MS = 60000;
+
+    private TextView _tvDiagnostics;
+    private Handler _handler = new Handler();
+
+    private Runnable _refreshRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            refresh();
+            _handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        _tvDiagnostics = findViewById(R.id.tvDiagnostics);
+
+        ActionBar ab = getSupportActionBar();
+        if(ab != null)
+        {
+            ab.setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        _handler.post(_refreshRunnable);
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        _handler.removeCallbacks(_refreshRunnable);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu)
+    {
+        getMenuInflater().inflate(R.menu.diagnostics_activity_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item)
+    {
+        int id = item.getItemId();
+        if (id == android.R.id.home)
+        {
+            finish();
+            return true;
+        }
+        else if (id == R.id.action_share_diagnostics)
+        {
+            shareSnapshot();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void refresh()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(getString(R.string.diagnostics_rallypoints));
+        sb.append("\n");//NON-NLS
+
+        for(RallypointMonitor.Snapshot s : Globals.getRallypointMonitor().getSnapshots())
+        {
+            long totalMs = 0;
+            for(long ms : s.msInState)
+            {
+                totalMs += ms;
+            }
+
+            long connectedPct = (totalMs == 0) ? 0 : (s.msInState[RallypointMonitor.State.CONNECTED.ordinal()] * 100) / totalMs;
+
+            sb.append("\n");//NON-NLS
+            sb.append(s.id);
+            sb.append("\n");//NON-NLS
+            sb.append(String.format(Locale.ENGLISH, "  %s for %ds, connected %d%% of the time\n",//NON-NLS
+                    s.state.name(), s.stateDurationMs / 1000, connectedPct));
+            sb.append(String.format(Locale.ENGLISH, "  connects=%d reconnects=%d disconnects=%d\n",//NON-NLS
+                    s.connects, s.reconnects, s.disconnects));
+            sb.append(String.format(Locale.ENGLISH, "  rtt n=%d last=%d p50=%d p90=%d p99=%d max=%d ms (q=%d)\n",//NON-NLS
+                    s.rtCount, s.lastRtMs, s.rtP50, s.rtP90, s.rtP99, s.rtMax, s.lastQualityRating));
+        }
+
+        sb.append("\n");//NON-NLS
+        sb.append(getString(R.string.diagnostics_groups));
+        sb.append("\n");//NON-NLS
+
+        ActiveConfiguration ac = Globals.getEngageApplication().getActiveConfiguration();
+        GroupStatsCollector collector = Globals.getGroupStatsCollector();
+        if(ac != null)
+        {
+            for(GroupDescriptor gd : ac.getMissionGroups())
+            {
+                if(collector.getSampleCount(gd.id) == 0)
+                {
+                    continue;
+                }
+
+                sb.append("\n");//NON-NLS
+                sb.append(gd.name);
+                if(Globals.getMulticastFailoverManager().isPinnedToMulticast(gd.id))
+                {
+                    sb.append(getString(R.string.diagnostics_pinned_to_multicast));
+                }
+                sb.append("\n");//NON-NLS
+                sb.append(String.format(Locale.ENGLISH, "  streams=%d rx=%.1f/s loss=%.2f%% jitter=%.3f\n",//NON-NLS
+                        collector.getLatest(gd.id, GroupStatsCollector.METRIC_INBOUND_STREAMS),
+                        collector.getRate(gd.id, GroupStatsCollector.METRIC_PACKETS_RECEIVED, GROUP_STATS_WINDOW_MS),
+                        collector.getLossPercent(gd.id, GROUP_STATS_WINDOW_MS),
+                        collector.getLatest(gd.id, GroupStatsCollector.METRIC_MAX_JITTER_X1000) / 1000.0));
+                sb.append(String.format(Locale.ENGLISH, "  underruns=%d overruns=%d late=%d decrypt errors=%d\n",//NON-NLS
+                        collector.getDelta(gd.id, GroupStatsCollector.METRIC_UNDERRUNS, GROUP_STATS_WINDOW_MS),
+                        collector.getDelta(gd.id, GroupStatsCollector.METRIC_OVERRUNS, GROUP_STATS_WINDOW_MS),
+                        collector.getDelta(gd.id, GroupStatsCollector.METRIC_LATE_PACKETS_DISCARDED, GROUP_STATS_WINDOW_MS),
+                        collector.getDelta(gd.id, GroupStatsCollector.METRIC_DECRYPTION_ERRORS, GROUP_STATS_WINDOW_MS)));
+            }
+        }
+
+        JSONObject loc = Globals.getEngageApplication().getLocationStats();
+        sb.append("\n");//NON-NLS
+        sb.append(getString(R.string.diagnostics_location));
+        sb.append("\n");//NON-NLS
+        if(loc.optBoolean("adaptive"))//NON-NLS
+        {
+            sb.append(String.format(Locale.ENGLISH, "  profile=%s speed=%.1f m/s changes=%d\n",//NON-NLS
+                    loc.optString("profile"),//NON-NLS
+                    loc.optDouble("speed"),//NON-NLS
+                    loc.optLong("profileChanges")));//NON-NLS
+        }
+        sb.append(String.format(Locale.ENGLISH, "  fixes=%d forwarded=%d PDs sent=%d\n",//NON-NLS
+                loc.optLong("fixesReceived"),//NON-NLS
+                loc.optLong("fixesForwarded"),//NON-NLS
+                loc.optLong("pdUpdatesSent")));//NON-NLS
+
+        JSONObject ptt = Globals.getPttInputPipeline().toJson();
+        JSONObject pttHandover = ptt.optJSONObject("inputToHandoverUs");//NON-NLS
+        JSONObject pttActive = ptt.optJSONObject("pressToTxActiveMs");//NON-NLS
+        sb.append("\n");//NON-NLS
+        sb.append(getString(R.string.diagnostics_ptt_input));
+        sb.append("\n");//NON-NLS
+        sb.append(String.format(Locale.ENGLISH, "  tx begins=%d ends=%d overlaps=%d duplicates=%d bounces=%d\n",//NON-NLS
+                ptt.optLong("txBegins"),//NON-NLS
+                ptt.optLong("txEnds"),//NON-NLS
+                ptt.optLong("overlaps"),//NON-NLS
+                ptt.optLong("duplicates"),//NON-NLS
+                ptt.optLong("bouncesAbsorbed")));//NON-NLS
+        if(pttHandover != null && pttActive != null)
+        {
+            sb.append(String.format(Locale.ENGLISH, "  input to tx p50=%d p99=%d us, press to tx active p50=%d p99=%d ms\n",//NON-NLS
+                    pttHandover.optLong("p50"),//NON-NLS
+                    pttHandover.optLong("p99"),//NON-NLS
+                    pttActive.optLong("p50"),//NON-NLS
+                    pttActive.optLong("p99")));//NON-NLS
+        }
+
+        JSONObject bt = Globals.getEngageApplication().getBluetoothPttStats();
+        if(bt != null)
+        {
+            JSONObject lat = bt.optJSONObject("dispatchLatencyUs");//NON-NLS
+            sb.append("\n");//NON-NLS
+            sb.append(getString(R.string.diagnostics_bluetooth_ptt));
+            sb.append("\n");//NON-NLS
+            sb.append(String.format(Locale.ENGLISH, "  connects=%d failures=%d ptt on=%d off=%d\n",//NON-NLS
+                    bt.optLong("connects"),//NON-NLS
+                    bt.optLong("connectFailures"),//NON-NLS
+                    bt.optLong("pttOn"),//NON-NLS
+                    bt.optLong("pttOff")));//NON-NLS
+            if(lat != null)
+            {
+                sb.append(String.format(Locale.ENGLISH, "  dispatch p50=%d p99=%d max=%d us\n",//NON-NLS
+                        lat.optLong("p50"),//NON-NLS
+                        lat.optLong("p99"),//NON-NLS
+                        lat.optLong("max")));//NON-NLS
+            }
+        }
+
+        sb.append("\n");//NON-NLS
+        sb.append(getString(R.string.diagnostics_scheduled_tasks));
+        sb.append("\n");//NON-NLS
+
+        JSONArray tasks = Globals.getAppScheduler().toJson().optJSONArray("tasks");//NON-NLS
+        if(tasks != null)
+        {
+            for(int x = 0; x < tasks.length(); x++)
+            {
+                JSONObject t = tasks.optJSONObject(x);
+                sb.append(String.format(Locale.ENGLISH, "  %s every %dms runs=%d failures=%d next in %dms\n",//NON-NLS
+                        t.optString("name"),//NON-NLS
+                        t.optLong("intervalMs"),//NON-NLS
+                        t.optLong("runs"),//NON-NLS
+                        t.optLong("failures"),//NON-NLS
+                        t.optLong("nextRunInMs")));//NON-NLS
+            }
+        }
+
+        _tvDiagnostics.setText(sb.toString());
+    }
+
+    private void shareSnapshot()
+    {
+        try
+        {
+            JSONObject root = new JSONObject();
+            root.put("ts", Utils.nowMs());//NON-NLS
+            root.put("rallypoints", Globals.getRallypointMonitor().toJson());//NON-NLS
+            root.put("groupStats", Globals.getGroupStatsCollector().toJson(GROUP_STATS_WINDOW_MS));//NON-NLS
+            root.put("multicastFailover", Globals.getMulticastFailoverManager().toJson());//NON-NLS
+            root.put("location", Globals.getEngageApplication().getLocationStats());//NON-NLS
+            root.put("scheduler", Globals.getAppScheduler().toJson());//NON-NLS
+            root.put("certStore", Globals.getCertStoreManager().toJson());//NON-NLS
+            root.put("licenseActivation", Globals.getLicenseActivationClient().toJson());//NON-NLS
+            root.put("bluetoothPtt", Globals.getEngageApplication().getBluetoothPttStats());//NON-NLS
+            root.put("pttInput", Globals.getPttInputPipeline().toJson());//NON-NLS
+            root.put("analytics", Globals.getEngageApplication().getAnalyticsStats());//NON-NLS
+
+            File fd = File.createTempFile("diagnostics-", ".json", Environment.getExternalStorageDirectory());//NON-NLS
+            FileOutputStream fos = new FileOutputStream(fd);
+            fos.write(root.toString(2).getBytes(Utils.getEngageCharSet()));
+            fos.close();
+            fd.deleteOnExit();
+
+            Uri u = FileProvider.getUriForFile(this, getString(R.string.file_content_provider), fd);
+
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/json");//NON-NLS
+            intent.putExtra(Intent.EXTRA_STREAM, u);
+            intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.app_name) + " : " + getString(R.string.title_activity_diagnostics));//NON-NLS
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            startActivity(Intent.createChooser(intent, getString(R.string.diagnostics_share_header)));
+        }
+        catch (Exception e)
+        {
+            Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+}
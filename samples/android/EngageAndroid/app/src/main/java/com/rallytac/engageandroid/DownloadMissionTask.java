@@ -10,19 +10,14 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
 public class DownloadMissionTask extends AsyncTask<String, Void, String>
 {
     public static String BUNDLE_RESULT_MSG = "BUNDLE_RESULT_MSG";//NON-NLS
     public static String BUNDLE_RESULT_DATA = "BUNDLE_RESULT_DATA";//NON-NLS
+    public static String BUNDLE_RESULT_NOT_MODIFIED = "BUNDLE_RESULT_NOT_MODIFIED";//NON-NLS
+    public static String BUNDLE_RESULT_BYTES_PER_SEC = "BUNDLE_RESULT_BYTES_PER_SEC";//NON-NLS
 
-    private int _responseCode = -1;
-    private String _resultMsg = null;
-    private String _resultData = null;
+    private MissionDownloader.Result _result = null;
     private Handler _handler = null;
 
     DownloadMissionTask(Handler handler)
@@ -36,46 +31,8 @@ public class DownloadMissionTask extends AsyncTask<String, Void, String>
 
     protected String doInBackground(String... params)
     {
-        try
-        {
-            URL url = new URL(params[0]);
-
-            HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
-            httpCon.setDoInput(true);
-            httpCon.setRequestMethod("GET");//NON-NLS
-            httpCon.connect();
-
-            _responseCode = httpCon.getResponseCode();
-            _resultData = null;
-
-            try
-            {
-                BufferedReader in = new BufferedReader(new InputStreamReader(httpCon.getInputStream()));
-                StringBuffer sb = new StringBuffer();
-                String line;
-
-                while ((line = in.readLine()) != null)
-                {
-                    sb.append(line);
-                }
-
-                in.close();
-
-                _resultData = sb.toString();
-            }
-            catch (Exception e)
-            {
-                _responseCode = -1;
-                _resultMsg = "Exception: " + e.getMessage();//NON-NLS
-            }
-        }
-        catch(Exception e)
-        {
-            _responseCode = -1;
-            _resultMsg = "Exception: " + e.getMessage();//NON-NLS
-        }
-
-        return _resultMsg;
+        _result = new MissionDownloader(Globals.getContext().getCacheDir()).download(params[0]);
+        return _result.errorMsg;
     }
 
     @Override
@@ -84,11 +41,13 @@ public class DownloadMissionTask extends AsyncTask<String, Void, String>
         if(_handler != null)
         {
             Bundle bundle = new Bundle();
-            bundle.putString(BUNDLE_RESULT_MSG, _resultMsg);
-            bundle.putString(BUNDLE_RESULT_DATA, _resultData);
+            bundle.putString(BUNDLE_RESULT_MSG, _result.errorMsg);
+            bundle.putByteArray(BUNDLE_RESULT_DATA, _result.data);
+            bundle.putBoolean(BUNDLE_RESULT_NOT_MODIFIED, _result.notModified);
+            bundle.putLong(BUNDLE_RESULT_BYTES_PER_SEC, _result.getBytesPerSecond());
 
             Message msg = new Message();
-            msg.arg1 = _responseCode;
+            msg.arg1 = (_result.isOk() ? _result.responseCode : -1);
             msg.setData(bundle);
             _handler.sendMessage(msg);
         }
@@ -50,16 +50,14 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.NetworkInterface;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EngageApplication
                                 extends
@@ -73,9 +71,10 @@ public class EngageApplication
                                     Engine.IGroupListener,
                                     Engine.ILicenseListener,
                                     LocationManager.ILocationUpdateNotifications,
-                                    IPushToTalkRequestHandler,
+                                    PttInputPipeline.ITxSink,
                                     BluetoothManager.IBtNotification,
-                                    LicenseActivationTask.ITaskCompletionNotification
+                                    LicenseActivationClient.ITaskCompletionNotification,
+                                    MulticastFailoverManager.IRoutingListener
 {
     private static String TAG = EngageApplication.class.getSimpleName();
 
@@ -141,6 +140,7 @@ public class EngageApplication
     private boolean _engineRunning = false;
     private ActiveConfiguration _activeConfiguration = null;
     private boolean _missionChangedStatus = false;
+    private int _pendingSettingChanges = SettingsChangeClassifier.NONE;
     private LocationManager _locationManager = null;
 
     private HashSet<IPresenceChangeListener> _presenceChangeListeners = new HashSet<>();
@@ -155,16 +155,23 @@ public class EngageApplication
     private long _lastAudioActivity = 0;
     private long _lastTxActivity = 0;
     private boolean _delayTxUnmuteToCaterForSoundPropogation = false;
-    private Timer _groupHealthCheckTimer = null;
+    private AppScheduler.Task _groupHealthCheckTask = null;
+    private AppScheduler.Task _wakeBatchTask = null;
+    // Set from whichever thread changes the settings, cleared by the wake batch
+    private final AtomicBoolean _pdUpdatePending = new AtomicBoolean(false);
+    private long _pdUpdatesSent = 0;
     private long _lastNetworkErrorNotificationPlayed = 0;
     private HashMap<String, GroupDescriptor> _dynamicGroups = new HashMap<>();
+    private ChunkedQrTransfer.Reassembler _qrChunkReassembler = new ChunkedQrTransfer.Reassembler();
     private HardwareButtonManager _hardwareButtonManager = null;
     private boolean _licenseExpired = false;
     private double _licenseSecondsLeft = 0;
-    private Timer _licenseActivationTimer = null;
-    private boolean _licenseActivationPaused = false;
+    private AppScheduler.Task _licenseActivationTask = null;
+    private volatile boolean _licenseActivationPaused = false;
+    private int _licenseActivationFailures = 0;
 
-    private Timer _humanBiometricsReportingTimer = null;
+    private boolean _hbmReporting = false;
+    private long _hbmLastTickAt = 0;
     private int _hbmTicksSoFar = 0;
     private int _hbmTicksBeforeReport = 5;
 
@@ -194,7 +201,7 @@ public class EngageApplication
 
     private MyApplicationIntentReceiver _appIntentReceiver = null;
 	
-	private FirebaseAnalytics _firebaseAnalytics = null;
+    private final AnalyticsSink _analytics = new AnalyticsSink();
 
     private boolean _hasEngineBeenInitialized = false;
 
@@ -390,11 +397,11 @@ public class EngageApplication
 
             if(action.compareTo(getString(R.string.app_intent_ptt_on)) == 0)
             {
-                startTx(0, 0);
+                Globals.getPttInputPipeline().press(PttInputPipeline.Source.INTENT, System.nanoTime());
             }
             else if(action.compareTo(getString(R.string.app_intent_ptt_off)) == 0)
             {
-                endTx();
+                Globals.getPttInputPipeline().release(PttInputPipeline.Source.INTENT);
             }
         }
     }
@@ -565,11 +572,10 @@ public class EngageApplication
         {
             try
             {
-                _firebaseAnalytics = FirebaseAnalytics.getInstance(this);
+                _analytics.start(FirebaseAnalytics.getInstance(this));
             }
             catch (Exception e)
             {
-                _firebaseAnalytics = null;
                 e.printStackTrace();
             }
         }
@@ -577,41 +583,28 @@ public class EngageApplication
 
     private void stopFirebaseAnalytics()
     {
-        _firebaseAnalytics = null;
+        _analytics.stop();
     }
 
+    // These only count the event - it goes to Firebase later, from another thread
     public void logEvent(String eventName)
     {
-        logEvent(eventName, null);
+        _analytics.record(eventName);
     }
 
     public void logEvent(String eventName, String key, int value)
     {
-        Bundle b = new Bundle();
-        b.putInt(key, value);
-        logEvent(eventName, b);
+        _analytics.record(eventName, key, value);
     }
 
     public void logEvent(String eventName, String key, long value)
     {
-        Bundle b = new Bundle();
-        b.putLong(key, value);
-        logEvent(eventName, b);
+        _analytics.record(eventName, key, value);
     }
 
-    public void logEvent(String eventName, Bundle b)
+    public JSONObject getAnalyticsStats()
     {
-        try
-        {
-            if (_firebaseAnalytics != null)
-            {
-                _firebaseAnalytics.logEvent(eventName, b);
-            }
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
+        return _analytics.toJson();
     }
 
     private void setupDirectories()
@@ -703,7 +696,19 @@ public class EngageApplication
         Globals.setEngageApplication(this);
         Globals.setContext(getApplicationContext());
         Globals.setSharedPreferences(PreferenceManager.getDefaultSharedPreferences(this));
+        Globals.setAppSettings(new AppSettings(Globals.getSharedPreferences()));
         Globals.setAudioPlayerManager(new AudioPlayerManager(this));
+        Globals.setQrCodeBitmapCache(new QrCodeBitmapCache(this));
+        Globals.setCertStoreManager(new CertStoreManager(this, Globals.getSharedPreferences()));
+        Globals.setCertStoreDescriptorCache(new CertStoreDescriptorCache(this));
+        Globals.setLicenseActivationClient(new LicenseActivationClient(Globals.getSharedPreferences()));
+        Globals.setAppScheduler(new AppScheduler(Constants.APP_SCHEDULER_THREADS));
+        Globals.setPttInputPipeline(new PttInputPipeline(this));
+        Globals.setGroupTimelineStore(new GroupTimelineStore());
+        Globals.setGroupStatsCollector(new GroupStatsCollector(Constants.GROUP_STATS_HISTORY_SAMPLES));
+        Globals.setRallypointMonitor(new RallypointMonitor());
+        Globals.setMulticastFailoverManager(new MulticastFailoverManager());
+        Globals.getMulticastFailoverManager().setListener(this);
 
         setupDirectories();
         //setupFilesystemLogging();
@@ -909,13 +914,13 @@ public class EngageApplication
     public void onConnectivityChange(boolean connected, ConnectivityType type, int rssi, int qualityRating)
     {
         updateCachedPdConnectivityInfo(type, rssi, qualityRating);
-        sendUpdatedPd(buildPd());
+        requestPdUpdate();
     }
 
     public void onPowerChange(PowerSourceType source, PowerSourceState state, int level)
     {
         updateCachedPdPowerInfo(source, state, level);
-        sendUpdatedPd(buildPd());
+        requestPdUpdate();
     }
 
     private JSONObject buildPd()
@@ -1029,8 +1034,9 @@ public class EngageApplication
     {
         if(_deviceMonitor == null)
         {
-            _enableDevicePowerMonitor = Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_POWER, false);
-            _enableDeviceConnectivityMonitor = Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_CONNECTIVITY, false);
+            AppSettings.Snapshot settings = Globals.getAppSettings().get();
+            _enableDevicePowerMonitor = settings.reportDevicePower;
+            _enableDeviceConnectivityMonitor = settings.reportDeviceConnectivity;
 
             //_enableDevicePowerMonitor = true;
             //_enableDeviceConnectivityMonitor = true;
@@ -1240,7 +1246,7 @@ public class EngageApplication
     public void startHardwareButtonManager()
     {
         Log.d(TAG, "startHardwareButtonManager");
-        _hardwareButtonManager = new HardwareButtonManager(this, this, this);
+        _hardwareButtonManager = new HardwareButtonManager(this, this);
         _hardwareButtonManager.start();
     }
 
@@ -1266,12 +1272,36 @@ public class EngageApplication
                     lc.accuracy,
                     lc.intervalMs,
                     lc.minIntervalMs,
-                    lc.minDisplacement);
+                    lc.minDisplacement,
+                    lc.adaptive);
 
             _locationManager.start();
         }
     }
 
+    // For diagnostics - location fixes in and PDs out
+    public JSONObject getLocationStats()
+    {
+        JSONObject rc = (_locationManager != null) ? _locationManager.toJson() : new JSONObject();
+
+        try
+        {
+            rc.put("pdUpdatesSent", _pdUpdatesSent);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+
+    public JSONObject getBluetoothPttStats()
+    {
+        HardwareButtonManager hbm = _hardwareButtonManager;
+        return (hbm != null) ? hbm.getBluetoothStats() : null;
+    }
+
     public void stopLocationUpdates()
     {
         Log.d(TAG, "stopLocationUpdates");
@@ -1293,6 +1323,102 @@ public class EngageApplication
         return _missionChangedStatus;
     }
 
+    // Called as each setting is changed.  Only those that need the engine restarted mark the
+    // mission as changed - the rest are applied by applyPendingSettingChanges().
+    public void onSettingChanged(String key)
+    {
+        int actions = SettingsChangeClassifier.classify(key);
+        Log.d(TAG, "onSettingChanged: " + key + " -> " + SettingsChangeClassifier.describe(actions));//NON-NLS
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.ENGINE_RESTART))
+        {
+            setMissionChangedStatus(true);
+        }
+
+        _pendingSettingChanges |= actions;
+    }
+
+    // Brings the active configuration up to date with settings changed since the last call
+    // without re-parsing the mission, and does only what those changes need.  Returns what
+    // was done so the caller can tell whether its UI needs rebuilding.
+    public int applyPendingSettingChanges()
+    {
+        int actions = _pendingSettingChanges;
+        _pendingSettingChanges = SettingsChangeClassifier.NONE;
+
+        Log.d(TAG, "applyPendingSettingChanges: " + SettingsChangeClassifier.describe(actions));//NON-NLS
+
+        if(actions == SettingsChangeClassifier.NONE || _activeConfiguration == null)
+        {
+            return actions;
+        }
+
+        try
+        {
+            Utils.applySettings(_activeConfiguration, Globals.getAppSettings().get());
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.GROUPS) && _engineRunning)
+        {
+            Globals.getMulticastFailoverManager().reset(_activeConfiguration.getUseRp() && _activeConfiguration.getMulticastFailoverConfiguration().enabled,
+                                                        _activeConfiguration.getMulticastFailoverConfiguration().thresholdSecs);
+
+            recreateGroupsWithChangedConfiguration();
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.WAKE_WINDOW))
+        {
+            Globals.getAppScheduler().setWakeWindowMs(Globals.getAppSettings().get().wakeWindowSecs * 1000L);
+            if(_wakeBatchTask != null)
+            {
+                // Send whatever was held for the old window and start over on the new one
+                flushBatchedWork();
+                stopWakeBatching();
+                startWakeBatching();
+            }
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.LOCATION) && _engineRunning)
+        {
+            startLocationUpdates();
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.HBM))
+        {
+            restartStartHumanBiometricsReporting();
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.DEVICE_MONITOR))
+        {
+            restartDeviceMonitoring();
+        }
+
+        if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.PD) && _engineRunning)
+        {
+            requestPdUpdate();
+        }
+
+        return actions;
+    }
+
+    // PD changes are held until the next wake window, where they go out along with anything
+    // else that's due, unless batching is off or isn't running
+    private void requestPdUpdate()
+    {
+        if(_wakeBatchTask != null && Globals.getAppScheduler().getWakeWindowMs() > 0)
+        {
+            _pdUpdatePending.set(true);
+        }
+        else
+        {
+            sendUpdatedPd(buildPd());
+        }
+    }
+
     private void sendUpdatedPd(JSONObject pd)
     {
         if(pd == null)
@@ -1327,6 +1453,7 @@ public class EngageApplication
                     }
                     else
                     {
+                        _pdUpdatesSent++;
                         Log.i(TAG, "sendUpdatedPd sent updated PD: " + pdString);
                     }
                 }
@@ -1352,7 +1479,7 @@ public class EngageApplication
     {
         Log.d(TAG, "onLocationUpdated: " + loc.toString());
         updateCachedPdLocation(loc);
-        sendUpdatedPd(buildPd());
+        requestPdUpdate();
     }
 
     public VolumeLevels loadVolumeLevels(String groupId)
@@ -1470,7 +1597,8 @@ public class EngageApplication
                 group.put("audio", audio);
             }
 
-            if(_activeConfiguration.getUseRp())
+            if(_activeConfiguration.getUseRp()
+                    && !Globals.getMulticastFailoverManager().isPinnedToMulticast(group.optString(Engine.JsonFields.Group.id)))
             {
                 JSONObject rallypoint = new JSONObject();
 
@@ -1524,15 +1652,145 @@ public class EngageApplication
         Log.d(TAG, "createAllGroupObjects");
         try
         {
+            Globals.getMulticastFailoverManager().reset(_activeConfiguration.getUseRp() && _activeConfiguration.getMulticastFailoverConfiguration().enabled,
+                                                        _activeConfiguration.getMulticastFailoverConfiguration().thresholdSecs);
+
+            _groupsAwaitingRecreate.clear();
+
             for(GroupDescriptor gd : _activeConfiguration.getMissionGroups())
             {
                 Log.d(TAG, "creating " + gd.id + " of mission " + _activeConfiguration.getMissionName());
-                getEngine().engageCreateGroup(buildFinalGroupJsonConfiguration(gd.jsonConfiguration));
-                if(gd.type == GroupDescriptor.Type.gtAudio)
+                createGroupInEngine(gd);
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void onGroupRoutingChanged(final String id, final boolean useMulticast, final String reason)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Log.i(TAG, "onGroupRoutingChanged: id='" + id + "', mc=" + useMulticast + ", reason=" + reason);
+
+                GroupDescriptor gd = getGroup(id);
+                if (gd == null || !gd.created)
                 {
-                    VolumeLevels vl = loadVolumeLevels(gd.id);
-                    getEngine().engageSetGroupRxVolume(gd.id, vl.left, vl.right);
+                    return;
                 }
+
+                recreateGroup(gd);
+            }
+        });
+    }
+
+    // The JSON each group was last created in the engine with, by group id (UI thread only)
+    private HashMap<String, String> _groupJsonInEngine = new HashMap<>();
+
+    // Groups whose settings changed while they were busy, by group id (UI thread only)
+    private HashSet<String> _groupsAwaitingRecreate = new HashSet<>();
+
+    private void createGroupInEngine(GroupDescriptor gd)
+    {
+        String json = buildFinalGroupJsonConfiguration(gd.jsonConfiguration);
+
+        getEngine().engageCreateGroup(json);
+        _groupJsonInEngine.put(gd.id, json);
+
+        // RX volume isn't part of the group's JSON - the engine takes it on its own
+        if(gd.type == GroupDescriptor.Type.gtAudio)
+        {
+            VolumeLevels vl = loadVolumeLevels(gd.id);
+            getEngine().engageSetGroupRxVolume(gd.id, vl.left, vl.right);
+        }
+    }
+
+    private boolean isAnyTxActiveOrPending()
+    {
+        synchronized (_groupsSelectedForTx)
+        {
+            return !_groupsSelectedForTx.isEmpty();
+        }
+    }
+
+    // Re-creating a group drops whatever it's doing, so after a settings change only the groups
+    // whose JSON actually came out different are re-created - and those that are in the middle
+    // of TX or RX are left until they've finished (see recreateGroupsAwaitingIt()).
+    private void recreateGroupsWithChangedConfiguration()
+    {
+        boolean txActive = isAnyTxActiveOrPending();
+
+        for(GroupDescriptor gd : _activeConfiguration.getMissionGroups())
+        {
+            if(!gd.created)
+            {
+                continue;
+            }
+
+            String json = buildFinalGroupJsonConfiguration(gd.jsonConfiguration);
+            if(json == null || json.equals(_groupJsonInEngine.get(gd.id)))
+            {
+                continue;
+            }
+
+            if(txActive || gd.rx)
+            {
+                Log.d(TAG, "deferring re-creation of busy group " + gd.id);//NON-NLS
+                _groupsAwaitingRecreate.add(gd.id);
+            }
+            else
+            {
+                recreateGroup(gd);
+            }
+        }
+    }
+
+    // Called when TX or RX ends - picks up the groups that were too busy to re-create earlier
+    private void recreateGroupsAwaitingIt()
+    {
+        if(_groupsAwaitingRecreate.isEmpty() || !_engineRunning || isAnyTxActiveOrPending())
+        {
+            return;
+        }
+
+        for(String id : new ArrayList<>(_groupsAwaitingRecreate))
+        {
+            GroupDescriptor gd = getGroup(id);
+            if(gd == null || !gd.created)
+            {
+                _groupsAwaitingRecreate.remove(id);
+            }
+            else if(!gd.rx)
+            {
+                _groupsAwaitingRecreate.remove(id);
+                recreateGroup(gd);
+            }
+        }
+    }
+
+    // The engine can't change a group's transport on the fly so re-create just this group
+    // with whatever buildFinalGroupJsonConfiguration() now produces, re-joining if need be
+    private void recreateGroup(GroupDescriptor gd)
+    {
+        Log.d(TAG, "recreateGroup: " + gd.id);
+        try
+        {
+            boolean rejoin = gd.joined;
+
+            _groupsAwaitingRecreate.remove(gd.id);
+            getEngine().engageDeleteGroup(gd.id);
+            createGroupInEngine(gd);
+
+            if(rejoin)
+            {
+                getEngine().engageJoinGroup(gd.id);
+                getEngine().engageUnmuteGroupRx(gd.id);
             }
         }
         catch (Exception e)
@@ -1598,7 +1856,10 @@ public class EngageApplication
             }
 
             stopGroupHealthCheckTimer();
+            stopWakeBatching();
+            startWakeBatching();
             startGroupHealthCheckerTimer();
+            Globals.getGroupStatsCollector().start();
         }
         catch (Exception e)
         {
@@ -1612,6 +1873,8 @@ public class EngageApplication
         try
         {
             stopGroupHealthCheckTimer();
+            stopWakeBatching();
+            Globals.getGroupStatsCollector().stop();
             for(GroupDescriptor gd : _activeConfiguration.getMissionGroups())
             {
                 getEngine().engageLeaveGroup(gd.id);
@@ -1626,35 +1889,169 @@ public class EngageApplication
     private void startGroupHealthCheckerTimer()
     {
         Log.d(TAG, "startGroupHealthCheckerTimer");
-        if(_groupHealthCheckTimer == null)
+        if(_groupHealthCheckTask == null)
         {
-            _groupHealthCheckTimer = new Timer();
-            _groupHealthCheckTimer.scheduleAtFixedRate(new TimerTask()
+            _groupHealthCheckTask = Globals.getAppScheduler().scheduleAligned("groupHealthCheck",//NON-NLS
+                    Constants.GROUP_HEALTH_CHECK_TIMER_INTERVAL_MS, new AppScheduler.ITask()
             {
                 @Override
-                public void run()
+                public boolean run()
                 {
-                    checkOnGroupHealth();
+                    return checkOnGroupHealth();
                 }
-            }, Constants.GROUP_HEALTH_CHECK_TIMER_INITIAL_DELAY_MS, Constants.GROUP_HEALTH_CHECK_TIMER_INTERVAL_MS);
+            });
         }
     }
 
     private void stopGroupHealthCheckTimer()
     {
         Log.d(TAG, "stopGroupHealthCheckTimer");
-        if(_groupHealthCheckTimer != null)
+        if(_groupHealthCheckTask != null)
+        {
+            _groupHealthCheckTask.cancel();
+            _groupHealthCheckTask = null;
+        }
+    }
+
+    private void startWakeBatching()
+    {
+        Log.d(TAG, "startWakeBatching");
+        if(_wakeBatchTask == null)
+        {
+            Globals.getAppScheduler().setWakeWindowMs(Globals.getAppSettings().get().wakeWindowSecs * 1000L);
+
+            _wakeBatchTask = Globals.getAppScheduler().scheduleAligned("wakeBatch", Constants.WAKE_BATCH_INTERVAL_MS, new AppScheduler.ITask()//NON-NLS
+            {
+                @Override
+                public boolean run()
+                {
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            flushBatchedWork();
+                        }
+                    });
+
+                    return true;
+                }
+            });
+        }
+    }
+
+    private void stopWakeBatching()
+    {
+        Log.d(TAG, "stopWakeBatching");
+        if(_wakeBatchTask != null)
+        {
+            _wakeBatchTask.cancel();
+            _wakeBatchTask = null;
+        }
+    }
+
+    // Sends whatever has accumulated since the last window - at most one PD and one HBM
+    // report per presence group.  A PD with nowhere to go stays pending for the next window.
+    private void flushBatchedWork()
+    {
+        byte[] hbmBlob = collectHumanBiometrics();
+
+        ActiveConfiguration ac = getActiveConfiguration();
+        if(ac == null || ac.getMissionGroups() == null)
+        {
+            if(hbmBlob != null || _pdUpdatePending.get())
+            {
+                Log.w(TAG, "flushBatchedWork but no mission groups");
+            }
+
+            return;
+        }
+
+        JSONObject pd = null;
+        if(_pdUpdatePending.getAndSet(false))
+        {
+            pd = buildPd();
+        }
+
+        if(pd == null && hbmBlob == null)
+        {
+            return;
+        }
+
+        try
+        {
+            String pdString = null;
+            if(pd != null)
+            {
+                pdString = pd.toString();
+            }
+
+            String hbmParams = null;
+            if(hbmBlob != null)
+            {
+                Log.i(TAG, "Reporting human biometrics data - blob size is " + hbmBlob.length + " bytes");
+
+                // Our JSON parameters indicate that the payload is binary human biometric data in Engage format
+                JSONObject bi = new JSONObject();
+                bi.put(Engine.JsonFields.BlobInfo.payloadType, Engine.BlobType.engageHumanBiometrics.toInt());
+                hbmParams = bi.toString();
+            }
+
+            boolean anyPresenceGroups = false;
+            for(GroupDescriptor gd : ac.getMissionGroups())
+            {
+                if(gd.type == GroupDescriptor.Type.gtPresence)
+                {
+                    anyPresenceGroups = true;
+
+                    if(pdString != null)
+                    {
+                        getEngine().engageUpdatePresenceDescriptor(gd.id, pdString, 1);
+                    }
+
+                    if(hbmBlob != null)
+                    {
+                        getEngine().engageSendGroupBlob(gd.id, hbmBlob, hbmBlob.length, hbmParams);
+                    }
+                }
+            }
+
+            if(!anyPresenceGroups)
+            {
+                Log.w(TAG, "flushBatchedWork but no presence groups");
+                if(pdString != null)
+                {
+                    _pdUpdatePending.set(true);
+                }
+            }
+            else if(pdString != null)
+            {
+                _pdUpdatesSent++;
+                Log.i(TAG, "flushBatchedWork sent updated PD: " + pdString);
+            }
+        }
+        catch (Exception e)
         {
-            _groupHealthCheckTimer.cancel();
-            _groupHealthCheckTimer = null;
+            e.printStackTrace();
         }
     }
 
-    private void checkOnGroupHealth()
+    // Returns false if there was nothing to check against.  A group being down is what
+    // we're here to notice rather than a failure of the check - backing off then would only
+    // slow the failover manager down when it's needed most.
+    private boolean checkOnGroupHealth()
     {
-        if(_activeConfiguration.getNotifyOnNetworkError())
+        Globals.getMulticastFailoverManager().tick();
+
+        ActiveConfiguration ac = _activeConfiguration;
+        if(ac == null || ac.getMissionGroups() == null)
         {
-            for (GroupDescriptor gd : _activeConfiguration.getMissionGroups())
+            return false;
+        }
+
+        if(ac.getNotifyOnNetworkError())
+        {
+            for (GroupDescriptor gd : ac.getMissionGroups())
             {
                 if (gd.created && gd.joined && !gd.isConnectedInSomeForm())
                 {
@@ -1669,6 +2066,8 @@ public class EngageApplication
                 }
             }
         }
+
+        return true;
     }
 
     public void vibrate()
@@ -1893,78 +2292,15 @@ public class EngageApplication
 
     }
 
-    private byte[] getCustomCertStoreContent()
-    {
-        byte[] rc = null;
-
-        try
-        {
-            String fn = getCustomCertStoreFn();
-            if(!Utils.isEmptyString(fn))
-            {
-                RandomAccessFile raf = new RandomAccessFile(fn, "r");
-                rc = new byte[(int)raf.length()];
-                raf.readFully(rc);
-                raf.close();
-
-                Log.i(TAG, "Auto-importing custom certificate store '" + fn + "'");
-            }
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-            rc = null;
-        }
-
-        return rc;
-    }
-
     private boolean openCertificateStore()
     {
-        boolean rc = false;
-
-        try
-        {
-            byte[] certStoreContent;
-
-            certStoreContent = getCustomCertStoreContent();
-
-            if(certStoreContent == null)
-            {
-                certStoreContent = Utils.getBinaryResource(Globals.getContext(), R.raw.android_engage_default_certstore);
-                if(certStoreContent == null)
-                {
-                    throw new Exception("cannot load binary resource");
-                }
-            }
-
-            String dir = Globals.getContext().getFilesDir().toString();
-            String fn = dir + "/" + Globals.getContext().getString(R.string.certstore_active_fn);
-
-            File fd = new File(fn);
-            fd.deleteOnExit();
-
-            FileOutputStream fos = new FileOutputStream(fd);
-            fos.write(certStoreContent);
-            fos.close();
-
-            Set<String> passwords = getCertificateStoresPasswords();
-            for(String pwd : passwords)
-            {
-                if(getEngine().engageOpenCertStore(fn, pwd) == 0)
-                {
-                    rc = true;
-                    break;
-                }
-            }
-        }
-        catch (Exception e)
+        String fn = getCustomCertStoreFn();
+        if(!Utils.isEmptyString(fn))
         {
-            e.printStackTrace();
-            rc = false;
+            Log.i(TAG, "Auto-importing custom certificate store '" + fn + "'");
         }
 
-        return rc;
+        return Globals.getCertStoreManager().open(getEngine(), fn, getCertificateStoresPasswords());
     }
 
     public String applyFlavorSpecificGeneratedMissionModifications(String json)
@@ -2155,6 +2491,9 @@ public class EngageApplication
     public ActiveConfiguration updateActiveConfiguration()
     {
         Log.d(TAG, "updateActiveConfiguration");
+
+        // A full reload picks up every setting so there's nothing left to apply piecemeal
+        _pendingSettingChanges = SettingsChangeClassifier.NONE;
         _activeConfiguration = Utils.loadConfiguration(_activeConfiguration, _dynamicGroups);
 
         if(_activeConfiguration != null)
@@ -2351,6 +2690,13 @@ public class EngageApplication
     private HashSet<GroupDescriptor> _groupsSelectedForTx = new HashSet<>();
 
     public void startTx(final int priority, final int flags)
+    {
+        startTx(0, priority, flags);
+    }
+
+    // generation is the PTT pipeline's for this TX - the groups carry it so that when they're
+    // done we can tell the pipeline which TX it was that ended
+    public void startTx(final long generation, final int priority, final int flags)
     {
         runOnUiThread(new Runnable()
         {
@@ -2377,6 +2723,7 @@ public class EngageApplication
         
                         for(GroupDescriptor gd : selected)
                         {
+                            gd.txGeneration = generation;
                             _groupsSelectedForTx.add(gd);
                         }
         
@@ -2465,8 +2812,14 @@ public class EngageApplication
                         }
                     }
 
+                    long endedGeneration = 0;
                     synchronized (_groupsSelectedForTx)
                     {
+                        for(GroupDescriptor gd : _groupsSelectedForTx)
+                        {
+                            endedGeneration = gd.txGeneration;
+                        }
+
                         _groupsSelectedForTx.clear();
                     }
 
@@ -2478,7 +2831,7 @@ public class EngageApplication
                         }
                     }
 
-                    checkIfAnyTxStillActiveAndNotify();
+                    checkIfAnyTxStillActiveAndNotify(endedGeneration);
 
                     /*
                     synchronized (_groupsSelectedForTx)
@@ -2534,6 +2887,8 @@ public class EngageApplication
     {
         stopHardwareButtonManager();
         stopGroupHealthCheckTimer();
+        stopWakeBatching();
+        Globals.getGroupStatsCollector().stop();
         stopLocationUpdates();
     }
 
@@ -2542,7 +2897,8 @@ public class EngageApplication
         return _engineRunning;
     }
 
-    private void checkIfAnyTxStillActiveAndNotify()
+    // endedGeneration is the PTT pipeline's generation for the TX whose group(s) just finished
+    private void checkIfAnyTxStillActiveAndNotify(final long endedGeneration)
     {
         runOnUiThread(new Runnable()
         {
@@ -2570,6 +2926,9 @@ public class EngageApplication
 
                     if (!anyStillActive)
                     {
+                        Globals.getPttInputPipeline().onTxEnded(endedGeneration);
+                        recreateGroupsAwaitingIt();
+
                         synchronized (_uiUpdateListeners)
                         {
                             for (IUiUpdateListener listener : _uiUpdateListeners)
@@ -2627,16 +2986,18 @@ public class EngageApplication
                     String resultMsg = msg.getData().getString(DownloadMissionTask.BUNDLE_RESULT_MSG);
                     int responseCode = msg.arg1;
 
-                    if(responseCode >= 200 && responseCode <= 299)
+                    if((responseCode >= 200 && responseCode <= 299) || responseCode == HttpURLConnection.HTTP_NOT_MODIFIED)
                     {
+                        byte[] resultByteArray = msg.getData().getByteArray(DownloadMissionTask.BUNDLE_RESULT_DATA);
                         if(Utils.isEmptyString(password))
                         {
-                            byte[] resultByteArray = msg.getData().getByteArray(DownloadMissionTask.BUNDLE_RESULT_DATA);
                             processDownloadedMissionAndSwitchIfOk(resultByteArray, password);
                         }
                         else
                         {
-                            String resultString = msg.getData().getString(DownloadMissionTask.BUNDLE_RESULT_DATA);
+                            // Encrypted missions are text and have always been handed over
+                            // without their line breaks
+                            String resultString = new String(resultByteArray, Utils.getEngageCharSet()).replace("\r", "").replace("\n", "");//NON-NLS
                             processDownloadedMissionAndSwitchIfOk(resultString.getBytes(Utils.getEngageCharSet()), password);
                         }
                     }
@@ -2760,7 +3121,15 @@ public class EngageApplication
         IntentIntegrator ii = new IntentIntegrator(activity);
 
         ii.setCaptureActivity(OrientationIndependentQrCodeScanActivity.class);
-        ii.setPrompt(getString(R.string.qr_scan_prompt));
+        if(isChunkedQrTransferInProgress())
+        {
+            ii.setPrompt(String.format(getString(R.string.qr_scan_chunk_prompt_fmt),
+                            _qrChunkReassembler.getFramesReceived(), _qrChunkReassembler.getFramesNeeded()));
+        }
+        else
+        {
+            ii.setPrompt(getString(R.string.qr_scan_prompt));
+        }
         ii.setBeepEnabled(true);
         ii.setOrientationLocked(false);
         ii.setDesiredBarcodeFormats(IntentIntegrator.QR_CODE_TYPES);
@@ -2807,6 +3176,11 @@ public class EngageApplication
 
     public ActiveConfiguration processScannedQrCode(String scannedString, String pwd) throws Exception
     {
+        if(ChunkedQrTransfer.isChunkFrame(scannedString))
+        {
+            return processScannedQrCodeChunk(scannedString, pwd);
+        }
+
         ActiveConfiguration ac = ActiveConfiguration.parseEncryptedQrCodeString(scannedString, pwd);
 
         saveAndActivateConfiguration(ac);
@@ -2814,6 +3188,59 @@ public class EngageApplication
         return ac;
     }
 
+    // Returns null until all the frames of a multi-QR transfer have been scanned
+    private ActiveConfiguration processScannedQrCodeChunk(String scannedString, String pwd) throws Exception
+    {
+        // Only the first scan of a transfer prompts for the password so hang on to it
+        if(!_qrChunkReassembler.isStarted() || !Utils.isEmptyString(pwd))
+        {
+            _qrChunkReassembler.setPassword(pwd);
+        }
+
+        if(!_qrChunkReassembler.offer(scannedString))
+        {
+            Log.w(TAG, "rejected damaged or invalid mission QR frame");//NON-NLS
+        }
+
+        if(!_qrChunkReassembler.isComplete())
+        {
+            Toast.makeText(this, String.format(getString(R.string.qr_scan_chunk_progress_fmt),
+                            _qrChunkReassembler.getFramesReceived(), _qrChunkReassembler.getFramesNeeded()), Toast.LENGTH_SHORT).show();
+            return null;
+        }
+
+        try
+        {
+            String json = QrMissionDecoder.decodeReassembled(_qrChunkReassembler.getData(),
+                                                             _qrChunkReassembler.getPayloadVersion(),
+                                                             _qrChunkReassembler.getPassword());
+
+            ActiveConfiguration ac = new ActiveConfiguration();
+            if (!ac.parseTemplate(json))
+            {
+                throw new SimpleMessageException(getString(R.string.qr_cannot_parse));
+            }
+
+            saveAndActivateConfiguration(ac);
+
+            return ac;
+        }
+        finally
+        {
+            _qrChunkReassembler.reset();
+        }
+    }
+
+    public boolean isChunkedQrTransferInProgress()
+    {
+        return (_qrChunkReassembler.isStarted() && !_qrChunkReassembler.isComplete());
+    }
+
+    public void cancelChunkedQrTransfer()
+    {
+        _qrChunkReassembler.reset();
+    }
+
     public ActiveConfiguration processScannedQrCodeResultIntent(int requestCode, int resultCode, Intent intent) throws Exception
     {
         // Grab any password that may have been stored for our purposes
@@ -2834,6 +3261,7 @@ public class EngageApplication
 
         if (Utils.isEmptyString(scannedString))
         {
+            cancelChunkedQrTransfer();
             throw new SimpleMessageException(getString(R.string.qr_scan_cancelled));
         }
 
@@ -2889,13 +3317,20 @@ public class EngageApplication
     }
 
     @Override
-    public void requestPttOn(int priority, int flags)
+    public void onPttBegin(final long generation, final int priority, final int flags)
     {
-        startTx(priority, flags);
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                startTx(generation, priority, flags);
+            }
+        });
     }
 
     @Override
-    public void requestPttOff()
+    public void onPttEnd(long generation)
     {
         endTx();
     }
@@ -2994,6 +3429,8 @@ public class EngageApplication
                 gd.joinError = false;
                 setGroupConnectionState(id, false, false, false);
 
+                Globals.getGroupTimelineStore().onGroupCreated(id);
+
                 notifyGroupUiListeners(gd);
             }
         });
@@ -3053,6 +3490,10 @@ public class EngageApplication
                 gd.joinError = false;
                 eraseGroupConnectionState(id);
 
+                Globals.getGroupTimelineStore().onGroupDeleted(id);
+                Globals.getGroupStatsCollector().onGroupDeleted(id);
+                Globals.getMulticastFailoverManager().onGroupLeft(id);
+
                 notifyGroupUiListeners(gd);
             }
         });
@@ -3103,6 +3544,7 @@ public class EngageApplication
                             {
                                 logEvent(Analytics.GROUP_CONNECTED_RP);
                                 gts.hasRpConnection = true;
+                                Globals.getMulticastFailoverManager().onGroupRpConnected(id);
                             }
 
                             gts.operatingInMulticastFailover = gcd.optBoolean(Engine.JsonFields.GroupConnectionDetail.asFailover, false);
@@ -3130,10 +3572,9 @@ public class EngageApplication
                 // If we get connected to a presence group ...
                 if (gd.type == GroupDescriptor.Type.gtPresence)
                 {
-                    // TODO: If we have multiple presence groups, this will generate extra traffic
-
-                    // Build whatever PD we currently have and send it
-                    sendUpdatedPd(buildPd());
+                    // Build whatever PD we currently have and send it - when batching, several
+                    // presence groups connecting together still only cause one update
+                    requestPdUpdate();
                 }
 
                 notifyGroupUiListeners(gd);
@@ -3186,6 +3627,7 @@ public class EngageApplication
                             {
                                 logEvent(Analytics.GROUP_CONNECT_FAILED_RP);
                                 gts.hasRpConnection = false;
+                                Globals.getMulticastFailoverManager().onGroupRpDisconnected(id);
                             }
 
                             gts.operatingInMulticastFailover = false;
@@ -3260,6 +3702,7 @@ public class EngageApplication
                             {
                                 logEvent(Analytics.GROUP_DISCONNECTED_RP);
                                 gts.hasRpConnection = false;
+                                Globals.getMulticastFailoverManager().onGroupRpDisconnected(id);
                             }
 
                             gts.operatingInMulticastFailover = false;
@@ -3311,6 +3754,8 @@ public class EngageApplication
                 gd.joined = true;
                 gd.joinError = false;
 
+                Globals.getMulticastFailoverManager().onGroupJoined(id);
+
                 notifyGroupUiListeners(gd);
             }
         });
@@ -3366,6 +3811,8 @@ public class EngageApplication
                 gd.joined = false;
                 gd.joinError = false;
 
+                Globals.getMulticastFailoverManager().onGroupLeft(id);
+
                 notifyGroupUiListeners(gd);
             }
         });
@@ -3464,6 +3911,7 @@ public class EngageApplication
                 _lastAudioActivity = Utils.nowMs();
 
                 notifyGroupUiListeners(gd);
+                recreateGroupsAwaitingIt();
             }
         });
     }
@@ -3631,15 +4079,14 @@ public class EngageApplication
                             // Our TX is always starting in mute, so unmute it here if we're not (still) playing a sound
                             if (_delayTxUnmuteToCaterForSoundPropogation)
                             {
-                                Timer tmr = new Timer();
-                                tmr.schedule(new TimerTask()
+                                Globals.getAppScheduler().scheduleOnce("txUnmute:" + id, Constants.TX_UNMUTE_DELAY_MS_AFTER_GRANT_TONE, new Runnable()//NON-NLS
                                 {
                                     @Override
                                     public void run()
                                     {
                                         getEngine().engageUnmuteGroupTx(id);
                                     }
-                                }, Constants.TX_UNMUTE_DELAY_MS_AFTER_GRANT_TONE);
+                                });
                             }
                             else
                             {
@@ -3648,6 +4095,8 @@ public class EngageApplication
 
                             _lastAudioActivity = Utils.nowMs();
 
+                            Globals.getPttInputPipeline().onTxActive(gd.txGeneration);
+
                             notifyGroupUiListeners(gd);
 
                             synchronized (_uiUpdateListeners)
@@ -3724,7 +4173,7 @@ public class EngageApplication
                 {
                     _groupsSelectedForTx.remove(gd);
                     notifyGroupUiListeners(gd);
-                    checkIfAnyTxStillActiveAndNotify();
+                    checkIfAnyTxStillActiveAndNotify(gd.txGeneration);
                 }
             }
         });
@@ -3761,7 +4210,7 @@ public class EngageApplication
                     _groupsSelectedForTx.remove(gd);
                     playGeneralErrorNotification();
                     notifyGroupUiListeners(gd);
-                    checkIfAnyTxStillActiveAndNotify();
+                    checkIfAnyTxStillActiveAndNotify(gd.txGeneration);
                 }
 
                 synchronized (_uiUpdateListeners)
@@ -3806,7 +4255,7 @@ public class EngageApplication
                     _groupsSelectedForTx.remove(gd);
                     playGeneralErrorNotification();
                     notifyGroupUiListeners(gd);
-                    checkIfAnyTxStillActiveAndNotify();
+                    checkIfAnyTxStillActiveAndNotify(gd.txGeneration);
                 }
 
                 synchronized (_uiUpdateListeners)
@@ -3851,7 +4300,7 @@ public class EngageApplication
                     _groupsSelectedForTx.remove(gd);
                     playGeneralErrorNotification();
                     notifyGroupUiListeners(gd);
-                    checkIfAnyTxStillActiveAndNotify();
+                    checkIfAnyTxStillActiveAndNotify(gd.txGeneration);
                 }
 
                 synchronized (_uiUpdateListeners)
@@ -4288,11 +4737,12 @@ public class EngageApplication
 
     public void startHumanBiometricsReporting()
     {
-        if(_humanBiometricsReportingTimer == null)
+        if(!_hbmReporting)
         {
-            if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_HBM, false))
+            AppSettings.Snapshot settings = Globals.getAppSettings().get();
+            if(settings.hbmEnabled)
             {
-                _hbmTicksBeforeReport = Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_EXPERIMENT_HBM_INTERVAL_SECS, "0"));
+                _hbmTicksBeforeReport = settings.hbmIntervalSecs;
                 if(_hbmTicksBeforeReport >= 1)
                 {
                     _hbmTicksSoFar = 0;
@@ -4313,15 +4763,10 @@ public class EngageApplication
                     _rhbmgFatigueLevel = new RandomHumanBiometricGenerator(0, 10, 3, 3);
                     _rhbmgTaskEffectiveness = new RandomHumanBiometricGenerator(0, 10, 3, 3);
 
-                    _humanBiometricsReportingTimer = new Timer();
-                    _humanBiometricsReportingTimer.scheduleAtFixedRate(new TimerTask()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            onHumanBiometricsTimerTick();
-                        }
-                    }, 0, 1000);
+                    // Samples are taken in catch-up fashion in the wake batch rather than
+                    // waking every second for them
+                    _hbmLastTickAt = Utils.nowMs();
+                    _hbmReporting = true;
                 }
             }
         }
@@ -4329,15 +4774,46 @@ public class EngageApplication
 
     public void stopHumanBiometricsReporting()
     {
-        if(_humanBiometricsReportingTimer != null)
+        _hbmReporting = false;
+    }
+
+    // Takes the one-second samples due since the last call.  Returns the newest report that
+    // fell due among them, if any.
+    private byte[] collectHumanBiometrics()
+    {
+        if(!_hbmReporting)
         {
-            _humanBiometricsReportingTimer.cancel();
-            _humanBiometricsReportingTimer = null;
+            return null;
         }
+
+        long now = Utils.nowMs();
+        long ticks = (now - _hbmLastTickAt) / 1000;
+        _hbmLastTickAt += (ticks * 1000);
+
+        // After a long gap there's no point in more than a report's worth
+        if(ticks > _hbmTicksBeforeReport)
+        {
+            ticks = _hbmTicksBeforeReport;
+            _hbmTicksSoFar = 0;
+        }
+
+        byte[] rc = null;
+        for(long x = 0; x < ticks; x++)
+        {
+            byte[] blob = onHumanBiometricsTimerTick();
+            if(blob != null)
+            {
+                rc = blob;
+            }
+        }
+
+        return rc;
     }
 
-    private void onHumanBiometricsTimerTick()
+    private byte[] onHumanBiometricsTimerTick()
     {
+        byte[] rc = null;
+
         if(_hbmTicksSoFar == 0)
         {
             _hbmHeartRate.restart();
@@ -4364,38 +4840,39 @@ public class EngageApplication
             try
             {
                 ByteArrayOutputStream bas = new ByteArrayOutputStream();
+                AppSettings.Snapshot settings = Globals.getAppSettings().get();
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_HEART_RATE, false))
+                if(settings.hbmHeartRate)
                 {
                     bas.write(_hbmHeartRate.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_SKIN_TEMP, false))
+                if(settings.hbmSkinTemp)
                 {
                     bas.write(_hbmSkinTemp.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_CORE_TEMP, false))
+                if(settings.hbmCoreTemp)
                 {
                     bas.write(_hbmCoreTemp.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_HYDRO, false))
+                if(settings.hbmBloodHydration)
                 {
                     bas.write(_hbmHydration.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_OXY, false))
+                if(settings.hbmBloodOxygenation)
                 {
                     bas.write(_hbmBloodOxygenation.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_FATIGUE_LEVEL, false))
+                if(settings.hbmFatigueLevel)
                 {
                     bas.write(_hbmFatigueLevel.toByteArray());
                 }
 
-                if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_TASK_EFFECTIVENESS_LEVEL, false))
+                if(settings.hbmTaskEffectiveness)
                 {
                     bas.write(_hbmTaskEffectiveness.toByteArray());
                 }
@@ -4404,25 +4881,11 @@ public class EngageApplication
 
                 if(blob.length > 0)
                 {
-                    Log.i(TAG, "Reporting human biometrics data - blob size is " + blob.length + " bytes");
-
-                    // Our JSON parameters indicate that the payload is binary human biometric data in Engage format
-                    JSONObject bi = new JSONObject();
-                    bi.put(Engine.JsonFields.BlobInfo.payloadType, Engine.BlobType.engageHumanBiometrics.toInt());
-                    String jsonParams = bi.toString();
-
-                    ActiveConfiguration ac = getActiveConfiguration();
-                    for(GroupDescriptor gd : ac.getMissionGroups())
-                    {
-                        if(gd.type == GroupDescriptor.Type.gtPresence)
-                        {
-                            getEngine().engageSendGroupBlob(gd.id, blob, blob.length, jsonParams);
-                        }
-                    }
+                    rc = blob;
                 }
                 else
                 {
-                    Log.w(TAG, "Cannot report human biometrics data - no presence group found");
+                    Log.w(TAG, "Cannot report human biometrics data - no elements enabled");
                 }
             }
             catch(Exception e)
@@ -4432,6 +4895,8 @@ public class EngageApplication
 
             _hbmTicksSoFar = 0;
         }
+
+        return rc;
     }
 
     @Override
@@ -4801,6 +5266,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onEventStartedOrUpdated(id, eventJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4829,6 +5296,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onEventStartedOrUpdated(id, eventJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4857,6 +5326,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onEventEnded(id, eventJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4887,6 +5358,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onReport(id, reportJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4917,6 +5390,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onReportFailed(id);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4947,6 +5422,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupTimelineStore().onGroomed(id, eventListJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -4977,6 +5454,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupStatsCollector().onStatsReport(id, reportJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -5039,6 +5518,8 @@ public class EngageApplication
                     return;
                 }
 
+                Globals.getGroupStatsCollector().onHealthReport(id, reportJson);
+
                 synchronized (_groupTimelineListeners)
                 {
                     for (IGroupTimelineListener listener : _groupTimelineListeners)
@@ -5089,7 +5570,7 @@ public class EngageApplication
             public void run()
             {
                 Log.d(TAG, "onRallypointPausingConnectionAttempt");
-                // Stub
+                Globals.getRallypointMonitor().onPausingConnectionAttempt(id);
             }
         });
     }
@@ -5103,7 +5584,7 @@ public class EngageApplication
             public void run()
             {
                 Log.d(TAG, "onRallypointConnecting: " + id);
-                // Stub
+                Globals.getRallypointMonitor().onConnecting(id);
             }
         });
     }
@@ -5119,7 +5600,7 @@ public class EngageApplication
                 logEvent(Analytics.GROUP_RP_CONNECTED);
 
                 Log.d(TAG, "onRallypointConnected: " + id);
-                // Stub
+                Globals.getRallypointMonitor().onConnected(id);
             }
         });
     }
@@ -5130,7 +5611,7 @@ public class EngageApplication
         logEvent(Analytics.GROUP_RP_DISCONNECTED);
 
         Log.d(TAG, "onRallypointDisconnected: " + id);
-        // Stub
+        Globals.getRallypointMonitor().onDisconnected(id);
     }
 
     @Override
@@ -5167,7 +5648,8 @@ public class EngageApplication
                 }
 
                 Log.d(TAG, "onRallypointRoundtripReport: " + id + ", ms=" + rtMs + ", qual=" + rtQualityRating);
-                // Stub
+                Globals.getRallypointMonitor().onRoundtripReport(id, rtMs, rtQualityRating);
+                Globals.getMulticastFailoverManager().onRoundtripReport(rtMs, rtQualityRating);
             }
         });
     }
@@ -5205,7 +5687,7 @@ public class EngageApplication
             @Override
             public void run()
             {
-                if(_licenseActivationTimer != null)
+                if(_licenseActivationTask != null)
                 {
                     return;
                 }
@@ -5228,6 +5710,12 @@ public class EngageApplication
                     }
                 }
 
+                // Back off from a licensing system that keeps failing us
+                if(_licenseActivationFailures > 0)
+                {
+                    delay = Math.max(delay, (double) (Constants.MIN_LICENSE_ACTIVATION_DELAY_MS << Math.min(_licenseActivationFailures, Constants.MAX_LICENSE_ACTIVATION_BACKOFF_SHIFT)));
+                }
+
                 if(delay < Constants.MIN_LICENSE_ACTIVATION_DELAY_MS)
                 {
                     delay = Constants.MIN_LICENSE_ACTIVATION_DELAY_MS;
@@ -5239,15 +5727,14 @@ public class EngageApplication
 
                 Log.i(TAG, "scheduling obtaining of activation code in " + (delay / 1000) + " seconds");
 
-                _licenseActivationTimer = new Timer();
-                _licenseActivationTimer.schedule(new TimerTask()
+                _licenseActivationTask = Globals.getAppScheduler().scheduleOnce("licenseActivation", (long)delay, new Runnable()//NON-NLS
                 {
                     @Override
                     public void run()
                     {
                         obtainActivationCode();
                     }
-                }, (long)delay);
+                });
             }
         });
     }
@@ -5259,78 +5746,79 @@ public class EngageApplication
             @Override
             public void run()
             {
-                if(_licenseActivationTimer != null)
+                if(_licenseActivationTask != null)
                 {
-                    _licenseActivationTimer.cancel();
-                    _licenseActivationTimer = null;
+                    _licenseActivationTask.cancel();
+                    _licenseActivationTask = null;
                 }
             }
         });
     }
 
+    // Runs on the scheduler's thread - the engine and preferences are read here and the
+    // exchange itself happens on the activation client's, so the UI never waits on any of it
     private void obtainActivationCode()
     {
-        runOnUiThread(new Runnable()
+        if(_licenseActivationPaused)
         {
-            @Override
-            public void run()
+            runOnUiThread(new Runnable()
             {
-                if(_licenseActivationPaused)
+                @Override
+                public void run()
                 {
                     Log.d(TAG, "license activation paused - rescheduling");
 
-                    // Schedule for another time
+                    // Schedule for another time - the task that got us here has already fired
+                    _licenseActivationTask = null;
                     scheduleObtainingActivationCode();
                 }
-                else
-                {
-                    try
-                    {
-                        Log.i(TAG, "attempting to obtain a license activation code");
+            });
 
-                        cancelObtainingActivationCode();
+            return;
+        }
 
-                        String jsonData = getEngine().engageGetActiveLicenseDescriptor();
-                        JSONObject obj = new JSONObject(jsonData);
-                        String deviceId = obj.getString(Engine.JsonFields.License.deviceId);
-                        if (Utils.isEmptyString(deviceId))
-                        {
-                            throw new Exception("no device id available for licensing");
-                        }
+        try
+        {
+            Log.i(TAG, "attempting to obtain a license activation code");
 
-                        String key = Globals.getSharedPreferences().getString(PreferenceKeys.USER_LICENSING_KEY, "");
-                        if (Utils.isEmptyString(key))
-                        {
-                            throw new Exception("no license key available for licensing");
-                        }
+            cancelObtainingActivationCode();
 
-                        String url;
-                        if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.DEVELOPER_USE_DEV_LICENSING_SYSTEM, false))
-                        {
-                            url = getString(R.string.online_licensing_activation_url_dev);
-                        }
-                        else
-                        {
-                            url = getString(R.string.online_licensing_activation_url_prod);
-                        }
+            String jsonData = getEngine().engageGetActiveLicenseDescriptor();
+            JSONObject obj = new JSONObject(jsonData);
+            String deviceId = obj.getString(Engine.JsonFields.License.deviceId);
+            if (Utils.isEmptyString(deviceId))
+            {
+                throw new Exception("no device id available for licensing");
+            }
 
-                        String ac = Globals.getSharedPreferences().getString(PreferenceKeys.USER_LICENSING_ACTIVATION_CODE, "");
+            String key = Globals.getSharedPreferences().getString(PreferenceKeys.USER_LICENSING_KEY, "");
+            if (Utils.isEmptyString(key))
+            {
+                throw new Exception("no license key available for licensing");
+            }
 
-                        String stringToHash = key + deviceId + getString(R.string.licensing_entitlement);
-                        String hValue = Utils.md5HashOfString(stringToHash);
+            String url;
+            if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.DEVELOPER_USE_DEV_LICENSING_SYSTEM, false))
+            {
+                url = getString(R.string.online_licensing_activation_url_dev);
+            }
+            else
+            {
+                url = getString(R.string.online_licensing_activation_url_prod);
+            }
 
-                        LicenseActivationTask lat = new LicenseActivationTask(url, getString(R.string.licensing_entitlement), key, ac, deviceId, hValue, EngageApplication.this);
+            String ac = Globals.getSharedPreferences().getString(PreferenceKeys.USER_LICENSING_ACTIVATION_CODE, "");
 
-                        lat.execute();
-                    }
-                    catch (Exception e)
-                    {
-                        Log.d(TAG, "obtainActivationCode: " + e.getMessage());
-                        scheduleObtainingActivationCode();
-                    }
-                }
-            }
-        });
+            String stringToHash = key + deviceId + getString(R.string.licensing_entitlement);
+            String hValue = Utils.md5HashOfString(stringToHash);
+
+            Globals.getLicenseActivationClient().activate(new LicenseActivationClient.Request(url, getString(R.string.licensing_entitlement), key, ac, deviceId, hValue), this);
+        }
+        catch (Exception e)
+        {
+            Log.d(TAG, "obtainActivationCode: " + e.getMessage());
+            scheduleObtainingActivationCode();
+        }
     }
 
     @Override
@@ -5371,6 +5859,7 @@ public class EngageApplication
                             Globals.getSharedPreferencesEditor().putString(PreferenceKeys.USER_LICENSING_ACTIVATION_CODE, activationCode);
                             Globals.getSharedPreferencesEditor().apply();
                             getEngine().engageUpdateLicense(getString(R.string.licensing_entitlement), key, activationCode, getString(R.string.manufacturer_id));
+                            _licenseActivationFailures = 0;
                         }
                         else
                         {
@@ -5389,6 +5878,10 @@ public class EngageApplication
 
                 if(needScheduling)
                 {
+                    if(!_licenseActivationPaused)
+                    {
+                        _licenseActivationFailures++;
+                    }
                     scheduleObtainingActivationCode();
                 }
                 else
@@ -15,6 +15,17 @@ public class Globals
     private static SharedPreferences _sp = null;
     private static SharedPreferences.Editor _spEd = null;
     private static AudioPlayerManager _apm = null;
+    private static QrCodeBitmapCache _qrCodeBitmapCache = null;
+    private static GroupTimelineStore _groupTimelineStore = null;
+    private static GroupStatsCollector _groupStatsCollector = null;
+    private static RallypointMonitor _rallypointMonitor = null;
+    private static MulticastFailoverManager _multicastFailoverManager = null;
+    private static AppScheduler _appScheduler = null;
+    private static AppSettings _appSettings = null;
+    private static CertStoreManager _certStoreManager = null;
+    private static CertStoreDescriptorCache _certStoreDescriptorCache = null;
+    private static LicenseActivationClient _licenseActivationClient = null;
+    private static PttInputPipeline _pttInputPipeline = null;
 
     public static void setContext(Context ctx)
     {
@@ -61,4 +72,114 @@ public class Globals
     {
         return _apm;
     }
+
+    public static void setQrCodeBitmapCache(QrCodeBitmapCache cache)
+    {
+        _qrCodeBitmapCache = cache;
+    }
+
+    public static QrCodeBitmapCache getQrCodeBitmapCache()
+    {
+        return _qrCodeBitmapCache;
+    }
+
+    public static void setGroupTimelineStore(GroupTimelineStore store)
+    {
+        _groupTimelineStore = store;
+    }
+
+    public static GroupTimelineStore getGroupTimelineStore()
+    {
+        return _groupTimelineStore;
+    }
+
+    public static void setGroupStatsCollector(GroupStatsCollector collector)
+    {
+        _groupStatsCollector = collector;
+    }
+
+    public static GroupStatsCollector getGroupStatsCollector()
+    {
+        return _groupStatsCollector;
+    }
+
+    public static void setRallypointMonitor(RallypointMonitor monitor)
+    {
+        _rallypointMonitor = monitor;
+    }
+
+    public static RallypointMonitor getRallypointMonitor()
+    {
+        return _rallypointMonitor;
+    }
+
+    public static void setMulticastFailoverManager(MulticastFailoverManager manager)
+    {
+        _multicastFailoverManager = manager;
+    }
+
+    public static MulticastFailoverManager getMulticastFailoverManager()
+    {
+        return _multicastFailoverManager;
+    }
+
+    public static void setAppScheduler(AppScheduler scheduler)
+    {
+        _appScheduler = scheduler;
+    }
+
+    public static AppScheduler getAppScheduler()
+    {
+        return _appScheduler;
+    }
+
+    public static void setAppSettings(AppSettings settings)
+    {
+        _appSettings = settings;
+    }
+
+    public static AppSettings getAppSettings()
+    {
+        return _appSettings;
+    }
+
+    public static void setCertStoreManager(CertStoreManager mgr)
+    {
+        _certStoreManager = mgr;
+    }
+
+    public static CertStoreManager getCertStoreManager()
+    {
+        return _certStoreManager;
+    }
+
+    public static void setCertStoreDescriptorCache(CertStoreDescriptorCache cache)
+    {
+        _certStoreDescriptorCache = cache;
+    }
+
+    public static CertStoreDescriptorCache getCertStoreDescriptorCache()
+    {
+        return _certStoreDescriptorCache;
+    }
+
+    public static void setLicenseActivationClient(LicenseActivationClient client)
+    {
+        _licenseActivationClient = client;
+    }
+
+    public static LicenseActivationClient getLicenseActivationClient()
+    {
+        return _licenseActivationClient;
+    }
+
+    public static void setPttInputPipeline(PttInputPipeline pipeline)
+    {
+        _pttInputPipeline = pipeline;
+    }
+
+    public static PttInputPipeline getPttInputPipeline()
+    {
+        return _pttInputPipeline;
+    }
 }
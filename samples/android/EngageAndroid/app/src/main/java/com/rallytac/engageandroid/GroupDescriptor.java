@@ -47,6 +47,7 @@ public class GroupDescriptor implements Parcelable
     public boolean txMuted;
     public ArrayList<TalkerDescriptor> talkerList = new ArrayList<>();
     public long lastTxStartTime;
+    public long txGeneration;
 
     public static final Creator CREATOR = new Creator()
     {
@@ -110,6 +111,7 @@ public class GroupDescriptor implements Parcelable
 
         this._isDynamic = (in.readInt() == 1);
         this.lastTxStartTime = in.readLong();
+        this.txGeneration = in.readLong();
     }
 
     public boolean isDynamic()
@@ -138,6 +140,7 @@ public class GroupDescriptor implements Parcelable
         txMuted = false;
         talkerList.clear();
         lastTxStartTime = 0;
+        txGeneration = 0;
     }
 
     @Override
@@ -172,6 +175,7 @@ public class GroupDescriptor implements Parcelable
 
         dest.writeInt(this._isDynamic ? 1 : 0);
         dest.writeLong(this.lastTxStartTime);
+        dest.writeLong(this.txGeneration);
     }
 
     public void updateTalkers(ArrayList<TalkerDescriptor> list)
@@ -273,6 +277,7 @@ public class GroupDescriptor implements Parcelable
             }
 
             this.lastTxStartTime = gd.lastTxStartTime;
+            this.txGeneration = gd.txGeneration;
         }
     }
 
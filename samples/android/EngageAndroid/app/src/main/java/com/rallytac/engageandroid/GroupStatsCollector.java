@@ -0,0 +1,470 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+// Polls the engine for stats and health on every joined group and keeps a bounded time
+// series of the counters for each so that deltas and rates can be looked at after the fact.
+// Samples live in fixed-size rings of primitives - memory use doesn't grow with uptime.
+//
+// A sample is recorded for each stats report and carries the most recent health counters
+// along with it.  Counters are recorded as running totals built from the per-stream (and
+// health report) deltas, so streams coming and going - or one of them restarting - never
+// makes a counter go backwards.
+public class GroupStatsCollector
+{
+    private static String TAG = GroupStatsCollector.class.getSimpleName();
+
+    // Metrics - indexes into each sample
+    public static final int METRIC_INBOUND_STREAMS = 0;
+    public static final int METRIC_PACKETS_RECEIVED = 1;
+    public static final int METRIC_PACKETS_LOST = 2;
+    public static final int METRIC_PACKETS_DISCARDED = 3;
+    public static final int METRIC_UNDERRUNS = 4;
+    public static final int METRIC_OVERRUNS = 5;
+    public static final int METRIC_SAMPLES_TRIMMED = 6;
+    public static final int METRIC_MAX_JITTER_X1000 = 7;
+    public static final int METRIC_DECRYPTION_ERRORS = 8;
+    public static final int METRIC_ENCRYPTION_ERRORS = 9;
+    public static final int METRIC_DECODER_FAILURES = 10;
+    public static final int METRIC_LATE_PACKETS_DISCARDED = 11;
+    public static final int METRIC_JITTER_BUFFER_INSERTION_FAILURES = 12;
+    public static final int METRIC_RTP_PACKET_FAILURES = 13;
+    public static final int METRIC_NOT_RTP_ERRORS = 14;
+    public static final int METRIC_COUNT = 15;
+
+    private static final String[] METRIC_NAMES =
+    {
+        "inboundStreams",//NON-NLS
+        "packetsReceived",//NON-NLS
+        "packetsLost",//NON-NLS
+        "packetsDiscarded",//NON-NLS
+        "underruns",//NON-NLS
+        "overruns",//NON-NLS
+        "samplesTrimmed",//NON-NLS
+        "maxJitterX1000",//NON-NLS
+        "decryptionErrors",//NON-NLS
+        "encryptionErrors",//NON-NLS
+        "decoderFailures",//NON-NLS
+        "latePacketsDiscarded",//NON-NLS
+        "jitterBufferInsertionFailures",//NON-NLS
+        "rtpPacketFailures",//NON-NLS
+        "notRtpErrors"//NON-NLS
+    };
+
+    // Gauges are point-in-time values; everything else is a running counter
+    private static final boolean[] METRIC_IS_GAUGE =
+    {
+        true, false, false, false, false, false, false, true,
+        false, false, false, false, false, false, false
+    };
+
+    // The last counters we saw from one inbound stream
+    private static class Stream
+    {
+        final long[] last = new long[METRIC_COUNT];
+        int seenAt = 0;
+    }
+
+    private static class Series
+    {
+        final long[] ts;
+        final long[][] values;
+        final long[] totals = new long[METRIC_COUNT];
+        final long[] lastHealth = new long[METRIC_COUNT];
+        final HashMap<Long, Stream> streams = new HashMap<>();
+        int reports = 0;
+        int head = 0;
+        int count = 0;
+
+        Series(int capacity)
+        {
+            ts = new long[capacity];
+            values = new long[METRIC_COUNT][capacity];
+        }
+
+        int capacity()
+        {
+            return ts.length;
+        }
+
+        // Index of the n'th most recent sample (0 being the latest)
+        int indexOf(int n)
+        {
+            return (head - 1 - n + capacity()) % capacity();
+        }
+    }
+
+    private final HashMap<String, Series> _series = new HashMap<>();
+    private final int _capacity;
+    private final long[] _scratch = new long[METRIC_COUNT];
+    private AppScheduler.Task _pollTask = null;
+
+    public GroupStatsCollector(int capacity)
+    {
+        _capacity = capacity;
+    }
+
+    public static String getMetricName(int metric)
+    {
+        return METRIC_NAMES[metric];
+    }
+
+    public synchronized void start()
+    {
+        if(_pollTask == null)
+        {
+            _pollTask = Globals.getAppScheduler().scheduleAligned("groupStatsPoll",//NON-NLS
+                    Constants.GROUP_STATS_POLL_INTERVAL_MS, new AppScheduler.ITask()
+            {
+                @Override
+                public boolean run() throws Exception
+                {
+                    poll();
+                    return true;
+                }
+            });
+        }
+    }
+
+    public synchronized void stop()
+    {
+        if(_pollTask != null)
+        {
+            _pollTask.cancel();
+            _pollTask = null;
+        }
+    }
+
+    public synchronized void clear()
+    {
+        _series.clear();
+    }
+
+    public synchronized void onGroupDeleted(String groupId)
+    {
+        _series.remove(groupId);
+    }
+
+    // Failures propagate so that the scheduler backs off
+    private void poll() throws Exception
+    {
+        ActiveConfiguration ac = Globals.getEngageApplication().getActiveConfiguration();
+        if(ac == null)
+        {
+            return;
+        }
+
+        for(GroupDescriptor gd : ac.getMissionGroups())
+        {
+            if(gd.created && gd.joined)
+            {
+                Globals.getEngageApplication().getEngine().engageQueryGroupStats(gd.id);
+                Globals.getEngageApplication().getEngine().engageQueryGroupHealth(gd.id);
+            }
+        }
+    }
+
+    private Series getOrCreate(String groupId)
+    {
+        Series rc = _series.get(groupId);
+        if(rc == null)
+        {
+            rc = new Series(_capacity);
+            _series.put(groupId, rc);
+        }
+
+        return rc;
+    }
+
+    // Health counters are cumulative for the life of the group so we fold what they went up
+    // by into the totals, which the next stats sample picks up
+    public synchronized void onHealthReport(String groupId, String reportJson)
+    {
+        try
+        {
+            JSONObject obj = new JSONObject(reportJson);
+            Series s = getOrCreate(groupId);
+
+            accumulate(s.totals, s.lastHealth, METRIC_DECRYPTION_ERRORS, obj.optLong("decryptionErrors", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_ENCRYPTION_ERRORS, obj.optLong("encryptionErrors", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_DECODER_FAILURES, obj.optLong("decoderFailures", 0)//NON-NLS
+                                        + obj.optLong("decoderStartFailures", 0)//NON-NLS
+                                        + obj.optLong("unsupportDecoderErrors", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_LATE_PACKETS_DISCARDED, obj.optLong("latePacketsDiscarded", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_JITTER_BUFFER_INSERTION_FAILURES, obj.optLong("jitterBufferInsertionFailures", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_RTP_PACKET_FAILURES, obj.optLong("inboundRtpPacketAllocationFailures", 0)//NON-NLS
+                                        + obj.optLong("inboundRtpPacketLoadFailures", 0));//NON-NLS
+            accumulate(s.totals, s.lastHealth, METRIC_NOT_RTP_ERRORS, obj.optLong("notRtpErrors", 0));//NON-NLS
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot parse group health report: " + e.getMessage());//NON-NLS
+        }
+    }
+
+    // Folds the group's inbound processors into one sample.  Each stream's counters are
+    // compared with what that stream (by ssrc) reported last time so a stream that restarts
+    // or goes away doesn't take anything off the others.
+    public synchronized void onStatsReport(String groupId, String reportJson)
+    {
+        long[] v = _scratch;
+        Series s = getOrCreate(groupId);
+
+        try
+        {
+            JSONObject obj = new JSONObject(reportJson);
+            JSONArray inbounds = obj.optJSONArray("rtpInbounds");//NON-NLS
+
+            for(int m = 0; m < METRIC_COUNT; m++)
+            {
+                v[m] = 0;
+            }
+
+            s.reports++;
+
+            if(inbounds != null)
+            {
+                v[METRIC_INBOUND_STREAMS] = inbounds.length();
+
+                for(int x = 0; x < inbounds.length(); x++)
+                {
+                    JSONObject ib = inbounds.optJSONObject(x);
+                    if(ib == null)
+                    {
+                        continue;
+                    }
+
+                    // No ssrc - fall back to the position in the report
+                    long key = ib.has("ssrc") ? ib.optLong("ssrc", 0) : (-1 - x);//NON-NLS
+                    Stream st = s.streams.get(key);
+                    if(st == null)
+                    {
+                        st = new Stream();
+                        s.streams.put(key, st);
+                    }
+                    st.seenAt = s.reports;
+
+                    accumulate(s.totals, st.last, METRIC_PACKETS_RECEIVED, ib.optLong("totalPacketsReceived", 0));//NON-NLS
+                    accumulate(s.totals, st.last, METRIC_PACKETS_LOST, ib.optLong("totalPacketsLost", 0));//NON-NLS
+                    accumulate(s.totals, st.last, METRIC_PACKETS_DISCARDED, ib.optLong("totalPacketsDiscarded", 0));//NON-NLS
+                    accumulate(s.totals, st.last, METRIC_UNDERRUNS, ib.optLong("underruns", 0));//NON-NLS
+                    accumulate(s.totals, st.last, METRIC_OVERRUNS, ib.optLong("overruns", 0));//NON-NLS
+                    accumulate(s.totals, st.last, METRIC_SAMPLES_TRIMMED, ib.optLong("totalSamplesTrimmed", 0));//NON-NLS
+                    v[METRIC_MAX_JITTER_X1000] = Math.max(v[METRIC_MAX_JITTER_X1000], (long) (ib.optDouble("jitter", 0.0) * 1000));//NON-NLS
+                }
+            }
+
+            // Streams that have gone away - if one comes back it starts from zero
+            Iterator<Stream> it = s.streams.values().iterator();
+            while(it.hasNext())
+            {
+                if(it.next().seenAt != s.reports)
+                {
+                    it.remove();
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot parse group stats report: " + e.getMessage());//NON-NLS
+            return;
+        }
+
+        for(int m = 0; m < METRIC_COUNT; m++)
+        {
+            if(!METRIC_IS_GAUGE[m])
+            {
+                v[m] = s.totals[m];
+            }
+        }
+
+        record(s, Utils.nowMs(), v);
+    }
+
+    // Adds how far a source's counter went up since last time to the running total.  A
+    // counter that went backwards means the source restarted, so all of it is new.
+    private static void accumulate(long[] totals, long[] last, int metric, long value)
+    {
+        long d = value - last[metric];
+        totals[metric] += (d >= 0) ? d : value;
+        last[metric] = value;
+    }
+
+    private static void record(Series s, long now, long[] v)
+    {
+        s.ts[s.head] = now;
+        for(int m = 0; m < METRIC_COUNT; m++)
+        {
+            s.values[m][s.head] = v[m];
+        }
+
+        s.head = (s.head + 1) % s.capacity();
+        if(s.count < s.capacity())
+        {
+            s.count++;
+        }
+    }
+
+    public synchronized int getSampleCount(String groupId)
+    {
+        Series s = _series.get(groupId);
+        return (s == null) ? 0 : s.count;
+    }
+
+    // The most recent value of a metric, or 0 if we have nothing for the group
+    public synchronized long getLatest(String groupId, int metric)
+    {
+        Series s = _series.get(groupId);
+        return (s == null || s.count == 0) ? 0 : s.values[metric][s.indexOf(0)];
+    }
+
+    // How much a counter went up over (roughly) the last windowMs.  The recorded totals
+    // only go up so this is just the latest less the oldest sample in the window.
+    public synchronized long getDelta(String groupId, int metric, long windowMs)
+    {
+        Series s = _series.get(groupId);
+        if(s == null || s.count < 2 || METRIC_IS_GAUGE[metric])
+        {
+            return 0;
+        }
+
+        int latest = s.indexOf(0);
+        int oldest = latest;
+        long newest = s.ts[latest];
+
+        for(int n = 1; n < s.count; n++)
+        {
+            int idx = s.indexOf(n);
+            if(newest - s.ts[idx] > windowMs)
+            {
+                break;
+            }
+
+            oldest = idx;
+        }
+
+        return s.values[metric][latest] - s.values[metric][oldest];
+    }
+
+    // Per-second rate of a counter over (roughly) the last windowMs
+    public synchronized double getRate(String groupId, int metric, long windowMs)
+    {
+        Series s = _series.get(groupId);
+        if(s == null || s.count < 2)
+        {
+            return 0.0;
+        }
+
+        // Work out the span actually covered by the samples getDelta() will use
+        long newest = s.ts[s.indexOf(0)];
+        long oldest = newest;
+        for(int n = 1; n < s.count; n++)
+        {
+            long t = s.ts[s.indexOf(n)];
+            if(newest - t > windowMs)
+            {
+                break;
+            }
+
+            oldest = t;
+        }
+
+        if(newest == oldest)
+        {
+            return 0.0;
+        }
+
+        return (getDelta(groupId, metric, windowMs) * 1000.0) / (newest - oldest);
+    }
+
+    // Packets lost as a percentage of those expected over (roughly) the last windowMs
+    public synchronized double getLossPercent(String groupId, long windowMs)
+    {
+        long received = getDelta(groupId, METRIC_PACKETS_RECEIVED, windowMs);
+        long lost = getDelta(groupId, METRIC_PACKETS_LOST, windowMs);
+
+        return (received + lost == 0) ? 0.0 : (lost * 100.0) / (received + lost);
+    }
+
+    // Copies the series for a metric, oldest first, into the caller's arrays and returns
+    // how many samples were copied
+    public synchronized int getSeries(String groupId, int metric, long[] tsOut, long[] valuesOut)
+    {
+        Series s = _series.get(groupId);
+        if(s == null)
+        {
+            return 0;
+        }
+
+        int rc = Math.min(s.count, Math.min(tsOut.length, valuesOut.length));
+        for(int x = 0; x < rc; x++)
+        {
+            int idx = s.indexOf(rc - 1 - x);
+            tsOut[x] = s.ts[idx];
+            valuesOut[x] = s.values[metric][idx];
+        }
+
+        return rc;
+    }
+
+    // Latest values plus rates over windowMs for every group - handy for diagnostics
+    public synchronized JSONObject toJson(long windowMs)
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("windowMs", windowMs);//NON-NLS
+
+            JSONArray groups = new JSONArray();
+            for(String groupId : _series.keySet())
+            {
+                Series s = _series.get(groupId);
+                if(s.count == 0)
+                {
+                    continue;
+                }
+
+                JSONObject g = new JSONObject();
+                g.put("id", groupId);//NON-NLS
+                g.put("samples", s.count);//NON-NLS
+                g.put("lastSampleTs", s.ts[s.indexOf(0)]);//NON-NLS
+                g.put("lossPercent", getLossPercent(groupId, windowMs));//NON-NLS
+
+                JSONObject latest = new JSONObject();
+                JSONObject rates = new JSONObject();
+                for(int m = 0; m < METRIC_COUNT; m++)
+                {
+                    latest.put(METRIC_NAMES[m], s.values[m][s.indexOf(0)]);
+                    if(!METRIC_IS_GAUGE[m])
+                    {
+                        rates.put(METRIC_NAMES[m], getRate(groupId, m, windowMs));
+                    }
+                }
+
+                g.put("latest", latest);//NON-NLS
+                g.put("ratesPerSec", rates);//NON-NLS
+                groups.put(g);
+            }
+
+            rc.put("groups", groups);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
@@ -0,0 +1,693 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import com.rallytac.engage.engine.Engine;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Client-side copy of the engine's group timelines.  It is fed live by the timeline event
+// callbacks and by the reports for queries it issues itself, and indexed by group, start
+// time and talker alias so the UI can page and search from memory.  For each group we also
+// track which time ranges we hold completely ("coverage") so that only the gaps need to go
+// to the engine.
+public class GroupTimelineStore
+{
+    private static String TAG = GroupTimelineStore.class.getSimpleName();
+
+    private static final int MAX_EVENTS_PER_GROUP = 5000;
+
+    // Gap queries look this far below the top of the gap to begin with, then widen (while
+    // answers come back short) or narrow (while they come back full)
+    private static final long INITIAL_QUERY_WINDOW_MS = (60 * 60 * 1000);
+    private static final long MIN_QUERY_WINDOW_MS = 1000;
+    private static final long MAX_QUERY_WINDOW_MS = (365L * 24 * 60 * 60 * 1000);
+
+    // A query we've heard nothing about for this long is given up on
+    private static final long PENDING_QUERY_TIMEOUT_MS = 30000;
+
+    public static class Event
+    {
+        public String id;
+        public String groupId;
+        public String alias;
+        public String nodeId;
+        public int direction;
+        public int type;
+        public long started;
+        public long ended;
+        public boolean inProgress;
+        public String uri;
+        public long audioLengthMs;
+
+        static Event fromJson(String groupId, JSONObject obj)
+        {
+            Event rc = new Event();
+
+            rc.groupId = groupId;
+            rc.started = obj.optLong(Engine.JsonFields.TimelineEvent.started, 0);
+            rc.ended = obj.optLong(Engine.JsonFields.TimelineEvent.ended, 0);
+            rc.direction = obj.optInt(Engine.JsonFields.TimelineEvent.direction, 0);
+            rc.type = obj.optInt(Engine.JsonFields.TimelineEvent.type, 0);
+            rc.inProgress = obj.optBoolean(Engine.JsonFields.TimelineEvent.inProgress, false);
+            rc.alias = obj.optString(Engine.JsonFields.TimelineEvent.alias, "");
+            rc.nodeId = obj.optString(Engine.JsonFields.TimelineEvent.nodeId, "");
+            rc.uri = obj.optString(Engine.JsonFields.TimelineEvent.uri, "");
+
+            JSONObject audio = obj.optJSONObject(Engine.JsonFields.TimelineEvent.Audio.objectName);
+            if(audio != null)
+            {
+                rc.audioLengthMs = audio.optLong(Engine.JsonFields.TimelineEvent.Audio.ms, 0);
+            }
+
+            // Older engines don't always give us an id so make a stable one up
+            rc.id = obj.optString(Engine.JsonFields.TimelineEvent.id, "");
+            if(Utils.isEmptyString(rc.id))
+            {
+                rc.id = rc.nodeId + "@" + rc.started;//NON-NLS
+            }
+
+            return rc;
+        }
+    }
+
+    // Newest first, with the id as a tie-breaker for events that started in the same ms
+    private static final Comparator<Event> NEWEST_FIRST = new Comparator<Event>()
+    {
+        @Override
+        public int compare(Event a, Event b)
+        {
+            int rc = Long.compare(b.started, a.started);
+            if(rc == 0)
+            {
+                rc = a.id.compareTo(b.id);
+            }
+
+            return rc;
+        }
+    };
+
+    // Gap queries filter (and order, oldest first) on start time only, which is what coverage
+    // is kept in.  An end-time bound would leave out events that start inside the gap but end
+    // after it.
+    private static class PendingQuery
+    {
+        long startedOnOrAfter;
+        long coversTo;
+        int maxCount;
+        long issuedMs;
+    }
+
+    private static class GroupTimeline
+    {
+        HashMap<String, Event> byId = new HashMap<>();
+        TreeSet<Event> byTime = new TreeSet<>(NEWEST_FIRST);
+        HashMap<String, TreeSet<Event>> byAlias = new HashMap<>();
+
+        // Ranges of start times [from, to] for which we have every event, merged and keyed by 'from'
+        TreeMap<Long, Long> coverage = new TreeMap<>();
+
+        PendingQuery pendingQuery = null;
+        long queryWindowMs = INITIAL_QUERY_WINDOW_MS;
+    }
+
+    private final HashMap<String, GroupTimeline> _groups = new HashMap<>();
+
+    private GroupTimeline getOrCreate(String groupId)
+    {
+        GroupTimeline rc = _groups.get(groupId);
+        if(rc == null)
+        {
+            rc = new GroupTimeline();
+            _groups.put(groupId, rc);
+        }
+
+        return rc;
+    }
+
+    public synchronized void clear()
+    {
+        _groups.clear();
+    }
+
+    // From now on we'll hear about every event on the group as it happens
+    public synchronized void onGroupCreated(String groupId)
+    {
+        addCoverage(getOrCreate(groupId), System.currentTimeMillis(), Long.MAX_VALUE);
+    }
+
+    // ... and now we won't, so close off the open-ended range
+    public synchronized void onGroupDeleted(String groupId)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt != null)
+        {
+            removeCoverage(gt, System.currentTimeMillis(), Long.MAX_VALUE);
+            gt.pendingQuery = null;
+        }
+    }
+
+    public synchronized void onEventStartedOrUpdated(String groupId, String eventJson)
+    {
+        try
+        {
+            upsert(getOrCreate(groupId), Event.fromJson(groupId, new JSONObject(eventJson)));
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot parse timeline event: " + e.getMessage());//NON-NLS
+        }
+    }
+
+    public synchronized void onEventEnded(String groupId, String eventJson)
+    {
+        onEventStartedOrUpdated(groupId, eventJson);
+    }
+
+    // Groomed events are gone from the engine too so our coverage still holds
+    public synchronized void onGroomed(String groupId, String eventListJson)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt == null || Utils.isEmptyString(eventListJson))
+        {
+            return;
+        }
+
+        try
+        {
+            JSONArray list;
+            if(eventListJson.trim().startsWith("["))
+            {
+                list = new JSONArray(eventListJson);
+            }
+            else
+            {
+                list = new JSONObject(eventListJson).optJSONArray(Engine.JsonFields.TimelineReport.events);
+            }
+
+            if(list != null)
+            {
+                for(int x = 0; x < list.length(); x++)
+                {
+                    Event e = Event.fromJson(groupId, list.getJSONObject(x));
+                    remove(gt, gt.byId.get(e.id));
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot parse groomed timeline events: " + e.getMessage());//NON-NLS
+        }
+    }
+
+    // Merges a timeline report.  If it answers the query we issued for the group we also
+    // record the range it covers.  Returns the number of events in the report, or -1 if it
+    // could not be parsed.
+    public synchronized int onReport(String groupId, String reportJson)
+    {
+        GroupTimeline gt = getOrCreate(groupId);
+        PendingQuery pq = getPendingQuery(gt);
+
+        int count = 0;
+        long newest = Long.MIN_VALUE;
+        boolean answersPending = (pq != null);
+
+        try
+        {
+            JSONObject root = new JSONObject(reportJson);
+            JSONArray list = root.optJSONArray(Engine.JsonFields.TimelineReport.events);
+            if(list != null)
+            {
+                for(int x = 0; x < list.length(); x++)
+                {
+                    Event e = Event.fromJson(groupId, list.getJSONObject(x));
+                    upsert(gt, e);
+
+                    // Our query's answer is oldest first and starts no earlier than we asked
+                    if(pq != null && (e.started < pq.startedOnOrAfter || e.started < newest))
+                    {
+                        answersPending = false;
+                    }
+
+                    newest = Math.max(newest, e.started);
+                    count++;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot parse timeline report: " + e.getMessage());//NON-NLS
+            return -1;
+        }
+
+        if(answersPending && count > pq.maxCount)
+        {
+            answersPending = false;
+        }
+
+        // Somebody else's report - the events are still good but it says nothing about our gap
+        if(!answersPending)
+        {
+            return count;
+        }
+
+        gt.pendingQuery = null;
+
+        if(count < pq.maxCount || newest > pq.coversTo)
+        {
+            // A short answer is everything that started from startedOnOrAfter onwards, and one
+            // that runs past the top of the gap has all of the gap in it.  Either way the
+            // window could have been wider.
+            addCoverage(gt, pq.startedOnOrAfter, pq.coversTo);
+            gt.queryWindowMs = Math.min(gt.queryWindowMs * 4, MAX_QUERY_WINDOW_MS);
+        }
+        else
+        {
+            // One that filled up inside the gap is everything up to (but not including, as
+            // there may be more that started in the same ms) the newest event in it
+            long to = (newest > pq.startedOnOrAfter) ? (newest - 1) : newest;
+            addCoverage(gt, pq.startedOnOrAfter, to);
+            gt.queryWindowMs = Math.max(gt.queryWindowMs / 2, MIN_QUERY_WINDOW_MS);
+        }
+
+        return count;
+    }
+
+    public synchronized void onReportFailed(String groupId)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt != null)
+        {
+            gt.pendingQuery = null;
+        }
+    }
+
+    public synchronized boolean isQueryPending(String groupId)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        return (gt != null && getPendingQuery(gt) != null);
+    }
+
+    private static PendingQuery getPendingQuery(GroupTimeline gt)
+    {
+        if(gt.pendingQuery != null && (System.currentTimeMillis() - gt.pendingQuery.issuedMs) > PENDING_QUERY_TIMEOUT_MS)
+        {
+            gt.pendingQuery = null;
+        }
+
+        return gt.pendingQuery;
+    }
+
+    public synchronized Event getEvent(String groupId, String eventId)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        return (gt == null) ? null : gt.byId.get(eventId);
+    }
+
+    // Up to maxCount events older than the cursor, newest first.  The cursor is the start time
+    // and id of the last event already seen (0 and null for "now") - events that started in
+    // the same ms as it but sort after it are still to come.
+    public synchronized List<Event> getPage(String groupId, long beforeMs, String beforeId, int maxCount)
+    {
+        ArrayList<Event> rc = new ArrayList<>();
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt != null)
+        {
+            collect(tailBefore(gt.byTime, beforeMs, beforeId), maxCount, rc);
+        }
+
+        return rc;
+    }
+
+    // Up to maxCount events that started in [fromMs, toMs], newest first
+    public synchronized List<Event> getRange(String groupId, long fromMs, long toMs, int maxCount)
+    {
+        ArrayList<Event> rc = new ArrayList<>();
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt != null)
+        {
+            for(Event e : tailBefore(gt.byTime, (toMs == Long.MAX_VALUE) ? 0 : toMs + 1, null))
+            {
+                if(e.started < fromMs || rc.size() >= maxCount)
+                {
+                    break;
+                }
+
+                rc.add(e);
+            }
+        }
+
+        return rc;
+    }
+
+    // Events whose talker alias contains text (case-insensitive) that are older than the
+    // cursor (as for getPage()), newest first.
+    public synchronized List<Event> search(String groupId, String text, long beforeMs, String beforeId, int maxCount)
+    {
+        ArrayList<Event> rc = new ArrayList<>();
+        GroupTimeline gt = _groups.get(groupId);
+        if(gt == null)
+        {
+            return rc;
+        }
+
+        if(Utils.isEmptyString(text))
+        {
+            collect(tailBefore(gt.byTime, beforeMs, beforeId), maxCount, rc);
+            return rc;
+        }
+
+        // There are far fewer talkers than events so match on the alias index and merge
+        String needle = text.toLowerCase();
+        TreeSet<Event> merged = new TreeSet<>(NEWEST_FIRST);
+        for(Map.Entry<String, TreeSet<Event>> entry : gt.byAlias.entrySet())
+        {
+            if(entry.getKey().contains(needle))
+            {
+                int taken = 0;
+                for(Event e : tailBefore(entry.getValue(), beforeMs, beforeId))
+                {
+                    if(taken++ >= maxCount)
+                    {
+                        break;
+                    }
+
+                    merged.add(e);
+                }
+            }
+        }
+
+        collect(merged, maxCount, rc);
+        return rc;
+    }
+
+    // Checks whether a page of maxCount events older than the cursor can be served from
+    // memory.  If not, queries the engine for the newest gap in that page and returns true;
+    // the answer arrives through onGroupTimelineReport.  Returns false if nothing was needed,
+    // a query for the group is already outstanding or asking again would get us nowhere.
+    public synchronized boolean fillGap(String groupId, long beforeMs, String beforeId, int maxCount)
+    {
+        GroupTimeline gt = getOrCreate(groupId);
+        if(getPendingQuery(gt) != null)
+        {
+            return false;
+        }
+
+        long to = gapTop(beforeMs, beforeId);
+
+        // How far back does this page reach with what we already have?
+        long from = 0;
+        int have = 0;
+        for(Event e : tailBefore(gt.byTime, beforeMs, beforeId))
+        {
+            if(++have == maxCount)
+            {
+                from = e.started;
+                break;
+            }
+        }
+
+        return queryGap(groupId, gt, newestGap(gt, from, to), maxCount);
+    }
+
+    // Like fillGap() but looks for the newest gap anywhere before beforeMs rather than just
+    // within the next page.  Used when a filtered view (such as a search) has run out of
+    // matches in memory and needs to dig further back.
+    public synchronized boolean fillNextGap(String groupId, long beforeMs, String beforeId, int maxCount)
+    {
+        GroupTimeline gt = getOrCreate(groupId);
+        if(getPendingQuery(gt) != null)
+        {
+            return false;
+        }
+
+        return queryGap(groupId, gt, newestGap(gt, 0, gapTop(beforeMs, beforeId)), maxCount);
+    }
+
+    // The newest start time that can hold events older than the cursor
+    private static long gapTop(long beforeMs, String beforeId)
+    {
+        if(beforeMs <= 0)
+        {
+            return Long.MAX_VALUE;
+        }
+
+        return (beforeId != null) ? beforeMs : (beforeMs - 1);
+    }
+
+    // Queries the engine for the newest gap in [fromMs, toMs].  Call repeatedly (after each
+    // report) until it returns false and isQueryPending() is false, at which point getRange()
+    // has everything the engine holds for that range.
+    public synchronized boolean fillRangeGap(String groupId, long fromMs, long toMs, int maxCount)
+    {
+        GroupTimeline gt = getOrCreate(groupId);
+        if(getPendingQuery(gt) != null)
+        {
+            return false;
+        }
+
+        return queryGap(groupId, gt, newestGap(gt, fromMs, toMs), maxCount);
+    }
+
+    // True if everything the engine holds for [fromMs, toMs] is in memory - which stops being
+    // the case once fetching more of it would evict what we already have
+    public synchronized boolean isRangeComplete(String groupId, long fromMs, long toMs)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        return (gt != null && newestGap(gt, fromMs, toMs) == null);
+    }
+
+    // The engine can't be asked for events that started before a time, only after one, so we
+    // ask for the oldest events starting a window below the top of the gap.  That way the
+    // part of the gap nearest the top - which is what the UI wants next - comes first.
+    private boolean queryGap(String groupId, GroupTimeline gt, long[] gap, int maxCount)
+    {
+        if(gap == null)
+        {
+            return false;
+        }
+
+        // Once we're full, anything older than all we hold would be evicted as soon as it
+        // arrived - and the gap it left would be asked for again, and again
+        if(gt.byTime.size() >= MAX_EVENTS_PER_GROUP && gap[1] < gt.byTime.last().started)
+        {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long top = Math.min(gap[1], now);
+
+        PendingQuery pq = new PendingQuery();
+        pq.startedOnOrAfter = Math.max(gap[0], top - gt.queryWindowMs);
+        pq.coversTo = gap[1];
+        pq.maxCount = maxCount;
+        pq.issuedMs = now;
+
+        try
+        {
+            JSONObject obj = new JSONObject();
+
+            obj.put(Engine.JsonFields.TimelineQuery.maxCount, pq.maxCount);
+            obj.put(Engine.JsonFields.TimelineQuery.mostRecentFirst, false);
+            obj.put(Engine.JsonFields.TimelineQuery.startedOnOrAfter, pq.startedOnOrAfter);
+
+            gt.pendingQuery = pq;
+            Globals.getEngageApplication().getEngine().engageQueryGroupTimeline(groupId, obj.toString());
+        }
+        catch (Exception e)
+        {
+            gt.pendingQuery = null;
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    // True if we've got every event for the group back to the start of its timeline
+    public synchronized boolean reachedBeginning(String groupId)
+    {
+        GroupTimeline gt = _groups.get(groupId);
+        return (gt != null && gt.coverage.containsKey(0L));
+    }
+
+    private static Iterable<Event> tailBefore(TreeSet<Event> set, long beforeMs, String beforeId)
+    {
+        if(beforeMs <= 0 || set.isEmpty())
+        {
+            return set;
+        }
+
+        // Anything sorting after this probe is older than the cursor.  Without an id that
+        // means it started strictly before beforeMs.
+        Event probe = new Event();
+        probe.started = beforeMs;
+        probe.id = (beforeId != null) ? beforeId : "\uffff";//NON-NLS
+        return set.tailSet(probe, false);
+    }
+
+    private static void collect(Iterable<Event> src, int maxCount, ArrayList<Event> dst)
+    {
+        for(Event e : src)
+        {
+            if(dst.size() >= maxCount)
+            {
+                break;
+            }
+
+            dst.add(e);
+        }
+    }
+
+    private void upsert(GroupTimeline gt, Event e)
+    {
+        remove(gt, gt.byId.get(e.id));
+
+        gt.byId.put(e.id, e);
+        gt.byTime.add(e);
+
+        String key = Utils.emptyAs(e.alias, "").toLowerCase();
+        TreeSet<Event> aliasSet = gt.byAlias.get(key);
+        if(aliasSet == null)
+        {
+            aliasSet = new TreeSet<>(NEWEST_FIRST);
+            gt.byAlias.put(key, aliasSet);
+        }
+        aliasSet.add(e);
+
+        // Keep memory bounded by dropping the oldest, and with them our claim to that range
+        while(gt.byTime.size() > MAX_EVENTS_PER_GROUP)
+        {
+            Event oldest = gt.byTime.last();
+            remove(gt, oldest);
+            removeCoverage(gt, 0, oldest.started);
+        }
+    }
+
+    private void remove(GroupTimeline gt, Event e)
+    {
+        if(e == null)
+        {
+            return;
+        }
+
+        gt.byId.remove(e.id);
+        gt.byTime.remove(e);
+
+        String key = Utils.emptyAs(e.alias, "").toLowerCase();
+        TreeSet<Event> aliasSet = gt.byAlias.get(key);
+        if(aliasSet != null)
+        {
+            aliasSet.remove(e);
+            if(aliasSet.isEmpty())
+            {
+                gt.byAlias.remove(key);
+            }
+        }
+    }
+
+    private static void addCoverage(GroupTimeline gt, long from, long to)
+    {
+        if(from > to)
+        {
+            return;
+        }
+
+        // Swallow anything that overlaps or touches [from, to]
+        Map.Entry<Long, Long> before = gt.coverage.floorEntry(from);
+        if(before != null && before.getValue() >= from - 1)
+        {
+            from = before.getKey();
+            to = Math.max(to, before.getValue());
+        }
+
+        Iterator<Map.Entry<Long, Long>> it = gt.coverage.tailMap(from, true).entrySet().iterator();
+        while(it.hasNext())
+        {
+            Map.Entry<Long, Long> entry = it.next();
+            if(to != Long.MAX_VALUE && entry.getKey() > to + 1)
+            {
+                break;
+            }
+
+            to = Math.max(to, entry.getValue());
+            it.remove();
+        }
+
+        gt.coverage.put(from, to);
+    }
+
+    private static void removeCoverage(GroupTimeline gt, long from, long to)
+    {
+        ArrayList<long[]> keep = new ArrayList<>();
+
+        Iterator<Map.Entry<Long, Long>> it = gt.coverage.entrySet().iterator();
+        while(it.hasNext())
+        {
+            Map.Entry<Long, Long> entry = it.next();
+            long f = entry.getKey();
+            long t = entry.getValue();
+
+            if(t < from || f > to)
+            {
+                continue;
+            }
+
+            it.remove();
+            if(f < from)
+            {
+                keep.add(new long[] {f, from - 1});
+            }
+            if(t > to)
+            {
+                keep.add(new long[] {to + 1, t});
+            }
+        }
+
+        for(long[] r : keep)
+        {
+            gt.coverage.put(r[0], r[1]);
+        }
+    }
+
+    // The newest sub-range of [from, to] that we don't hold, or null if we hold all of it
+    private static long[] newestGap(GroupTimeline gt, long from, long to)
+    {
+        long top = to;
+
+        while(top >= from)
+        {
+            Map.Entry<Long, Long> entry = gt.coverage.floorEntry(top);
+            if(entry == null || entry.getValue() < top)
+            {
+                // top is uncovered - the gap runs down to the end of the range below it
+                long bottom = (entry == null) ? from : Math.max(from, entry.getValue() + 1);
+                return new long[] {bottom, top};
+            }
+
+            if(entry.getKey() <= from)
+            {
+                return null;
+            }
+
+            top = entry.getKey() - 1;
+        }
+
+        return null;
+    }
+}
@@ -4,13 +4,13 @@ import android.content.Context;
 import android.os.Build;
 import android.util.Log;
 
-public class HardwareButtonManager implements IPushToTalkRequestHandler,
-                                              BluetoothManager.IBtNotification
+import org.json.JSONObject;
+
+public class HardwareButtonManager implements BluetoothManager.IBtNotification
 {
     private static final String TAG = HardwareButtonManager.class.getSimpleName();
 
     private Context _ctx;
-    private IPushToTalkRequestHandler _handler;
     private SonimBroadcastReceiver _sonimBroadcastReceiver = null;
 
     private String pttOn = "+PTT=P";//NON-NLS
@@ -19,11 +19,9 @@ public class HardwareButtonManager implements IPushToTalkRequestHandler,
     private BluetoothManager.IBtNotification _btNotification;
 
     HardwareButtonManager(Context ctx,
-                          IPushToTalkRequestHandler handler,
                           BluetoothManager.IBtNotification btNotification)
     {
         _ctx = ctx;
-        _handler = handler;
         _btNotification = btNotification;
     }
 
@@ -31,7 +29,7 @@ public class HardwareButtonManager implements IPushToTalkRequestHandler,
     {
         if(Build.MANUFACTURER.toUpperCase().contains("SONIM"))//NON-NLS
         {
-            _sonimBroadcastReceiver = new SonimBroadcastReceiver(_ctx, this);
+            _sonimBroadcastReceiver = new SonimBroadcastReceiver(_ctx, Globals.getPttInputPipeline().handlerFor(PttInputPipeline.Source.SONIM));
             _sonimBroadcastReceiver.start();
         }
 
@@ -41,7 +39,7 @@ public class HardwareButtonManager implements IPushToTalkRequestHandler,
             String btDeviceAddress = Globals.getSharedPreferences().getString(PreferenceKeys.USER_BT_DEVICE_ADDRESS, null);
             if (!Utils.isEmptyString(btDeviceAddress))
             {
-                _btm = new BluetoothManager(_ctx, this, this);
+                _btm = new BluetoothManager(_ctx, this, Globals.getPttInputPipeline().handlerFor(PttInputPipeline.Source.BLUETOOTH));
                 _btm.start(btDeviceAddress, pttOn, pttOff);
             }
         }
@@ -63,6 +61,11 @@ public class HardwareButtonManager implements IPushToTalkRequestHandler,
 
     }
 
+    public JSONObject getBluetoothStats()
+    {
+        return (_btm != null) ? _btm.toJson() : null;
+    }
+
     @Override
     public void onBluetoothDeviceConnected()
     {
@@ -77,21 +80,13 @@ public class HardwareButtonManager implements IPushToTalkRequestHandler,
     public void onBluetoothDeviceDisconnected()
     {
         Log.d(TAG, "onBluetoothDeviceDisconnected");//NON-NLS
+
+        // It's not going to tell us it let go now
+        Globals.getPttInputPipeline().release(PttInputPipeline.Source.BLUETOOTH);
+
         if(_btNotification != null)
         {
             _btNotification.onBluetoothDeviceDisconnected();
         }
     }
-
-    @Override
-    public void requestPttOn(int priority, int flags)
-    {
-        _handler.requestPttOn(priority, flags);
-    }
-
-    @Override
-    public void requestPttOff()
-    {
-        _handler.requestPttOff();
-    }
 }
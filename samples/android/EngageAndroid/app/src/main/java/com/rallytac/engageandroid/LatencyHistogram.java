@@ -0,0 +1,173 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import org.json.JSONObject;
+
+// Fixed-size log-linear histogram in the style of HdrHistogram.  Values below SUB_BUCKET_COUNT
+// are counted exactly; above that each power of two is split into SUB_BUCKET_COUNT / 2
+// buckets so any recorded value is reported to within ~3%.  Memory is a single long[]
+// regardless of how many values are recorded.
+//
+// Not thread-safe - callers synchronize.
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = (1 << SUB_BUCKET_BITS);
+    private static final int SUB_BUCKET_HALF_COUNT = (SUB_BUCKET_COUNT / 2);
+
+    // Anything bigger is counted in the top bucket
+    private static final int MAX_MAGNITUDE = 20;
+    public static final long MAX_TRACKABLE_VALUE = ((1L << MAX_MAGNITUDE) - 1);
+
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + ((MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT);
+
+    private final long[] _counts = new long[BUCKET_COUNT];
+    private long _totalCount = 0;
+    private long _min = Long.MAX_VALUE;
+    private long _max = 0;
+    private long _sum = 0;
+
+    private static int indexOf(long value)
+    {
+        if(value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        int sub = (int) (value >> shift);
+
+        return SUB_BUCKET_COUNT + ((magnitude - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT) + (sub - SUB_BUCKET_HALF_COUNT);
+    }
+
+    // The highest value that lands in the bucket at index
+    private static long highestValueAt(int index)
+    {
+        if(index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        int rel = index - SUB_BUCKET_COUNT;
+        int magnitude = SUB_BUCKET_BITS + (rel / SUB_BUCKET_HALF_COUNT);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        long sub = SUB_BUCKET_HALF_COUNT + (rel % SUB_BUCKET_HALF_COUNT);
+
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long value)
+    {
+        if(value < 0)
+        {
+            value = 0;
+        }
+        else if(value > MAX_TRACKABLE_VALUE)
+        {
+            value = MAX_TRACKABLE_VALUE;
+        }
+
+        _counts[indexOf(value)]++;
+        _totalCount++;
+        _sum += value;
+
+        if(value < _min)
+        {
+            _min = value;
+        }
+
+        if(value > _max)
+        {
+            _max = value;
+        }
+    }
+
+    public void reset()
+    {
+        for(int x = 0; x < _counts.length; x++)
+        {
+            _counts[x] = 0;
+        }
+
+        _totalCount = 0;
+        _min = Long.MAX_VALUE;
+        _max = 0;
+        _sum = 0;
+    }
+
+    public long getTotalCount()
+    {
+        return _totalCount;
+    }
+
+    public long getMin()
+    {
+        return (_totalCount == 0) ? 0 : _min;
+    }
+
+    public long getMax()
+    {
+        return _max;
+    }
+
+    public double getMean()
+    {
+        return (_totalCount == 0) ? 0.0 : ((double) _sum / _totalCount);
+    }
+
+    // The value at or below which percentile% of the recorded values fall
+    public long getValueAtPercentile(double percentile)
+    {
+        if(_totalCount == 0)
+        {
+            return 0;
+        }
+
+        long wanted = (long) Math.ceil((Math.min(percentile, 100.0) / 100.0) * _totalCount);
+        if(wanted < 1)
+        {
+            wanted = 1;
+        }
+
+        long seen = 0;
+        for(int x = 0; x < _counts.length; x++)
+        {
+            seen += _counts[x];
+            if(seen >= wanted)
+            {
+                return Math.min(highestValueAt(x), _max);
+            }
+        }
+
+        return _max;
+    }
+
+    public JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("count", _totalCount);//NON-NLS
+            rc.put("min", getMin());//NON-NLS
+            rc.put("max", getMax());//NON-NLS
+            rc.put("mean", getMean());//NON-NLS
+            rc.put("p50", getValueAtPercentile(50.0));//NON-NLS
+            rc.put("p90", getValueAtPercentile(90.0));//NON-NLS
+            rc.put("p95", getValueAtPercentile(95.0));//NON-NLS
+            rc.put("p99", getValueAtPercentile(99.0));//NON-NLS
+            rc.put("p999", getValueAtPercentile(99.9));//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
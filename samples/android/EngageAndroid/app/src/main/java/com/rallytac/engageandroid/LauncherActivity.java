@@ -34,8 +34,6 @@ import com.google.android.gms.common.GoogleApiAvailability;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import static com.rallytac.engageandroid.PowerSaverHelper.prepareIntentForWhiteListingOfBatteryOptimization;
 
@@ -55,7 +53,7 @@ public class LauncherActivity extends AppCompatActivity
     private static final int LAUNCH_STEP_CHECK_DONE = 4;
 
     private long _waitStartedAt = 0;
-    private Timer _waitForEngageOnlineTimer;
+    private static final String WAIT_FOR_ENGAGE_ONLINE_TASK = "waitForEngageOnline";//NON-NLS
     private int _permissionStateMachineStep = 0;
     private boolean _wasLauncherRunBefore;
 
@@ -585,29 +583,33 @@ public class LauncherActivity extends AppCompatActivity
         }
 
         _waitStartedAt = Utils.nowMs();
-        _waitForEngageOnlineTimer = new Timer();
-        _waitForEngageOnlineTimer.scheduleAtFixedRate(new TimerTask()
+        Globals.getAppScheduler().schedulePeriodic(WAIT_FOR_ENGAGE_ONLINE_TASK, tmrDelay, tmrPeriod, new AppScheduler.ITask()
         {
             @Override
-            public void run()
+            public boolean run()
             {
                 if(Globals.getEngageApplication().isServiceOnline())
                 {
-                    _waitForEngageOnlineTimer.cancel();
+                    Globals.getAppScheduler().cancel(WAIT_FOR_ENGAGE_ONLINE_TASK);
                     Globals.getEngageApplication().startEngine();
                     launchUiActivity();
                 }
                 else
                 {
+                    // Still waiting isn't a failure (backing off would only slow the launch
+                    // down) but giving up is
                     if(Utils.nowMs() - _waitStartedAt > Constants.LAUNCH_TIMEOUT_MS)
                     {
-                        _waitForEngageOnlineTimer.cancel();
+                        Globals.getAppScheduler().cancel(WAIT_FOR_ENGAGE_ONLINE_TASK);
                         showIssueAndFinish(getString(R.string.title_startup_error), getString(R.string.startup_cannot_connect_to_engine));
+                        return false;
                     }
 
                     Log.i(TAG, "waiting for engage service to come online");//NON-NLS
                 }
+
+                return true;
             }
-        }, tmrDelay, tmrPeriod);
+        });
     }
 }
@@ -0,0 +1,567 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.rallytac.engage.engine.Engine;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Talks to the online licensing system on a thread of its own so that neither startup nor
+// the UI ever waits on it.  Asking for an activation that's already being asked for doesn't
+// send a second request - everyone gets told when the first one comes back.  A server that
+// can't be reached or is struggling gets a couple more tries before the request is counted
+// as unreachable.
+//
+// The last activation code the server gave us is kept (against the entitlement, key and
+// device it was for) so that the same question asked again shortly afterwards is answered
+// without the network, and so that a license with no code yet still gets one if the server
+// can't be reached.  It's forgotten as soon as the server turns the license down, or the
+// key changes, so a revoked code is never handed back out.
+public class LicenseActivationClient
+{
+    private static String TAG = LicenseActivationClient.class.getSimpleName();
+
+    public interface ITaskCompletionNotification
+    {
+        // Called on the UI thread
+        void onLicenseActivationTaskComplete(int result, String activationCode, String resultMessage);
+    }
+
+    public static class Request
+    {
+        public final String url;
+        public final String entitlement;
+        public final String key;
+        public final String activationCode;
+        public final String deviceId;
+        public final String hValue;
+
+        public Request(String url, String entitlement, String key, String activationCode, String deviceId, String hValue)
+        {
+            this.url = url;
+            this.entitlement = entitlement;
+            this.key = key;
+            this.activationCode = Utils.emptyAs(activationCode, "");
+            this.deviceId = deviceId;
+            this.hValue = hValue;
+        }
+
+        // Which license on which device this is about
+        public String identity()
+        {
+            return sha256(entitlement + "\n" + key + "\n" + deviceId);//NON-NLS
+        }
+
+        private String inFlightKey()
+        {
+            return url + "\n" + identity() + "\n" + activationCode;//NON-NLS
+        }
+    }
+
+    private static class LastGood
+    {
+        public String identity;
+        public String sentActivationCode;
+        public String activationCode;
+        public long ts;
+
+        public static LastGood load(SharedPreferences sp)
+        {
+            String s = sp.getString(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD, null);
+            if(Utils.isEmptyString(s))
+            {
+                return null;
+            }
+
+            try
+            {
+                JSONObject obj = new JSONObject(s);
+                LastGood rc = new LastGood();
+                rc.identity = obj.getString("identity");//NON-NLS
+                rc.sentActivationCode = obj.optString("sentActivationCode", "");//NON-NLS
+                rc.activationCode = obj.getString("activationCode");//NON-NLS
+                rc.ts = obj.getLong("ts");//NON-NLS
+                return rc;
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        public static void clear(SharedPreferences sp)
+        {
+            sp.edit().remove(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD).apply();
+        }
+
+        public void save(SharedPreferences sp)
+        {
+            try
+            {
+                JSONObject obj = new JSONObject();
+                obj.put("identity", identity);//NON-NLS
+                obj.put("sentActivationCode", sentActivationCode);//NON-NLS
+                obj.put("activationCode", activationCode);//NON-NLS
+                obj.put("ts", ts);//NON-NLS
+                sp.edit().putString(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD, obj.toString()).apply();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class Outcome
+    {
+        public int result = -1;
+        public String activationCode = null;
+        public String message = null;
+
+        // Never got an answer from the server itself
+        public boolean unreachable = false;
+
+        // The licensing system itself gave its verdict (rather than something in the way)
+        public boolean answered = false;
+    }
+
+    private final SharedPreferences _sp;
+    private final Executor _callbacks;
+    private final ExecutorService _worker = Executors.newSingleThreadExecutor();
+    private final HashMap<String, ArrayList<ITaskCompletionNotification>> _inFlight = new HashMap<>();
+
+    private long _requests = 0;
+    private long _joined = 0;
+    private long _answeredFromLastGood = 0;
+    private long _networkAttempts = 0;
+    private long _failures = 0;
+    private long _lastElapsedMs = 0;
+
+    public LicenseActivationClient(SharedPreferences sp)
+    {
+        this(sp, new Executor()
+        {
+            private final Handler _uiHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable r)
+            {
+                _uiHandler.post(r);
+            }
+        });
+    }
+
+    // Tests have no UI thread to hear back on
+    LicenseActivationClient(SharedPreferences sp, Executor callbacks)
+    {
+        _sp = sp;
+        _callbacks = callbacks;
+    }
+
+    // For when the license is cleared or replaced - whatever we knew about it no longer applies
+    public void clearLastGood()
+    {
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                LastGood.clear(_sp);
+            }
+        });
+    }
+
+    // Returns immediately; the listener hears about it on the UI thread
+    public void activate(final Request req, ITaskCompletionNotification listener)
+    {
+        final String inFlightKey = req.inFlightKey();
+
+        synchronized (this)
+        {
+            _requests++;
+
+            ArrayList<ITaskCompletionNotification> waiting = _inFlight.get(inFlightKey);
+            if(waiting != null)
+            {
+                _joined++;
+                Log.d(TAG, "joining activation request already in progress");//NON-NLS
+                if(listener != null)
+                {
+                    waiting.add(listener);
+                }
+                return;
+            }
+
+            waiting = new ArrayList<>();
+            if(listener != null)
+            {
+                waiting.add(listener);
+            }
+            _inFlight.put(inFlightKey, waiting);
+        }
+
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Outcome outcome;
+
+                try
+                {
+                    outcome = process(req);
+                }
+                catch (Exception e)
+                {
+                    outcome = new Outcome();
+                    outcome.message = e.getMessage();
+                }
+
+                final ArrayList<ITaskCompletionNotification> listeners;
+                synchronized (LicenseActivationClient.this)
+                {
+                    listeners = _inFlight.remove(inFlightKey);
+                    if(outcome.result != 0)
+                    {
+                        _failures++;
+                    }
+                }
+
+                final Outcome done = outcome;
+                _callbacks.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for(ITaskCompletionNotification l : listeners)
+                        {
+                            l.onLicenseActivationTaskComplete(done.result, done.activationCode, done.message);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private Outcome process(Request req) throws Exception
+    {
+        validate(req);
+
+        String identity = req.identity();
+        LastGood lastGood = LastGood.load(_sp);
+        if(lastGood != null && !lastGood.identity.equals(identity))
+        {
+            lastGood = null;
+        }
+
+        // We asked this very recently and already know the answer
+        if(lastGood != null
+                && (req.activationCode.equals(lastGood.sentActivationCode) || req.activationCode.equals(lastGood.activationCode))
+                && (Utils.nowMs() - lastGood.ts) < Constants.LICENSE_ACTIVATION_REUSE_MS)
+        {
+            synchronized (this)
+            {
+                _answeredFromLastGood++;
+            }
+
+            Log.i(TAG, "answering from last activation response");//NON-NLS
+            Outcome rc = new Outcome();
+            rc.result = 0;
+            rc.activationCode = lastGood.activationCode;
+            return rc;
+        }
+
+        Outcome rc = post(req);
+
+        if(rc.result == 0 && !Utils.isEmptyString(rc.activationCode))
+        {
+            LastGood lg = new LastGood();
+            lg.identity = identity;
+            lg.sentActivationCode = req.activationCode;
+            lg.activationCode = rc.activationCode;
+            lg.ts = Utils.nowMs();
+            lg.save(_sp);
+        }
+        else if(rc.answered && rc.result != 0)
+        {
+            // The server has said no - whatever it told us before doesn't stand any more
+            if(lastGood != null)
+            {
+                Log.w(TAG, "activation refused (" + rc.message + ") - forgetting last activation response");//NON-NLS
+                LastGood.clear(_sp);
+            }
+        }
+        else if(rc.unreachable && lastGood != null && Utils.isEmptyString(req.activationCode))
+        {
+            // Couldn't get through and the license has no code of its own - the one the
+            // server last gave us for it is better than nothing.  If there's a code in use
+            // we leave it be: the engine has already decided what it thinks of it.
+            synchronized (this)
+            {
+                _answeredFromLastGood++;
+            }
+
+            Log.w(TAG, "server unreachable (" + rc.message + ") - using last activation response");//NON-NLS
+            rc = new Outcome();
+            rc.result = 0;
+            rc.activationCode = lastGood.activationCode;
+        }
+
+        return rc;
+    }
+
+    // Make sure we're at least sending over good information
+    void validate(Request req) throws Exception
+    {
+        LicenseDescriptor testDescriptor = LicenseDescriptor.fromJson(Globals.getEngageApplication()
+                .getEngine()
+                .engageGetLicenseDescriptor(req.entitlement,
+                        req.key,
+                        req.activationCode,
+                        Globals.getEngageApplication().getString(R.string.manufacturer_id)));
+
+        if(testDescriptor == null)
+        {
+            throw new Exception("cannot parse into testDescriptor");//NON-NLS
+        }
+
+        if(testDescriptor._status != Engine.LicensingStatusCode.ok && testDescriptor._status != Engine.LicensingStatusCode.requiresActivation)
+        {
+            throw new Exception("license type does not require activation");//NON-NLS
+        }
+    }
+
+    private Outcome post(Request req) throws Exception
+    {
+        byte[] body = buildRequestBody(req).getBytes(Utils.getEngageCharSet());
+        long started = Utils.nowMs();
+        Outcome rc = new Outcome();
+
+        for(int attempt = 1; attempt <= Constants.LICENSE_ACTIVATION_MAX_ATTEMPTS; attempt++)
+        {
+            synchronized (this)
+            {
+                _networkAttempts++;
+            }
+
+            try
+            {
+                int code = exchange(req.url, body, rc);
+                if(code == HttpURLConnection.HTTP_OK)
+                {
+                    rc.unreachable = false;
+                    break;
+                }
+
+                rc.result = -1;
+                rc.message = "HTTP failure " + code;//NON-NLS
+                rc.unreachable = Utils.isTransientHttpStatus(code);
+                if(!rc.unreachable)
+                {
+                    break;
+                }
+            }
+            catch (IOException e)
+            {
+                rc.result = -1;
+                rc.message = e.getLocalizedMessage();
+                rc.unreachable = true;
+            }
+
+            Log.w(TAG, "activation attempt " + attempt + " failed: " + rc.message);//NON-NLS
+
+            if(attempt < Constants.LICENSE_ACTIVATION_MAX_ATTEMPTS)
+            {
+                Thread.sleep(retryDelay(attempt));
+            }
+        }
+
+        synchronized (this)
+        {
+            _lastElapsedMs = Utils.nowMs() - started;
+        }
+
+        Log.d(TAG, "result=" + rc.result + ", message=" + rc.message + ", activationCode=" + rc.activationCode);//NON-NLS
+
+        return rc;
+    }
+
+    // Returns the HTTP response code, filling in rc if it was a 200
+    private static int exchange(String url, byte[] body, Outcome rc) throws Exception
+    {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+
+        try
+        {
+            con.setRequestMethod("POST");//NON-NLS
+            con.setUseCaches(false);
+            con.setAllowUserInteraction(false);
+            con.setConnectTimeout(Constants.LICENSE_ACTIVATION_CONNECT_TIMEOUT_MS);
+            con.setReadTimeout(Constants.LICENSE_ACTIVATION_READ_TIMEOUT_MS);
+            con.setDoOutput(true);
+            con.setFixedLengthStreamingMode(body.length);
+
+            OutputStream out = con.getOutputStream();
+            try
+            {
+                out.write(body);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            int code = con.getResponseCode();
+            if(code == HttpURLConnection.HTTP_OK)
+            {
+                JSONObject obj = new JSONObject(new String(readAll(con.getInputStream()), Utils.getEngageCharSet()));
+                Log.d(TAG, obj.toString());
+
+                rc.answered = true;
+                rc.result = obj.getInt("returnCode");//NON-NLS
+                rc.message = obj.optString("returnCodeDescr", null);//NON-NLS
+                rc.activationCode = obj.optString("activationCode", null);//NON-NLS
+            }
+
+            return code;
+        }
+        finally
+        {
+            con.disconnect();
+        }
+    }
+
+    String buildRequestBody(Request req) throws Exception
+    {
+        JSONObject deviceInfo;
+
+        try
+        {
+            deviceInfo = new JSONObject();
+
+            deviceInfo.put("manufacturer", Build.MANUFACTURER);//NON-NLS
+            deviceInfo.put("device", Build.DEVICE);//NON-NLS
+            deviceInfo.put("type", Build.TYPE);//NON-NLS
+            deviceInfo.put("board", Build.BOARD);//NON-NLS
+            deviceInfo.put("model", Build.MODEL);//NON-NLS
+            deviceInfo.put("cpuAbi", Build.CPU_ABI);//NON-NLS
+            deviceInfo.put("display", Build.DISPLAY);//NON-NLS
+            deviceInfo.put("hardware", Build.HARDWARE);//NON-NLS
+            deviceInfo.put("host", Build.HOST);//NON-NLS
+            deviceInfo.put("id", Build.ID);//NON-NLS
+            deviceInfo.put("user", Build.USER);//NON-NLS
+            deviceInfo.put("product", Build.PRODUCT);//NON-NLS
+            deviceInfo.put("tags", Build.TAGS);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            deviceInfo = null;
+        }
+
+        JSONObject obj = new JSONObject();
+
+        obj.put("deviceSerialNumber", req.deviceId);//NON-NLS
+
+        obj.put("entitlementKey", req.entitlement);//NON-NLS
+        obj.put("licenseId", req.key);//NON-NLS
+        obj.put("h", req.hValue);//NON-NLS
+
+        if(!Utils.isEmptyString(req.activationCode))
+        {
+            obj.put("activationCode", req.activationCode);//NON-NLS
+        }
+
+        if(deviceInfo != null)
+        {
+            obj.put("deviceInfo", deviceInfo);//NON-NLS
+        }
+
+        obj.put("appVersion", BuildConfig.VERSION_NAME);//NON-NLS
+        obj.put("appPackage", Globals.getContext().getPackageName());//NON-NLS
+
+        return obj.toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while((len = in.read(buffer)) > 0)
+            {
+                bos.write(buffer, 0, len);
+            }
+
+            return bos.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    long retryDelay(int attempt)
+    {
+        return Utils.retryDelayMs(attempt, Constants.LICENSE_ACTIVATION_RETRY_BASE_DELAY_MS, Constants.LICENSE_ACTIVATION_RETRY_MAX_DELAY_MS);
+    }
+
+    private static String sha256(String s)
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+            return Utils.bytesToHex(md.digest(s.getBytes(Utils.getEngageCharSet())));
+        }
+        catch (Exception e)
+        {
+            return s;
+        }
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("requests", _requests);//NON-NLS
+            rc.put("joined", _joined);//NON-NLS
+            rc.put("answeredFromLastGood", _answeredFromLastGood);//NON-NLS
+            rc.put("networkAttempts", _networkAttempts);//NON-NLS
+            rc.put("failures", _failures);//NON-NLS
+            rc.put("lastElapsedMs", _lastElapsedMs);//NON-NLS
+            rc.put("inFlight", _inFlight.size());//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
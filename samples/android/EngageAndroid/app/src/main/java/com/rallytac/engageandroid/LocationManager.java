@@ -8,6 +8,7 @@ package com.rallytac.engageandroid;
 import android.content.Context;
 import android.location.Location;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
@@ -19,10 +20,50 @@ import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+// Wraps the fused location provider.  With a fixed configuration every fix is passed on.
+// When adaptive, the request is tuned to how fast we're moving - slow and coarse when
+// stationary, quicker and finer on foot or in a vehicle - and fixes are only passed on
+// (and so only cause a PD to be sent) once we've moved far enough for the profile.  The
+// distance check is ours rather than the provider's: with a displacement filter on the
+// request no fixes arrive once we stop, so we'd never see that we've slowed down.
 public class LocationManager
 {
     private static String TAG = LocationManager.class.getSimpleName();
 
+    public enum Profile
+    {
+        //          interval    priority                                        PD distance
+        STATIONARY (60000,      LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 25.0f),
+        WALKING    (10000,      LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 10.0f),
+        VEHICLE    (5000,       LocationRequest.PRIORITY_HIGH_ACCURACY,           50.0f);
+
+        final int intervalMs;
+        final int priority;
+        final float pdDistanceMeters;
+
+        Profile(int intervalMs, int priority, float pdDistanceMeters)
+        {
+            this.intervalMs = intervalMs;
+            this.priority = priority;
+            this.pdDistanceMeters = pdDistanceMeters;
+        }
+    }
+
+    // Metres per second
+    private static final double STATIONARY_MAX_SPEED = 0.6;
+    private static final double WALKING_MAX_SPEED = 3.0;
+    private static final double SPEED_SMOOTHING = 0.4;
+
+    // Speeding up switches at once; slowing down has to be seen on this many fixes in a row
+    private static final int SLOWER_PROFILE_FIXES = 3;
+
+    // Even without moving, pass a fix on at least this often so our PD doesn't go stale
+    private static final long PD_MAX_AGE_MS = (5 * 60 * 1000);
+
     public interface ILocationUpdateNotifications
     {
         void onLocationUpdated(Location loc);
@@ -43,13 +84,27 @@ public class LocationManager
     private int _minIntervalMs;
     private int _intervalMs;
     private float _minDisplacement;
+    private boolean _adaptive;
+
+    private Profile _profile = Profile.WALKING;
+    private Profile _pendingProfile = null;
+    private int _pendingProfileFixes = 0;
+    private double _speed = -1;
+    private Location _lastFix = null;
+    private Location _lastForwarded = null;
+    private long _lastForwardedAt = 0;
+
+    private long _fixesReceived = 0;
+    private long _fixesForwarded = 0;
+    private long _profileChanges = 0;
 
     public LocationManager(Context ctx,
                            ILocationUpdateNotifications notificationSubscriber,
                            int priority,
                            int intervalMs,
                            int minIntervalMs,
-                           float minDisplacement)
+                           float minDisplacement,
+                           boolean adaptive)
     {
         _ctx = ctx;
         _notificationSubscriber = notificationSubscriber;
@@ -57,6 +112,7 @@ public class LocationManager
         _minIntervalMs = minIntervalMs;
         _intervalMs = intervalMs;
         _minDisplacement = minDisplacement;
+        _adaptive = adaptive;
     }
 
     public void start()
@@ -79,14 +135,7 @@ public class LocationManager
                 }
             };
 
-            _req = LocationRequest.create();
-            _req.setPriority(_priority);
-            _req.setInterval(_intervalMs);
-            _req.setFastestInterval(_minIntervalMs);
-            _req.setMaxWaitTime(_minIntervalMs);
-            _req.setSmallestDisplacement(_minDisplacement);
-
-            _fusedLocationProviderClient.requestLocationUpdates(_req, _cb, Looper.getMainLooper());
+            requestUpdates();
         }
         catch(SecurityException se)
         {
@@ -100,6 +149,29 @@ public class LocationManager
         }
     }
 
+    private void requestUpdates()
+    {
+        _req = LocationRequest.create();
+
+        if(_adaptive)
+        {
+            _req.setPriority(_profile.priority);
+            _req.setInterval(_profile.intervalMs);
+            _req.setFastestInterval(_profile.intervalMs / 2);
+            _req.setMaxWaitTime(_profile.intervalMs);
+        }
+        else
+        {
+            _req.setPriority(_priority);
+            _req.setInterval(_intervalMs);
+            _req.setFastestInterval(_minIntervalMs);
+            _req.setMaxWaitTime(_minIntervalMs);
+            _req.setSmallestDisplacement(_minDisplacement);
+        }
+
+        _fusedLocationProviderClient.requestLocationUpdates(_req, _cb, Looper.getMainLooper());
+    }
+
     public void stop()
     {
         if(_cb != null)
@@ -115,12 +187,167 @@ public class LocationManager
     {
         //Log.d(TAG, "processNewLocationData " + location.toString());
 
-        if(_notificationSubscriber != null)
+        _fixesReceived++;
+
+        boolean forward = true;
+        if(_adaptive)
+        {
+            boolean profileChanged = updateProfile(location);
+            long now = SystemClock.elapsedRealtime();
+
+            forward = (profileChanged
+                        || _lastForwarded == null
+                        || location.distanceTo(_lastForwarded) >= _profile.pdDistanceMeters
+                        || now - _lastForwardedAt >= PD_MAX_AGE_MS);
+
+            if(forward)
+            {
+                _lastForwarded = location;
+                _lastForwardedAt = now;
+            }
+        }
+
+        _lastFix = location;
+
+        if(forward)
         {
-            _notificationSubscriber.onLocationUpdated(location);
+            _fixesForwarded++;
+
+            if(_notificationSubscriber != null)
+            {
+                _notificationSubscriber.onLocationUpdated(location);
+            }
         }
     }
 
+    // Metres per second, or -1 if we can't tell
+    private double estimateSpeed(Location location)
+    {
+        if(location.hasSpeed())
+        {
+            return location.getSpeed();
+        }
+
+        if(_lastFix != null)
+        {
+            double secs = (location.getElapsedRealtimeNanos() - _lastFix.getElapsedRealtimeNanos()) / 1e9;
+            if(secs > 0)
+            {
+                // Movement within the fix's own accuracy is just noise
+                float distance = location.distanceTo(_lastFix);
+                if(location.hasAccuracy() && distance <= location.getAccuracy())
+                {
+                    return 0;
+                }
+
+                return (distance / secs);
+            }
+        }
+
+        return -1;
+    }
+
+    // Returns true if the profile changed (and the request was re-issued)
+    private boolean updateProfile(Location location)
+    {
+        double speed = estimateSpeed(location);
+        if(speed < 0)
+        {
+            return false;
+        }
+
+        if(_speed < 0)
+        {
+            _speed = speed;
+        }
+        else
+        {
+            _speed = (SPEED_SMOOTHING * speed) + ((1.0 - SPEED_SMOOTHING) * _speed);
+        }
+
+        Profile target;
+        if(_speed < STATIONARY_MAX_SPEED)
+        {
+            target = Profile.STATIONARY;
+        }
+        else if(_speed < WALKING_MAX_SPEED)
+        {
+            target = Profile.WALKING;
+        }
+        else
+        {
+            target = Profile.VEHICLE;
+        }
+
+        if(target == _profile)
+        {
+            _pendingProfile = null;
+            _pendingProfileFixes = 0;
+            return false;
+        }
+
+        if(target != _pendingProfile)
+        {
+            _pendingProfile = target;
+            _pendingProfileFixes = 0;
+        }
+
+        _pendingProfileFixes++;
+
+        boolean faster = (target.intervalMs < _profile.intervalMs);
+        if(!faster && _pendingProfileFixes < SLOWER_PROFILE_FIXES)
+        {
+            return false;
+        }
+
+        Log.i(TAG, "location profile " + _profile.name() + " -> " + target.name() + " at " + String.format(Locale.ENGLISH, "%.1f", _speed) + " m/s");//NON-NLS
+
+        _profile = target;
+        _pendingProfile = null;
+        _pendingProfileFixes = 0;
+        _profileChanges++;
+
+        if(_cb != null && _fusedLocationProviderClient != null)
+        {
+            try
+            {
+                _fusedLocationProviderClient.removeLocationUpdates(_cb);
+                requestUpdates();
+            }
+            catch(SecurityException se)
+            {
+                se.printStackTrace();
+            }
+        }
+
+        return true;
+    }
+
+    public JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("adaptive", _adaptive);//NON-NLS
+            if(_adaptive)
+            {
+                rc.put("profile", _profile.name());//NON-NLS
+                rc.put("speed", _speed);//NON-NLS
+                rc.put("profileChanges", _profileChanges);//NON-NLS
+            }
+
+            rc.put("fixesReceived", _fixesReceived);//NON-NLS
+            rc.put("fixesForwarded", _fixesForwarded);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+
     public void requestLastKnownLocation()
     {
         try
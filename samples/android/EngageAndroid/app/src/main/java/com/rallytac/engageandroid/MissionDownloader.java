@@ -0,0 +1,501 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+// Fetches a mission over HTTP for when the link is poor.  The body is streamed to a
+// partial file as it arrives so that a dropped connection carries on from where it got to
+// (with a Range request, checked against the ETag or Last-Modified of what we already have)
+// rather than starting again.  Servers may send it gzip'd.  The last complete copy of each
+// URL is kept, and asked about with If-None-Match/If-Modified-Since, so a mission that
+// hasn't changed isn't transferred again.
+//
+// A body only becomes our copy once we know it's all there - from Content-Length or
+// Content-Range where the server sends them, otherwise by gzip'd bodies decoding to the end.
+// A dropped connection or a transient status means waiting a while and resuming; the next
+// try picks up from the partial file.
+//
+// download() waits on the network for as long as all of that takes - never call it on the
+// UI thread.
+public class MissionDownloader
+{
+    private static String TAG = MissionDownloader.class.getSimpleName();
+
+    private static final String CACHE_DIR_NAME = "mission-downloads";//NON-NLS
+    private static final int IO_BUFFER_SIZE = (16 * 1024);
+
+    public static class Result
+    {
+        public int responseCode = -1;
+        public String errorMsg = null;
+        public byte[] data = null;
+
+        // Unchanged since last time - data is our copy
+        public boolean notModified = false;
+
+        // Picked up from a partial download
+        public boolean resumed = false;
+
+        public int attempts = 0;
+        public long bytesTransferred = 0;
+        public long elapsedMs = 0;
+
+        public boolean isOk()
+        {
+            return (data != null);
+        }
+
+        public long getBytesPerSecond()
+        {
+            return (elapsedMs > 0) ? ((bytesTransferred * 1000) / elapsedMs) : 0;
+        }
+    }
+
+    // What the server told us about a body we have (or part of)
+    private static class Validators
+    {
+        public String etag = null;
+        public String lastModified = null;
+        public String contentEncoding = null;
+
+        public boolean canValidate()
+        {
+            return (!Utils.isEmptyString(etag) || !Utils.isEmptyString(lastModified));
+        }
+
+        public static Validators fromConnection(HttpURLConnection con)
+        {
+            Validators rc = new Validators();
+            rc.etag = con.getHeaderField("ETag");//NON-NLS
+            rc.lastModified = con.getHeaderField("Last-Modified");//NON-NLS
+            rc.contentEncoding = con.getHeaderField("Content-Encoding");//NON-NLS
+            return rc;
+        }
+
+        public static Validators load(File fd)
+        {
+            if(!fd.exists())
+            {
+                return null;
+            }
+
+            try
+            {
+                JSONObject obj = new JSONObject(new String(readAll(fd), Utils.getEngageCharSet()));
+                Validators rc = new Validators();
+                rc.etag = obj.optString("etag", null);//NON-NLS
+                rc.lastModified = obj.optString("lastModified", null);//NON-NLS
+                rc.contentEncoding = obj.optString("contentEncoding", null);//NON-NLS
+                return rc;
+            }
+            catch (Exception e)
+            {
+                fd.delete();
+                return null;
+            }
+        }
+
+        public void save(File fd) throws Exception
+        {
+            JSONObject obj = new JSONObject();
+            obj.put("etag", etag);//NON-NLS
+            obj.put("lastModified", lastModified);//NON-NLS
+            obj.put("contentEncoding", contentEncoding);//NON-NLS
+
+            FileOutputStream fos = new FileOutputStream(fd);
+            fos.write(obj.toString().getBytes(Utils.getEngageCharSet()));
+            fos.close();
+        }
+    }
+
+    private final File _dir;
+    private final long _retryDelayMs;
+
+    public MissionDownloader(File cacheDir)
+    {
+        this(cacheDir, Constants.MISSION_DOWNLOAD_RETRY_DELAY_MS);
+    }
+
+    // Tests don't want to wait around between attempts
+    MissionDownloader(File cacheDir, long retryDelayMs)
+    {
+        _retryDelayMs = retryDelayMs;
+        _dir = new File(cacheDir, CACHE_DIR_NAME);
+        if(!_dir.exists())
+        {
+            _dir.mkdirs();
+        }
+    }
+
+    public Result download(String url)
+    {
+        Result rc = new Result();
+        long started = Utils.nowMs();
+
+        for(int attempt = 1; attempt <= Constants.MISSION_DOWNLOAD_MAX_ATTEMPTS; attempt++)
+        {
+            rc.attempts = attempt;
+
+            try
+            {
+                if(attemptDownload(url, rc))
+                {
+                    break;
+                }
+            }
+            catch (IOException e)
+            {
+                rc.responseCode = -1;
+                rc.errorMsg = "Exception: " + e.getMessage();//NON-NLS
+                Log.w(TAG, "attempt " + attempt + " failed: " + e.getMessage());//NON-NLS
+            }
+            catch (Exception e)
+            {
+                rc.responseCode = -1;
+                rc.errorMsg = "Exception: " + e.getMessage();//NON-NLS
+                break;
+            }
+
+            if(attempt < Constants.MISSION_DOWNLOAD_MAX_ATTEMPTS)
+            {
+                try
+                {
+                    Thread.sleep(Utils.retryDelayMs(attempt, _retryDelayMs, Constants.MISSION_DOWNLOAD_RETRY_MAX_DELAY_MS));
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+            }
+        }
+
+        rc.elapsedMs = Utils.nowMs() - started;
+
+        Log.i(TAG, String.format(Locale.ENGLISH, "download %s: code=%d attempts=%d resumed=%b notModified=%b bytes=%d in %dms (%d B/s)",//NON-NLS
+                (rc.isOk() ? "ok" : "failed"), rc.responseCode, rc.attempts, rc.resumed, rc.notModified,//NON-NLS
+                rc.bytesTransferred, rc.elapsedMs, rc.getBytesPerSecond()));
+
+        return rc;
+    }
+
+    // Returns true when there's nothing more to be done - whether that's because we have the
+    // mission or because the server has said no.  IOExceptions are worth another go.
+    private boolean attemptDownload(String url, Result rc) throws Exception
+    {
+        String key = keyFor(url);
+        File body = new File(_dir, key + ".body");//NON-NLS
+        File bodyValidators = new File(_dir, key + ".meta");//NON-NLS
+        File part = new File(_dir, key + ".part");//NON-NLS
+        File partValidators = new File(_dir, key + ".partmeta");//NON-NLS
+
+        Validators cached = (body.exists() ? Validators.load(bodyValidators) : null);
+        Validators partial = (part.exists() ? Validators.load(partValidators) : null);
+
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+
+        try
+        {
+            con.setDoInput(true);
+            con.setRequestMethod("GET");//NON-NLS
+            con.setConnectTimeout(Constants.MISSION_DOWNLOAD_CONNECT_TIMEOUT_MS);
+            con.setReadTimeout(Constants.MISSION_DOWNLOAD_READ_TIMEOUT_MS);
+            con.setInstanceFollowRedirects(true);
+
+            // Asking for it ourselves means we get the encoded bytes, which is what ranges
+            // are counted in, and decode them once we have the lot
+            con.setRequestProperty("Accept-Encoding", "gzip");//NON-NLS
+
+            if(cached != null && cached.canValidate())
+            {
+                if(!Utils.isEmptyString(cached.etag))
+                {
+                    con.setRequestProperty("If-None-Match", cached.etag);//NON-NLS
+                }
+                if(!Utils.isEmptyString(cached.lastModified))
+                {
+                    con.setRequestProperty("If-Modified-Since", cached.lastModified);//NON-NLS
+                }
+            }
+
+            long have = 0;
+            if(partial != null && partial.canValidate() && part.length() > 0)
+            {
+                have = part.length();
+                con.setRequestProperty("Range", "bytes=" + have + "-");//NON-NLS
+                con.setRequestProperty("If-Range", !Utils.isEmptyString(partial.etag) ? partial.etag : partial.lastModified);//NON-NLS
+            }
+
+            con.connect();
+
+            int code = con.getResponseCode();
+            rc.responseCode = code;
+
+            if(code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+            {
+                rc.data = decode(body, cached.contentEncoding);
+                rc.notModified = true;
+                body.setLastModified(System.currentTimeMillis());
+                return true;
+            }
+
+            long expected = con.getContentLength();
+            long total;
+            boolean append;
+
+            if(code == HttpURLConnection.HTTP_PARTIAL && have > 0)
+            {
+                long[] range = parseContentRange(con.getHeaderField("Content-Range"));//NON-NLS
+                if(range == null || range[0] != have)
+                {
+                    part.delete();
+                    partValidators.delete();
+                    throw new IOException("unexpected range " + con.getHeaderField("Content-Range"));//NON-NLS
+                }
+
+                append = true;
+                total = range[1];
+                rc.resumed = true;
+            }
+            else if(code == HttpURLConnection.HTTP_OK)
+            {
+                append = false;
+                total = expected;
+                partial = Validators.fromConnection(con);
+                partial.save(partValidators);
+            }
+            else if(code == 416)
+            {
+                // Our partial copy doesn't fit what's there now
+                part.delete();
+                partValidators.delete();
+                throw new IOException("range not satisfiable");//NON-NLS
+            }
+            else if(Utils.isTransientHttpStatus(code))
+            {
+                throw new IOException("HTTP " + code);//NON-NLS
+            }
+            else
+            {
+                rc.errorMsg = "HTTP " + code + " " + con.getResponseMessage();//NON-NLS
+                return true;
+            }
+
+            long received = 0;
+
+            InputStream in = con.getInputStream();
+            FileOutputStream out = new FileOutputStream(part, append);
+
+            try
+            {
+                byte[] buffer = new byte[IO_BUFFER_SIZE];
+                int len;
+                while((len = in.read(buffer)) > 0)
+                {
+                    out.write(buffer, 0, len);
+                    received += len;
+                    rc.bytesTransferred += len;
+                }
+            }
+            finally
+            {
+                out.close();
+                in.close();
+            }
+
+            if(expected >= 0 && received < expected)
+            {
+                throw new IOException("connection dropped after " + received + " of " + expected + " bytes");//NON-NLS
+            }
+
+            if(total >= 0 && part.length() != total)
+            {
+                throw new IOException("have " + part.length() + " of " + total + " bytes");//NON-NLS
+            }
+
+            // With no length to go on the connection closing looks just like the end of the
+            // body; a gzip'd body that doesn't decode to the end is one that got cut short.
+            // With a length, one that doesn't decode is no good to resume either.
+            byte[] data;
+            try
+            {
+                data = decode(part, partial.contentEncoding);
+            }
+            catch (IOException e)
+            {
+                if(total >= 0)
+                {
+                    part.delete();
+                    partValidators.delete();
+                    throw new Exception("cannot decode downloaded mission: " + e.getMessage());//NON-NLS
+                }
+
+                throw new IOException("incomplete after " + part.length() + " bytes: " + e.getMessage());//NON-NLS
+            }
+
+            // Complete - it becomes our copy for next time
+            body.delete();
+            bodyValidators.delete();
+            if(!part.renameTo(body) || !partValidators.renameTo(bodyValidators))
+            {
+                throw new Exception("cannot keep downloaded mission");//NON-NLS
+            }
+
+            rc.data = data;
+            trimCache();
+
+            return true;
+        }
+        finally
+        {
+            con.disconnect();
+        }
+    }
+
+    // "bytes first-last/total" as { first, total } - total being -1 if the server doesn't
+    // know it - or null if it isn't that
+    private static long[] parseContentRange(String value)
+    {
+        if(value == null || !value.startsWith("bytes "))//NON-NLS
+        {
+            return null;
+        }
+
+        try
+        {
+            int dash = value.indexOf('-');
+            int slash = value.indexOf('/');
+            if(dash < 0 || slash < dash)
+            {
+                return null;
+            }
+
+            long first = Long.parseLong(value.substring(6, dash).trim());
+            String total = value.substring(slash + 1).trim();
+
+            return new long[] { first, "*".equals(total) ? -1 : Long.parseLong(total) };//NON-NLS
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private static byte[] decode(File fd, String contentEncoding) throws Exception
+    {
+        InputStream in = new FileInputStream(fd);
+        if("gzip".equalsIgnoreCase(contentEncoding))//NON-NLS
+        {
+            in = new GZIPInputStream(in, IO_BUFFER_SIZE);
+        }
+
+        try
+        {
+            return readAll(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(File fd) throws Exception
+    {
+        InputStream in = new FileInputStream(fd);
+        try
+        {
+            return readAll(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[IO_BUFFER_SIZE];
+        int len;
+        while((len = in.read(buffer)) > 0)
+        {
+            bos.write(buffer, 0, len);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static String keyFor(String url) throws Exception
+    {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+        return Utils.bytesToHex(md.digest(url.getBytes(Utils.getEngageCharSet())));
+    }
+
+    private void trimCache()
+    {
+        File[] files = _dir.listFiles();
+        if(files == null)
+        {
+            return;
+        }
+
+        int bodies = 0;
+        for(File f : files)
+        {
+            if(f.getName().endsWith(".body"))//NON-NLS
+            {
+                bodies++;
+            }
+        }
+
+        if(bodies <= Constants.MISSION_DOWNLOAD_MAX_CACHED)
+        {
+            return;
+        }
+
+        // Drop the least-recently used (and their validators) until we're within bounds
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for(File f : files)
+        {
+            if(bodies <= Constants.MISSION_DOWNLOAD_MAX_CACHED)
+            {
+                break;
+            }
+
+            String name = f.getName();
+            if(name.endsWith(".body"))//NON-NLS
+            {
+                f.delete();
+                new File(_dir, name.substring(0, name.length() - 5) + ".meta").delete();//NON-NLS
+                bodies--;
+            }
+        }
+    }
+}
@@ -9,6 +9,8 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -21,6 +23,7 @@ import android.text.SpannableString;
 import android.text.method.LinkMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,7 +35,10 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import org.json.JSONObject;
+
 import java.util.ArrayList;
+import java.util.Locale;
 
 public class MissionListActivity extends AppCompatActivity
 {
@@ -45,6 +51,7 @@ public class MissionListActivity extends AppCompatActivity
     private Intent _resultIntent = new Intent();
     private String _activeMissionId;
     private String _activeMissionJson;
+    private PublishMissionsTask _publishTask = null;
 
     private class MissionListAdapter extends ArrayAdapter<DatabaseMission>
     {
@@ -196,6 +203,20 @@ public class MissionListActivity extends AppCompatActivity
         }
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu)
+    {
+        getMenuInflater().inflate(R.menu.mission_list_activity_menu, menu);
+
+        // Nowhere to publish to
+        if(Utils.isEmptyString(getString(R.string.mission_hub_address)))
+        {
+            menu.findItem(R.id.action_publish_all_missions).setVisible(false);
+        }
+
+        return true;
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item)
     {
@@ -205,9 +226,110 @@ public class MissionListActivity extends AppCompatActivity
             onBackPressed();
             return true;
         }
+        else if (id == R.id.action_publish_all_missions)
+        {
+            confirmPublishAllMissions();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    private void confirmPublishAllMissions()
+    {
+        if(_publishTask != null)
+        {
+            Toast.makeText(this, R.string.publish_missions_in_progress, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final String urlBase = getString(R.string.mission_hub_address);
+
+        AlertDialog dlg = new AlertDialog.Builder(this)
+                .setTitle(getString(R.string.publish_all_missions))
+                .setMessage(String.format(Locale.ENGLISH, getString(R.string.publish_all_missions_confirm_fmt), _database._missions.size(), urlBase))
+                .setCancelable(false)
+                .setPositiveButton(R.string.button_yes, new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i)
+                    {
+                        publishAllMissions(urlBase);
+                    }
+                }).setNegativeButton(R.string.button_cancel, new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i)
+                    {
+                    }
+                }).create();
+
+        dlg.show();
+    }
+
+    // Same file names and content as sharing a single mission with upload turned on
+    private void publishAllMissions(String urlBase)
+    {
+        ArrayList<MissionPublisher.Item> items = new ArrayList<>();
+
+        for(DatabaseMission mission : _database._missions)
+        {
+            ActiveConfiguration ac = ActiveConfiguration.loadFromDatabaseMission(mission);
+            JSONObject template = (ac == null ? null : ac.makeTemplate());
+            if(template != null)
+            {
+                items.add(new MissionPublisher.Item(mission._id + ".json", template.toString()));//NON-NLS
+            }
+        }
+
+        if(items.isEmpty())
+        {
+            return;
+        }
+
+        Globals.getEngageApplication().logEvent(Analytics.MISSION_UPLOAD_REQUESTED);
+
+        _publishTask = new PublishMissionsTask(new Handler()
+        {
+            @Override
+            public void handleMessage(Message msg)
+            {
+                ActionBar actionBar = getSupportActionBar();
+
+                if(msg.what == PublishMissionsTask.MSG_PROGRESS)
+                {
+                    if(actionBar != null)
+                    {
+                        actionBar.setSubtitle(String.format(Locale.ENGLISH, getString(R.string.publish_missions_progress_fmt), msg.arg1, msg.arg2));
+                    }
+                }
+                else if(msg.what == PublishMissionsTask.MSG_DONE)
+                {
+                    _publishTask = null;
+                    if(actionBar != null)
+                    {
+                        actionBar.setSubtitle(null);
+                    }
+
+                    String failure = msg.getData().getString(PublishMissionsTask.BUNDLE_RESULT_MSG);
+                    if(Utils.isEmptyString(failure))
+                    {
+                        Toast.makeText(MissionListActivity.this,
+                                String.format(Locale.ENGLISH, getString(R.string.publish_missions_done_fmt), msg.arg1, msg.arg2),
+                                Toast.LENGTH_LONG).show();
+                    }
+                    else
+                    {
+                        Toast.makeText(MissionListActivity.this,
+                                String.format(Locale.ENGLISH, getString(R.string.publish_missions_failed_fmt), msg.arg1, msg.arg2, failure),
+                                Toast.LENGTH_LONG).show();
+                    }
+                }
+            }
+        }, urlBase, items, Utils.boolOpt(getString(R.string.opt_mission_hub_gzip_uploads), false));
+
+        _publishTask.execute();
+    }
+
     private void activateMission(String id)
     {
         _resultIntent.putExtra(Constants.MISSION_ACTIVATED_ID, id);
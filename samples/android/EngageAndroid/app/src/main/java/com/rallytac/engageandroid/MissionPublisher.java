@@ -0,0 +1,238 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+// Puts a batch of missions on the mission hub, a few at a time.  Each mission is sent with a
+// fixed length, and each response is read to the end, so that connections go back into
+// HttpURLConnection's keep-alive pool and get reused for the next upload.  Missions can be
+// gzip'd on the way up but only for a hub that hands them back with their Content-Encoding
+// - a plain file store keeps the compressed bytes and whoever fetches them gets those.
+// A mission that fails on the network or with a transient status is sent again after a
+// backoff; any other answer from the hub is final for that mission.
+//
+// upload() doesn't return until the whole batch is done, so keep it off the UI thread.
+public class MissionPublisher
+{
+    private static String TAG = MissionPublisher.class.getSimpleName();
+
+    public static class Item
+    {
+        public final String fileName;
+        public final String content;
+
+        public int responseCode = -1;
+        public String errorMsg = null;
+        public int attempts = 0;
+        public long bytesSent = 0;
+
+        public Item(String fileName, String content)
+        {
+            this.fileName = fileName;
+            this.content = content;
+        }
+
+        public boolean isOk()
+        {
+            return (responseCode >= 200 && responseCode <= 299);
+        }
+    }
+
+    public interface IProgressListener
+    {
+        // Called on the uploading thread as each mission finishes, successfully or not
+        void onMissionPublished(Item item, int done, int total);
+    }
+
+    private final int _parallelTransfers;
+    private final boolean _compress;
+
+    public MissionPublisher(int parallelTransfers, boolean compress)
+    {
+        _parallelTransfers = Math.max(parallelTransfers, 1);
+        _compress = compress;
+    }
+
+    // Returns the number published
+    public int publish(final String urlBase, final List<Item> items, final IProgressListener listener) throws InterruptedException
+    {
+        if(items.isEmpty())
+        {
+            return 0;
+        }
+
+        final int total = items.size();
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicInteger published = new AtomicInteger(0);
+        long started = Utils.nowMs();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(_parallelTransfers, total));
+
+        for(final Item item : items)
+        {
+            pool.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    upload(urlBase, item);
+
+                    if(item.isOk())
+                    {
+                        published.incrementAndGet();
+                    }
+
+                    if(listener != null)
+                    {
+                        listener.onMissionPublished(item, done.incrementAndGet(), total);
+                    }
+                }
+            });
+        }
+
+        pool.shutdown();
+        if(!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS))
+        {
+            pool.shutdownNow();
+        }
+
+        Log.i(TAG, "published " + published.get() + " of " + total + " in " + (Utils.nowMs() - started) + "ms");//NON-NLS
+
+        return published.get();
+    }
+
+    private void upload(String urlBase, Item item)
+    {
+        byte[] body;
+        try
+        {
+            body = item.content.getBytes(Utils.getEngageCharSet());
+            if(_compress)
+            {
+                body = gzip(body);
+            }
+        }
+        catch (Exception e)
+        {
+            item.errorMsg = "Exception: " + e.getMessage();//NON-NLS
+            return;
+        }
+
+        String url = urlBase + "/" + item.fileName;//NON-NLS
+
+        for(int attempt = 1; attempt <= Constants.MISSION_UPLOAD_MAX_ATTEMPTS; attempt++)
+        {
+            item.attempts = attempt;
+
+            try
+            {
+                item.responseCode = put(url, body);
+                item.bytesSent += body.length;
+
+                if(item.isOk())
+                {
+                    item.errorMsg = null;
+                    return;
+                }
+
+                item.errorMsg = "HTTP " + item.responseCode;//NON-NLS
+                if(!Utils.isTransientHttpStatus(item.responseCode))
+                {
+                    return;
+                }
+            }
+            catch (IOException e)
+            {
+                item.responseCode = -1;
+                item.errorMsg = "Exception: " + e.getMessage();//NON-NLS
+            }
+
+            Log.w(TAG, item.fileName + " attempt " + attempt + " failed: " + item.errorMsg);//NON-NLS
+
+            if(attempt < Constants.MISSION_UPLOAD_MAX_ATTEMPTS)
+            {
+                try
+                {
+                    Thread.sleep(Utils.retryDelayMs(attempt, Constants.MISSION_UPLOAD_RETRY_BASE_DELAY_MS, Constants.MISSION_UPLOAD_RETRY_MAX_DELAY_MS));
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int put(String url, byte[] body) throws IOException
+    {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setDoInput(true);
+        con.setDoOutput(true);
+        con.setRequestMethod("PUT");//NON-NLS
+        con.setConnectTimeout(Constants.MISSION_UPLOAD_CONNECT_TIMEOUT_MS);
+        con.setReadTimeout(Constants.MISSION_UPLOAD_READ_TIMEOUT_MS);
+        con.setFixedLengthStreamingMode(body.length);
+        con.setRequestProperty("Content-Type", "application/json");//NON-NLS
+        if(_compress)
+        {
+            con.setRequestProperty("Content-Encoding", "gzip");//NON-NLS
+        }
+
+        OutputStream out = con.getOutputStream();
+        try
+        {
+            out.write(body);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        int rc = con.getResponseCode();
+
+        // Drain whatever came back rather than disconnecting so the connection can be reused
+        InputStream in = (rc >= 400 ? con.getErrorStream() : con.getInputStream());
+        if(in != null)
+        {
+            try
+            {
+                byte[] buffer = new byte[1024];
+                while(in.read(buffer) > 0)
+                {
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        return rc;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream(bos);
+        gz.write(data);
+        gz.close();
+        return bos.toByteArray();
+    }
+}
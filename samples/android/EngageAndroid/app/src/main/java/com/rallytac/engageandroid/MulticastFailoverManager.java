@@ -0,0 +1,341 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+// Decides, per group, whether a group that normally runs through the rallypoint should be
+// pinned to multicast for a while.  The engine's own failover still handles the first few
+// seconds of an outage; what it can't do is notice a rallypoint link that keeps dropping
+// or has gone bad, so it snaps back at the first reconnect and we flap.
+//
+// A group is pinned to multicast when its rallypoint link flaps, when the rallypoint's
+// round-trip quality stays poor, or when the link stays down past the engine's failover
+// threshold.  After a hold-down it's given back to the rallypoint; if it has to be pinned
+// again soon after, the hold-down doubles (up to a limit) so a marginal link settles on
+// multicast rather than bouncing.
+//
+// All of the timing is on elapsedRealtime - a wall clock step mustn't leave a group pinned
+// for hours or cut its hold-down short.
+public class MulticastFailoverManager
+{
+    private static String TAG = MulticastFailoverManager.class.getSimpleName();
+
+    private static final long FLAP_WINDOW_MS = 60000;
+    private static final int FLAP_DISCONNECTS = 3;
+    private static final int POOR_QUALITY_RATING = 25;
+    private static final long POOR_QUALITY_HOLD_MS = 15000;
+    private static final long QUALITY_STALE_MS = 20000;
+    private static final double QUALITY_SMOOTHING = 0.3;
+    private static final long MIN_PIN_MS = 30000;
+    private static final long MAX_PIN_MS = (10 * 60 * 1000);
+    private static final long STABLE_MS = (5 * 60 * 1000);
+    private static final int MAX_DECISIONS = 100;
+
+    public interface IRoutingListener
+    {
+        // Called from whichever thread delivered the input that led to the decision
+        void onGroupRoutingChanged(String groupId, boolean useMulticast, String reason);
+    }
+
+    public static class Decision
+    {
+        public long ts;
+        public String groupId;
+        public boolean toMulticast;
+        public String reason;
+    }
+
+    private static class GroupState
+    {
+        boolean pinned = false;
+        long pinnedUntil = 0;
+        long pinMs = MIN_PIN_MS;
+        long lastReleasedAt = 0;
+        boolean rpConnected = false;
+        long rpDownSince = 0;
+        LinkedList<Long> disconnects = new LinkedList<>();
+    }
+
+    private final HashMap<String, GroupState> _groups = new HashMap<>();
+    private final LinkedList<Decision> _decisions = new LinkedList<>();
+    private IRoutingListener _listener = null;
+    private boolean _enabled = false;
+    private long _rpDownHoldMs = 0;
+
+    private double _quality = -1;
+    private long _lastQualityReportAt = 0;
+    private long _poorQualitySince = 0;
+
+    public synchronized void setListener(IRoutingListener listener)
+    {
+        _listener = listener;
+    }
+
+    // Called when the groups are (re)created from the mission.  Decisions only apply when
+    // groups use a rallypoint and multicast failover is allowed; failoverSecs is the
+    // engine's own threshold, which we give a chance to work before stepping in.
+    public synchronized void reset(boolean enabled, int failoverSecs)
+    {
+        _groups.clear();
+        _enabled = enabled;
+        _rpDownHoldMs = (failoverSecs * 1000L * 2);
+        _quality = -1;
+        _lastQualityReportAt = 0;
+        _poorQualitySince = 0;
+    }
+
+    public synchronized boolean isPinnedToMulticast(String groupId)
+    {
+        GroupState gs = _groups.get(groupId);
+        return (_enabled && gs != null && gs.pinned);
+    }
+
+    private GroupState getOrCreate(String groupId)
+    {
+        GroupState rc = _groups.get(groupId);
+        if(rc == null)
+        {
+            rc = new GroupState();
+            _groups.put(groupId, rc);
+        }
+
+        return rc;
+    }
+
+    public synchronized void onRoundtripReport(long rtMs, long rtQualityRating)
+    {
+        long now = SystemClock.elapsedRealtime();
+
+        if(_quality < 0 || now - _lastQualityReportAt > QUALITY_STALE_MS)
+        {
+            _quality = rtQualityRating;
+        }
+        else
+        {
+            _quality = (QUALITY_SMOOTHING * rtQualityRating) + ((1.0 - QUALITY_SMOOTHING) * _quality);
+        }
+
+        _lastQualityReportAt = now;
+
+        if(_quality < POOR_QUALITY_RATING)
+        {
+            if(_poorQualitySince == 0)
+            {
+                _poorQualitySince = now;
+            }
+        }
+        else
+        {
+            _poorQualitySince = 0;
+        }
+
+        evaluate(now);
+    }
+
+    public synchronized void onGroupRpConnected(String groupId)
+    {
+        GroupState gs = getOrCreate(groupId);
+        gs.rpConnected = true;
+        gs.rpDownSince = 0;
+    }
+
+    public synchronized void onGroupRpDisconnected(String groupId)
+    {
+        long now = SystemClock.elapsedRealtime();
+        GroupState gs = getOrCreate(groupId);
+
+        if(gs.rpConnected)
+        {
+            gs.disconnects.add(now);
+        }
+
+        gs.rpConnected = false;
+        if(gs.rpDownSince == 0)
+        {
+            gs.rpDownSince = now;
+        }
+
+        evaluate(now);
+    }
+
+    // A newly joined group hasn't reached the rallypoint yet so it counts as down until
+    // it does
+    public synchronized void onGroupJoined(String groupId)
+    {
+        GroupState gs = getOrCreate(groupId);
+        gs.rpConnected = false;
+        gs.rpDownSince = SystemClock.elapsedRealtime();
+    }
+
+    // Left or deleted
+    public synchronized void onGroupLeft(String groupId)
+    {
+        // Keep the pin - the group is most likely being re-created because of it - but
+        // forget the link state which belonged to the old instance
+        GroupState gs = _groups.get(groupId);
+        if(gs != null)
+        {
+            gs.rpConnected = false;
+            gs.rpDownSince = 0;
+        }
+    }
+
+    // Called periodically so that time-based rules fire without waiting for another event
+    public synchronized void tick()
+    {
+        evaluate(SystemClock.elapsedRealtime());
+    }
+
+    private void evaluate(long now)
+    {
+        if(!_enabled)
+        {
+            return;
+        }
+
+        // A quality figure nobody has refreshed means nothing
+        boolean qualityIsPoor = (_poorQualitySince != 0
+                                    && now - _lastQualityReportAt <= QUALITY_STALE_MS
+                                    && now - _poorQualitySince >= POOR_QUALITY_HOLD_MS);
+
+        for(String groupId : new ArrayList<>(_groups.keySet()))
+        {
+            GroupState gs = _groups.get(groupId);
+
+            while(!gs.disconnects.isEmpty() && now - gs.disconnects.getFirst() > FLAP_WINDOW_MS)
+            {
+                gs.disconnects.removeFirst();
+            }
+
+            if(gs.pinned)
+            {
+                if(now >= gs.pinnedUntil)
+                {
+                    gs.pinned = false;
+                    gs.lastReleasedAt = now;
+                    gs.rpConnected = false;
+                    gs.rpDownSince = now;
+                    gs.disconnects.clear();
+                    decide(groupId, false, "hold-down of " + (gs.pinMs / 1000) + "s expired");//NON-NLS
+                }
+
+                continue;
+            }
+
+            // Stable on the rallypoint for long enough - forgive past trouble
+            if(gs.lastReleasedAt != 0 && now - gs.lastReleasedAt >= STABLE_MS && gs.rpConnected)
+            {
+                gs.pinMs = MIN_PIN_MS;
+                gs.lastReleasedAt = 0;
+            }
+
+            String reason = null;
+            if(gs.disconnects.size() >= FLAP_DISCONNECTS)
+            {
+                reason = gs.disconnects.size() + " rallypoint disconnects in " + (FLAP_WINDOW_MS / 1000) + "s";//NON-NLS
+            }
+            else if(qualityIsPoor && gs.rpConnected)
+            {
+                reason = "rallypoint quality " + (int) _quality + " for " + ((now - _poorQualitySince) / 1000) + "s";//NON-NLS
+            }
+            else if(!gs.rpConnected && gs.rpDownSince != 0 && now - gs.rpDownSince >= _rpDownHoldMs)
+            {
+                reason = "rallypoint down for " + ((now - gs.rpDownSince) / 1000) + "s";//NON-NLS
+            }
+
+            if(reason != null)
+            {
+                // Back in trouble soon after being released - hold off for longer this time
+                if(gs.lastReleasedAt != 0 && now - gs.lastReleasedAt < STABLE_MS)
+                {
+                    gs.pinMs = Math.min(gs.pinMs * 2, MAX_PIN_MS);
+                }
+
+                gs.pinned = true;
+                gs.pinnedUntil = now + gs.pinMs;
+                decide(groupId, true, reason);
+            }
+        }
+    }
+
+    private void decide(String groupId, boolean toMulticast, String reason)
+    {
+        // For display, so wall clock
+        Decision d = new Decision();
+        d.ts = Utils.nowMs();
+        d.groupId = groupId;
+        d.toMulticast = toMulticast;
+        d.reason = reason;
+
+        _decisions.add(d);
+        while(_decisions.size() > MAX_DECISIONS)
+        {
+            _decisions.removeFirst();
+        }
+
+        Log.i(TAG, groupId + " -> " + (toMulticast ? "multicast" : "rallypoint") + ": " + reason);//NON-NLS
+
+        if(_listener != null)
+        {
+            _listener.onGroupRoutingChanged(groupId, toMulticast, reason);
+        }
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+        long wallOffset = (Utils.nowMs() - SystemClock.elapsedRealtime());
+
+        try
+        {
+            rc.put("enabled", _enabled);//NON-NLS
+            rc.put("rallypointQuality", _quality);//NON-NLS
+
+            JSONArray pinned = new JSONArray();
+            for(String groupId : _groups.keySet())
+            {
+                GroupState gs = _groups.get(groupId);
+                if(gs.pinned)
+                {
+                    JSONObject obj = new JSONObject();
+                    obj.put("id", groupId);//NON-NLS
+                    obj.put("until", gs.pinnedUntil + wallOffset);//NON-NLS
+                    pinned.put(obj);
+                }
+            }
+
+            rc.put("pinnedToMulticast", pinned);//NON-NLS
+
+            JSONArray decisions = new JSONArray();
+            for(Decision d : _decisions)
+            {
+                JSONObject obj = new JSONObject();
+                obj.put("ts", d.ts);//NON-NLS
+                obj.put("id", d.groupId);//NON-NLS
+                obj.put("to", d.toMulticast ? "multicast" : "rallypoint");//NON-NLS
+                obj.put("reason", d.reason);//NON-NLS
+                decisions.put(obj);
+            }
+
+            rc.put("decisions", decisions);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
@@ -68,6 +68,9 @@ public class PreferenceKeys
     public static String USER_LOCATION_MIN_INTERVAL_SECS = "user_location.minIntervalSecs";//NON-NLS
     public static String USER_LOCATION_ACCURACY = "user_location.accuracy";//NON-NLS
     public static String USER_LOCATION_MIN_DISPLACEMENT = "user_location.minDisplacement";//NON-NLS
+    public static String USER_LOCATION_ADAPTIVE = "user_location.adaptive";//NON-NLS
+
+    public static String USER_WAKE_WINDOW_SECS = "user_power.wakeWindowSecs";//NON-NLS
 
     public static String USER_NOTIFY_NODE_JOIN = "user_notify.nodeJoin";//NON-NLS
     public static String USER_NOTIFY_NODE_LEAVE = "user_notify.nodeLeave";//NON-NLS
@@ -109,6 +112,7 @@ public class PreferenceKeys
     public static String USER_LICENSING_KEY = "user_licensing.key";//NON-NLS
     public static String USER_LICENSING_ACTIVATION_CODE = "user_licensing.activationCode";//NON-NLS
     public static String CHECKED_FOR_LICENSING_DONE = "checkedForLicensingDone";//NON-NLS
+    public static String LICENSE_ACTIVATION_LAST_GOOD = "licenseActivation.lastGood";//NON-NLS
 
     public static String DEVELOPER_MODE_ACTIVE = "developer_modeActive";//NON-NLS
     public static String DEVELOPER_USE_DEV_LICENSING_SYSTEM = "developer_useDevLicensingSystem";//NON-NLS
@@ -116,6 +120,8 @@ public class PreferenceKeys
 
     public static String USER_CERT_STORE_FILE_NAME = "user_activeCertStoreFileName";//NON-NLS
     public static String USER_CERT_STORE_PASSWORD_SET = "user_certStore.passwordSet";//NON-NLS
+    public static String CERT_STORE_ACTIVE_STATE = "certStore.activeState";//NON-NLS
+    public static String CERT_STORE_PASSWORD_HINTS = "certStore.passwordHints";//NON-NLS
 
     public static String ENGINE_POLICY_JSON = "engine_policy_json";//NON-NLS
 }
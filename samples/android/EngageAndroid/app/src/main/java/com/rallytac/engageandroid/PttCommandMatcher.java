@@ -0,0 +1,109 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import java.nio.charset.StandardCharsets;
+
+// Spots PTT commands (e.g. "+PTT=P") in the byte stream from an accessory, one byte at a
+// time, without building strings.  How far into each command we've got is carried over from
+// one read to the next so a command that arrives split across reads is still found, and
+// whatever surrounds it (line endings, other AT chatter) is skipped over.  Each command has
+// a KMP-style fallback table so a near miss doesn't lose the start of the real thing.
+//
+// Not thread-safe - meant for the one thread reading the stream.
+public class PttCommandMatcher
+{
+    public static final int NO_MATCH = -1;
+
+    private final byte[][] _commands;
+    private final int[][] _fallback;
+    private final int[] _progress;
+
+    // The index of a command in this list is what next() returns when it's matched
+    public PttCommandMatcher(String... commands)
+    {
+        _commands = new byte[commands.length][];
+        _fallback = new int[commands.length][];
+        _progress = new int[commands.length];
+
+        for(int x = 0; x < commands.length; x++)
+        {
+            _commands[x] = commands[x].getBytes(StandardCharsets.UTF_8);
+            _fallback[x] = buildFallback(_commands[x]);
+        }
+    }
+
+    public void reset()
+    {
+        for(int x = 0; x < _progress.length; x++)
+        {
+            _progress[x] = 0;
+        }
+    }
+
+    // Returns the index of the command that this byte completes, or NO_MATCH
+    public int next(byte b)
+    {
+        int rc = NO_MATCH;
+
+        for(int x = 0; x < _commands.length; x++)
+        {
+            byte[] cmd = _commands[x];
+            if(cmd.length == 0)
+            {
+                continue;
+            }
+
+            int pos = _progress[x];
+            while(pos > 0 && cmd[pos] != b)
+            {
+                pos = _fallback[x][pos - 1];
+            }
+
+            if(cmd[pos] == b)
+            {
+                pos++;
+            }
+
+            if(pos == cmd.length)
+            {
+                if(rc == NO_MATCH)
+                {
+                    rc = x;
+                }
+                pos = _fallback[x][pos - 1];
+            }
+
+            _progress[x] = pos;
+        }
+
+        return rc;
+    }
+
+    // fallback[i] is the length of the longest proper prefix of cmd[0..i] that's also a suffix of it
+    private static int[] buildFallback(byte[] cmd)
+    {
+        int[] rc = new int[cmd.length];
+        int len = 0;
+
+        for(int x = 1; x < cmd.length; x++)
+        {
+            while(len > 0 && cmd[x] != cmd[len])
+            {
+                len = rc[len - 1];
+            }
+
+            if(cmd[x] == cmd[len])
+            {
+                len++;
+            }
+
+            rc[x] = len;
+        }
+
+        return rc;
+    }
+}
@@ -0,0 +1,368 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Every PTT input - the on-screen button, hardware keys, headset buttons, Sonim broadcasts,
+// Bluetooth accessories and app intents - comes through here rather than going to TX on its
+// own.  Which sources are holding PTT is one atomic word, so the first press from any source
+// begins TX and the last release ends it; pressing a source that's already down, releasing
+// one that isn't, and a second source joining in don't reach the engine at all.
+//
+// Releases are held back for a short debounce so that a contact that chatters (up and
+// straight back down) doesn't end TX and begin it again.  Presses are never delayed.  The
+// releases waiting out their debounce live in the same word as the held sources so that a
+// press and a debounced release going through at the same moment can't both win.
+//
+// Each press that begins TX is traced from the time the source saw it through to the hand
+// over to TX and on to TX actually being active.
+public class PttInputPipeline
+{
+    private static String TAG = PttInputPipeline.class.getSimpleName();
+
+    public enum Source
+    {
+        SCREEN, KEY, HEADSET, SONIM, BLUETOOTH, INTENT
+    }
+
+    // Where the pipeline sends TX.  The generation identifies each TX so that news of one
+    // ending can't be mistaken for the end of the one after it.
+    public interface ITxSink
+    {
+        void onPttBegin(long generation, int priority, int flags);
+        void onPttEnd(long generation);
+    }
+
+    // The low bits of the state are the sources holding PTT, above them the sources whose
+    // release is pending, and the rest is the generation.  A source is only ever pending if
+    // it's also held.
+    private static final int PENDING_SHIFT = 16;
+    private static final int GENERATION_SHIFT = 32;
+    private static final long HELD_MASK = ((1L << PENDING_SHIFT) - 1);
+
+    private final ITxSink _sink;
+    private final AtomicLong _state = new AtomicLong(0);
+    private final IPushToTalkRequestHandler[] _handlers = new IPushToTalkRequestHandler[Source.values().length];
+
+    private long _presses = 0;
+    private long _releases = 0;
+    private long _duplicates = 0;
+    private long _bouncesAbsorbed = 0;
+    private long _overlaps = 0;
+    private long _txBegins = 0;
+    private long _txEnds = 0;
+    private long _endedUnderneath = 0;
+
+    private final LatencyHistogram _inputToHandoverUs = new LatencyHistogram();
+    private final LatencyHistogram _pressToTxActiveMs = new LatencyHistogram();
+
+    // Recent presses that began TX, oldest overwritten first
+    private final long[] _traceGeneration = new long[Constants.PTT_TRACE_HISTORY];
+    private final int[] _traceSource = new int[Constants.PTT_TRACE_HISTORY];
+    private final long[] _traceEventNs = new long[Constants.PTT_TRACE_HISTORY];
+    private final long[] _traceAcceptedNs = new long[Constants.PTT_TRACE_HISTORY];
+    private final long[] _traceHandedOverNs = new long[Constants.PTT_TRACE_HISTORY];
+    private final long[] _traceTxActiveNs = new long[Constants.PTT_TRACE_HISTORY];
+    private int _traceCount = 0;
+
+    public PttInputPipeline(ITxSink sink)
+    {
+        _sink = sink;
+
+        for(final Source src : Source.values())
+        {
+            _handlers[src.ordinal()] = new IPushToTalkRequestHandler()
+            {
+                @Override
+                public void requestPttOn(int priority, int flags)
+                {
+                    press(src, System.nanoTime(), priority, flags);
+                }
+
+                @Override
+                public void requestPttOff()
+                {
+                    release(src);
+                }
+            };
+        }
+    }
+
+    // For sources that speak IPushToTalkRequestHandler; events are timestamped on arrival
+    public IPushToTalkRequestHandler handlerFor(Source src)
+    {
+        return _handlers[src.ordinal()];
+    }
+
+    // eventNs is when the source saw the press on the System.nanoTime() clock.  (KeyEvent and
+    // MotionEvent times are SystemClock.uptimeMillis(), which is the same clock in ms.)
+    public void press(Source src, long eventNs)
+    {
+        press(src, eventNs, 0, 0);
+    }
+
+    public void press(Source src, long eventNs, int priority, int flags)
+    {
+        long acceptedNs = System.nanoTime();
+        long bit = (1L << src.ordinal());
+        long pendingBit = (bit << PENDING_SHIFT);
+
+        long s;
+        long ns;
+        long held;
+        do
+        {
+            s = _state.get();
+            held = (s & HELD_MASK);
+
+            // Back down before the debounced release went through - it never happened
+            if((s & pendingBit) != 0)
+            {
+                ns = (s & ~pendingBit);
+                continue;
+            }
+
+            if((held & bit) != 0)
+            {
+                synchronized (this)
+                {
+                    _duplicates++;
+                }
+                return;
+            }
+
+            ns = (s | bit);
+            if(held == 0)
+            {
+                ns += (1L << GENERATION_SHIFT);
+            }
+        } while(!_state.compareAndSet(s, ns));
+
+        // Its release timer is left to run and find nothing to do - cancelling it by name could
+        // just as well cancel the timer for a release that has come in since
+        if((s & pendingBit) != 0)
+        {
+            synchronized (this)
+            {
+                _bouncesAbsorbed++;
+            }
+        }
+        else if(held == 0)
+        {
+            long generation = (ns >>> GENERATION_SHIFT);
+            _sink.onPttBegin(generation, priority, flags);
+            recordBegin(src, generation, eventNs, acceptedNs, System.nanoTime());
+        }
+        else
+        {
+            synchronized (this)
+            {
+                _presses++;
+                _overlaps++;
+            }
+        }
+    }
+
+    public void release(final Source src)
+    {
+        final long bit = (1L << src.ordinal());
+        long pendingBit = (bit << PENDING_SHIFT);
+
+        long s;
+        do
+        {
+            s = _state.get();
+            if((s & bit) == 0)
+            {
+                synchronized (this)
+                {
+                    _duplicates++;
+                }
+                return;
+            }
+
+            if((s & pendingBit) != 0)
+            {
+                // Already on its way
+                return;
+            }
+        } while(!_state.compareAndSet(s, (s | pendingBit)));
+
+        scheduleRelease(src, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Only if a press in the meantime hasn't taken it back
+                releaseNow(bit, true);
+            }
+        });
+    }
+
+    // Ends TX from every source straight away
+    public void releaseAll()
+    {
+        releaseNow(HELD_MASK, false);
+    }
+
+    // TX has ended underneath us (timed out, failed, usurped, ...) - whoever was holding PTT
+    // for that TX has to press again to get another
+    public void onTxEnded(long generation)
+    {
+        long s;
+        do
+        {
+            s = _state.get();
+            if((s >>> GENERATION_SHIFT) != generation || (s & HELD_MASK) == 0)
+            {
+                return;
+            }
+        } while(!_state.compareAndSet(s, (generation << GENERATION_SHIFT)));
+
+        synchronized (this)
+        {
+            _endedUnderneath++;
+        }
+    }
+
+    public synchronized void onTxActive(long generation)
+    {
+        long now = System.nanoTime();
+
+        for(int x = 0; x < Math.min(_traceCount, _traceGeneration.length); x++)
+        {
+            if(_traceGeneration[x] == generation && _traceTxActiveNs[x] == 0)
+            {
+                _traceTxActiveNs[x] = now;
+                _pressToTxActiveMs.record((now - _traceEventNs[x]) / 1000000);
+                break;
+            }
+        }
+    }
+
+    public long getTxGeneration()
+    {
+        return (_state.get() >>> GENERATION_SHIFT);
+    }
+
+    // Lets go of the given sources (and any release of theirs that's pending) - or with
+    // pendingOnly, just those of them whose release is pending
+    private void releaseNow(long bits, boolean pendingOnly)
+    {
+        long s;
+        long ns;
+        do
+        {
+            s = _state.get();
+
+            long drop = (bits & (pendingOnly ? (s >>> PENDING_SHIFT) : s) & HELD_MASK);
+            if(drop == 0)
+            {
+                return;
+            }
+
+            ns = (s & ~(drop | (drop << PENDING_SHIFT)));
+        } while(!_state.compareAndSet(s, ns));
+
+        synchronized (this)
+        {
+            _releases++;
+        }
+
+        if((ns & HELD_MASK) == 0)
+        {
+            _sink.onPttEnd(ns >>> GENERATION_SHIFT);
+
+            synchronized (this)
+            {
+                _txEnds++;
+            }
+        }
+    }
+
+    // Scheduling under the same name replaces a timer that's still to run
+    void scheduleRelease(Source src, Runnable release)
+    {
+        Globals.getAppScheduler().scheduleOnce(releaseTaskName(src), Constants.PTT_RELEASE_DEBOUNCE_MS, release);
+    }
+
+    private static String releaseTaskName(Source src)
+    {
+        return "pttRelease:" + src.name();//NON-NLS
+    }
+
+    private synchronized void recordBegin(Source src, long generation, long eventNs, long acceptedNs, long handedOverNs)
+    {
+        _presses++;
+        _txBegins++;
+
+        // A source that can't say when it saw the event gets the time we did
+        if(eventNs <= 0 || eventNs > acceptedNs)
+        {
+            eventNs = acceptedNs;
+        }
+
+        int slot = (_traceCount % _traceGeneration.length);
+        _traceGeneration[slot] = generation;
+        _traceSource[slot] = src.ordinal();
+        _traceEventNs[slot] = eventNs;
+        _traceAcceptedNs[slot] = acceptedNs;
+        _traceHandedOverNs[slot] = handedOverNs;
+        _traceTxActiveNs[slot] = 0;
+        _traceCount++;
+
+        _inputToHandoverUs.record((handedOverNs - eventNs) / 1000);
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("presses", _presses);//NON-NLS
+            rc.put("releases", _releases);//NON-NLS
+            rc.put("duplicates", _duplicates);//NON-NLS
+            rc.put("bouncesAbsorbed", _bouncesAbsorbed);//NON-NLS
+            rc.put("overlaps", _overlaps);//NON-NLS
+            rc.put("txBegins", _txBegins);//NON-NLS
+            rc.put("txEnds", _txEnds);//NON-NLS
+            rc.put("endedUnderneath", _endedUnderneath);//NON-NLS
+            rc.put("inputToHandoverUs", _inputToHandoverUs.toJson());//NON-NLS
+            rc.put("pressToTxActiveMs", _pressToTxActiveMs.toJson());//NON-NLS
+
+            // Newest first
+            JSONArray traces = new JSONArray();
+            int n = Math.min(_traceCount, _traceGeneration.length);
+            for(int x = 0; x < n; x++)
+            {
+                int slot = ((_traceCount - 1 - x) % _traceGeneration.length);
+
+                JSONObject t = new JSONObject();
+                t.put("generation", _traceGeneration[slot]);//NON-NLS
+                t.put("source", Source.values()[_traceSource[slot]].name());//NON-NLS
+                t.put("acceptedUs", (_traceAcceptedNs[slot] - _traceEventNs[slot]) / 1000);//NON-NLS
+                t.put("handedOverUs", (_traceHandedOverNs[slot] - _traceEventNs[slot]) / 1000);//NON-NLS
+                if(_traceTxActiveNs[slot] != 0)
+                {
+                    t.put("txActiveMs", (_traceTxActiveNs[slot] - _traceEventNs[slot]) / 1000000);//NON-NLS
+                }
+                traces.put(t);
+            }
+            rc.put("traces", traces);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
@@ -0,0 +1,102 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+
+import java.util.List;
+
+// Uploads a batch of missions with MissionPublisher.  The handler gets a MSG_PROGRESS as each
+// mission finishes (arg1 = done, arg2 = total) and a MSG_DONE at the end (arg1 = published,
+// arg2 = total) carrying the first failure's message, if any.  Missions are only gzip'd on
+// the way up when the hub is known to serve them back properly (opt_mission_hub_gzip_uploads).
+public class PublishMissionsTask extends AsyncTask<Void, Integer, Integer>
+{
+    public static final int MSG_PROGRESS = 1;
+    public static final int MSG_DONE = 2;
+
+    public static String BUNDLE_RESULT_MSG = "BUNDLE_RESULT_MSG";//NON-NLS
+
+    private final Handler _handler;
+    private final String _urlBase;
+    private final List<MissionPublisher.Item> _items;
+    private final boolean _compress;
+
+    PublishMissionsTask(Handler handler, String urlBase, List<MissionPublisher.Item> items, boolean compress)
+    {
+        _handler = handler;
+        _urlBase = urlBase;
+        _items = items;
+        _compress = compress;
+    }
+
+    protected Integer doInBackground(Void... params)
+    {
+        int rc;
+
+        try
+        {
+            MissionPublisher publisher = new MissionPublisher(Constants.MISSION_UPLOAD_PARALLEL_TRANSFERS, _compress);
+            rc = publisher.publish(_urlBase, _items, new MissionPublisher.IProgressListener()
+            {
+                @Override
+                public void onMissionPublished(MissionPublisher.Item item, int done, int total)
+                {
+                    publishProgress(done);
+                }
+            });
+        }
+        catch (InterruptedException e)
+        {
+            rc = 0;
+        }
+
+        return rc;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values)
+    {
+        if(_handler != null)
+        {
+            Message msg = new Message();
+            msg.what = MSG_PROGRESS;
+            msg.arg1 = values[0];
+            msg.arg2 = _items.size();
+            _handler.sendMessage(msg);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(final Integer published)
+    {
+        if(_handler != null)
+        {
+            String firstError = null;
+            for(MissionPublisher.Item item : _items)
+            {
+                if(!item.isOk())
+                {
+                    firstError = item.fileName + ": " + item.errorMsg;//NON-NLS
+                    break;
+                }
+            }
+
+            Bundle bundle = new Bundle();
+            bundle.putString(BUNDLE_RESULT_MSG, firstError);
+
+            Message msg = new Message();
+            msg.what = MSG_DONE;
+            msg.arg1 = published;
+            msg.arg2 = _items.size();
+            msg.setData(bundle);
+            _handler.sendMessage(msg);
+        }
+    }
+}
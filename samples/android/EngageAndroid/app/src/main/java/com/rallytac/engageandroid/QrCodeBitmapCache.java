@@ -0,0 +1,400 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Generates QR code bitmaps off the UI thread and keeps them in a small in-memory LRU
+// plus a PNG cache on disk so that rotating or re-opening a screen doesn't re-encode
+// the same code.
+//
+// What goes into a mission's QR codes isn't the same from one generation to the next (a
+// chunked transfer gets a random id, encryption a fresh IV) so the cache also remembers the
+// content it was given for each mission/payload and hands that back out via reuseContent().
+// The bitmaps are keyed on that rather than on the content itself.
+//
+// Only encrypted content goes to disk - an unencrypted mission's codes carry its secrets in
+// the clear and are kept in memory only.
+public class QrCodeBitmapCache
+{
+    private static String TAG = QrCodeBitmapCache.class.getSimpleName();
+
+    private static final String CACHE_DIR_NAME = "qrcodes-encrypted";//NON-NLS
+    private static final String LEGACY_CACHE_DIR_NAME = "qrcodes";//NON-NLS
+    private static final String CONTENT_FILE_EXT = ".txt";//NON-NLS
+    private static final int MAX_MEMORY_BYTES = (16 * 1024 * 1024);
+    private static final int MAX_MEMORY_CONTENT = 16;
+    private static final int MAX_DISK_FILES = 64;
+
+    public interface IBitmapReadyListener
+    {
+        void onQrCodeBitmapReady(String key, Bitmap bm);
+    }
+
+    private final File _cacheDir;
+    private final Handler _uiHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService _worker = Executors.newSingleThreadExecutor();
+    private int[] _pixels = null;
+
+    private final LruCache<String, Bitmap> _memoryCache = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES)
+    {
+        @Override
+        protected int sizeOf(String key, Bitmap bm)
+        {
+            return bm.getByteCount();
+        }
+    };
+
+    private final LruCache<String, ArrayList<String>> _contentCache = new LruCache<>(MAX_MEMORY_CONTENT);
+
+    public QrCodeBitmapCache(Context ctx)
+    {
+        // Earlier versions cached every code on disk, encrypted or not
+        final File legacyDir = new File(ctx.getCacheDir(), LEGACY_CACHE_DIR_NAME);
+        if(legacyDir.exists())
+        {
+            _worker.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Utils.deleteDirectory(legacyDir.getAbsolutePath());
+                }
+            });
+        }
+
+        _cacheDir = new File(ctx.getCacheDir(), CACHE_DIR_NAME);
+        if(!_cacheDir.exists())
+        {
+            _cacheDir.mkdirs();
+        }
+    }
+
+    // The key covers the mission, the QR format version, the payload before it's encrypted and
+    // everything else the user chose that changes what ends up in the codes - but none of the
+    // per-generation fields, so showing the same mission the same way gets the same key.
+    public static String makeKey(String missionId, String version, byte[] payload, String password, String deflectionUrl)
+    {
+        String rc;
+
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");//NON-NLS
+            md.update(Utils.emptyAs(missionId, "").getBytes(Utils.getEngageCharSet()));
+            md.update((byte) 0);
+            md.update(Utils.emptyAs(version, "").getBytes(Utils.getEngageCharSet()));
+            md.update((byte) 0);
+            md.update(payload);
+            md.update((byte) 0);
+            md.update(Utils.emptyAs(password, "").getBytes(Utils.getEngageCharSet()));
+            md.update((byte) 0);
+            md.update(Utils.emptyAs(deflectionUrl, "").getBytes(Utils.getEngageCharSet()));
+            rc = Utils.bytesToHex(md.digest());
+        }
+        catch (Exception e)
+        {
+            rc = Integer.toHexString(Arrays.hashCode(payload)) + "_" + payload.length;//NON-NLS
+        }
+
+        return rc;
+    }
+
+    // The key for one rendered code (frame) of the content stored under contentKey
+    public static String makeFrameKey(String contentKey, int frameIndex, int width, int height)
+    {
+        return contentKey + "_" + frameIndex + "_" + width + "x" + height;//NON-NLS
+    }
+
+    // Returns the content last stored under contentKey, if we still have it, so that the
+    // codes (and their cached bitmaps) stay the same.  Otherwise stores this content - and
+    // drops any bitmaps of whatever was there before - and returns it.
+    public synchronized ArrayList<String> reuseContent(final String contentKey, final ArrayList<String> content, final boolean persistent)
+    {
+        ArrayList<String> rc = _contentCache.get(contentKey);
+        if(rc == null && persistent)
+        {
+            rc = loadContent(contentKey);
+        }
+
+        if(rc != null)
+        {
+            _contentCache.put(contentKey, rc);
+            return rc;
+        }
+
+        _contentCache.put(contentKey, content);
+
+        for(String key : _memoryCache.snapshot().keySet())
+        {
+            if(key.startsWith(contentKey))
+            {
+                _memoryCache.remove(key);
+            }
+        }
+
+        // Queued ahead of any request() for the new content's bitmaps
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                deleteFromDisk(contentKey);
+                if(persistent)
+                {
+                    saveContent(contentKey, content);
+                }
+            }
+        });
+
+        return content;
+    }
+
+    // Memory-only lookup, safe to call from the UI thread
+    public Bitmap getCached(String key)
+    {
+        return _memoryCache.get(key);
+    }
+
+    // Delivers the bitmap on the UI thread - immediately if it's in memory, otherwise once
+    // it's been loaded from disk or generated.  The listener gets null if encoding failed.
+    // Only persistent (encrypted) content is looked for or saved on disk.
+    public void request(final String key, final String content, final int width, final int height, final boolean persistent, final IBitmapReadyListener listener)
+    {
+        Bitmap bm = _memoryCache.get(key);
+        if(bm != null)
+        {
+            listener.onQrCodeBitmapReady(key, bm);
+            return;
+        }
+
+        _worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final Bitmap result = loadOrGenerate(key, content, width, height, persistent);
+
+                _uiHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        listener.onQrCodeBitmapReady(key, result);
+                    }
+                });
+            }
+        });
+    }
+
+    public void clear()
+    {
+        _memoryCache.evictAll();
+        _contentCache.evictAll();
+
+        File[] files = _cacheDir.listFiles();
+        if(files != null)
+        {
+            for(File f : files)
+            {
+                f.delete();
+            }
+        }
+    }
+
+    private Bitmap loadOrGenerate(String key, String content, int width, int height, boolean persistent)
+    {
+        Bitmap bm = _memoryCache.get(key);
+        if(bm != null)
+        {
+            return bm;
+        }
+
+        File fd = new File(_cacheDir, key + ".png");//NON-NLS
+        if(persistent && fd.exists())
+        {
+            try
+            {
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inPreferredConfig = Bitmap.Config.RGB_565;
+                bm = BitmapFactory.decodeFile(fd.getAbsolutePath(), opts);
+            }
+            catch (Exception e)
+            {
+                bm = null;
+            }
+
+            if(bm != null)
+            {
+                fd.setLastModified(System.currentTimeMillis());
+                _memoryCache.put(key, bm);
+                return bm;
+            }
+        }
+
+        // Cached bitmaps may be on screen so each one is distinct, but the pixel buffer
+        // used to render them is only ever touched by our single worker thread.
+        if(_pixels == null || _pixels.length < width * height)
+        {
+            _pixels = new int[width * height];
+        }
+
+        bm = Utils.renderQrCodeBitmap(content, width, height, null, _pixels);
+        if(bm == null)
+        {
+            return null;
+        }
+
+        _memoryCache.put(key, bm);
+        if(persistent)
+        {
+            saveToDisk(fd, bm);
+        }
+
+        return bm;
+    }
+
+    // One line per frame - neither Base91 nor a deflection URL has line breaks in it
+    private ArrayList<String> loadContent(String contentKey)
+    {
+        File fd = new File(_cacheDir, contentKey + CONTENT_FILE_EXT);
+        if(!fd.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            byte[] ba = new byte[(int) fd.length()];
+            FileInputStream fis = new FileInputStream(fd);
+            int total = 0;
+            int read;
+            while(total < ba.length && (read = fis.read(ba, total, ba.length - total)) > 0)
+            {
+                total += read;
+            }
+            fis.close();
+
+            ArrayList<String> rc = new ArrayList<>();
+            for(String line : new String(ba, 0, total, Utils.getEngageCharSet()).split("\n"))//NON-NLS
+            {
+                if(!line.isEmpty())
+                {
+                    rc.add(line);
+                }
+            }
+
+            if(rc.isEmpty())
+            {
+                return null;
+            }
+
+            fd.setLastModified(System.currentTimeMillis());
+            return rc;
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot read cached QR content: " + e.getMessage());//NON-NLS
+            return null;
+        }
+    }
+
+    private void saveContent(String contentKey, ArrayList<String> content)
+    {
+        File fd = new File(_cacheDir, contentKey + CONTENT_FILE_EXT);
+
+        try
+        {
+            StringBuilder sb = new StringBuilder();
+            for(String frame : content)
+            {
+                sb.append(frame).append('\n');
+            }
+
+            FileOutputStream fos = new FileOutputStream(fd);
+            fos.write(sb.toString().getBytes(Utils.getEngageCharSet()));
+            fos.close();
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot cache QR content to disk: " + e.getMessage());//NON-NLS
+            fd.delete();
+        }
+
+        trimDisk();
+    }
+
+    private void deleteFromDisk(String contentKey)
+    {
+        File[] files = _cacheDir.listFiles();
+        if(files != null)
+        {
+            for(File f : files)
+            {
+                if(f.getName().startsWith(contentKey))
+                {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void saveToDisk(File fd, Bitmap bm)
+    {
+        try
+        {
+            FileOutputStream fos = new FileOutputStream(fd);
+            bm.compress(Bitmap.CompressFormat.PNG, 100, fos);
+            fos.close();
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot cache QR code to disk: " + e.getMessage());//NON-NLS
+            fd.delete();
+        }
+
+        trimDisk();
+    }
+
+    private void trimDisk()
+    {
+        File[] files = _cacheDir.listFiles();
+        if(files == null || files.length <= MAX_DISK_FILES)
+        {
+            return;
+        }
+
+        // Drop the least-recently used until we're within bounds
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for(int x = 0; x < files.length - MAX_DISK_FILES; x++)
+        {
+            files[x].delete();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+// Single-stage decoder for mission QR codes: Base91 text -> (decrypt) -> inflate -> JSON.
+// Each stage works on offsets into per-thread scratch buffers so the only copies made
+// are the one required by the engine's decryptSimple() and the final JSON String.
+public class QrMissionDecoder
+{
+    private static String TAG = QrMissionDecoder.class.getSimpleName();
+
+    private static final byte[] QR_HEADER_BYTES = Constants.QR_CODE_HEADER.getBytes(Utils.getEngageCharSet());
+    private static final int QR_VERSION_DIGITS = 3;
+
+    private static final int INITIAL_SCRATCH_SIZE = 4096;
+    private static final int MAX_RETAINED_SCRATCH_SIZE = (256 * 1024);
+
+    private static class Scratch
+    {
+        byte[] decoded = new byte[INITIAL_SCRATCH_SIZE];
+        byte[] inflated = new byte[INITIAL_SCRATCH_SIZE];
+
+        void trim()
+        {
+            if(decoded.length > MAX_RETAINED_SCRATCH_SIZE)
+            {
+                decoded = new byte[INITIAL_SCRATCH_SIZE];
+            }
+
+            if(inflated.length > MAX_RETAINED_SCRATCH_SIZE)
+            {
+                inflated = new byte[INITIAL_SCRATCH_SIZE];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> _scratch = new ThreadLocal<Scratch>()
+    {
+        @Override
+        protected Scratch initialValue()
+        {
+            return new Scratch();
+        }
+    };
+
+    // Decodes a legacy QR payload (optionally preceded by a deflection URL) where the
+    // header and version live inside the compressed data.  Returns the mission JSON.
+    public static String decodeLegacy(String str, String pwd) throws Exception
+    {
+        Scratch scratch = _scratch.get();
+
+        try
+        {
+            int len = decodeDecryptInflate(scratch, str, getDataOffset(str), pwd, true);
+
+            // Make sure it has our header and the version we understand
+            if(!startsWithHeader(scratch.inflated, len))
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_invalid));
+            }
+
+            int ofs = QR_HEADER_BYTES.length;
+            if(parseVersion(scratch.inflated, ofs, len) != Integer.parseInt(Constants.QR_VERSION))
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scn_invalid_version));
+            }
+
+            ofs += QR_VERSION_DIGITS;
+            return new String(scratch.inflated, ofs, len - ofs, Utils.getEngageCharSet());
+        }
+        finally
+        {
+            scratch.trim();
+        }
+    }
+
+    // Offset of the encoded data - i.e. past any deflection URL
+    public static int getDataOffset(String str)
+    {
+        int rc = 0;
+
+        // Base91 data can itself contain "/??" so don't go looking if we start with our header
+        if(str.startsWith(Constants.QR_CODE_HEADER))
+        {
+            return 0;
+        }
+
+        // Look for the "/??" to see if there's a deflection URL and skip past it if so
+        int endOfDeflection = str.indexOf(Constants.QR_DEFLECTION_URL_SEP);
+        if (endOfDeflection > 0)
+        {
+            rc = endOfDeflection + Constants.QR_DEFLECTION_URL_SEP.length();
+        }
+
+        return rc;
+    }
+
+    // True if the data (past any deflection URL) carries our header in the clear
+    public static boolean isNewFormat(String str)
+    {
+        return str.startsWith(Constants.QR_CODE_HEADER, getDataOffset(str));
+    }
+
+    // Returns the version of a new-format QR code (header + "nnn" + payload) or -1 if
+    // the string does not carry our header.
+    public static int getNewFormatVersion(String str)
+    {
+        int start = getDataOffset(str) + Constants.QR_CODE_HEADER.length();
+
+        if(!isNewFormat(str) || str.length() < start + QR_VERSION_DIGITS)
+        {
+            return -1;
+        }
+
+        int rc = 0;
+        for(int x = start; x < start + QR_VERSION_DIGITS; x++)
+        {
+            char c = str.charAt(x);
+            if(c < '0' || c > '9')
+            {
+                return -1;
+            }
+
+            rc = (rc * 10) + (c - '0');
+        }
+
+        return rc;
+    }
+
+    // Offset of the Base91 payload in a new-format QR code
+    private static int getNewFormatPayloadOffset(String str)
+    {
+        return getDataOffset(str) + Constants.QR_CODE_HEADER.length() + QR_VERSION_DIGITS;
+    }
+
+    // Decodes a new-format QR payload whose header and version have already been
+    // validated by the caller.  The compressed data is the mission JSON itself.
+    public static String decodeNewFormat(String str, String pwd) throws Exception
+    {
+        Scratch scratch = _scratch.get();
+
+        try
+        {
+            int len = decodeDecryptInflate(scratch, str, getNewFormatPayloadOffset(str), pwd, true);
+            return new String(scratch.inflated, 0, len, Utils.getEngageCharSet());
+        }
+        finally
+        {
+            scratch.trim();
+        }
+    }
+
+    // Decodes a new-format QR payload carrying a zlib-compressed BinaryMissionCodec record
+    public static JSONObject decodeBinaryFormat(String str, String pwd) throws Exception
+    {
+        Scratch scratch = _scratch.get();
+
+        try
+        {
+            int len = decodeDecryptInflate(scratch, str, getNewFormatPayloadOffset(str), pwd, false);
+            return BinaryMissionCodec.decode(scratch.inflated, 0, len);
+        }
+        finally
+        {
+            scratch.trim();
+        }
+    }
+
+    // Decodes a payload that arrived over several QR codes (see ChunkedQrTransfer) and
+    // returns the mission JSON.  payloadVersion says what the frames carried.
+    public static String decodeReassembled(byte[] data, int payloadVersion, String pwd) throws Exception
+    {
+        Scratch scratch = _scratch.get();
+
+        try
+        {
+            if(payloadVersion == Integer.parseInt(Constants.QR_VERSION_BINARY))
+            {
+                int len = decryptInflate(scratch, data, data.length, pwd, false);
+                return BinaryMissionCodec.decode(scratch.inflated, 0, len).toString();
+            }
+            else if(payloadVersion == Integer.parseInt(Constants.QR_VERSION))
+            {
+                int len = decryptInflate(scratch, data, data.length, pwd, true);
+                if(!startsWithHeader(scratch.inflated, len)
+                        || parseVersion(scratch.inflated, QR_HEADER_BYTES.length, len) != Integer.parseInt(Constants.QR_VERSION))
+                {
+                    throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_invalid));
+                }
+
+                int ofs = QR_HEADER_BYTES.length + QR_VERSION_DIGITS;
+                return new String(scratch.inflated, ofs, len - ofs, Utils.getEngageCharSet());
+            }
+            else
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scn_invalid_version));
+            }
+        }
+        finally
+        {
+            scratch.trim();
+        }
+    }
+
+    // Base91-decodes str from start, decrypts if we have a password, and inflates into
+    // scratch.inflated (gzip or zlib framing).  Returns the number of inflated bytes.
+    private static int decodeDecryptInflate(Scratch scratch, String str, int start, String pwd, boolean gzip) throws Exception
+    {
+        int needed = Base91.maxDecodedLength(str.length() - start);
+        if(scratch.decoded.length < needed)
+        {
+            scratch.decoded = new byte[needed];
+        }
+
+        Base91.Decoder decoder = new Base91.Decoder();
+        int decodedLen = decoder.update(str, start, str.length(), scratch.decoded, 0);
+        decodedLen += decoder.finish(scratch.decoded, decodedLen);
+        if(decodedLen == 0)
+        {
+            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decode_failed));
+        }
+
+        return decryptInflate(scratch, scratch.decoded, decodedLen, pwd, gzip);
+    }
+
+    // Decrypts data if we have a password and inflates it into scratch.inflated.  Returns
+    // the number of inflated bytes.
+    private static int decryptInflate(Scratch scratch, byte[] data, int len, String pwd, boolean gzip) throws Exception
+    {
+        byte[] compressed = data;
+        int compressedLen = len;
+
+        // It may be encrypted, so decrypt if we have a password.  The engine only takes
+        // whole arrays so this is the one place we need an exact-sized copy.
+        if (!Utils.isEmptyString(pwd))
+        {
+            String pwdHexString = Utils.toHexString(pwd.getBytes(Utils.getEngageCharSet()));
+            byte[] encrypted = data;
+            if(len != data.length)
+            {
+                encrypted = new byte[len];
+                System.arraycopy(data, 0, encrypted, 0, len);
+            }
+
+            compressed = Globals.getEngageApplication().getEngine().decryptSimple(encrypted, pwdHexString);
+            if (compressed == null)
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decrypt_failed));
+            }
+
+            compressedLen = compressed.length;
+        }
+
+        int inflatedLen = inflate(scratch, compressed, compressedLen, gzip);
+        if(inflatedLen < 0)
+        {
+            throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.qr_scan_decompress_failed));
+        }
+
+        return inflatedLen;
+    }
+
+    private static int inflate(Scratch scratch, byte[] data, int len, boolean gzip)
+    {
+        int rc;
+
+        try
+        {
+            ByteArrayInputStream bis = new ByteArrayInputStream(data, 0, len);
+            InputStream gis = (gzip ? new GZIPInputStream(bis) : new InflaterInputStream(bis));
+
+            // Compressed missions typically expands 3-6x so start with a reasonable guess
+            int guess = (int) Math.min((long) len * 4, Constants.QR_CODE_MAX_INFLATED_BYTES);
+            if(scratch.inflated.length < guess)
+            {
+                scratch.inflated = new byte[guess];
+            }
+
+            rc = 0;
+            int read;
+            while ((read = gis.read(scratch.inflated, rc, scratch.inflated.length - rc)) != -1)
+            {
+                rc += read;
+                if(rc == scratch.inflated.length)
+                {
+                    // A crafted code can inflate to far more than any real mission, so stop
+                    // growing at the cap and give up if there's still more to come
+                    if(rc >= Constants.QR_CODE_MAX_INFLATED_BYTES)
+                    {
+                        if(gis.read() != -1)
+                        {
+                            throw new IOException("inflated mission exceeds " + Constants.QR_CODE_MAX_INFLATED_BYTES + " bytes");//NON-NLS
+                        }
+
+                        break;
+                    }
+
+                    byte[] tmp = new byte[Math.min(scratch.inflated.length * 2, Constants.QR_CODE_MAX_INFLATED_BYTES)];
+                    System.arraycopy(scratch.inflated, 0, tmp, 0, rc);
+                    scratch.inflated = tmp;
+                }
+            }
+
+            gis.close();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            rc = -1;
+        }
+
+        return rc;
+    }
+
+    private static boolean startsWithHeader(byte[] data, int len)
+    {
+        if(len < QR_HEADER_BYTES.length + QR_VERSION_DIGITS)
+        {
+            return false;
+        }
+
+        for(int x = 0; x < QR_HEADER_BYTES.length; x++)
+        {
+            if(data[x] != QR_HEADER_BYTES[x])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int parseVersion(byte[] data, int ofs, int len)
+    {
+        if(ofs + QR_VERSION_DIGITS > len)
+        {
+            return -1;
+        }
+
+        int rc = 0;
+        for(int x = ofs; x < ofs + QR_VERSION_DIGITS; x++)
+        {
+            int c = data[x];
+            if(c < '0' || c > '9')
+            {
+                return -1;
+            }
+
+            rc = (rc * 10) + (c - '0');
+        }
+
+        return rc;
+    }
+}
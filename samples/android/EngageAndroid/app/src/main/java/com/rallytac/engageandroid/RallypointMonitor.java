@@ -0,0 +1,227 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Tracks the round-trip latency and connection history of each rallypoint the engine
+// talks to.  Latency goes into a constant-memory histogram per rallypoint so percentiles
+// can be had over the whole session without keeping every report.  Durations are measured
+// on elapsedRealtime so a wall clock change can't stretch or shrink them; only the "since"
+// and "now" reported for display are wall clock times.
+public class RallypointMonitor
+{
+    private static String TAG = RallypointMonitor.class.getSimpleName();
+
+    public enum State
+    {
+        DISCONNECTED, CONNECTING, CONNECTED, PAUSED
+    }
+
+    // A point-in-time copy of one rallypoint's figures for display
+    public static class Snapshot
+    {
+        public String id;
+        public State state;
+        public long stateDurationMs;
+        public long[] msInState = new long[State.values().length];
+        public int connects;
+        public int reconnects;
+        public int disconnects;
+        public long lastRtMs;
+        public long lastQualityRating;
+        public long rtCount;
+        public long rtP50;
+        public long rtP90;
+        public long rtP99;
+        public long rtMax;
+    }
+
+    private static class Rallypoint
+    {
+        final String id;
+        final LatencyHistogram rt = new LatencyHistogram();
+        final long[] msInState = new long[State.values().length];
+        State state = State.DISCONNECTED;
+        long stateSince;
+        int connects = 0;
+        int reconnects = 0;
+        int disconnects = 0;
+        long lastRtMs = -1;
+        long lastQualityRating = -1;
+
+        Rallypoint(String id, long now)
+        {
+            this.id = id;
+            stateSince = now;
+        }
+
+        void setState(State newState, long now)
+        {
+            msInState[state.ordinal()] += (now - stateSince);
+            state = newState;
+            stateSince = now;
+        }
+    }
+
+    private final LinkedHashMap<String, Rallypoint> _rallypoints = new LinkedHashMap<>();
+    private long _since = Utils.nowMs();
+
+    private Rallypoint getOrCreate(String id, long now)
+    {
+        Rallypoint rc = _rallypoints.get(id);
+        if(rc == null)
+        {
+            rc = new Rallypoint(id, now);
+            _rallypoints.put(id, rc);
+        }
+
+        return rc;
+    }
+
+    public synchronized void clear()
+    {
+        _rallypoints.clear();
+        _since = Utils.nowMs();
+    }
+
+    public synchronized void onConnecting(String id)
+    {
+        long now = SystemClock.elapsedRealtime();
+        getOrCreate(id, now).setState(State.CONNECTING, now);
+    }
+
+    public synchronized void onPausingConnectionAttempt(String id)
+    {
+        long now = SystemClock.elapsedRealtime();
+        getOrCreate(id, now).setState(State.PAUSED, now);
+    }
+
+    public synchronized void onConnected(String id)
+    {
+        long now = SystemClock.elapsedRealtime();
+        Rallypoint rp = getOrCreate(id, now);
+
+        if(rp.connects > 0)
+        {
+            rp.reconnects++;
+        }
+
+        rp.connects++;
+        rp.setState(State.CONNECTED, now);
+    }
+
+    public synchronized void onDisconnected(String id)
+    {
+        long now = SystemClock.elapsedRealtime();
+        Rallypoint rp = getOrCreate(id, now);
+
+        if(rp.state == State.CONNECTED)
+        {
+            rp.disconnects++;
+        }
+
+        rp.setState(State.DISCONNECTED, now);
+    }
+
+    public synchronized void onRoundtripReport(String id, long rtMs, long rtQualityRating)
+    {
+        Rallypoint rp = getOrCreate(id, SystemClock.elapsedRealtime());
+
+        rp.rt.record(rtMs);
+        rp.lastRtMs = rtMs;
+        rp.lastQualityRating = rtQualityRating;
+    }
+
+    public synchronized List<Snapshot> getSnapshots()
+    {
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<Snapshot> rc = new ArrayList<>();
+
+        for(Rallypoint rp : _rallypoints.values())
+        {
+            Snapshot s = new Snapshot();
+
+            s.id = rp.id;
+            s.state = rp.state;
+            s.stateDurationMs = now - rp.stateSince;
+            System.arraycopy(rp.msInState, 0, s.msInState, 0, s.msInState.length);
+            s.msInState[rp.state.ordinal()] += s.stateDurationMs;
+            s.connects = rp.connects;
+            s.reconnects = rp.reconnects;
+            s.disconnects = rp.disconnects;
+            s.lastRtMs = rp.lastRtMs;
+            s.lastQualityRating = rp.lastQualityRating;
+            s.rtCount = rp.rt.getTotalCount();
+            s.rtP50 = rp.rt.getValueAtPercentile(50.0);
+            s.rtP90 = rp.rt.getValueAtPercentile(90.0);
+            s.rtP99 = rp.rt.getValueAtPercentile(99.0);
+            s.rtMax = rp.rt.getMax();
+
+            rc.add(s);
+        }
+
+        return rc;
+    }
+
+    public synchronized JSONObject toJson()
+    {
+        long now = SystemClock.elapsedRealtime();
+        JSONObject rc = new JSONObject();
+
+        try
+        {
+            rc.put("since", _since);//NON-NLS
+            rc.put("now", Utils.nowMs());//NON-NLS
+
+            JSONArray list = new JSONArray();
+            for(Rallypoint rp : _rallypoints.values())
+            {
+                JSONObject obj = new JSONObject();
+
+                obj.put("id", rp.id);//NON-NLS
+                obj.put("state", rp.state.name());//NON-NLS
+                obj.put("stateDurationMs", now - rp.stateSince);//NON-NLS
+                obj.put("connects", rp.connects);//NON-NLS
+                obj.put("reconnects", rp.reconnects);//NON-NLS
+                obj.put("disconnects", rp.disconnects);//NON-NLS
+                obj.put("lastRtMs", rp.lastRtMs);//NON-NLS
+                obj.put("lastQualityRating", rp.lastQualityRating);//NON-NLS
+
+                JSONObject durations = new JSONObject();
+                for(State st : State.values())
+                {
+                    long ms = rp.msInState[st.ordinal()];
+                    if(st == rp.state)
+                    {
+                        ms += (now - rp.stateSince);
+                    }
+
+                    durations.put(st.name(), ms);
+                }
+
+                obj.put("msInState", durations);//NON-NLS
+                obj.put("roundtripMs", rp.rt.toJson());//NON-NLS
+                list.put(obj);
+            }
+
+            rc.put("rallypoints", list);//NON-NLS
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return rc;
+    }
+}
@@ -41,9 +41,9 @@ public class SettingsActivity extends AppCompatPreferenceActivity
     private static SettingsActivity _thisActivity;
     private static boolean _prefChangeIsBeingForcedByBinding = false;
 
-    private void indicateMissionChanged()
+    private void indicateSettingChanged(String key)
     {
-        ((EngageApplication) getApplication()).setMissionChangedStatus(true);
+        ((EngageApplication) getApplication()).onSettingChanged(key);
     }
 
     private static Preference.OnPreferenceChangeListener sBindPreferenceSummaryToValueListener = new Preference.OnPreferenceChangeListener()
@@ -63,8 +63,8 @@ public class SettingsActivity extends AppCompatPreferenceActivity
                     || key.startsWith("network_")//NON-NLS
                     || key.startsWith("mission_"))//NON-NLS
                 {
-                    Log.i(TAG, "mission parameters changed");//NON-NLS
-                    _thisActivity.indicateMissionChanged();
+                    Log.i(TAG, "setting changed: " + key);//NON-NLS
+                    _thisActivity.indicateSettingChanged(key);
                 }
             }
 
@@ -266,6 +266,7 @@ public class SettingsActivity extends AppCompatPreferenceActivity
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_LOCATION_ACCURACY));
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_LOCATION_INTERVAL_SECS));
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_LOCATION_MIN_DISPLACEMENT));
+            bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_LOCATION_ADAPTIVE));
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_NOTIFY_NODE_JOIN));
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_NOTIFY_NODE_LEAVE));
             bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_NOTIFY_NEW_AUDIO_RX));
@@ -346,6 +347,7 @@ public class SettingsActivity extends AppCompatPreferenceActivity
 
                 bindPreferenceSummaryToValue(findPreference(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_ENABLED));
                 bindPreferenceSummaryToValue(findPreference(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_SECS));
+                bindPreferenceSummaryToValue(findPreference(PreferenceKeys.USER_WAKE_WINDOW_SECS));
             }
 
 
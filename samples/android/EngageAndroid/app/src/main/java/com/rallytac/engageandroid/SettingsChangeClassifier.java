@@ -0,0 +1,145 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import java.util.HashMap;
+
+// Maps a preference key to the least that has to happen for a change to it to take effect.
+// Most settings are read from the active configuration as they're used and only need that
+// updated - there's no need to re-parse the mission or restart the engine for them.
+//
+// Anything we don't know about is treated as needing an engine restart.
+public class SettingsChangeClassifier
+{
+    public static final int NONE = 0;
+
+    // Read from the active configuration when used - updating it is enough
+    public static final int LIVE = 0x0001;
+
+    // The main screen is built around it and has to be recreated
+    public static final int LAYOUT = 0x0002;
+
+    // Goes into the engine's JSON for each group so created groups are re-created
+    public static final int GROUPS = 0x0004;
+
+    // Part of our presence descriptor
+    public static final int PD = 0x0008;
+
+    public static final int LOCATION = 0x0010;
+    public static final int HBM = 0x0020;
+    public static final int WAKE_WINDOW = 0x0040;
+    public static final int DEVICE_MONITOR = 0x0080;
+
+    // Engine policy, identity, licensing, discovery, mission and rallypoint changes
+    public static final int ENGINE_RESTART = 0x0100;
+
+    private static HashMap<String, Integer> _map = null;
+
+    private static synchronized HashMap<String, Integer> getMap()
+    {
+        if(_map == null)
+        {
+            HashMap<String, Integer> m = new HashMap<>();
+
+            m.put(PreferenceKeys.UI_MODE, LIVE | LAYOUT);
+            m.put(PreferenceKeys.UI_SHOW_TEXT_MESSAGING, LIVE | LAYOUT);
+            m.put(PreferenceKeys.USER_UI_PTT_LATCHING, LIVE | LAYOUT);
+            m.put(PreferenceKeys.USER_UI_PTT_VOICE_CONTROL, LIVE | LAYOUT);
+
+            m.put(PreferenceKeys.USER_NOTIFY_NODE_JOIN, LIVE);
+            m.put(PreferenceKeys.USER_NOTIFY_NODE_LEAVE, LIVE);
+            m.put(PreferenceKeys.USER_NOTIFY_NEW_AUDIO_RX, LIVE);
+            m.put(PreferenceKeys.USER_NOTIFY_NETWORK_ERROR, LIVE);
+            m.put(PreferenceKeys.USER_NOTIFY_VIBRATIONS, LIVE);
+            m.put(PreferenceKeys.USER_NOTIFY_PTT_EVERY_TIME, LIVE);
+            m.put(PreferenceKeys.USER_TONE_LEVEL_PTT, LIVE);
+            m.put(PreferenceKeys.USER_TONE_LEVEL_ERROR, LIVE);
+            m.put(PreferenceKeys.USER_TONE_LEVEL_NOTIFICATION, LIVE);
+
+            m.put(PreferenceKeys.NETWORK_BINDING_NIC_NAME, LIVE | GROUPS);
+            m.put(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_ENABLED, LIVE | GROUPS);
+            m.put(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_SECS, LIVE | GROUPS);
+            m.put(PreferenceKeys.USER_SPEAKER_OUTPUT_BOOST_FACTOR, LIVE | GROUPS);
+            m.put(PreferenceKeys.USER_AUDIO_INPUT_DEVICE, LIVE | GROUPS);
+            m.put(PreferenceKeys.USER_AUDIO_OUTPUT_DEVICE, LIVE | GROUPS);
+            m.put(PreferenceKeys.USER_ALIAS_ID, LIVE | GROUPS | PD);
+
+            m.put(PreferenceKeys.USER_ID, LIVE | PD);
+            m.put(PreferenceKeys.USER_DISPLAY_NAME, LIVE | PD);
+
+            m.put(PreferenceKeys.USER_LOCATION_SHARED, LIVE | LOCATION);
+            m.put(PreferenceKeys.USER_LOCATION_ACCURACY, LIVE | LOCATION);
+            m.put(PreferenceKeys.USER_LOCATION_INTERVAL_SECS, LIVE | LOCATION);
+            m.put(PreferenceKeys.USER_LOCATION_MIN_DISPLACEMENT, LIVE | LOCATION);
+            m.put(PreferenceKeys.USER_LOCATION_ADAPTIVE, LIVE | LOCATION);
+
+            m.put(PreferenceKeys.USER_WAKE_WINDOW_SECS, WAKE_WINDOW);
+
+            m.put(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_POWER, DEVICE_MONITOR | PD);
+            m.put(PreferenceKeys.USER_EXPERIMENT_ENABLE_DEVICE_REPORT_CONNECTIVITY, DEVICE_MONITOR | PD);
+
+            m.put(PreferenceKeys.USER_EXPERIMENT_ENABLE_HBM, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_INTERVAL_SECS, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_HEART_RATE, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_SKIN_TEMP, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_CORE_TEMP, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_OXY, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_BLOOD_HYDRO, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_FATIGUE_LEVEL, HBM);
+            m.put(PreferenceKeys.USER_EXPERIMENT_HBM_ENABLE_TASK_EFFECTIVENESS_LEVEL, HBM);
+
+            _map = m;
+        }
+
+        return _map;
+    }
+
+    public static int classify(String key)
+    {
+        if(Utils.isEmptyString(key))
+        {
+            return NONE;
+        }
+
+        Integer rc = getMap().get(key);
+        if(rc == null)
+        {
+            return ENGINE_RESTART;
+        }
+
+        return rc;
+    }
+
+    public static boolean has(int actions, int action)
+    {
+        return ((actions & action) != 0);
+    }
+
+    public static String describe(int actions)
+    {
+        if(actions == NONE)
+        {
+            return "none";//NON-NLS
+        }
+
+        StringBuilder sb = new StringBuilder();
+        String[] names = {"live", "layout", "groups", "pd", "location", "hbm", "wakeWindow", "deviceMonitor", "engineRestart"};//NON-NLS
+
+        for(int x = 0; x < names.length; x++)
+        {
+            if(has(actions, (1 << x)))
+            {
+                if(sb.length() > 0)
+                {
+                    sb.append("|");//NON-NLS
+                }
+                sb.append(names[x]);
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -44,8 +44,8 @@ public class ShareHelper {
         }
     }
 
-    private static List<ResolveInfo> getAppsSupportingIntentType(final Context context, final String type) {
-        final Intent shareIntent = new Intent(Intent.ACTION_SEND);
+    private static List<ResolveInfo> getAppsSupportingIntentType(final Context context, final String action, final String type) {
+        final Intent shareIntent = new Intent(action);
         shareIntent.setType(type);
 
         return context.getPackageManager().queryIntentActivities(shareIntent, 0);
@@ -75,7 +75,7 @@ public class ShareHelper {
                                                                   final Intent targetedShareIntent, final Set<String> selectedPackageNames) {
 
         // Query app supporting Intent type
-        List<ResolveInfo> resInfo = getAppsSupportingIntentType(context, intentType);
+        List<ResolveInfo> resInfo = getAppsSupportingIntentType(context, targetedShareIntent.getAction(), intentType);
         if (resInfo.size() == 0) {
             return Collections.emptyList();
         }
@@ -95,11 +95,7 @@ public class ShareHelper {
         targetedShareIntent.putExtra(Intent.EXTRA_TEXT, data.getText() + (!Utils.isEmptyString(data.getUrl()) ? "\n" + data.getUrl() : ""));
         targetedShareIntent.putExtra(Intent.EXTRA_SUBJECT, data.getSubject());
 
-        if(!data.getUris().isEmpty())
-        {
-            targetedShareIntent.putExtra(Intent.EXTRA_STREAM, data.getUris().get(0));
-            //targetedShareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, data.getUris());
-        }
+        attachUris(targetedShareIntent, data);
 
         return buildIntentsForAppsSupportingType(context, SHARE_TXT_PLAIN, targetedShareIntent, selectedPackageNames);
 
@@ -123,15 +119,22 @@ public class ShareHelper {
             targetedShareIntent.putExtra(Intent.EXTRA_HTML_TEXT, data.getHtml());
         }
 
-        if(!data.getUris().isEmpty())
-        {
-            targetedShareIntent.putExtra(Intent.EXTRA_STREAM, data.getUris().get(0));
-            //targetedShareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, data.getUris());
-        }
+        attachUris(targetedShareIntent, data);
 
         return buildIntentsForAppsSupportingType(context, SHARE_TXT_HTML, targetedShareIntent, selectedPackageNames);
     }
 
+    // A single attachment goes with ACTION_SEND; several need ACTION_SEND_MULTIPLE or all but
+    // the first are lost
+    private static void attachUris(final Intent intent, final ShareableData data) {
+        if (data.getUris().size() == 1) {
+            intent.putExtra(Intent.EXTRA_STREAM, data.getUris().get(0));
+        } else if (data.getUris().size() > 1) {
+            intent.setAction(Intent.ACTION_SEND_MULTIPLE);
+            intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, data.getUris());
+        }
+    }
+
     public static Intent buildTwitterShareIntent(final ShareableData data) {
         final Intent targetedShareIntent = new Intent(Intent.ACTION_SEND);
         targetedShareIntent.setType(SHARE_TXT_PLAIN);
@@ -139,11 +142,7 @@ public class ShareHelper {
                 data.getText() + (!Utils.isEmptyString(data.getUrl()) ? "\n" + data.getUrl() : ""));
         targetedShareIntent.setPackage(TWITTER_PACKAGE);
 
-        if(!data.getUris().isEmpty())
-        {
-            targetedShareIntent.putExtra(Intent.EXTRA_STREAM, data.getUris().get(0));
-            //targetedShareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, data.getUris());
-        }
+        attachUris(targetedShareIntent, data);
 
         return targetedShareIntent;
 
@@ -21,6 +21,7 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.Switch;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import org.json.JSONObject;
@@ -28,6 +29,7 @@ import org.json.JSONObject;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 
 public class ShareMissionActivity extends AppCompatActivity
 {
@@ -42,6 +44,13 @@ public class ShareMissionActivity extends AppCompatActivity
     private String _base91DataString = null;
     private JSONObject _jsonConfiguration = null;
     private byte[] _compressedDataBytes = null;
+    private boolean _compactQrCode = false;
+    private ArrayList<String> _chunkFrames = null;
+    private String _contentKey = null;
+    private Bitmap[] _frameBitmaps = null;
+    private int _frameIndex = 0;
+    private Handler _frameHandler = new Handler();
+    private int _bitmapGeneration = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
@@ -105,6 +114,9 @@ public class ShareMissionActivity extends AppCompatActivity
         bundle.putString("DATASTRING", _base91DataString);//NON-NLS
         bundle.putBoolean("ZOOMED", _qrCodeZoomed);//NON-NLS
         bundle.putByteArray("COMPRESSED_DATA_BYTES", _compressedDataBytes);//NON-NLS
+        bundle.putBoolean("COMPACT", _compactQrCode);//NON-NLS
+        bundle.putStringArrayList("CHUNK_FRAMES", _chunkFrames);//NON-NLS
+        bundle.putString("CONTENT_KEY", _contentKey);//NON-NLS
     }
 
     private void restoreSavedState(Bundle bundle)
@@ -119,6 +131,9 @@ public class ShareMissionActivity extends AppCompatActivity
         _base91DataString = bundle.getString("DATASTRING", null);//NON-NLS
         _qrCodeZoomed = bundle.getBoolean("ZOOMED", false);//NON-NLS
         _compressedDataBytes = bundle.getByteArray("COMPRESSED_DATA_BYTES");//NON-NLS
+        _compactQrCode = bundle.getBoolean("COMPACT", false);//NON-NLS
+        _chunkFrames = bundle.getStringArrayList("CHUNK_FRAMES");//NON-NLS
+        _contentKey = bundle.getString("CONTENT_KEY", null);//NON-NLS
 
         buildBitmap();
     }
@@ -146,18 +161,31 @@ public class ShareMissionActivity extends AppCompatActivity
     {
         _pwd = ((EditText)findViewById(R.id.etPassword)).getText().toString();
         _deflectionUrl = ((EditText)findViewById(R.id.etDeflectionUrl)).getText().toString();
+        _compactQrCode = ((Switch)findViewById(R.id.swCompactQrCode)).isChecked();
     }
 
     private void setElements()
     {
         ((EditText)findViewById(R.id.etPassword)).setText(_pwd);
         ((EditText)findViewById(R.id.etDeflectionUrl)).setText(_deflectionUrl);
+        ((Switch)findViewById(R.id.swCompactQrCode)).setChecked(_compactQrCode);
     }
 
     private void setBitmap()
     {
         ImageView iv = findViewById(R.id.ivQrCode);
         LinearLayout lay = findViewById(R.id.layoutQrCode);
+        TextView tv = findViewById(R.id.tvQrCodeDescription);
+
+        if(_frameBitmaps != null)
+        {
+            _bm = _frameBitmaps[_frameIndex];
+            tv.setText(String.format(getString(R.string.qr_code_chunk_fmt), _frameIndex + 1, _frameBitmaps.length));
+        }
+        else
+        {
+            tv.setText(R.string.tap_the_qr_code_to_toggle_zoom);
+        }
 
         if(_bm != null)
         {
@@ -172,34 +200,105 @@ public class ShareMissionActivity extends AppCompatActivity
 
     private void buildBitmap()
     {
-        //TODO: Binary QR code
-        /*
-        if(_compressedDataBytes != null)
-        {
-            byte[] hdr = Constants.QR_CODE_HEADER.getBytes(Utils.getEngageCharSet());
-            byte[] ver = Constants.QR_VERSION.getBytes(Utils.getEngageCharSet());
-            byte[] ba = new byte[hdr.length + ver.length + _compressedDataBytes.length];
+        _bitmapGeneration++;
+        _frameBitmaps = null;
+        _frameIndex = 0;
+        _bm = null;
 
-            System.arraycopy(hdr, 0, ba, 0, hdr.length);
-            System.arraycopy(ver, 0, ba, hdr.length, ver.length);
-            System.arraycopy(_compressedDataBytes, 0, ba, hdr.length + ver.length, _compressedDataBytes.length);
+        if(_contentKey == null)
+        {
+            return;
+        }
 
-            _bm = Utils.byteArrayToQrCodeBitmap(ba, Constants.QR_CODE_WIDTH, Constants.QR_CODE_HEIGHT);
+        if(_chunkFrames != null && !_chunkFrames.isEmpty())
+        {
+            _frameBitmaps = new Bitmap[_chunkFrames.size()];
+            for(int x = 0; x < _frameBitmaps.length; x++)
+            {
+                requestBitmap(_chunkFrames.get(x), x);
+            }
         }
-        else
+        else if(!Utils.isEmptyString(_base91DataString))
         {
-            _bm = null;
+            requestBitmap(_base91DataString, -1);
         }
-        */
 
-        if(!Utils.isEmptyString(_base91DataString))
+        startFrameCycling();
+    }
+
+    // QR codes are generated (or loaded from cache) in the background and land here on the UI thread
+    private void requestBitmap(String content, final int frameIndex)
+    {
+        final int generation = _bitmapGeneration;
+        String key = QrCodeBitmapCache.makeFrameKey(_contentKey, Math.max(frameIndex, 0), Constants.QR_CODE_WIDTH, Constants.QR_CODE_HEIGHT);
+        boolean persistent = !Utils.isEmptyString(_pwd);
+
+        Globals.getQrCodeBitmapCache().request(key, content, Constants.QR_CODE_WIDTH, Constants.QR_CODE_HEIGHT, persistent, new QrCodeBitmapCache.IBitmapReadyListener()
         {
-            _bm = Utils.stringToQrCodeBitmap(_base91DataString, Constants.QR_CODE_WIDTH, Constants.QR_CODE_HEIGHT);
+            @Override
+            public void onQrCodeBitmapReady(String key, Bitmap bm)
+            {
+                // Ignore anything from a previous generation or after we've gone away
+                if(generation != _bitmapGeneration || isFinishing())
+                {
+                    return;
+                }
+
+                if(frameIndex >= 0)
+                {
+                    _frameBitmaps[frameIndex] = bm;
+                }
+                else
+                {
+                    _bm = bm;
+                }
+
+                setBitmap();
+            }
+        });
+    }
+
+    private void startFrameCycling()
+    {
+        stopFrameCycling();
+
+        if(_frameBitmaps != null && _frameBitmaps.length > 1)
+        {
+            _frameHandler.postDelayed(_frameAdvancer, Constants.QR_CODE_CHUNK_FRAME_INTERVAL_MS);
         }
-        else
+    }
+
+    private void stopFrameCycling()
+    {
+        _frameHandler.removeCallbacks(_frameAdvancer);
+    }
+
+    private final Runnable _frameAdvancer = new Runnable()
+    {
+        @Override
+        public void run()
         {
-            _bm = null;
+            if(_frameBitmaps != null && _frameBitmaps.length > 1)
+            {
+                _frameIndex = (_frameIndex + 1) % _frameBitmaps.length;
+                setBitmap();
+                _frameHandler.postDelayed(this, Constants.QR_CODE_CHUNK_FRAME_INTERVAL_MS);
+            }
         }
+    };
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        startFrameCycling();
+    }
+
+    @Override
+    protected void onPause()
+    {
+        stopFrameCycling();
+        super.onPause();
     }
 
     public void onClickGenerateQrCode(View view)
@@ -220,12 +319,42 @@ public class ShareMissionActivity extends AppCompatActivity
         {
             getElements();
 
-            // This is our data record (header signature + version + json)
-            String textRecord = (Constants.QR_CODE_HEADER + Constants.QR_VERSION) + json;
+            if(_compactQrCode)
+            {
+                // Binary mission record, the header signature + version go in the clear ahead of it
+                try
+                {
+                    byte[] dataBytes = BinaryMissionCodec.encode(_jsonConfiguration);
+                    _compressedDataBytes = Utils.deflate(dataBytes, 0, dataBytes.length);
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                    _compressedDataBytes = null;
+                }
+            }
+            else
+            {
+                // This is our data record (header signature + version + json)
+                String textRecord = (Constants.QR_CODE_HEADER + Constants.QR_VERSION) + json;
 
-            // Compress it
-            byte[] dataBytes = textRecord.getBytes(Utils.getEngageCharSet());
-            _compressedDataBytes = Utils.compress(dataBytes, 0, dataBytes.length);
+                // Compress it
+                byte[] dataBytes = textRecord.getBytes(Utils.getEngageCharSet());
+                _compressedDataBytes = Utils.compress(dataBytes, 0, dataBytes.length);
+            }
+
+            if(_compressedDataBytes == null)
+            {
+                Globals.getEngageApplication().logEvent(Analytics.MISSION_QR_CODE_FAILED_CREATE);
+                Utils.showPopupMsg(ShareMissionActivity.this,getString(R.string.share_failed_to_create_shareable_configuration_package));
+                finish();
+                return;
+            }
+
+            // Keyed on what goes in before encryption and chunking add their own randomness
+            _contentKey = QrCodeBitmapCache.makeKey(_app.getActiveConfiguration().getMissionId(),
+                                                    (_compactQrCode ? Constants.QR_VERSION_BINARY : Constants.QR_VERSION),
+                                                    _compressedDataBytes, _pwd, _deflectionUrl);
 
             // It gets encrypted if we got a password
             if(!Utils.isEmptyString(_pwd))
@@ -241,7 +370,20 @@ public class ShareMissionActivity extends AppCompatActivity
             }
 
             // Convert to a Base91-encoded string
-            _base91DataString = new String(Base91.encode(_compressedDataBytes), Utils.getEngageCharSet());
+            _base91DataString = Base91.encodeToString(_compressedDataBytes, 0, _compressedDataBytes.length);
+            if(_compactQrCode)
+            {
+                _base91DataString = (Constants.QR_CODE_HEADER + Constants.QR_VERSION_BINARY) + _base91DataString;
+            }
+
+            // Too much for one comfortably scannable code - split it across several
+            _chunkFrames = null;
+            if(_base91DataString.length() > Constants.QR_CODE_MAX_SINGLE_CODE_CHARS)
+            {
+                int payloadVersion = Integer.parseInt(_compactQrCode ? Constants.QR_VERSION_BINARY : Constants.QR_VERSION);
+                _chunkFrames = ChunkedQrTransfer.buildFrames(payloadVersion, _compressedDataBytes,
+                                                             Constants.QR_CODE_CHUNK_SIZE, Constants.QR_CODE_CHUNK_PARITY_GROUP);
+            }
 
             // Precede with a deflection url if any (and save whatever was there anyway - even if it's nothing)
             Globals.getSharedPreferencesEditor().putString(PreferenceKeys.LAST_QRCODE_DEFLECTION_URL, _deflectionUrl);
@@ -253,9 +395,31 @@ public class ShareMissionActivity extends AppCompatActivity
                 _base91DataString = _deflectionUrl + Constants.QR_DEFLECTION_URL_SEP + _base91DataString;
             }
 
+            // If we've shown this mission this way before, show exactly the same codes again so
+            // they come straight out of the cache
+            ArrayList<String> content = _chunkFrames;
+            if(content == null)
+            {
+                content = new ArrayList<>();
+                content.add(_base91DataString);
+            }
+
+            ArrayList<String> shown = Globals.getQrCodeBitmapCache().reuseContent(_contentKey, content, !Utils.isEmptyString(_pwd));
+            if(shown != content)
+            {
+                if(shown.size() > 1)
+                {
+                    _chunkFrames = shown;
+                }
+                else
+                {
+                    _chunkFrames = null;
+                    _base91DataString = shown.get(0);
+                }
+            }
+
             // Finally, we can create our QR code!
             buildBitmap();
-            setBitmap();
 
             Globals.getEngageApplication().logEvent(Analytics.MISSION_QR_CODE_DISPLAYED_FOR_SHARE);
         }
@@ -361,19 +525,45 @@ public class ShareMissionActivity extends AppCompatActivity
                     extraText = String.format(getString(R.string.fmt_scan_this_qr_code_to_join_the_mission_or_download_from), ac.getMissionName(), downloadUrl);
                 }
 
-                File fd = File.createTempFile("qr-" + ac.getMissionName().replace(" ", "-"), ".jpg", Environment.getExternalStorageDirectory());//NON-NLS
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                _bm.compress(Bitmap.CompressFormat.JPEG, 100, bos);
-                byte[] bitmapdata = bos.toByteArray();
+                // A chunked mission goes as every one of its frames - the one on screen right now
+                // is no use on its own
+                Bitmap[] frames;
+                if(_frameBitmaps != null && _frameBitmaps.length > 1)
+                {
+                    frames = _frameBitmaps.clone();
+                }
+                else
+                {
+                    frames = new Bitmap[] { _bm };
+                }
 
-                FileOutputStream fos = new FileOutputStream(fd);
-                fos.write(bitmapdata);
-                fos.close();
+                // Still being generated
+                for(Bitmap bm : frames)
+                {
+                    if(bm == null)
+                    {
+                        return;
+                    }
+                }
 
-                Uri u = FileProvider.getUriForFile(this, getString(R.string.file_content_provider), fd);
+                String prefix = "qr-" + ac.getMissionName().replace(" ", "-");//NON-NLS
+                for(int x = 0; x < frames.length; x++)
+                {
+                    String name = (frames.length > 1 ? (prefix + "-" + (x + 1) + "of" + frames.length) : prefix);//NON-NLS
+                    File fd = File.createTempFile(name, ".jpg", Environment.getExternalStorageDirectory());//NON-NLS
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    frames[x].compress(Bitmap.CompressFormat.JPEG, 100, bos);
+                    byte[] bitmapdata = bos.toByteArray();
 
-                fd.deleteOnExit();
-                data.addUri(u);
+                    FileOutputStream fos = new FileOutputStream(fd);
+                    fos.write(bitmapdata);
+                    fos.close();
+
+                    Uri u = FileProvider.getUriForFile(this, getString(R.string.file_content_provider), fd);
+
+                    fd.deleteOnExit();
+                    data.addUri(u);
+                }
 
                 Globals.getEngageApplication().logEvent(Analytics.MISSION_SHARE_QR);
             }
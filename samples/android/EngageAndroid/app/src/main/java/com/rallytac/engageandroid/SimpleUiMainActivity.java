@@ -14,7 +14,6 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
-import android.media.MediaPlayer;
 import android.media.SoundPool;
 import androidx.annotation.ColorInt;
 import androidx.annotation.DrawableRes;
@@ -28,7 +27,6 @@ import androidx.core.content.res.ResourcesCompat;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
-import android.net.Uri;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.appcompat.widget.PopupMenu;
@@ -78,8 +76,6 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class SimpleUiMainActivity
                             extends
@@ -105,7 +101,7 @@ public class SimpleUiMainActivity
     private static int ENGINE_POLICY_EDIT_REQUEST_CODE = 46;
 
     private ActiveConfiguration _ac = null;
-    private Timer _waitForEngineStartedTimer = null;
+    private static final String WAIT_FOR_ENGINE_STARTED_TASK = "waitForEngineStarted";//NON-NLS
     private boolean _anyTxActive = false;
     private boolean _anyTxPending = false;
     private Animation _notificationBarAnimation = null;
@@ -139,23 +135,6 @@ public class SimpleUiMainActivity
 
     private String _missionFileLoadPassword = null;
 
-    private class TimelineEventPlayerTracker
-    {
-        private boolean _isPlayingEventAudio = false;
-        private View _currentExpandedEventDetail = null;
-        private TimelineEventListAdapter _eventListAdapter = null;
-        private MediaPlayer _mediaPlayer = null;
-        //private ImageView _ivPlayPause = null;
-        //private Timer _eventAudioPlayTimer = null;
-        //private boolean _timeLineEventPlayerSeekIsTouched = false;
-        //private SeekBar _timelineEventPlayerSeekbar = null;
-    }
-
-    static private final int TIMELINE_EVENT_AUDIO_SCALE = 100;
-
-    TimelineEventPlayerTracker _timelineEventPlayerTracker = new TimelineEventPlayerTracker();
-
-
     @Override
     public void onMapReady(final GoogleMap googleMap)
     {
@@ -687,7 +666,6 @@ public class SimpleUiMainActivity
     {
         Log.d(TAG, "onPause");//NON-NLS
         super.onPause();
-        stopTimelineAudioPlayer();
         stopAllTx();
         cancelTimers();
         unregisterFromApp();
@@ -697,7 +675,6 @@ public class SimpleUiMainActivity
     protected void onStop()
     {
         Log.d(TAG, "onStop");//NON-NLS
-        stopTimelineAudioPlayer();
         stopAllTx();
         cancelTimers();
         super.onStop();
@@ -707,7 +684,6 @@ public class SimpleUiMainActivity
     protected void onDestroy()
     {
         Log.d(TAG, "onDestroy");//NON-NLS
-        stopTimelineAudioPlayer();
         stopAllTx();
         cancelTimers();
         super.onDestroy();
@@ -718,7 +694,6 @@ public class SimpleUiMainActivity
     {
         if(_optAllowMultipleChannelView)
         {
-            stopTimelineAudioPlayer();
             stopAllTx();
             toggleViewMode();
         }
@@ -734,6 +709,18 @@ public class SimpleUiMainActivity
                 Log.i(TAG, "============= mission has changed, recreating =======================");//NON-NLS
                 onMissionChanged();
             }
+            else
+            {
+                int actions = Globals.getEngageApplication().applyPendingSettingChanges();
+                if(SettingsChangeClassifier.has(actions, SettingsChangeClassifier.LAYOUT))
+                {
+                    recreate();
+                }
+                else
+                {
+                    updateBiometricsIconDisplay();
+                }
+            }
         }
         else if(requestCode == ENGINE_POLICY_EDIT_REQUEST_CODE)
         {
@@ -799,6 +786,11 @@ public class SimpleUiMainActivity
                     Utils.showLongPopupMsg(SimpleUiMainActivity.this, String.format(getString(R.string.loaded_mission_fmt), ac.getMissionName()));
                     onMissionChanged();
                 }
+                else if(Globals.getEngageApplication().isChunkedQrTransferInProgress())
+                {
+                    // More frames of a multi-QR mission to go
+                    Globals.getEngageApplication().initiateSimpleQrCodeScan(this);
+                }
             }
             catch(SimpleMessageException sme)
             {
@@ -841,13 +833,13 @@ public class SimpleUiMainActivity
                     {
                         Log.d(TAG, "---onKeyDown requesting startTx (latched)");//NON-NLS
                         _pttRequestIsLatched = true;
-                        Globals.getEngageApplication().startTx(0, 0);
+                        Globals.getPttInputPipeline().press(PttInputPipeline.Source.KEY, event.getEventTime() * 1000000);
                     }
                     else
                     {
                         Log.d(TAG, "---onKeyDown requesting endTx");//NON-NLS
                         _pttRequestIsLatched = false;
-                        Globals.getEngageApplication().endTx();
+                        Globals.getPttInputPipeline().release(PttInputPipeline.Source.KEY);
                     }
                 }
                 else
@@ -857,7 +849,7 @@ public class SimpleUiMainActivity
                         _pttRequested = false;
                         _pttRequestIsLatched = false;
                         Log.d(TAG, "---onKeyDown requesting endTx");//NON-NLS
-                        Globals.getEngageApplication().endTx();
+                        Globals.getPttInputPipeline().releaseAll();
                     }
                 }
 
@@ -870,7 +862,7 @@ public class SimpleUiMainActivity
                     _pttRequested = true;
                     _pttRequestIsLatched = false;
                     Log.d(TAG, "---onKeyDown requesting startTx (ptt hold)");//NON-NLS
-                    Globals.getEngageApplication().startTx(0, 0);
+                    Globals.getPttInputPipeline().press(PttInputPipeline.Source.KEY, event.getEventTime() * 1000000);
                 }
             }
         }
@@ -894,12 +886,12 @@ public class SimpleUiMainActivity
                         if (_pttRequested)
                         {
                             Log.d(TAG, "---onKeyDown requesting startTx due to media button double-push");//NON-NLS
-                            Globals.getEngageApplication().startTx(0, 0);
+                            Globals.getPttInputPipeline().press(PttInputPipeline.Source.HEADSET, event.getEventTime() * 1000000);
                         }
                         else
                         {
                             Log.d(TAG, "---onKeyDown requesting endTx due to media button double-push");//NON-NLS
-                            Globals.getEngageApplication().endTx();
+                            Globals.getPttInputPipeline().release(PttInputPipeline.Source.HEADSET);
                         }
                     }
                 }
@@ -935,7 +927,7 @@ public class SimpleUiMainActivity
                 _pttRequested = false;
                 _pttRequestIsLatched = false;
                 Log.d(TAG, "---onKeyUp requesting endTx");//NON-NLS
-                Globals.getEngageApplication().endTx();
+                Globals.getPttInputPipeline().release(PttInputPipeline.Source.KEY);
             }
         }
         else
@@ -977,7 +969,7 @@ public class SimpleUiMainActivity
 
     private void stopAllTx()
     {
-        Globals.getEngageApplication().endTx();
+        Globals.getPttInputPipeline().releaseAll();
     }
 
     private void showNotificationBar(final String msg)
@@ -1393,7 +1385,7 @@ public class SimpleUiMainActivity
 
     private void updateBiometricsIconDisplay()
     {
-        if(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_HBM, false))
+        if(Globals.getAppSettings().get().hbmEnabled)
         {
             showBiometricsReporting();
         }
@@ -1537,359 +1529,16 @@ public class SimpleUiMainActivity
     }
 
 
-    private class TimelineEvent
-    {
-        public int typeIcon;
-        public String sourceEntity;
-        public String audioUri;
-        public long started;
-        public long ended;
-        public int audioId = -1;
-        public long audioLengthMs = 0;
-        public View view = null;
-        public boolean expanded = false;
-    }
-
-    void stopTimelineAudioPlayer()
-    {
-        /*
-        if(_eventAudioPlayTimer != null)
-        {
-            _eventAudioPlayTimer.cancel();
-            _eventAudioPlayTimer = null;
-        }
-        */
-
-        if(_timelineEventPlayerTracker._mediaPlayer != null)
-        {
-            _timelineEventPlayerTracker._mediaPlayer.stop();
-            _timelineEventPlayerTracker._mediaPlayer.release();
-            _timelineEventPlayerTracker._mediaPlayer = null;
-        }
-
-        _timelineEventPlayerTracker._isPlayingEventAudio = false;
-        //_timeLineEventPlayerSeekIsTouched = false;
-    }
-
-    void toggleTimelineEventDetail(View v)
-    {
-        stopTimelineAudioPlayer();
-
-        TimelineEvent currentTimelineEvent = null;
-        TimelineEvent newTimelineEvent = null;
-
-        if(_timelineEventPlayerTracker._currentExpandedEventDetail != null)
-        {
-            currentTimelineEvent = (TimelineEvent)_timelineEventPlayerTracker._currentExpandedEventDetail.getTag();
-            currentTimelineEvent.expanded = false;
-            _timelineEventPlayerTracker._currentExpandedEventDetail.setVisibility(View.GONE);
-            _timelineEventPlayerTracker._currentExpandedEventDetail = null;
-            //_timelineEventPlayerSeekbar = null;
-            //_timeLineEventPlayerSeekIsTouched = false;
-        }
-
-        v.setBackgroundColor(Color.RED);
-
-        newTimelineEvent = (TimelineEvent)v.getTag();
-        if(newTimelineEvent != currentTimelineEvent)
-        {
-            newTimelineEvent.expanded = true;
-            View expansion = v.findViewById(R.id.layEventExpansion);
-            //expansion.setVisibility(View.VISIBLE);
-            expansion.setTag(newTimelineEvent);
-            _timelineEventPlayerTracker._currentExpandedEventDetail = expansion;
-
-            //_timelineEventPlayerTracker._ivPlayPause = _timelineEventPlayerTracker._currentExpandedEventDetail.findViewById(R.id.ivPlayOrPause);
-
-            //_timelineEventPlayerTracker._ivPlayPause.setImageDrawable(ContextCompat.getDrawable(SimpleUiMainActivity.this, R.drawable.ic_pause_media));
-
-            /*
-            _timelineEventPlayerSeekbar = _currentExpandedEventDetail.findViewById(R.id.eventAudioSeekbar);
-            _timelineEventPlayerSeekbar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener()
-            {
-                @Override
-                public void onProgressChanged(SeekBar seekBar, int i, boolean b)
-                {
-                    Log.w(TAG, "onProgressChanged i=" + i);
-                    if(_timeLineEventPlayerSeekIsTouched)
-                    {
-                        _timelineEventMediaPlayer.seekTo(i * TIMELINE_EVENT_AUDIO_SCALE);
-                        if (!_timelineEventMediaPlayer.isPlaying())
-                        {
-                            _timelineEventMediaPlayer.start();
-                        }
-                    }
-                }
-
-                @Override
-                public void onStartTrackingTouch(SeekBar seekBar)
-                {
-                    Log.w(TAG, "onStartTrackingTouch");
-                    _timeLineEventPlayerSeekIsTouched = true;
-                }
-
-                @Override
-                public void onStopTrackingTouch(SeekBar seekBar)
-                {
-                    Log.w(TAG, "onStopTrackingTouch");
-                    _timeLineEventPlayerSeekIsTouched = false;
-                }
-            });
-            */
-
-            try
-            {
-                _timelineEventPlayerTracker._mediaPlayer = new MediaPlayer();
-                String path = newTimelineEvent.audioUri.substring(7);
-                _timelineEventPlayerTracker._mediaPlayer.setDataSource(this, Uri.parse(path));
-
-                _timelineEventPlayerTracker._mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener()
-                {
-                    @Override
-                    public void onPrepared(MediaPlayer mediaPlayer)
-                    {
-                        final int durationSecs = (mediaPlayer.getDuration() / 1000);
-                        Log.w(TAG, "onPrepared, durationSecs=" + durationSecs);
-
-                        /*
-                        _timelineEventPlayerSeekbar.post(new Runnable()
-                        {
-                            @Override
-                            public void run()
-                            {
-                                _timelineEventPlayerSeekbar.setMax(durationSecs);
-                                _timelineEventPlayerSeekbar.setProgress(0);
-                            }
-                        });
-                        */
-
-                        /*
-                        _eventAudioPlayTimer = new Timer();
-                        _eventAudioPlayTimer.scheduleAtFixedRate(new TimerTask()
-                        {
-                            @Override
-                            public void run()
-                            {
-                                if(!_timeLineEventPlayerSeekIsTouched)
-                                {
-                                    if(_timelineEventMediaPlayer.isPlaying())
-                                    {
-                                        int positionSecs = (_timelineEventMediaPlayer.getCurrentPosition() / 1000);
-                                        Log.d(TAG, "updating seekbar, position=" + positionSecs);
-                                        _timelineEventPlayerSeekbar.setProgress(positionSecs);
-                                    }
-                                }
-                            }
-                        }, 0, (TIMELINE_EVENT_AUDIO_SCALE / 2));
-                        */
-
-                        _timelineEventPlayerTracker._mediaPlayer.start();
-                    }
-                });
-
-                _timelineEventPlayerTracker._mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener()
-                {
-                    @Override
-                    public void onCompletion(MediaPlayer mediaPlayer)
-                    {
-                        // TODO: Maybe stop the timer?
-                        if(_timelineEventPlayerTracker != null)
-                        {
-                            //_timelineEventPlayerTracker._ivPlayPause.setImageDrawable(ContextCompat.getDrawable(SimpleUiMainActivity.this, R.drawable.ic_play_media));
-                            _timelineEventPlayerTracker._eventListAdapter.notifyDataSetChanged();
-                        }
-                    }
-                });
-
-                _timelineEventPlayerTracker._mediaPlayer.prepareAsync();
-            }
-            catch (Exception e)
-            {
-                stopTimelineAudioPlayer();
-                Toast.makeText(this, getString(R.string.err_cannot_play_event_audio), Toast.LENGTH_SHORT).show();
-            }
-
-        }
-
-        _timelineEventPlayerTracker._eventListAdapter.notifyDataSetChanged();
-    }
-
-    private class TimelineEventListAdapter extends ArrayAdapter<TimelineEvent>
-    {
-        private Context _ctx;
-        private int _resId;
-
-        public TimelineEventListAdapter(Context ctx, int resId, ArrayList<TimelineEvent> list)
-        {
-            super(ctx, resId, list);
-            _ctx = ctx;
-            _resId = resId;
-        }
-
-        @NonNull
-        @Override
-        public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent)
-        {
-            LayoutInflater inflator = LayoutInflater.from(_ctx);
-            convertView = inflator.inflate(_resId, parent, false);
-
-            final TimelineEvent item = getItem(position);
-
-            convertView.setTag(item);
-
-            ((ImageView)convertView.findViewById(R.id.ivEventType)).setImageDrawable(ContextCompat.getDrawable(_ctx, item.typeIcon));
-            ((TextView)convertView.findViewById(R.id.tvSourceEntity)).setText(item.sourceEntity);
-            ((TextView)convertView.findViewById(R.id.tvAudioLengthMs)).setText((item.audioLengthMs / 1000) + " secs");
-
-            View expansion = convertView.findViewById(R.id.layEventExpansion);
-
-            /*
-            if(item.expanded)
-            {
-                expansion.setVisibility(View.VISIBLE);
-            }
-            else
-            {
-                expansion.setVisibility(View.GONE);
-            }
-            */
-
-            expansion.setVisibility(View.GONE);
-
-            String extraInfo;
-
-            if(item.started > 0)
-            {
-                extraInfo = Utils.javaDateFromUnixMilliseconds(item.started).toString();
-            }
-            else
-            {
-                extraInfo = "";
-            }
-
-            ((TextView)convertView.findViewById(R.id.tvExtraInformation)).setText(extraInfo);
-
-            convertView.setOnClickListener(new View.OnClickListener()
-            {
-                @Override
-                public void onClick(View v)
-                {
-                    toggleTimelineEventDetail(v);
-                }
-            });
-
-            return convertView;
-        }
-    }
-
-
     @Override
     public void onGroupTimelineReport(final GroupDescriptor gd, final String reportJson)
     {
-        runOnUiThread(new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                ArrayList<TimelineEvent> events = null;
-
-                if(!Utils.isEmptyString(reportJson))
-                {
-                    try
-                    {
-                        JSONObject root = new JSONObject(reportJson);
-                        JSONArray list = root.getJSONArray(Engine.JsonFields.TimelineReport.events);
-                        if(list != null && list.length() > 0)
-                        {
-                            for(int x = 0; x < list.length(); x++)
-                            {
-                                JSONObject obj = list.getJSONObject(x);
-                                TimelineEvent te = new TimelineEvent();
-
-                                int dir = obj.getInt(Engine.JsonFields.TimelineEvent.direction);
-
-                                if(dir == 1)
-                                {
-                                    te.typeIcon = R.drawable.ic_event_receive;
-                                }
-                                else if(dir == 2)
-                                {
-                                    te.typeIcon = R.drawable.ic_event_transmit;
-                                }
-                                else
-                                {
-                                    te.typeIcon = R.drawable.ic_event_type_error;
-                                }
-
-                                te.started = obj.getLong(Engine.JsonFields.TimelineEvent.started);
-                                te.ended = obj.optLong(Engine.JsonFields.TimelineEvent.ended, 0);
-                                te.sourceEntity = obj.optString(Engine.JsonFields.TimelineEvent.alias);
-                                te.audioUri = obj.optString(Engine.JsonFields.TimelineEvent.uri);
-
-                                JSONObject audio = obj.optJSONObject(Engine.JsonFields.TimelineEvent.Audio.objectName);
-                                if(audio != null)
-                                {
-                                    te.audioLengthMs = audio.getLong(Engine.JsonFields.TimelineEvent.Audio.ms);
-                                }
-
-                                if(events == null)
-                                {
-                                    events = new ArrayList<>();
-                                }
-
-                                events.add(te);
-                            }
-                        }
-                    }
-                    catch(Exception e)
-                    {
-                        if(events != null)
-                        {
-                            events.clear();
-                            events = null;
-                        }
-
-                        e.printStackTrace();
-                    }
-                }
-
-                if(events == null)
-                {
-                    Toast.makeText(SimpleUiMainActivity.this, R.string.no_events_in_timeline_report, Toast.LENGTH_SHORT).show();
-                }
-                else
-                {
-                    AlertDialog.Builder builder = new AlertDialog.Builder(SimpleUiMainActivity.this);
-
-                    _timelineEventPlayerTracker._eventListAdapter = new TimelineEventListAdapter(SimpleUiMainActivity.this, R.layout.timeline_event_list_entry, events);
-
-                    builder.setAdapter(_timelineEventPlayerTracker._eventListAdapter, null);
-                    builder.setPositiveButton(R.string.button_close, new DialogInterface.OnClickListener()
-                    {
-                        @Override
-                        public void onClick(DialogInterface dialog, int which)
-                        {
-                            SimpleUiMainActivity.this.stopTimelineAudioPlayer();
-                        }
-                    });
-
-                    builder.show();
-                }
-            }
-        });
+        // Nothing to do here - the timeline browser picks reports up from the timeline store
     }
 
     @Override
     public void onGroupTimelineReportFailed(final GroupDescriptor gd)
     {
-        runOnUiThread(new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                Toast.makeText(SimpleUiMainActivity.this, "Failed to obtain a timeline report", Toast.LENGTH_SHORT).show();
-            }
-        });
+        // Nothing to do here - the timeline browser reports its own failures
     }
 
     @Override
@@ -1901,7 +1550,7 @@ public class SimpleUiMainActivity
     @Override
     public void onGroupHealthReport(final GroupDescriptor gd, final String reportJson)
     {
-        // TODO: Handle group health report
+        // Already recorded by the GroupStatsCollector - nothing to show here for now
     }
 
     @Override
@@ -1913,7 +1562,7 @@ public class SimpleUiMainActivity
     @Override
     public void onGroupStatsReport(final GroupDescriptor gd, final String reportJson)
     {
-        // TODO: Handle group stats report
+        // Already recorded by the GroupStatsCollector - nothing to show here for now
     }
 
     @Override
@@ -2145,6 +1794,12 @@ public class SimpleUiMainActivity
         startActivity(intent);
     }
 
+    private void startDiagnosticsActivity()
+    {
+        Intent intent = new Intent(this, DiagnosticsActivity.class);
+        startActivity(intent);
+    }
+
     private void startContactActivity()
     {
         Globals.getEngageApplication().logEvent(Analytics.VIEW_CONTACT);
@@ -2199,46 +1854,30 @@ public class SimpleUiMainActivity
         Globals.getEngageApplication().logEvent(Analytics.VIEW_TIMELINE);
         if(!Utils.isEmptyString(groupId))
         {
-            try
-            {
-                JSONObject obj = new JSONObject();
-
-                obj.put(Engine.JsonFields.TimelineQuery.maxCount, 10);
-                obj.put(Engine.JsonFields.TimelineQuery.mostRecentFirst, true);
-
-                Globals.getEngageApplication().getEngine().engageQueryGroupTimeline(groupId, obj.toString());
-            }
-            catch(Exception e)
-            {
-                e.printStackTrace();
-                Toast.makeText(this, R.string.error_constructing_timeline_query, Toast.LENGTH_SHORT).show();
-            }
+            Intent intent = new Intent(this, TimelineActivity.class);
+            intent.putExtra(TimelineActivity.EXTRA_GROUP_ID, groupId);
+            startActivity(intent);
         }
     }
 
     private void cancelTimers()
     {
-        if(_waitForEngineStartedTimer != null)
-        {
-            _waitForEngineStartedTimer.cancel();
-            _waitForEngineStartedTimer = null;
-        }
+        Globals.getAppScheduler().cancel(WAIT_FOR_ENGINE_STARTED_TASK);
     }
 
     private void recreateWhenEngineIsRestarted()
     {
         Globals.getEngageApplication().restartEngine();
 
-        _waitForEngineStartedTimer = new Timer();
-        _waitForEngineStartedTimer.scheduleAtFixedRate(new TimerTask()
+        Globals.getAppScheduler().schedulePeriodic(WAIT_FOR_ENGINE_STARTED_TASK, 0, 100, new AppScheduler.ITask()
         {
             @Override
-            public void run()
+            public boolean run()
             {
                 if(Globals.getEngageApplication().isEngineRunning())
                 {
                     Log.i(TAG, "engine is running, proceeding");//NON-NLS
-                    _waitForEngineStartedTimer.cancel();
+                    Globals.getAppScheduler().cancel(WAIT_FOR_ENGINE_STARTED_TASK);
 
                     runOnUiThread(new Runnable()
                     {
@@ -2253,8 +1892,10 @@ public class SimpleUiMainActivity
                 {
                     Log.i(TAG, "waiting for engage engine to restart");//NON-NLS
                 }
+
+                return true;
             }
-        }, 0, 100);
+        });
     }
 
     private void doRecreate()
@@ -2534,23 +2175,6 @@ public class SimpleUiMainActivity
         }
     }
 
-    public void onClickPlayOrPauseEventAudio(View view)
-    {
-        Log.e(TAG, "onClickPlayOrPauseEventAudio todo");
-        ImageView iv = (ImageView)view;
-
-        if(_timelineEventPlayerTracker._mediaPlayer.isPlaying())
-        {
-            iv.setImageDrawable(ContextCompat.getDrawable(SimpleUiMainActivity.this, R.drawable.ic_play_media));
-            _timelineEventPlayerTracker._mediaPlayer.pause();
-        }
-        else
-        {
-            iv.setImageDrawable(ContextCompat.getDrawable(SimpleUiMainActivity.this, R.drawable.ic_pause_media));
-            _timelineEventPlayerTracker._mediaPlayer.start();
-        }
-    }
-
     public void onClickTeamIcon(View view)
     {
         showTeamList();
@@ -2708,11 +2332,11 @@ public class SimpleUiMainActivity
 
                     if(_pttRequested)
                     {
-                        Globals.getEngageApplication().startTx(0, 0);
+                        Globals.getPttInputPipeline().press(PttInputPipeline.Source.SCREEN, System.nanoTime());
                     }
                     else
                     {
-                        Globals.getEngageApplication().endTx();
+                        Globals.getPttInputPipeline().release(PttInputPipeline.Source.SCREEN);
                     }
                 }
             });
@@ -2727,12 +2351,12 @@ public class SimpleUiMainActivity
                     if (event.getAction() == MotionEvent.ACTION_DOWN)
                     {
                         _pttRequested = true;
-                        Globals.getEngageApplication().startTx(0, 0);
+                        Globals.getPttInputPipeline().press(PttInputPipeline.Source.SCREEN, event.getEventTime() * 1000000);
                     }
                     else if (event.getAction() == MotionEvent.ACTION_UP)
                     {
                         _pttRequested = false;
-                        Globals.getEngageApplication().endTx();
+                        Globals.getPttInputPipeline().release(PttInputPipeline.Source.SCREEN);
                     }
 
                     return true;
@@ -2923,6 +2547,11 @@ public class SimpleUiMainActivity
                     startContactActivity();
                     return true;
                 }
+                else if (id == R.id.action_diagnostics)
+                {
+                    startDiagnosticsActivity();
+                    return true;
+                }
                 else if (id == R.id.action_dev_test)
                 {
                     startDevTestActivity();
@@ -0,0 +1,1004 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Message;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Browses a group's timeline newest-first.  Pages come from the GroupTimelineStore and
+// are only fetched from the engine where the store has a gap; older pages load as the
+// user scrolls towards the end of the list.
+public class TimelineActivity extends AppCompatActivity implements EngageApplication.IGroupTimelineListener
+{
+    private static String TAG = TimelineActivity.class.getSimpleName();
+
+    public static final String EXTRA_GROUP_ID = "GroupId";//NON-NLS
+
+    // Start loading the next page when we're within this many rows of the end
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int SEARCH_DEBOUNCE_MS = 300;
+
+    // Exports page through the engine in bigger steps than the browser, and give up
+    // digging after a while or once the store would start evicting what we've already
+    // fetched - in which case the export is flagged as incomplete
+    private static final int EXPORT_QUERY_PAGE_SIZE = 100;
+    private static final int MAX_EXPORT_QUERIES = 50;
+    private static final long EXPORT_MAX_GAP_MS = 2000;
+    private static final long DEFAULT_EXPORT_RANGE_MS = (60 * 60 * 1000);
+    private static final String EXPORT_DATE_FORMAT = "yyyy-MM-dd HH:mm";//NON-NLS
+
+    private String _groupId;
+    private ArrayList<GroupTimelineStore.Event> _events = new ArrayList<>();
+    private TimelineEventAdapter _adapter;
+    private RecyclerView _rvEvents;
+    private LinearLayoutManager _layoutManager;
+    private ProgressBar _pbLoading;
+    private TextView _tvEmpty;
+    private Handler _handler = new Handler();
+
+    private String _searchText = "";
+    private long _cursor = 0;
+    private String _cursorId = null;
+    private boolean _loading = false;
+    private boolean _reachedEnd = false;
+
+    private TimelineAudioPlayer _player = null;
+    private String _playingEventId = null;
+    private View _layPlayer;
+    private ImageView _ivPlayPause;
+    private SeekBar _sbPosition;
+    private TextView _tvPlayerStatus;
+    private boolean _seekBarIsTouched = false;
+
+    private boolean _exportPending = false;
+    private long _exportFromMs = 0;
+    private long _exportToMs = 0;
+    private long _exportMaxGapMs = -1;
+    private int _exportQueries = 0;
+    private TimelineExportTask _exportTask = null;
+    private ProgressDialog _progressDialog = null;
+
+    private Runnable _searchRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            restart();
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_timeline);
+
+        _groupId = getIntent().getStringExtra(EXTRA_GROUP_ID);
+
+        _pbLoading = findViewById(R.id.pbLoading);
+        _tvEmpty = findViewById(R.id.tvEmpty);
+
+        _layoutManager = new LinearLayoutManager(this);
+        _layoutManager.setItemPrefetchEnabled(true);
+
+        _adapter = new TimelineEventAdapter(this);
+
+        _rvEvents = findViewById(R.id.rvEvents);
+        _rvEvents.setHasFixedSize(true);
+        _rvEvents.setLayoutManager(_layoutManager);
+        _rvEvents.setItemViewCacheSize(PREFETCH_DISTANCE);
+        _rvEvents.setAdapter(_adapter);
+        _rvEvents.addOnScrollListener(new RecyclerView.OnScrollListener()
+        {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy)
+            {
+                loadMoreIfNeeded();
+            }
+        });
+
+        EditText etSearch = findViewById(R.id.etSearch);
+        etSearch.addTextChangedListener(new TextWatcher()
+        {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after)
+            {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count)
+            {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s)
+            {
+                _searchText = s.toString().trim();
+                _handler.removeCallbacks(_searchRunnable);
+                _handler.postDelayed(_searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
+        setupPlayer();
+        setupActionBar();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        _player.close();
+        _progressDialog = Utils.hideProgressMessage(_progressDialog);
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        Globals.getEngageApplication().addGroupTimelineListener(this);
+
+        // Anything that arrived while we were paused is in the store so just start over
+        restart();
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        Globals.getEngageApplication().removeGroupTimelineListener(this);
+        _handler.removeCallbacks(_searchRunnable);
+        _player.stop();
+    }
+
+    private void setupActionBar()
+    {
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null)
+        {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+
+            ActiveConfiguration ac = Globals.getEngageApplication().getActiveConfiguration();
+            GroupDescriptor gd = (ac == null) ? null : ac.getGroupDescriptor(_groupId);
+            if(gd != null)
+            {
+                actionBar.setSubtitle(gd.name);
+            }
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu)
+    {
+        getMenuInflater().inflate(R.menu.timeline_activity_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item)
+    {
+        int id = item.getItemId();
+        if (id == android.R.id.home)
+        {
+            onBackPressed();
+            return true;
+        }
+        else if (id == R.id.action_export_audio)
+        {
+            promptToExportAudio();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private boolean isSearching()
+    {
+        return !Utils.isEmptyString(_searchText);
+    }
+
+    private boolean matchesSearch(GroupTimelineStore.Event e)
+    {
+        return (!isSearching() || Utils.emptyAs(e.alias, "").toLowerCase().contains(_searchText.toLowerCase()));
+    }
+
+    private void restart()
+    {
+        _events.clear();
+        _adapter.notifyDataSetChanged();
+        _cursor = 0;
+        _cursorId = null;
+        _loading = false;
+        _reachedEnd = false;
+        loadMore();
+    }
+
+    private void loadMoreIfNeeded()
+    {
+        int lastVisible = _layoutManager.findLastVisibleItemPosition();
+        if(lastVisible >= _events.size() - PREFETCH_DISTANCE)
+        {
+            loadMore();
+        }
+    }
+
+    // Appends the next page from the store, or asks the store to fill the gap from the
+    // engine and waits for the report if it doesn't have it yet.
+    private void loadMore()
+    {
+        if(_loading || _reachedEnd || Utils.isEmptyString(_groupId))
+        {
+            return;
+        }
+
+        GroupTimelineStore store = Globals.getGroupTimelineStore();
+        List<GroupTimelineStore.Event> page;
+
+        if(!isSearching())
+        {
+            if(store.fillGap(_groupId, _cursor, _cursorId, Constants.TIMELINE_PAGE_SIZE) || store.isQueryPending(_groupId))
+            {
+                setLoading(true);
+                return;
+            }
+
+            page = store.getPage(_groupId, _cursor, _cursorId, Constants.TIMELINE_PAGE_SIZE);
+            appendPage(page);
+
+            if(page.size() < Constants.TIMELINE_PAGE_SIZE)
+            {
+                _reachedEnd = true;
+            }
+        }
+        else
+        {
+            page = store.search(_groupId, _searchText, _cursor, _cursorId, Constants.TIMELINE_PAGE_SIZE);
+            appendPage(page);
+
+            // Everything we hold below the cursor has been searched so if we're short we
+            // need to dig further back.  The store stops asking once what it digs up would
+            // only be evicted again.
+            if(page.size() < Constants.TIMELINE_PAGE_SIZE)
+            {
+                if(store.fillNextGap(_groupId, _cursor, _cursorId, Constants.TIMELINE_PAGE_SIZE) || store.isQueryPending(_groupId))
+                {
+                    setLoading(true);
+                    return;
+                }
+
+                _reachedEnd = true;
+            }
+        }
+
+        setLoading(false);
+
+        // The new rows may not have filled the screen, in which case there'll be no scroll
+        // to trigger the next page
+        if(!page.isEmpty())
+        {
+            _rvEvents.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    loadMoreIfNeeded();
+                }
+            });
+        }
+    }
+
+    private void appendPage(List<GroupTimelineStore.Event> page)
+    {
+        if(page.isEmpty())
+        {
+            return;
+        }
+
+        int first = _events.size();
+        _events.addAll(page);
+        // Events can share a start ms so the cursor carries the id too
+        GroupTimelineStore.Event last = page.get(page.size() - 1);
+        _cursor = last.started;
+        _cursorId = last.id;
+        _adapter.notifyItemRangeInserted(first, page.size());
+    }
+
+    private void setLoading(boolean loading)
+    {
+        _loading = loading;
+        _pbLoading.setVisibility(loading ? View.VISIBLE : View.GONE);
+        _tvEmpty.setVisibility((!loading && _reachedEnd && _events.isEmpty()) ? View.VISIBLE : View.GONE);
+    }
+
+    private int indexOfEvent(String eventId)
+    {
+        for(int x = 0; x < _events.size(); x++)
+        {
+            if(_events.get(x).id.equals(eventId))
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    // Live events update rows we're showing or, if they're newer than anything on
+    // screen, go in at the top
+    private void onLiveEvent(GroupDescriptor gd, String eventJson)
+    {
+        if(!gd.id.equals(_groupId))
+        {
+            return;
+        }
+
+        GroupTimelineStore.Event e;
+        try
+        {
+            e = GroupTimelineStore.Event.fromJson(gd.id, new JSONObject(eventJson));
+        }
+        catch (Exception ex)
+        {
+            return;
+        }
+
+        int idx = indexOfEvent(e.id);
+        if(idx >= 0)
+        {
+            _events.set(idx, e);
+            _adapter.notifyItemChanged(idx);
+        }
+        else if(matchesSearch(e) && (_events.isEmpty() || e.started >= _events.get(0).started))
+        {
+            boolean atTop = (_layoutManager.findFirstVisibleItemPosition() <= 0);
+
+            _events.add(0, e);
+            _adapter.notifyItemInserted(0);
+            _tvEmpty.setVisibility(View.GONE);
+
+            if(atTop)
+            {
+                _rvEvents.scrollToPosition(0);
+            }
+        }
+    }
+
+    @Override
+    public void onGroupTimelineEventStarted(final GroupDescriptor gd, final String eventJson)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onLiveEvent(gd, eventJson);
+            }
+        });
+    }
+
+    @Override
+    public void onGroupTimelineEventUpdated(final GroupDescriptor gd, final String eventJson)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onLiveEvent(gd, eventJson);
+            }
+        });
+    }
+
+    @Override
+    public void onGroupTimelineEventEnded(final GroupDescriptor gd, final String eventJson)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onLiveEvent(gd, eventJson);
+            }
+        });
+    }
+
+    @Override
+    public void onGroupTimelineReport(final GroupDescriptor gd, final String reportJson)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(!gd.id.equals(_groupId))
+                {
+                    return;
+                }
+
+                // The store has already merged the report so just carry on paging
+                if(_loading)
+                {
+                    _loading = false;
+                    loadMore();
+                }
+
+                if(_exportPending)
+                {
+                    continueExport();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onGroupTimelineReportFailed(final GroupDescriptor gd)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(!gd.id.equals(_groupId))
+                {
+                    return;
+                }
+
+                if(_loading || _exportPending)
+                {
+                    setLoading(false);
+                    Toast.makeText(TimelineActivity.this, R.string.timeline_report_failed, Toast.LENGTH_SHORT).show();
+                }
+
+                if(_exportPending)
+                {
+                    _exportPending = false;
+                    _progressDialog = Utils.hideProgressMessage(_progressDialog);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onGroupTimelineGroomed(final GroupDescriptor gd, final String eventListJson)
+    {
+        runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(!gd.id.equals(_groupId))
+                {
+                    return;
+                }
+
+                // Drop whatever the store no longer has
+                GroupTimelineStore store = Globals.getGroupTimelineStore();
+                for(int x = _events.size() - 1; x >= 0; x--)
+                {
+                    if(store.getEvent(_groupId, _events.get(x).id) == null)
+                    {
+                        _events.remove(x);
+                        _adapter.notifyItemRemoved(x);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onGroupHealthReport(GroupDescriptor gd, String reportJson)
+    {
+    }
+
+    @Override
+    public void onGroupHealthReportFailed(GroupDescriptor gd)
+    {
+    }
+
+    @Override
+    public void onGroupStatsReport(GroupDescriptor gd, String reportJson)
+    {
+    }
+
+    @Override
+    public void onGroupStatsReportFailed(GroupDescriptor gd)
+    {
+    }
+
+    private void setupPlayer()
+    {
+        _layPlayer = findViewById(R.id.layPlayer);
+        _ivPlayPause = findViewById(R.id.ivPlayPause);
+        _sbPosition = findViewById(R.id.sbPosition);
+        _tvPlayerStatus = findViewById(R.id.tvPlayerStatus);
+
+        _player = new TimelineAudioPlayer(this, new TimelineAudioPlayer.IPlaylist()
+        {
+            // The list is newest-first so "next" in time is the row above
+            @Override
+            public GroupTimelineStore.Event getNext(GroupTimelineStore.Event e)
+            {
+                int idx = indexOfEvent(e.id);
+                return (idx > 0) ? _events.get(idx - 1) : null;
+            }
+
+            @Override
+            public GroupTimelineStore.Event getPrevious(GroupTimelineStore.Event e)
+            {
+                int idx = indexOfEvent(e.id);
+                if(idx >= _events.size() - PREFETCH_DISTANCE)
+                {
+                    loadMore();
+                }
+                return (idx >= 0 && idx < _events.size() - 1) ? _events.get(idx + 1) : null;
+            }
+        }, new TimelineAudioPlayer.IPlaybackListener()
+        {
+            @Override
+            public void onPlaybackStarted(GroupTimelineStore.Event e, long timeToFirstSampleMs)
+            {
+                setPlayingEvent(e);
+                _ivPlayPause.setImageDrawable(ContextCompat.getDrawable(TimelineActivity.this, R.drawable.ic_pause_media));
+                _tvPlayerStatus.setText(getString(R.string.timeline_player_status_fmt, e.alias, timeToFirstSampleMs));
+            }
+
+            @Override
+            public void onPlaybackProgress(GroupTimelineStore.Event e, int positionMs, int durationMs)
+            {
+                setPlayingEvent(e);
+                if(!_seekBarIsTouched)
+                {
+                    _sbPosition.setMax(Math.max(durationMs, 1));
+                    _sbPosition.setProgress(positionMs);
+                }
+            }
+
+            @Override
+            public void onPlaybackPaused(GroupTimelineStore.Event e)
+            {
+                _ivPlayPause.setImageDrawable(ContextCompat.getDrawable(TimelineActivity.this, R.drawable.ic_play_media));
+            }
+
+            @Override
+            public void onPlaybackStopped(GroupTimelineStore.Event e)
+            {
+                _ivPlayPause.setImageDrawable(ContextCompat.getDrawable(TimelineActivity.this, R.drawable.ic_play_media));
+                _sbPosition.setProgress(_sbPosition.getMax());
+            }
+
+            @Override
+            public void onPlaybackError(GroupTimelineStore.Event e)
+            {
+                _ivPlayPause.setImageDrawable(ContextCompat.getDrawable(TimelineActivity.this, R.drawable.ic_play_media));
+                Toast.makeText(TimelineActivity.this, getString(R.string.err_cannot_play_event_audio), Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        _ivPlayPause.setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                if(_player.isPlaying())
+                {
+                    _player.pause();
+                }
+                else if(_player.isPaused())
+                {
+                    _player.resume();
+                    _ivPlayPause.setImageDrawable(ContextCompat.getDrawable(TimelineActivity.this, R.drawable.ic_pause_media));
+                }
+                else
+                {
+                    int idx = (_playingEventId == null) ? -1 : indexOfEvent(_playingEventId);
+                    if(idx >= 0)
+                    {
+                        _player.play(_events.get(idx));
+                    }
+                }
+            }
+        });
+
+        findViewById(R.id.ivPrevious).setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                _player.playPrevious();
+            }
+        });
+
+        findViewById(R.id.ivNext).setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                _player.playNext();
+            }
+        });
+
+        ((CheckBox)findViewById(R.id.cbPlayAll)).setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener()
+        {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked)
+            {
+                _player.setPlayAll(isChecked);
+            }
+        });
+
+        _sbPosition.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener()
+        {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser)
+            {
+                if(fromUser)
+                {
+                    _player.seekTo(progress);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar)
+            {
+                _seekBarIsTouched = true;
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar)
+            {
+                _seekBarIsTouched = false;
+            }
+        });
+    }
+
+    // Moves the highlight to the row being played
+    private void setPlayingEvent(GroupTimelineStore.Event e)
+    {
+        if(e.id.equals(_playingEventId))
+        {
+            return;
+        }
+
+        int previous = (_playingEventId == null) ? -1 : indexOfEvent(_playingEventId);
+        _playingEventId = e.id;
+
+        if(previous >= 0)
+        {
+            _adapter.notifyItemChanged(previous);
+        }
+
+        int idx = indexOfEvent(e.id);
+        if(idx >= 0)
+        {
+            _adapter.notifyItemChanged(idx);
+            _rvEvents.scrollToPosition(idx);
+        }
+    }
+
+    private void playEvent(GroupTimelineStore.Event e)
+    {
+        if(Utils.isEmptyString(e.uri))
+        {
+            return;
+        }
+
+        _layPlayer.setVisibility(View.VISIBLE);
+        _sbPosition.setProgress(0);
+        _tvPlayerStatus.setText(e.alias);
+        setPlayingEvent(e);
+        _player.play(e);
+    }
+
+    private void promptToExportAudio()
+    {
+        if(_exportPending || _exportTask != null)
+        {
+            Toast.makeText(this, R.string.timeline_export_in_progress, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        LayoutInflater layoutInflater = LayoutInflater.from(this);
+        View promptView = layoutInflater.inflate(R.layout.timeline_export_dialog, null);
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(this);
+        alertDialogBuilder.setView(promptView);
+
+        final EditText etFrom = promptView.findViewById(R.id.etFrom);
+        final EditText etTo = promptView.findViewById(R.id.etTo);
+        final CheckBox cbCompressSilence = promptView.findViewById(R.id.cbCompressSilence);
+        final SimpleDateFormat sdf = new SimpleDateFormat(EXPORT_DATE_FORMAT, Locale.getDefault());
+
+        // Default to the last hour
+        long now = System.currentTimeMillis();
+        etFrom.setText(sdf.format(new Date(now - DEFAULT_EXPORT_RANGE_MS)));
+        etTo.setText(sdf.format(new Date(now)));
+
+        alertDialogBuilder.setTitle(R.string.timeline_export_title)
+                .setCancelable(false)
+                .setPositiveButton(R.string.timeline_export_button, new DialogInterface.OnClickListener()
+                {
+                    public void onClick(DialogInterface dialog, int id)
+                    {
+                        long from;
+                        long to;
+
+                        try
+                        {
+                            from = sdf.parse(etFrom.getText().toString().trim()).getTime();
+                            to = sdf.parse(etTo.getText().toString().trim()).getTime();
+                        }
+                        catch (Exception e)
+                        {
+                            from = 0;
+                            to = 0;
+                        }
+
+                        if(from <= 0 || to <= from)
+                        {
+                            Toast.makeText(TimelineActivity.this, R.string.timeline_export_invalid_range, Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+
+                        startExport(from, to, cbCompressSilence.isChecked() ? EXPORT_MAX_GAP_MS : -1);
+                    }
+                })
+                .setNegativeButton(R.string.cancel,
+                        new DialogInterface.OnClickListener()
+                        {
+                            public void onClick(DialogInterface dialog, int id)
+                            {
+                                dialog.cancel();
+                            }
+                        });
+
+        AlertDialog alert = alertDialogBuilder.create();
+        alert.show();
+    }
+
+    private void startExport(long fromMs, long toMs, long maxGapMs)
+    {
+        _exportFromMs = fromMs;
+        _exportToMs = toMs;
+        _exportMaxGapMs = maxGapMs;
+        _exportQueries = 0;
+        _exportPending = true;
+
+        _progressDialog = Utils.showProgressMessage(this, getString(R.string.timeline_export_title), _progressDialog);
+
+        continueExport();
+    }
+
+    // Fills whatever the store is missing for the export range, one report at a time, and
+    // then hands the events over to the exporter
+    private void continueExport()
+    {
+        GroupTimelineStore store = Globals.getGroupTimelineStore();
+
+        if(_exportQueries < MAX_EXPORT_QUERIES)
+        {
+            if(store.fillRangeGap(_groupId, _exportFromMs, _exportToMs, EXPORT_QUERY_PAGE_SIZE))
+            {
+                _exportQueries++;
+                return;
+            }
+
+            // Someone else's query - we'll be back when its report arrives
+            if(store.isQueryPending(_groupId))
+            {
+                return;
+            }
+        }
+
+        _exportPending = false;
+
+        List<GroupTimelineStore.Event> events = store.getRange(_groupId, _exportFromMs, _exportToMs, Integer.MAX_VALUE);
+        Collections.reverse(events);
+
+        final boolean complete = store.isRangeComplete(_groupId, _exportFromMs, _exportToMs);
+
+        if(events.isEmpty())
+        {
+            _progressDialog = Utils.hideProgressMessage(_progressDialog);
+            Toast.makeText(this, complete ? R.string.timeline_export_no_audio : R.string.timeline_export_incomplete, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String baseName = "timeline-" + _groupId.replaceAll("[^A-Za-z0-9]", "") + "-" + _exportFromMs;//NON-NLS
+        final File audioFile = new File(Environment.getExternalStorageDirectory(), baseName + ".wav");//NON-NLS
+        final File sidecarFile = new File(Environment.getExternalStorageDirectory(), baseName + ".json");//NON-NLS
+
+        Handler handler = new Handler()
+        {
+            @Override
+            public void handleMessage(Message msg)
+            {
+                if(msg.what == TimelineExportTask.MSG_PROGRESS)
+                {
+                    if(_progressDialog != null)
+                    {
+                        _progressDialog.setMessage(getString(R.string.timeline_export_progress_fmt, msg.arg1, msg.arg2));
+                    }
+                }
+                else if(msg.what == TimelineExportTask.MSG_RESULT)
+                {
+                    _exportTask = null;
+                    _progressDialog = Utils.hideProgressMessage(_progressDialog);
+
+                    if(msg.arg1 > 0)
+                    {
+                        if(!complete)
+                        {
+                            Toast.makeText(TimelineActivity.this, R.string.timeline_export_incomplete, Toast.LENGTH_LONG).show();
+                        }
+
+                        shareExport(audioFile, sidecarFile);
+                    }
+                    else
+                    {
+                        String resultMsg = msg.getData().getString(TimelineExportTask.BUNDLE_RESULT_MSG);
+                        Toast.makeText(TimelineActivity.this, getString(R.string.timeline_export_failed_fmt, Utils.emptyAs(resultMsg, "")), Toast.LENGTH_LONG).show();
+                    }
+                }
+            }
+        };
+
+        _exportTask = new TimelineExportTask(handler, _groupId, events, _exportMaxGapMs, complete, audioFile, sidecarFile);
+        _exportTask.execute();
+    }
+
+    private void shareExport(File audioFile, File sidecarFile)
+    {
+        try
+        {
+            ArrayList<Uri> uris = new ArrayList<>();
+            uris.add(FileProvider.getUriForFile(this, getString(R.string.file_content_provider), audioFile));
+            uris.add(FileProvider.getUriForFile(this, getString(R.string.file_content_provider), sidecarFile));
+
+            String groupName = _groupId;
+            ActiveConfiguration ac = Globals.getEngageApplication().getActiveConfiguration();
+            GroupDescriptor gd = (ac == null) ? null : ac.getGroupDescriptor(_groupId);
+            if(gd != null)
+            {
+                groupName = gd.name;
+            }
+
+            SimpleDateFormat sdf = new SimpleDateFormat(EXPORT_DATE_FORMAT, Locale.getDefault());
+
+            Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+            intent.setType("*/*");//NON-NLS
+            intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+            intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.timeline_export_subject_fmt,
+                    getString(R.string.app_name), groupName, sdf.format(new Date(_exportFromMs)), sdf.format(new Date(_exportToMs))));
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            startActivity(Intent.createChooser(intent, getString(R.string.timeline_export_share_header)));
+        }
+        catch (Exception e)
+        {
+            Toast.makeText(this, getString(R.string.timeline_export_failed_fmt, e.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private class TimelineEventAdapter extends RecyclerView.Adapter<TimelineEventAdapter.ViewHolder>
+    {
+        private Context _ctx;
+        private LayoutInflater _inflater;
+
+        TimelineEventAdapter(Context ctx)
+        {
+            _ctx = ctx;
+            _inflater = LayoutInflater.from(ctx);
+        }
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i)
+        {
+            return new ViewHolder(_inflater.inflate(R.layout.timeline_event_list_entry, viewGroup, false));
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder viewHolder, int i)
+        {
+            GroupTimelineStore.Event e = _events.get(i);
+
+            int icon;
+            if(e.direction == 1)
+            {
+                icon = R.drawable.ic_event_receive;
+            }
+            else if(e.direction == 2)
+            {
+                icon = R.drawable.ic_event_transmit;
+            }
+            else
+            {
+                icon = R.drawable.ic_event_type_error;
+            }
+
+            viewHolder._ivEventType.setImageDrawable(ContextCompat.getDrawable(_ctx, icon));
+            viewHolder._tvSourceEntity.setText(e.alias);
+            viewHolder._tvAudioLength.setText(getString(R.string.timeline_event_length_fmt, (e.audioLengthMs / 1000)));
+            viewHolder._tvExtraInformation.setText((e.started > 0) ? Utils.javaDateFromUnixMilliseconds(e.started).toString() : "");
+            viewHolder.itemView.setBackgroundColor(e.id.equals(_playingEventId) ? ContextCompat.getColor(_ctx, R.color.timelinePlayingBackground) : Color.TRANSPARENT);
+        }
+
+        @Override
+        public int getItemCount()
+        {
+            return _events.size();
+        }
+
+        class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener
+        {
+            private ImageView _ivEventType;
+            private TextView _tvSourceEntity;
+            private TextView _tvAudioLength;
+            private TextView _tvExtraInformation;
+
+            ViewHolder(View itemView)
+            {
+                super(itemView);
+
+                _ivEventType = itemView.findViewById(R.id.ivEventType);
+                _tvSourceEntity = itemView.findViewById(R.id.tvSourceEntity);
+                _tvAudioLength = itemView.findViewById(R.id.tvAudioLengthMs);
+                _tvExtraInformation = itemView.findViewById(R.id.tvExtraInformation);
+
+                itemView.setOnClickListener(this);
+            }
+
+            @Override
+            public void onClick(View view)
+            {
+                int pos = getAdapterPosition();
+                if(pos != RecyclerView.NO_POSITION)
+                {
+                    playEvent(_events.get(pos));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.util.Log;
+
+import com.rallytac.engage.engine.Engine;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// Concatenates the audio of a run of timeline events into a single WAV file plus a JSON
+// sidecar describing who talked when.  Sample data is moved with FileChannel.transferTo()
+// so nothing more than a WAV header and a block of silence is ever held in memory.
+//
+// The engine records timeline audio as PCM WAV; every event must share the format of the
+// first one we can read.  Anything else is left out of the audio and listed in the sidecar.
+public class TimelineAudioExporter
+{
+    private static String TAG = TimelineAudioExporter.class.getSimpleName();
+
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int WAV_FORMAT_PCM = 1;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int SILENCE_BUFFER_SIZE = (16 * 1024);
+
+    public interface IProgressListener
+    {
+        void onExportProgress(int done, int total);
+    }
+
+    private static class WavInfo
+    {
+        int formatTag;
+        int channels;
+        int sampleRate;
+        int byteRate;
+        int blockAlign;
+        int bitsPerSample;
+        long dataOffset;
+        long dataSize;
+
+        boolean isSameFormat(WavInfo other)
+        {
+            return (formatTag == other.formatTag
+                    && channels == other.channels
+                    && sampleRate == other.sampleRate
+                    && bitsPerSample == other.bitsPerSample);
+        }
+
+        long bytesToMs(long bytes)
+        {
+            return (bytes * 1000) / byteRate;
+        }
+
+        long msToBytes(long ms)
+        {
+            long rc = (ms * byteRate) / 1000;
+            return rc - (rc % blockAlign);
+        }
+    }
+
+    private final String _groupId;
+    private final List<GroupTimelineStore.Event> _events;
+    private final long _maxGapMs;
+    private final boolean _complete;
+    private IProgressListener _progressListener = null;
+
+    private final ByteBuffer _header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer _silence = null;
+
+    // events must be oldest-first.  Silence between events is reproduced as recorded unless
+    // maxGapMs is >= 0, in which case longer gaps are shortened to maxGapMs.  complete is
+    // false if events is known to be missing some of the range and is noted in the sidecar.
+    public TimelineAudioExporter(String groupId, List<GroupTimelineStore.Event> events, long maxGapMs, boolean complete)
+    {
+        _groupId = groupId;
+        _events = events;
+        _maxGapMs = maxGapMs;
+        _complete = complete;
+    }
+
+    public void setProgressListener(IProgressListener listener)
+    {
+        _progressListener = listener;
+    }
+
+    // Writes the audio to audioFile and the sidecar to sidecarFile.  Returns the number of
+    // events that made it into the audio.
+    public int export(File audioFile, File sidecarFile) throws Exception
+    {
+        JSONArray exported = new JSONArray();
+        JSONArray skipped = new JSONArray();
+        WavInfo outFormat = null;
+        long outBytes = 0;
+        long lastEndedMs = 0;
+
+        RandomAccessFile raf = new RandomAccessFile(audioFile, "rw");//NON-NLS
+        try
+        {
+            FileChannel out = raf.getChannel();
+            out.truncate(0);
+            out.position(WAV_HEADER_SIZE);
+
+            for(int x = 0; x < _events.size(); x++)
+            {
+                GroupTimelineStore.Event e = _events.get(x);
+                String path = TimelineAudioPlayer.getPath(e.uri);
+
+                if(path == null || !new File(path).exists())
+                {
+                    skipped.put(describe(e, "missing"));//NON-NLS
+                    reportProgress(x + 1);
+                    continue;
+                }
+
+                FileInputStream fis = new FileInputStream(path);
+                try
+                {
+                    FileChannel in = fis.getChannel();
+                    WavInfo wi = readWavInfo(in);
+
+                    if(wi == null)
+                    {
+                        skipped.put(describe(e, "unsupportedFormat"));//NON-NLS
+                    }
+                    else if(outFormat != null && !outFormat.isSameFormat(wi))
+                    {
+                        skipped.put(describe(e, "formatMismatch"));//NON-NLS
+                    }
+                    else
+                    {
+                        if(outFormat == null)
+                        {
+                            outFormat = wi;
+                        }
+                        else
+                        {
+                            outBytes += writeSilence(out, outFormat, e.started - lastEndedMs);
+                        }
+
+                        long offsetMs = outFormat.bytesToMs(outBytes);
+                        long copied = transfer(in, wi.dataOffset, wi.dataSize, out);
+                        outBytes += copied;
+
+                        // The engine's end time is when the talker let go, which isn't
+                        // necessarily where the audio stops
+                        long durationMs = outFormat.bytesToMs(copied);
+                        lastEndedMs = e.started + durationMs;
+
+                        JSONObject obj = describe(e, null);
+                        obj.put("offsetMs", offsetMs);//NON-NLS
+                        obj.put("durationMs", durationMs);//NON-NLS
+                        exported.put(obj);
+                    }
+                }
+                finally
+                {
+                    fis.close();
+                }
+
+                reportProgress(x + 1);
+            }
+
+            if(outFormat == null)
+            {
+                throw new SimpleMessageException(Globals.getEngageApplication().getString(R.string.timeline_export_no_audio));
+            }
+
+            writeHeader(out, outFormat, outBytes);
+            out.force(false);
+        }
+        catch (Exception e)
+        {
+            raf.close();
+            audioFile.delete();
+            throw e;
+        }
+
+        raf.close();
+
+        writeSidecar(sidecarFile, outFormat, outBytes, exported, skipped);
+
+        return exported.length();
+    }
+
+    private void reportProgress(int done)
+    {
+        if(_progressListener != null)
+        {
+            _progressListener.onExportProgress(done, _events.size());
+        }
+    }
+
+    private JSONObject describe(GroupTimelineStore.Event e, String reason) throws Exception
+    {
+        JSONObject obj = new JSONObject();
+
+        obj.put(Engine.JsonFields.TimelineEvent.id, e.id);
+        obj.put(Engine.JsonFields.TimelineEvent.alias, Utils.emptyAs(e.alias, ""));
+        obj.put(Engine.JsonFields.TimelineEvent.nodeId, Utils.emptyAs(e.nodeId, ""));
+        obj.put(Engine.JsonFields.TimelineEvent.direction, e.direction);
+        obj.put(Engine.JsonFields.TimelineEvent.started, e.started);
+        obj.put(Engine.JsonFields.TimelineEvent.ended, e.ended);
+
+        if(reason != null)
+        {
+            obj.put("reason", reason);//NON-NLS
+        }
+
+        return obj;
+    }
+
+    private void writeSidecar(File sidecarFile, WavInfo wi, long dataBytes, JSONArray exported, JSONArray skipped) throws Exception
+    {
+        JSONObject root = new JSONObject();
+
+        root.put("groupId", _groupId);//NON-NLS
+        root.put("from", _events.isEmpty() ? 0 : _events.get(0).started);//NON-NLS
+        root.put("to", _events.isEmpty() ? 0 : _events.get(_events.size() - 1).ended);//NON-NLS
+        root.put("sampleRate", wi.sampleRate);//NON-NLS
+        root.put("channels", wi.channels);//NON-NLS
+        root.put("bitsPerSample", wi.bitsPerSample);//NON-NLS
+        root.put("durationMs", wi.bytesToMs(dataBytes));//NON-NLS
+        root.put("maxGapMs", _maxGapMs);//NON-NLS
+        root.put("complete", _complete);//NON-NLS
+        root.put("events", exported);//NON-NLS
+        root.put("skipped", skipped);//NON-NLS
+
+        FileOutputStream fos = new FileOutputStream(sidecarFile);
+        try
+        {
+            fos.write(root.toString(2).getBytes(Utils.getEngageCharSet()));
+        }
+        finally
+        {
+            fos.close();
+        }
+    }
+
+    // Walks the RIFF chunks for "fmt " and "data".  Returns null for anything that isn't
+    // uncompressed PCM.
+    private WavInfo readWavInfo(FileChannel in) throws Exception
+    {
+        ByteBuffer bb = _header;
+        long fileSize = in.size();
+
+        if(!readFully(in, 0, bb, 12)
+                || bb.getInt(0) != fourCC("RIFF")//NON-NLS
+                || bb.getInt(8) != fourCC("WAVE"))//NON-NLS
+        {
+            return null;
+        }
+
+        WavInfo rc = null;
+        long pos = 12;
+
+        while(pos + CHUNK_HEADER_SIZE <= fileSize)
+        {
+            if(!readFully(in, pos, bb, CHUNK_HEADER_SIZE))
+            {
+                return null;
+            }
+
+            int id = bb.getInt(0);
+            long size = (bb.getInt(4) & 0xffffffffL);
+            pos += CHUNK_HEADER_SIZE;
+
+            if(id == fourCC("fmt "))//NON-NLS
+            {
+                if(size < 16 || !readFully(in, pos, bb, 16))
+                {
+                    return null;
+                }
+
+                rc = new WavInfo();
+                rc.formatTag = (bb.getShort(0) & 0xffff);
+                rc.channels = (bb.getShort(2) & 0xffff);
+                rc.sampleRate = bb.getInt(4);
+                rc.byteRate = bb.getInt(8);
+                rc.blockAlign = (bb.getShort(12) & 0xffff);
+                rc.bitsPerSample = (bb.getShort(14) & 0xffff);
+
+                if(rc.formatTag != WAV_FORMAT_PCM || rc.byteRate <= 0 || rc.blockAlign <= 0)
+                {
+                    return null;
+                }
+            }
+            else if(id == fourCC("data"))//NON-NLS
+            {
+                if(rc == null)
+                {
+                    return null;
+                }
+
+                // Files that were still being written when the engine was stopped can
+                // carry a zero or "unknown" size - take whatever is there
+                if(size == 0 || size == 0xffffffffL || pos + size > fileSize)
+                {
+                    size = fileSize - pos;
+                }
+
+                rc.dataOffset = pos;
+                rc.dataSize = size - (size % rc.blockAlign);
+                return rc;
+            }
+
+            // Chunks are word-aligned
+            pos += size + (size & 1);
+        }
+
+        return null;
+    }
+
+    private static boolean readFully(FileChannel in, long pos, ByteBuffer bb, int len) throws Exception
+    {
+        bb.clear();
+        bb.limit(len);
+
+        while(bb.hasRemaining())
+        {
+            if(in.read(bb, pos + bb.position()) <= 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int fourCC(String s)
+    {
+        return (s.charAt(0) | (s.charAt(1) << 8) | (s.charAt(2) << 16) | (s.charAt(3) << 24));
+    }
+
+    private static long transfer(FileChannel in, long pos, long count, FileChannel out) throws Exception
+    {
+        long done = 0;
+
+        // transferTo() may move less than asked for so keep going until it's all across
+        while(done < count)
+        {
+            long n = in.transferTo(pos + done, count - done, out);
+            if(n <= 0)
+            {
+                break;
+            }
+
+            done += n;
+        }
+
+        return done;
+    }
+
+    // Writes gapMs of silence (shortened to _maxGapMs if that's set) and returns the
+    // number of bytes written
+    private long writeSilence(FileChannel out, WavInfo wi, long gapMs) throws Exception
+    {
+        if(_maxGapMs >= 0 && gapMs > _maxGapMs)
+        {
+            gapMs = _maxGapMs;
+        }
+
+        long remaining = (gapMs > 0) ? wi.msToBytes(gapMs) : 0;
+        if(remaining == 0)
+        {
+            return 0;
+        }
+
+        if(_silence == null)
+        {
+            // 8-bit PCM is unsigned so its midpoint is 0x80 rather than 0
+            _silence = ByteBuffer.allocateDirect(SILENCE_BUFFER_SIZE - (SILENCE_BUFFER_SIZE % wi.blockAlign));
+            byte fill = (byte) ((wi.bitsPerSample == 8) ? 0x80 : 0);
+            while(_silence.hasRemaining())
+            {
+                _silence.put(fill);
+            }
+        }
+
+        long rc = remaining;
+        while(remaining > 0)
+        {
+            _silence.clear();
+            if(remaining < _silence.capacity())
+            {
+                _silence.limit((int) remaining);
+            }
+
+            while(_silence.hasRemaining())
+            {
+                remaining -= out.write(_silence);
+            }
+        }
+
+        return rc;
+    }
+
+    private void writeHeader(FileChannel out, WavInfo wi, long dataBytes) throws Exception
+    {
+        ByteBuffer bb = _header;
+
+        bb.clear();
+        bb.putInt(fourCC("RIFF"));//NON-NLS
+        bb.putInt((int) (36 + dataBytes));
+        bb.putInt(fourCC("WAVE"));//NON-NLS
+        bb.putInt(fourCC("fmt "));//NON-NLS
+        bb.putInt(16);
+        bb.putShort((short) WAV_FORMAT_PCM);
+        bb.putShort((short) wi.channels);
+        bb.putInt(wi.sampleRate);
+        bb.putInt(wi.byteRate);
+        bb.putShort((short) wi.blockAlign);
+        bb.putShort((short) wi.bitsPerSample);
+        bb.putInt(fourCC("data"));//NON-NLS
+        bb.putInt((int) dataBytes);
+        bb.flip();
+
+        long pos = 0;
+        while(bb.hasRemaining())
+        {
+            pos += out.write(bb, pos);
+        }
+
+        Log.d(TAG, "exported " + dataBytes + " bytes of audio for " + _groupId);//NON-NLS
+    }
+}
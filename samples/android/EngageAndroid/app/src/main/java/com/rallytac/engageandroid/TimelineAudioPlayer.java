@@ -0,0 +1,670 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Plays timeline event audio with as little start-up delay as we can manage.  Two
+// MediaPlayers are created up front and recycled for the life of the player: one plays the
+// current event while the other is prepared with the next one, so "next" and "play all"
+// are a hand-off rather than a fresh open.  The neighbours' files are also opened and read
+// ahead on a worker thread so that a jump in either direction starts from a warm cache.
+//
+// Must be used from the UI thread.
+public class TimelineAudioPlayer
+{
+    private static String TAG = TimelineAudioPlayer.class.getSimpleName();
+
+    private static final int MAX_OPEN_FILES = 4;
+    private static final int READ_AHEAD_BUFFER_SIZE = (64 * 1024);
+    private static final int FIRST_SAMPLE_POLL_MS = 5;
+    private static final int FIRST_SAMPLE_TIMEOUT_MS = 2000;
+    private static final int PROGRESS_INTERVAL_MS = 100;
+
+    // Events in chronological order - "next" is the one that started after e
+    public interface IPlaylist
+    {
+        GroupTimelineStore.Event getNext(GroupTimelineStore.Event e);
+        GroupTimelineStore.Event getPrevious(GroupTimelineStore.Event e);
+    }
+
+    public interface IPlaybackListener
+    {
+        void onPlaybackStarted(GroupTimelineStore.Event e, long timeToFirstSampleMs);
+        void onPlaybackProgress(GroupTimelineStore.Event e, int positionMs, int durationMs);
+        void onPlaybackPaused(GroupTimelineStore.Event e);
+        void onPlaybackStopped(GroupTimelineStore.Event e);
+        void onPlaybackError(GroupTimelineStore.Event e);
+    }
+
+    private class Slot implements MediaPlayer.OnPreparedListener,
+                                  MediaPlayer.OnCompletionListener,
+                                  MediaPlayer.OnErrorListener
+    {
+        final MediaPlayer player = new MediaPlayer();
+        GroupTimelineStore.Event event = null;
+        boolean prepared = false;
+
+        Slot()
+        {
+            player.setOnPreparedListener(this);
+            player.setOnCompletionListener(this);
+            player.setOnErrorListener(this);
+        }
+
+        @Override
+        public void onPrepared(MediaPlayer mp)
+        {
+            prepared = true;
+            onSlotPrepared(this);
+        }
+
+        @Override
+        public void onCompletion(MediaPlayer mp)
+        {
+            onSlotCompleted(this);
+        }
+
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra)
+        {
+            Log.e(TAG, "media player error " + what + "/" + extra);//NON-NLS
+            onSlotError(this);
+            return true;
+        }
+    }
+
+    private final Context _ctx;
+    private final IPlaylist _playlist;
+    private final IPlaybackListener _listener;
+    private final Handler _handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService _readAhead = Executors.newSingleThreadExecutor();
+
+    private Slot _current;
+    private Slot _standby;
+    private boolean _playAll = false;
+    private boolean _startWhenPrepared = false;
+    private boolean _paused = false;
+    private long _requestedAt = 0;
+    private boolean _waitingForFirstSample = false;
+    private volatile boolean _closed = false;
+
+    // Opened (and read-ahead) files keyed by path, least-recently used first
+    private final LinkedHashMap<String, FileInputStream> _openFiles = new LinkedHashMap<>(MAX_OPEN_FILES, 0.75f, true);
+
+    private final Runnable _ticker = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            tick();
+        }
+    };
+
+    public TimelineAudioPlayer(Context ctx, IPlaylist playlist, IPlaybackListener listener)
+    {
+        _ctx = ctx;
+        _playlist = playlist;
+        _listener = listener;
+        _current = new Slot();
+        _standby = new Slot();
+    }
+
+    public GroupTimelineStore.Event getCurrentEvent()
+    {
+        return _current.event;
+    }
+
+    public boolean isPlaying()
+    {
+        return (_current.prepared && _current.player.isPlaying());
+    }
+
+    public boolean isPaused()
+    {
+        return _paused;
+    }
+
+    public boolean getPlayAll()
+    {
+        return _playAll;
+    }
+
+    // When set, playback carries on into the following events without stopping
+    public void setPlayAll(boolean playAll)
+    {
+        _playAll = playAll;
+        chainStandby();
+    }
+
+    public void play(GroupTimelineStore.Event e)
+    {
+        if(_closed || e == null)
+        {
+            return;
+        }
+
+        _requestedAt = SystemClock.elapsedRealtime();
+        _paused = false;
+
+        if(isSameEvent(_standby.event, e) && _standby.prepared)
+        {
+            // Already prepared, swap it in and go
+            unchainStandby();
+            stopSlot(_current);
+            swapSlots();
+            startCurrent();
+        }
+        else if(isSameEvent(_current.event, e) && _current.prepared)
+        {
+            _current.player.seekTo(0);
+            startCurrent();
+        }
+        else
+        {
+            load(_current, e, true);
+        }
+
+        readAheadNeighbours(e);
+    }
+
+    public void playNext()
+    {
+        GroupTimelineStore.Event e = (_current.event == null) ? null : _playlist.getNext(_current.event);
+        if(e != null)
+        {
+            play(e);
+        }
+    }
+
+    public void playPrevious()
+    {
+        GroupTimelineStore.Event e = (_current.event == null) ? null : _playlist.getPrevious(_current.event);
+        if(e != null)
+        {
+            play(e);
+        }
+    }
+
+    public void pause()
+    {
+        if(isPlaying())
+        {
+            _current.player.pause();
+            _paused = true;
+            _handler.removeCallbacks(_ticker);
+            _listener.onPlaybackPaused(_current.event);
+        }
+    }
+
+    public void resume()
+    {
+        if(_paused && _current.prepared)
+        {
+            _paused = false;
+            _current.player.start();
+            scheduleTick(PROGRESS_INTERVAL_MS);
+        }
+    }
+
+    public void seekTo(int positionMs)
+    {
+        if(_current.prepared)
+        {
+            _current.player.seekTo(positionMs);
+            _listener.onPlaybackProgress(_current.event, positionMs, _current.player.getDuration());
+        }
+    }
+
+    public void stop()
+    {
+        _handler.removeCallbacks(_ticker);
+        _startWhenPrepared = false;
+        _paused = false;
+        _waitingForFirstSample = false;
+
+        GroupTimelineStore.Event e = _current.event;
+        unchainStandby();
+        stopSlot(_current);
+
+        if(e != null)
+        {
+            _listener.onPlaybackStopped(e);
+        }
+    }
+
+    public void close()
+    {
+        stop();
+        _closed = true;
+
+        _current.player.release();
+        _standby.player.release();
+        _readAhead.shutdownNow();
+
+        synchronized (_openFiles)
+        {
+            for(FileInputStream fis : _openFiles.values())
+            {
+                closeQuietly(fis);
+            }
+            _openFiles.clear();
+        }
+    }
+
+    private void swapSlots()
+    {
+        Slot tmp = _current;
+        _current = _standby;
+        _standby = tmp;
+    }
+
+    private void stopSlot(Slot slot)
+    {
+        try
+        {
+            if(slot.prepared && slot.player.isPlaying())
+            {
+                slot.player.stop();
+            }
+        }
+        catch (Exception e)
+        {
+            // Nothing to do - we're resetting anyway
+        }
+
+        slot.player.reset();
+        slot.prepared = false;
+        slot.event = null;
+    }
+
+    private void load(Slot slot, GroupTimelineStore.Event e, boolean startWhenPrepared)
+    {
+        if(slot == _current)
+        {
+            _startWhenPrepared = startWhenPrepared;
+            _handler.removeCallbacks(_ticker);
+        }
+        else
+        {
+            unchainStandby();
+        }
+
+        if(slot.event != null)
+        {
+            stopSlot(slot);
+        }
+        else
+        {
+            slot.player.reset();
+            slot.prepared = false;
+        }
+
+        slot.event = e;
+
+        try
+        {
+            String path = getPath(e.uri);
+            FileInputStream fis = (path == null) ? null : getOpenFile(path);
+
+            if(fis != null)
+            {
+                slot.player.setDataSource(fis.getFD());
+            }
+            else
+            {
+                slot.player.setDataSource(_ctx, Uri.parse(Utils.emptyAs(path, e.uri)));
+            }
+
+            slot.player.prepareAsync();
+        }
+        catch (Exception ex)
+        {
+            Log.e(TAG, "cannot load event audio: " + ex.getMessage());//NON-NLS
+            onSlotError(slot);
+        }
+    }
+
+    private void onSlotPrepared(Slot slot)
+    {
+        if(slot == _current)
+        {
+            if(_startWhenPrepared)
+            {
+                _startWhenPrepared = false;
+                startCurrent();
+            }
+        }
+        else
+        {
+            chainStandby();
+        }
+    }
+
+    private void startCurrent()
+    {
+        _current.player.start();
+
+        _waitingForFirstSample = true;
+        scheduleTick(FIRST_SAMPLE_POLL_MS);
+
+        prepareStandby();
+    }
+
+    // Gets the event after the current one ready in the standby player
+    private void prepareStandby()
+    {
+        GroupTimelineStore.Event next = _playlist.getNext(_current.event);
+        if(next == null)
+        {
+            unchainStandby();
+            return;
+        }
+
+        if(!isSameEvent(_standby.event, next))
+        {
+            load(_standby, next, false);
+        }
+        else
+        {
+            chainStandby();
+        }
+    }
+
+    // With play-all on, have MediaPlayer hand over to the standby itself for a gapless switch
+    private void chainStandby()
+    {
+        if(!_current.prepared)
+        {
+            return;
+        }
+
+        try
+        {
+            if(_playAll && _standby.prepared)
+            {
+                _current.player.setNextMediaPlayer(_standby.player);
+            }
+            else
+            {
+                _current.player.setNextMediaPlayer(null);
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot chain next player: " + e.getMessage());//NON-NLS
+        }
+    }
+
+    private void unchainStandby()
+    {
+        if(!_current.prepared)
+        {
+            return;
+        }
+
+        try
+        {
+            _current.player.setNextMediaPlayer(null);
+        }
+        catch (Exception e)
+        {
+            // Nothing to do
+        }
+    }
+
+    private void onSlotCompleted(Slot slot)
+    {
+        if(slot != _current)
+        {
+            return;
+        }
+
+        GroupTimelineStore.Event finished = _current.event;
+        GroupTimelineStore.Event next = _playlist.getNext(finished);
+
+        if(!_playAll || next == null)
+        {
+            _handler.removeCallbacks(_ticker);
+            _listener.onPlaybackStopped(finished);
+            return;
+        }
+
+        _requestedAt = SystemClock.elapsedRealtime();
+
+        if(isSameEvent(_standby.event, next) && _standby.prepared)
+        {
+            // MediaPlayer has already started the standby for us
+            swapSlots();
+            stopSlot(_standby);
+
+            _waitingForFirstSample = true;
+            scheduleTick(FIRST_SAMPLE_POLL_MS);
+            prepareStandby();
+        }
+        else
+        {
+            load(_current, next, true);
+        }
+
+        readAheadNeighbours(next);
+    }
+
+    private void onSlotError(Slot slot)
+    {
+        GroupTimelineStore.Event e = slot.event;
+        stopSlot(slot);
+
+        if(slot == _current)
+        {
+            _handler.removeCallbacks(_ticker);
+            _startWhenPrepared = false;
+            if(e != null)
+            {
+                _listener.onPlaybackError(e);
+            }
+        }
+    }
+
+    private void scheduleTick(int delayMs)
+    {
+        _handler.removeCallbacks(_ticker);
+        _handler.postDelayed(_ticker, delayMs);
+    }
+
+    private void tick()
+    {
+        if(!_current.prepared || _closed)
+        {
+            return;
+        }
+
+        int position = _current.player.getCurrentPosition();
+
+        // The position only moves once audio is actually being rendered, which is as close
+        // to "first sample out" as MediaPlayer lets us get
+        if(_waitingForFirstSample)
+        {
+            long elapsed = SystemClock.elapsedRealtime() - _requestedAt;
+            if(position > 0 || elapsed >= FIRST_SAMPLE_TIMEOUT_MS)
+            {
+                _waitingForFirstSample = false;
+                Log.d(TAG, "time to first sample " + elapsed + " ms");//NON-NLS
+                _listener.onPlaybackStarted(_current.event, elapsed);
+            }
+            else
+            {
+                scheduleTick(FIRST_SAMPLE_POLL_MS);
+                return;
+            }
+        }
+
+        _listener.onPlaybackProgress(_current.event, position, _current.player.getDuration());
+
+        if(_current.player.isPlaying())
+        {
+            scheduleTick(PROGRESS_INTERVAL_MS);
+        }
+    }
+
+    // Local file path for an event's audio URI, or null if it isn't a local file
+    static String getPath(String uri)
+    {
+        if(Utils.isEmptyString(uri))
+        {
+            return null;
+        }
+
+        if(uri.startsWith("file://"))//NON-NLS
+        {
+            return uri.substring(7);
+        }
+
+        return uri.startsWith("/") ? uri : null;
+    }
+
+    private FileInputStream getOpenFile(String path)
+    {
+        synchronized (_openFiles)
+        {
+            FileInputStream rc = _openFiles.get(path);
+            if(rc != null)
+            {
+                return rc;
+            }
+        }
+
+        return openFile(path, false);
+    }
+
+    private FileInputStream openFile(String path, boolean readAhead)
+    {
+        FileInputStream fis;
+
+        try
+        {
+            File fd = new File(path);
+            if(!fd.exists())
+            {
+                return null;
+            }
+
+            fis = new FileInputStream(fd);
+
+            // Pull the whole thing into the page cache - timeline clips are short
+            if(readAhead)
+            {
+                byte[] buffer = new byte[READ_AHEAD_BUFFER_SIZE];
+                while(fis.read(buffer) > 0)
+                {
+                    // Just reading
+                }
+                fis.getChannel().position(0);
+            }
+        }
+        catch (Exception e)
+        {
+            Log.w(TAG, "cannot open event audio " + path + ": " + e.getMessage());//NON-NLS
+            return null;
+        }
+
+        synchronized (_openFiles)
+        {
+            if(_closed)
+            {
+                closeQuietly(fis);
+                return null;
+            }
+
+            FileInputStream existing = _openFiles.get(path);
+            if(existing != null)
+            {
+                closeQuietly(fis);
+                return existing;
+            }
+
+            _openFiles.put(path, fis);
+
+            Iterator<Map.Entry<String, FileInputStream>> it = _openFiles.entrySet().iterator();
+            while(_openFiles.size() > MAX_OPEN_FILES && it.hasNext())
+            {
+                Map.Entry<String, FileInputStream> entry = it.next();
+                if(!entry.getKey().equals(path))
+                {
+                    closeQuietly(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        return fis;
+    }
+
+    private void readAheadNeighbours(GroupTimelineStore.Event e)
+    {
+        final String nextPath = getPath(neighbourUri(_playlist.getNext(e)));
+        final String previousPath = getPath(neighbourUri(_playlist.getPrevious(e)));
+
+        if(_closed)
+        {
+            return;
+        }
+
+        _readAhead.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(nextPath != null)
+                {
+                    openFile(nextPath, true);
+                }
+
+                if(previousPath != null)
+                {
+                    openFile(previousPath, true);
+                }
+            }
+        });
+    }
+
+    // The store replaces events as they're updated so compare by id rather than reference
+    private static boolean isSameEvent(GroupTimelineStore.Event a, GroupTimelineStore.Event b)
+    {
+        return (a != null && b != null && a.id.equals(b.id));
+    }
+
+    private static String neighbourUri(GroupTimelineStore.Event e)
+    {
+        return (e == null) ? null : e.uri;
+    }
+
+    private static void closeQuietly(FileInputStream fis)
+    {
+        try
+        {
+            fis.close();
+        }
+        catch (Exception e)
+        {
+            // Nothing to do
+        }
+    }
+}
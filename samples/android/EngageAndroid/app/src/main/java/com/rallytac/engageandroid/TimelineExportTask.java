@@ -0,0 +1,90 @@
+//
+//  Copyright (c) 2019 Rally Tactical Systems, Inc.
+//  All rights reserved.
+//
+
+package com.rallytac.engageandroid;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+
+import java.io.File;
+import java.util.List;
+
+public class TimelineExportTask extends AsyncTask<Void, Integer, Integer>
+{
+    public static final int MSG_PROGRESS = 1;
+    public static final int MSG_RESULT = 2;
+
+    public static String BUNDLE_RESULT_MSG = "BUNDLE_RESULT_MSG";//NON-NLS
+
+    private TimelineAudioExporter _exporter;
+    private File _audioFile;
+    private File _sidecarFile;
+    private String _resultMsg = null;
+    private Handler _handler = null;
+
+    TimelineExportTask(Handler handler, String groupId, List<GroupTimelineStore.Event> events, long maxGapMs, boolean complete, File audioFile, File sidecarFile)
+    {
+        _handler = handler;
+        _audioFile = audioFile;
+        _sidecarFile = sidecarFile;
+        _exporter = new TimelineAudioExporter(groupId, events, maxGapMs, complete);
+        _exporter.setProgressListener(new TimelineAudioExporter.IProgressListener()
+        {
+            @Override
+            public void onExportProgress(int done, int total)
+            {
+                publishProgress(done, total);
+            }
+        });
+    }
+
+    protected Integer doInBackground(Void... params)
+    {
+        int rc;
+
+        try
+        {
+            rc = _exporter.export(_audioFile, _sidecarFile);
+        }
+        catch(Exception e)
+        {
+            rc = -1;
+            _resultMsg = e.getMessage();
+        }
+
+        return rc;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values)
+    {
+        if(_handler != null)
+        {
+            Message msg = new Message();
+            msg.what = MSG_PROGRESS;
+            msg.arg1 = values[0];
+            msg.arg2 = values[1];
+            _handler.sendMessage(msg);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(final Integer result)
+    {
+        if(_handler != null)
+        {
+            Bundle bundle = new Bundle();
+            bundle.putString(BUNDLE_RESULT_MSG, _resultMsg);
+
+            Message msg = new Message();
+            msg.what = MSG_RESULT;
+            msg.arg1 = result;
+            msg.setData(bundle);
+            _handler.sendMessage(msg);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.location.Location;
 import android.net.Uri;
 import android.os.Build;
@@ -48,6 +49,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.nio.channels.FileChannel;
@@ -67,6 +69,8 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -517,98 +521,111 @@ public class Utils
 
             try
             {
-                // !!!!!!!!!! BEGIN EXPERIMENTAL !!!!!!!!!!
+                applySettings(rc, Globals.getAppSettings().get());
 
-                rc.setDiscoverSsdpAssets(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_SSDP_DISCOVERY, false));
-                rc.setDiscoverTrelliswareAssets(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_TRELLISWARE_DISCOVERY, false));
+                // Update states from the previous configuration
+                rc.updateGroupStates(previousConfiguration);
 
-                rc.setDiscoverCistechGv1Assets(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_EXPERIMENT_ENABLE_CISTECH_GV1_DISCOVERY, false));
-                rc.setCistechGv1DiscoveryAddress(Globals.getSharedPreferences().getString(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_ADDRESS, ""));
-                rc.setCistechGv1DiscoveryPort(Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_PORT, "0")));
-                rc.setCistechGv1DiscoveryTimeoutSecs(Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_EXPERIMENT_CISTECH_GV1_DISCOVERY_TIMEOUT_SECS, "0")));
+                selectPreviouslySavedSelectedGroups(rc);
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                rc.setUseRp(false);
+            }
+        }
 
-                // !!!!!!!!!! EXPERIMENTAL !!!!!!!!!!
+        return rc;
+    }
 
+    // Copies everything that comes from preferences (rather than the mission) into the
+    // configuration.  Used on its own when only settings have changed so that the mission
+    // doesn't have to be parsed again.
+    public static void applySettings(ActiveConfiguration rc, AppSettings.Snapshot settings)
+    {
+        // !!!!!!!!!! BEGIN EXPERIMENTAL !!!!!!!!!!
 
-                rc.setUiMode(Constants.UiMode.values()[Globals.getSharedPreferences().getInt(PreferenceKeys.UI_MODE, Constants.DEF_UI_MODE.ordinal())]);
-                rc.setShowTextMessaging(Globals.getSharedPreferences().getBoolean(PreferenceKeys.UI_SHOW_TEXT_MESSAGING, Constants.DEF_UI_SHOW_TEXT_MESSAGING));
+        rc.setDiscoverSsdpAssets(settings.discoverSsdpAssets);
+        rc.setDiscoverTrelliswareAssets(settings.discoverTrelliswareAssets);
 
-                rc.setNotifyOnNodeJoin(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_NODE_JOIN, Constants.DEF_NOTIFY_NODE_JOIN));
-                rc.setNotifyOnNodeLeave(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_NODE_LEAVE, Constants.DEF_NOTIFY_NODE_LEAVE));
-                rc.setNotifyOnNewAudio(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_NEW_AUDIO_RX, Constants.DEF_NOTIFY_NEW_AUDIO_RX));
-                rc.setNotifyOnNetworkError(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_NETWORK_ERROR, Constants.DEF_NOTIFY_NETWORK_ERROR));
-                rc.setEnableVibrations(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_VIBRATIONS, Constants.DEF_NOTIFY_VIBRATIONS));
-                rc.setNotifyPttEveryTime(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_NOTIFY_PTT_EVERY_TIME, Constants.DEF_NOTIFY_PTT_EVERY_TIME));
+        rc.setDiscoverCistechGv1Assets(settings.discoverCistechGv1Assets);
+        rc.setCistechGv1DiscoveryAddress(settings.cistechGv1DiscoveryAddress);
+        rc.setCistechGv1DiscoveryPort(settings.cistechGv1DiscoveryPort);
+        rc.setCistechGv1DiscoveryTimeoutSecs(settings.cistechGv1DiscoveryTimeoutSecs);
 
-                rc.setPttToneNotificationLevel(Float.parseFloat(Globals.getSharedPreferences().getString(PreferenceKeys.USER_TONE_LEVEL_PTT, Float.toString(Constants.DEF_PTT_TONE_LEVEL))));
-                rc.setErrorToneNotificationLevel(Float.parseFloat(Globals.getSharedPreferences().getString(PreferenceKeys.USER_TONE_LEVEL_ERROR, Float.toString(Constants.DEF_ERROR_TONE_LEVEL))));
-                rc.setNotificationToneNotificationLevel(Float.parseFloat(Globals.getSharedPreferences().getString(PreferenceKeys.USER_TONE_LEVEL_NOTIFICATION, Float.toString(Constants.DEF_PTT_TONE_LEVEL))));
+        // !!!!!!!!!! EXPERIMENTAL !!!!!!!!!!
 
-                rc.setSpeakerOutputBoostFactor(Globals.getSharedPreferences().getInt(PreferenceKeys.USER_SPEAKER_OUTPUT_BOOST_FACTOR, Constants.DEF_SPEAKER_OUTPUT_BOOST_FACTOR));
 
-                rc.setNetworkInterfaceName(Globals.getSharedPreferences().getString(PreferenceKeys.NETWORK_BINDING_NIC_NAME, Constants.DEF_BINDING_NIC_NAME));
+        rc.setUiMode(Constants.UiMode.values()[settings.uiMode]);
+        rc.setShowTextMessaging(settings.showTextMessaging);
 
-                rc.setNodeId(Globals.getSharedPreferences().getString(PreferenceKeys.USER_NODE_ID, Constants.DEF_USER_NODE_ID));
-                rc.setUserId(Globals.getSharedPreferences().getString(PreferenceKeys.USER_ID, Constants.DEF_USER_ID));
-                rc.setUserDisplayName(Globals.getSharedPreferences().getString(PreferenceKeys.USER_DISPLAY_NAME, Constants.DEF_USER_DISPLAY_NAME));
-                rc.setUserAlias(Globals.getSharedPreferences().getString(PreferenceKeys.USER_ALIAS_ID, Constants.DEF_USER_ALIAS_ID));
+        rc.setNotifyOnNodeJoin(settings.notifyNodeJoin);
+        rc.setNotifyOnNodeLeave(settings.notifyNodeLeave);
+        rc.setNotifyOnNewAudio(settings.notifyNewAudioRx);
+        rc.setNotifyOnNetworkError(settings.notifyNetworkError);
+        rc.setEnableVibrations(settings.notifyVibrations);
+        rc.setNotifyPttEveryTime(settings.notifyPttEveryTime);
 
-                rc.setPttLatching(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_UI_PTT_LATCHING, Constants.DEF_USER_UI_PTT_LATCHING));
-                rc.setPttVoiceControl(Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_UI_PTT_VOICE_CONTROL, Constants.DEF_USER_UI_PTT_VOICE_CONTROL));
+        rc.setPttToneNotificationLevel(settings.pttToneLevel);
+        rc.setErrorToneNotificationLevel(settings.errorToneLevel);
+        rc.setNotificationToneNotificationLevel(settings.notificationToneLevel);
 
-                rc.setAudioInputDeviceId(Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_AUDIO_INPUT_DEVICE, Integer.toString(Constants.INVALID_AUDIO_DEVICE_ID))));
-                rc.setAudioOutputDeviceId(Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_AUDIO_OUTPUT_DEVICE, Integer.toString(Constants.INVALID_AUDIO_DEVICE_ID))));
+        rc.setSpeakerOutputBoostFactor(settings.speakerOutputBoostFactor);
 
-                if(rc.getUserAlias().isEmpty())
-                {
-                    rc.setUserAlias(generateUserAlias(Constants.DEF_USER_ALIAS_ID));
-                }
+        rc.setNetworkInterfaceName(settings.networkInterfaceName);
 
-                // Location
-                ActiveConfiguration.LocationConfiguration lc = new ActiveConfiguration.LocationConfiguration();
+        rc.setNodeId(settings.nodeId);
+        rc.setUserId(settings.userId);
+        rc.setUserDisplayName(settings.userDisplayName);
 
-                lc.enabled = Globals.getSharedPreferences().getBoolean(PreferenceKeys.USER_LOCATION_SHARED, Constants.DEF_LOCATION_ENABLED);
-                lc.accuracy = Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_LOCATION_ACCURACY, Integer.toString(Constants.DEF_LOCATION_ACCURACY)));
-                lc.intervalMs = (Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_LOCATION_INTERVAL_SECS, Integer.toString(Constants.DEF_LOCATION_INTERVAL_SECS))) * 1000);
-                // TODO: figure out how to explain minIntervalMs in preference settings
-                lc.minIntervalMs = lc.intervalMs;
-                //lc.minIntervalMs = (Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.USER_LOCATION_MIN_INTERVAL_SECS, Integer.toString(Constants.DEF_LOCATION_INTERVAL_SECS))) * 1000);
-                lc.minDisplacement = Float.parseFloat(Globals.getSharedPreferences().getString(PreferenceKeys.USER_LOCATION_MIN_DISPLACEMENT, Float.toString(Constants.DEF_LOCATION_MIN_DISPLACEMENT)));
+        // Hang on to an alias we generated earlier rather than making up a new one
+        if(!settings.userAlias.isEmpty() || isEmptyString(rc.getUserAlias()))
+        {
+            rc.setUserAlias(settings.userAlias);
+        }
 
-                rc.setLocationConfiguration(lc);
+        rc.setPttLatching(settings.pttLatching);
+        rc.setPttVoiceControl(settings.pttVoiceControl);
 
-                // Multicast failover
-                ActiveConfiguration.MulticastFailoverConfiguration mc = new ActiveConfiguration.MulticastFailoverConfiguration();
+        rc.setAudioInputDeviceId(settings.audioInputDeviceId);
+        rc.setAudioOutputDeviceId(settings.audioOutputDeviceId);
 
-                ActiveConfiguration.MulticastFailoverPolicy mcfo = rc.getMissionMulticastFailoverPolicy();
-                if(mcfo == ActiveConfiguration.MulticastFailoverPolicy.overrideAndAllow)
-                {
-                    mc.enabled = true;
-                }
-                else if(mcfo == ActiveConfiguration.MulticastFailoverPolicy.overrideAndPrevent)
-                {
-                    mc.enabled = false;
-                }
-                else
-                {
-                    mc.enabled = Globals.getSharedPreferences().getBoolean(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_ENABLED, Constants.DEF_MULTICAST_FAILOVER_ENABLED);
-                }
-                mc.thresholdSecs = Integer.parseInt(Globals.getSharedPreferences().getString(PreferenceKeys.NETWORK_MULTICAST_FAILOVER_SECS, Integer.toString(Constants.DEF_MULTICAST_FAILOVER_THRESHOLD_SECS)));
-                rc.setMulticastFailoverConfiguration(mc);
+        if(rc.getUserAlias().isEmpty())
+        {
+            rc.setUserAlias(generateUserAlias(Constants.DEF_USER_ALIAS_ID));
+        }
 
-                // Update states from the previous configuration
-                rc.updateGroupStates(previousConfiguration);
+        // Location
+        ActiveConfiguration.LocationConfiguration lc = new ActiveConfiguration.LocationConfiguration();
 
-                selectPreviouslySavedSelectedGroups(rc);
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-                rc.setUseRp(false);
-            }
-        }
+        lc.enabled = settings.locationShared;
+        lc.accuracy = settings.locationAccuracy;
+        lc.intervalMs = (settings.locationIntervalSecs * 1000);
+        // TODO: figure out how to explain minIntervalMs in preference settings
+        lc.minIntervalMs = lc.intervalMs;
+        lc.minDisplacement = settings.locationMinDisplacement;
+        lc.adaptive = settings.locationAdaptive;
 
-        return rc;
+        rc.setLocationConfiguration(lc);
+
+        // Multicast failover
+        ActiveConfiguration.MulticastFailoverConfiguration mc = new ActiveConfiguration.MulticastFailoverConfiguration();
+
+        ActiveConfiguration.MulticastFailoverPolicy mcfo = rc.getMissionMulticastFailoverPolicy();
+        if(mcfo == ActiveConfiguration.MulticastFailoverPolicy.overrideAndAllow)
+        {
+            mc.enabled = true;
+        }
+        else if(mcfo == ActiveConfiguration.MulticastFailoverPolicy.overrideAndPrevent)
+        {
+            mc.enabled = false;
+        }
+        else
+        {
+            mc.enabled = settings.multicastFailoverEnabled;
+        }
+        mc.thresholdSecs = settings.multicastFailoverSecs;
+        rc.setMulticastFailoverConfiguration(mc);
     }
 
     public static boolean isNullGuid(String guid)
@@ -707,6 +724,37 @@ public class Utils
         return rc;
     }
 
+    // zlib framing rather than gzip - 12 bytes smaller, which matters for QR codes
+    public static byte[] deflate(byte[] data, int ofs, int len)
+    {
+        byte[] rc;
+
+        // DeflaterOutputStream only ends a Deflater it created itself - this one holds native
+        // zlib memory until we end it
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(len);
+            DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater);
+            dos.write(data, ofs, len);
+            dos.close();
+            rc = bos.toByteArray();
+            bos.close();
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            rc = null;
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        return rc;
+    }
+
     public static byte[] inflate(byte[] data)
     {
         byte[] rc;
@@ -760,6 +808,14 @@ public class Utils
     }
 
     public static Bitmap stringToQrCodeBitmap(String str, int width, int height)
+    {
+        return renderQrCodeBitmap(str, width, height, null, null);
+    }
+
+    // Renders straight into reuse if it's a mutable bitmap of the right size, otherwise into
+    // a new RGB_565 bitmap (QR codes are black and white so there's no point in ARGB).  A
+    // caller-owned pixels buffer of at least width * height saves an allocation per call.
+    public static Bitmap renderQrCodeBitmap(String str, int width, int height, Bitmap reuse, int[] pixels)
     {
         Bitmap rc;
 
@@ -767,8 +823,34 @@ public class Utils
         {
             MultiFormatWriter multiFormatWriter = new MultiFormatWriter();
             BitMatrix bitMatrix = multiFormatWriter.encode(str, BarcodeFormat.QR_CODE, width, height);
-            BarcodeEncoder barcodeEncoder = new BarcodeEncoder();
-            rc = barcodeEncoder.createBitmap(bitMatrix);
+
+            int w = bitMatrix.getWidth();
+            int h = bitMatrix.getHeight();
+
+            if(pixels == null || pixels.length < w * h)
+            {
+                pixels = new int[w * h];
+            }
+
+            for(int y = 0; y < h; y++)
+            {
+                int ofs = y * w;
+                for(int x = 0; x < w; x++)
+                {
+                    pixels[ofs + x] = bitMatrix.get(x, y) ? Color.BLACK : Color.WHITE;
+                }
+            }
+
+            if(reuse != null && reuse.isMutable() && reuse.getWidth() == w && reuse.getHeight() == h)
+            {
+                rc = reuse;
+            }
+            else
+            {
+                rc = Bitmap.createBitmap(w, h, Bitmap.Config.RGB_565);
+            }
+
+            rc.setPixels(pixels, 0, w, 0, 0, w, h);
         }
         catch (Exception e)
         {
@@ -930,6 +1012,24 @@ public class Utils
         return System.currentTimeMillis();
     }
 
+    // An HTTP response worth asking again for - the server busy or broken (5xx, 408, 429)
+    public static boolean isTransientHttpStatus(int responseCode)
+    {
+        return (responseCode >= 500
+                || responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || responseCode == 429);
+    }
+
+    private static final Random _retryJitter = new Random();
+
+    // Doubles from baseMs with each attempt (the first being 1) up to maxMs, then is jittered
+    // down by as much as half so that requests that failed together don't retry together
+    public static long retryDelayMs(int attempt, long baseMs, long maxMs)
+    {
+        long delay = Math.min(baseMs << Math.min(attempt - 1, 30), maxMs);
+        return (delay / 2) + (long) (_retryJitter.nextDouble() * (delay / 2));
+    }
+
     public static boolean isManifestPermissionPresent(String permissionName)
     {
         try
@@ -0,0 +1,339 @@
+package com.rallytac.engageandroid;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip and fuzz tests for the Base91 codec, checked against the original
+ * ByteArrayOutputStream-based implementation.
+ */
+public class Base91Test
+{
+    private static final int FUZZ_ITERATIONS = 5000;
+    private static final int FUZZ_MAX_LEN = 2048;
+
+    @Test
+    public void emptyInput()
+    {
+        assertEquals(0, Base91.encode(new byte[0]).length);
+        assertEquals(0, Base91.decode(new byte[0]).length);
+    }
+
+    @Test
+    public void encodeMatchesReference()
+    {
+        Random rnd = new Random(91);
+
+        for(int x = 0; x < FUZZ_ITERATIONS; x++)
+        {
+            byte[] data = randomBytes(rnd);
+            byte[] encoded = Base91.encode(data);
+
+            assertArrayEquals(ReferenceBase91.encode(data), encoded);
+            assertTrue(encoded.length <= Base91.maxEncodedLength(data.length));
+        }
+    }
+
+    @Test
+    public void decodeMatchesReference()
+    {
+        Random rnd = new Random(19);
+
+        for(int x = 0; x < FUZZ_ITERATIONS; x++)
+        {
+            byte[] data = randomBytes(rnd);
+            byte[] encoded = ReferenceBase91.encode(data);
+            byte[] decoded = Base91.decode(encoded);
+
+            assertArrayEquals(ReferenceBase91.decode(encoded), decoded);
+            assertArrayEquals(data, decoded);
+            assertTrue(decoded.length <= Base91.maxDecodedLength(encoded.length));
+        }
+    }
+
+    @Test
+    public void decodeFromCharSequence()
+    {
+        Random rnd = new Random(7);
+
+        for(int x = 0; x < FUZZ_ITERATIONS; x++)
+        {
+            byte[] data = randomBytes(rnd);
+            String prefix = "https://example.com/x/??";//NON-NLS
+            String str = prefix + Base91.encodeToString(data, 0, data.length);
+
+            assertArrayEquals(data, Base91.decode(str, prefix.length(), str.length()));
+        }
+    }
+
+    @Test
+    public void decodeSkipsNonAlphabetBytes()
+    {
+        byte[] data = "The quick brown fox".getBytes();//NON-NLS
+        byte[] encoded = Base91.encode(data);
+        byte[] noisy = new byte[encoded.length * 2];
+
+        for(int x = 0; x < encoded.length; x++)
+        {
+            noisy[x * 2] = encoded[x];
+            noisy[(x * 2) + 1] = (byte) (0x80 | x);
+        }
+
+        assertArrayEquals(data, Base91.decode(noisy));
+    }
+
+    @Test
+    public void streamingInArbitraryPieces()
+    {
+        Random rnd = new Random(2006);
+
+        for(int x = 0; x < FUZZ_ITERATIONS; x++)
+        {
+            byte[] data = randomBytes(rnd);
+            byte[] expected = ReferenceBase91.encode(data);
+
+            Base91.Encoder encoder = new Base91.Encoder();
+            byte[] encoded = new byte[Base91.maxEncodedLength(data.length)];
+            int pos = 0;
+            int ofs = 0;
+            while(ofs < data.length)
+            {
+                int len = Math.min(data.length - ofs, 1 + rnd.nextInt(17));
+                pos += encoder.update(data, ofs, len, encoded, pos);
+                ofs += len;
+            }
+            pos += encoder.finish(encoded, pos);
+            assertArrayEquals(expected, Arrays.copyOf(encoded, pos));
+
+            Base91.Decoder decoder = new Base91.Decoder();
+            byte[] decoded = new byte[Base91.maxDecodedLength(expected.length)];
+            pos = 0;
+            ofs = 0;
+            while(ofs < expected.length)
+            {
+                int len = Math.min(expected.length - ofs, 1 + rnd.nextInt(17));
+                pos += decoder.update(expected, ofs, len, decoded, pos);
+                ofs += len;
+            }
+            pos += decoder.finish(decoded, pos);
+            assertArrayEquals(data, Arrays.copyOf(decoded, pos));
+        }
+    }
+
+    @Test
+    public void byteBuffers()
+    {
+        Random rnd = new Random(1234);
+
+        for(int x = 0; x < 500; x++)
+        {
+            byte[] data = randomBytes(rnd);
+            byte[] expected = ReferenceBase91.encode(data);
+
+            ByteBuffer heapOut = ByteBuffer.allocate(Base91.maxEncodedLength(data.length));
+            Base91.encode(ByteBuffer.wrap(data), heapOut);
+            assertArrayEquals(expected, drain(heapOut));
+
+            ByteBuffer directOut = ByteBuffer.allocateDirect(Base91.maxEncodedLength(data.length));
+            Base91.encode(ByteBuffer.wrap(data), directOut);
+            assertArrayEquals(expected, drain(directOut));
+
+            ByteBuffer decodedOut = ByteBuffer.allocateDirect(Base91.maxDecodedLength(expected.length));
+            Base91.decode(ByteBuffer.wrap(expected), decodedOut);
+            assertArrayEquals(data, drain(decodedOut));
+        }
+    }
+
+    @Test
+    public void byteBufferOverflowLeavesBothBuffersAlone()
+    {
+        byte[] data = randomBytes(new Random(26), 100);
+        byte[] encoded = ReferenceBase91.encode(data);
+
+        // Array-backed output with room in the backing array beyond its limit
+        byte[] backing = new byte[Base91.maxEncodedLength(data.length) * 2];
+        ByteBuffer out = ByteBuffer.wrap(backing);
+        out.limit(Base91.maxEncodedLength(data.length) - 1);
+        ByteBuffer in = ByteBuffer.wrap(data);
+
+        try
+        {
+            Base91.encode(in, out);
+            fail("expected BufferOverflowException");//NON-NLS
+        }
+        catch (BufferOverflowException e)
+        {
+            // Expected
+        }
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+        assertArrayEquals(new byte[backing.length], backing);
+
+        out = ByteBuffer.wrap(backing);
+        out.limit(Base91.maxDecodedLength(encoded.length) - 1);
+        in = ByteBuffer.wrap(encoded);
+
+        try
+        {
+            Base91.decode(in, out);
+            fail("expected BufferOverflowException");//NON-NLS
+        }
+        catch (BufferOverflowException e)
+        {
+            // Expected
+        }
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+        assertArrayEquals(new byte[backing.length], backing);
+    }
+
+    @Test
+    public void byteBufferDecoderAllowsForAPendingCharacter()
+    {
+        byte[] data = randomBytes(new Random(27), 100);
+        byte[] encoded = ReferenceBase91.encode(data);
+
+        // One character is carried over, so the rest needs room for one more pair
+        Base91.Decoder decoder = new Base91.Decoder();
+        ByteBuffer out = ByteBuffer.allocate(Base91.maxDecodedLength(encoded.length));
+        decoder.update(ByteBuffer.wrap(encoded, 0, 1), out);
+        assertEquals(0, out.position());
+
+        ByteBuffer rest = ByteBuffer.wrap(encoded, 1, encoded.length - 1);
+        out.limit(Base91.maxDecodedLength(rest.remaining() + 1) - 1);
+        try
+        {
+            decoder.update(rest, out);
+            fail("expected BufferOverflowException");//NON-NLS
+        }
+        catch (BufferOverflowException e)
+        {
+            // Expected
+        }
+        assertEquals(1, rest.position());
+
+        out.limit(out.capacity());
+        decoder.update(rest, out);
+        decoder.finish(out);
+        assertArrayEquals(data, drain(out));
+    }
+
+    private static byte[] randomBytes(Random rnd, int len)
+    {
+        byte[] rc = new byte[len];
+        rnd.nextBytes(rc);
+        return rc;
+    }
+
+    private static byte[] randomBytes(Random rnd)
+    {
+        byte[] rc = new byte[rnd.nextInt(FUZZ_MAX_LEN)];
+        rnd.nextBytes(rc);
+        return rc;
+    }
+
+    private static byte[] drain(ByteBuffer bb)
+    {
+        bb.flip();
+        byte[] rc = new byte[bb.remaining()];
+        bb.get(rc);
+        return rc;
+    }
+
+    /**
+     * The original implementation, kept verbatim (apart from masking the
+     * decode table index) as the reference for the fuzz tests.
+     */
+    private static class ReferenceBase91
+    {
+        private static final byte[] ENCODING_TABLE;
+        private static final byte[] DECODING_TABLE;
+        private static final int BASE;
+
+        static {
+            String ts = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!#$%&()*+,./:;<=>?@[]^_`{|}~\""; //NON-NLS
+            ENCODING_TABLE = ts.getBytes();
+            BASE = ENCODING_TABLE.length;
+
+            DECODING_TABLE = new byte[256];
+            for (int i = 0; i < 256; ++i)
+                DECODING_TABLE[i] = -1;
+
+            for (int i = 0; i < BASE; ++i)
+                DECODING_TABLE[ENCODING_TABLE[i]] = (byte) i;
+        }
+
+        static byte[] encode(byte[] data) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            int ebq = 0;
+            int en = 0;
+            for (int i = 0; i < data.length; ++i) {
+                ebq |= (data[i] & 255) << en;
+                en += 8;
+                if (en > 13) {
+                    int ev = ebq & 8191;
+
+                    if (ev > 88) {
+                        ebq >>= 13;
+                        en -= 13;
+                    } else {
+                        ev = ebq & 16383;
+                        ebq >>= 14;
+                        en -= 14;
+                    }
+                    output.write(ENCODING_TABLE[ev % BASE]);
+                    output.write(ENCODING_TABLE[ev / BASE]);
+                }
+            }
+
+            if (en > 0) {
+                output.write(ENCODING_TABLE[ebq % BASE]);
+                if (en > 7 || ebq > 90) {
+                    output.write(ENCODING_TABLE[ebq / BASE]);
+                }
+            }
+
+            return output.toByteArray();
+        }
+
+        static byte[] decode(byte[] data) {
+            int dbq = 0;
+            int dn = 0;
+            int dv = -1;
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            for (int i = 0; i < data.length; ++i) {
+                if (DECODING_TABLE[data[i] & 255] == -1)
+                    continue;
+                if (dv == -1)
+                    dv = DECODING_TABLE[data[i] & 255];
+                else {
+                    dv += DECODING_TABLE[data[i] & 255] * BASE;
+                    dbq |= dv << dn;
+                    dn += (dv & 8191) > 88 ? 13 : 14;
+                    do {
+                        output.write((byte) dbq);
+                        dbq >>= 8;
+                        dn -= 8;
+                    } while (dn > 7);
+                    dv = -1;
+                }
+            }
+
+            if (dv != -1) {
+                output.write((byte) (dbq | dv << dn));
+            }
+
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.rallytac.engageandroid;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip and malformed-input tests for the binary mission codec.
+ */
+public class BinaryMissionCodecTest
+{
+    @Test
+    public void roundTripMission() throws Exception
+    {
+        JSONObject mission = sampleMission();
+        byte[] encoded = BinaryMissionCodec.encode(mission);
+
+        assertJsonEquals(mission, BinaryMissionCodec.decode(encoded, 0, encoded.length));
+        assertTrue(encoded.length < mission.toString().length());
+    }
+
+    @Test
+    public void roundTripAtOffset() throws Exception
+    {
+        JSONObject mission = sampleMission();
+        byte[] encoded = BinaryMissionCodec.encode(mission);
+        byte[] padded = new byte[encoded.length + 10];
+        System.arraycopy(encoded, 0, padded, 7, encoded.length);
+
+        assertJsonEquals(mission, BinaryMissionCodec.decode(padded, 7, encoded.length));
+    }
+
+    @Test
+    public void nearMissesStayStrings() throws Exception
+    {
+        // Each of these looks almost like one of the compact forms and has to come back exactly
+        String[] values =
+        {
+            "01.2.3.4", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.4 ",//NON-NLS
+            "{C9C0B3C4-1D3B-4E59-9A2A-3E1D3B4E59A2}", "{c9c0b3c4-1d3b-4e59-9a2a-3e1d3b4e59a2",//NON-NLS
+            "0123456789abcdeF", "0123456789abcde", "abc", ""//NON-NLS
+        };
+
+        JSONObject obj = new JSONObject();
+        for(int x = 0; x < values.length; x++)
+        {
+            obj.put("k" + x, values[x]);//NON-NLS
+        }
+
+        byte[] encoded = BinaryMissionCodec.encode(obj);
+        JSONObject decoded = BinaryMissionCodec.decode(encoded, 0, encoded.length);
+        for(int x = 0; x < values.length; x++)
+        {
+            assertEquals(values[x], decoded.get("k" + x));//NON-NLS
+        }
+    }
+
+    @Test
+    public void numbers() throws Exception
+    {
+        long[] ints = { 0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        double[] doubles = { 0.5, -0.25, 1e300, -0.0, Double.MIN_VALUE };
+
+        JSONObject obj = new JSONObject();
+        JSONArray intArr = new JSONArray();
+        for(long v : ints)
+        {
+            intArr.put(v);
+        }
+        JSONArray dblArr = new JSONArray();
+        for(double v : doubles)
+        {
+            dblArr.put(v);
+        }
+        obj.put("ints", intArr);//NON-NLS
+        obj.put("doubles", dblArr);//NON-NLS
+
+        byte[] encoded = BinaryMissionCodec.encode(obj);
+        JSONObject decoded = BinaryMissionCodec.decode(encoded, 0, encoded.length);
+
+        JSONArray intsBack = (JSONArray) decoded.get("ints");//NON-NLS
+        for(int x = 0; x < ints.length; x++)
+        {
+            assertEquals(ints[x], ((Number) intsBack.get(x)).longValue());
+        }
+
+        JSONArray doublesBack = (JSONArray) decoded.get("doubles");//NON-NLS
+        for(int x = 0; x < doubles.length; x++)
+        {
+            assertEquals(Double.doubleToLongBits(doubles[x]), Double.doubleToLongBits(((Number) doublesBack.get(x)).doubleValue()));
+        }
+    }
+
+    @Test
+    public void everyTruncationIsRejected() throws Exception
+    {
+        byte[] encoded = BinaryMissionCodec.encode(sampleMission());
+
+        for(int len = 0; len < encoded.length; len++)
+        {
+            try
+            {
+                BinaryMissionCodec.decode(encoded, 0, len);
+                fail("decoded a mission truncated to " + len + " bytes");//NON-NLS
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void trailingBytesAreRejected() throws Exception
+    {
+        byte[] encoded = BinaryMissionCodec.encode(sampleMission());
+        byte[] longer = Arrays.copyOf(encoded, encoded.length + 1);
+
+        try
+        {
+            BinaryMissionCodec.decode(longer, 0, longer.length);
+            fail("decoded a mission with trailing garbage");//NON-NLS
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deepNestingIsRejected() throws Exception
+    {
+        // { "a": [[[[ ... null ... ]]]] } far deeper than the stack would take
+        final int depth = 200000;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(new byte[] { 0x10, 0x01, 0x00, 0x01, 'a' }, 0, 5);
+        for(int x = 0; x < depth; x++)
+        {
+            bos.write(0x11);
+            bos.write(0x01);
+        }
+        bos.write(0x00);
+
+        byte[] data = bos.toByteArray();
+        BinaryMissionCodec.decode(data, 0, data.length);
+    }
+
+    @Test
+    public void randomGarbageOnlyThrowsIllegalArgument()
+    {
+        Random rnd = new Random(28);
+
+        for(int x = 0; x < 20000; x++)
+        {
+            byte[] data = new byte[1 + rnd.nextInt(64)];
+            rnd.nextBytes(data);
+            data[0] = 0x10;
+
+            try
+            {
+                BinaryMissionCodec.decode(data, 0, data.length);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected for nearly all of them
+            }
+            catch (Exception e)
+            {
+                fail("unexpected " + e);//NON-NLS
+            }
+        }
+    }
+
+    private static JSONObject sampleMission() throws Exception
+    {
+        JSONObject mission = new JSONObject();
+        mission.put("id", "{9d1e5a3c-7b2f-4c8e-a1d6-3f5b7c9e2a4d}");//NON-NLS
+        mission.put("name", "Exercise Été – north");//NON-NLS
+        mission.put("modPin", "");//NON-NLS
+        mission.put("version", 12);//NON-NLS
+        mission.put("created", 1571500800000L);//NON-NLS
+        mission.put("notInTheDictionary", true);//NON-NLS
+        mission.put("nothing", JSONObject.NULL);//NON-NLS
+
+        JSONArray groups = new JSONArray();
+        for(int x = 0; x < 3; x++)
+        {
+            JSONObject group = new JSONObject();
+            group.put("id", "{00000000-0000-0000-0000-00000000000" + x + "}");//NON-NLS
+            group.put("type", 1);//NON-NLS
+            group.put("name", "Group " + x);//NON-NLS
+            group.put("cryptoPassword", (x == 1) ? "A1B2C3D4E5F60718293A4B5C6D7E8F90" : "0f1e2d3c4b5a69788796a5b4c3d2e1f0");//NON-NLS
+
+            JSONObject rx = new JSONObject();
+            rx.put("address", "239.42.43." + x);//NON-NLS
+            rx.put("port", 49000 + x);//NON-NLS
+            group.put("rx", rx);//NON-NLS
+            group.put("tx", new JSONObject(rx.toString()));//NON-NLS
+
+            JSONObject txAudio = new JSONObject();
+            txAudio.put("encoder", 25);//NON-NLS
+            txAudio.put("framingMs", 60);//NON-NLS
+            txAudio.put("fdx", false);//NON-NLS
+            txAudio.put("inputGain", -3.5);//NON-NLS
+            group.put("txAudio", txAudio);//NON-NLS
+
+            groups.put(group);
+        }
+        mission.put("groups", groups);//NON-NLS
+
+        JSONObject rallypoint = new JSONObject();
+        rallypoint.put("use", false);//NON-NLS
+        rallypoint.put("host", "rp.example.com");//NON-NLS
+        rallypoint.put("port", 7443);//NON-NLS
+        mission.put("rallypoint", rallypoint);//NON-NLS
+
+        return mission;
+    }
+
+    private static void assertJsonEquals(Object expected, Object actual) throws Exception
+    {
+        if(expected instanceof JSONObject)
+        {
+            assertTrue(actual instanceof JSONObject);
+            JSONObject e = (JSONObject) expected;
+            JSONObject a = (JSONObject) actual;
+            assertEquals(e.length(), a.length());
+
+            Iterator<String> keys = e.keys();
+            while(keys.hasNext())
+            {
+                String key = keys.next();
+                assertJsonEquals(e.get(key), a.get(key));
+            }
+        }
+        else if(expected instanceof JSONArray)
+        {
+            assertTrue(actual instanceof JSONArray);
+            JSONArray e = (JSONArray) expected;
+            JSONArray a = (JSONArray) actual;
+            assertEquals(e.length(), a.length());
+
+            for(int x = 0; x < e.length(); x++)
+            {
+                assertJsonEquals(e.get(x), a.get(x));
+            }
+        }
+        else if(expected instanceof Number && !(expected instanceof Double))
+        {
+            assertEquals(((Number) expected).longValue(), ((Number) actual).longValue());
+        }
+        else
+        {
+            assertEquals(expected, actual);
+        }
+    }
+}
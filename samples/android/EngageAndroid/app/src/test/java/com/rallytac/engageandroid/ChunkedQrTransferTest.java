@@ -0,0 +1,234 @@
+package com.rallytac.engageandroid;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Splitting a payload across chunk frames and putting it back together - in any order, with
+ * a frame lost to parity, and with frames that are damaged or don't belong.
+ */
+public class ChunkedQrTransferTest
+{
+    private static final int VERSION_BINARY = Integer.parseInt(Constants.QR_VERSION_BINARY);
+    private static final int CHUNK_SIZE = 64;
+
+    // Where the fields sit in a decoded frame
+    private static final int OFS_PAYLOAD_VERSION = 4;
+    private static final int OFS_TOTAL_LENGTH = 10;
+
+    @Test
+    public void roundTripInAnyOrder()
+    {
+        Random rnd = new Random(29);
+        int[] lengths = { 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, (CHUNK_SIZE * 7) + 13 };
+
+        for(int len : lengths)
+        {
+            byte[] data = randomBytes(rnd, len);
+            List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+            Collections.shuffle(frames, rnd);
+
+            ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+            for(String f : frames)
+            {
+                assertTrue(ChunkedQrTransfer.isChunkFrame(f));
+                assertTrue(r.offer(f));
+            }
+
+            assertTrue("length " + len, r.isComplete());//NON-NLS
+            assertEquals(VERSION_BINARY, r.getPayloadVersion());
+            assertArrayEquals(data, r.getData());
+        }
+    }
+
+    @Test
+    public void duplicateFramesAreHarmless()
+    {
+        byte[] data = randomBytes(new Random(1), CHUNK_SIZE * 3);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(frames.get(0));
+        r.offer(frames.get(0));
+        assertEquals(1, r.getFramesReceived());
+
+        r.offer(frames.get(1));
+        r.offer(frames.get(2));
+        assertArrayEquals(data, r.getData());
+    }
+
+    @Test
+    public void parityRebuildsOneLostFrameInEachGroup()
+    {
+        Random rnd = new Random(2);
+        int parityGroup = 3;
+
+        // 8 data frames (the last one short) in groups of 3, 3 and 2
+        byte[] data = randomBytes(rnd, (CHUNK_SIZE * 7) + 5);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, parityGroup);
+        assertEquals(8 + 3, frames.size());
+
+        for(int lost = 0; lost < 8; lost++)
+        {
+            ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+            for(int x = 0; x < frames.size(); x++)
+            {
+                if(x != lost)
+                {
+                    r.offer(frames.get(x));
+                }
+            }
+
+            assertTrue("lost " + lost, r.isComplete());//NON-NLS
+            assertArrayEquals(data, r.getData());
+        }
+
+        // Parity first, then the rest of the group
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(frames.get(8));
+        r.offer(frames.get(0));
+        r.offer(frames.get(2));
+        assertEquals(3, r.getFramesReceived());
+    }
+
+    @Test
+    public void twoLostFramesInAGroupCannotBeRebuilt()
+    {
+        byte[] data = randomBytes(new Random(3), CHUNK_SIZE * 4);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 4);
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(frames.get(0));
+        r.offer(frames.get(3));
+        r.offer(frames.get(4));
+
+        assertFalse(r.isComplete());
+        assertNull(r.getData());
+    }
+
+    @Test
+    public void crcMismatchIsRejected()
+    {
+        byte[] data = randomBytes(new Random(4), CHUNK_SIZE * 2);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+
+        byte[] frame = decodeFrame(frames.get(0));
+        frame[20] ^= 0x01;
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        assertFalse(r.offer(encodeFrame(frame)));
+        assertEquals(1, r.getFramesRejected());
+        assertFalse(r.isStarted());
+
+        r.offer(frames.get(0));
+        r.offer(frames.get(1));
+        assertArrayEquals(data, r.getData());
+    }
+
+    @Test
+    public void frameWithADifferentPayloadVersionIsRejected()
+    {
+        byte[] data = randomBytes(new Random(5), CHUNK_SIZE * 3);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(frames.get(0));
+
+        // Same transfer, but claiming the payload is the legacy format
+        byte[] forged = decodeFrame(frames.get(1));
+        forged[OFS_PAYLOAD_VERSION] = (byte) Integer.parseInt(Constants.QR_VERSION);
+        assertFalse(r.offer(encodeFrame(withCrc(forged))));
+        assertEquals(1, r.getFramesReceived());
+
+        r.offer(frames.get(1));
+        r.offer(frames.get(2));
+        assertEquals(VERSION_BINARY, r.getPayloadVersion());
+        assertArrayEquals(data, r.getData());
+    }
+
+    @Test
+    public void frameWithADifferentTotalIsRejected()
+    {
+        byte[] data = randomBytes(new Random(6), (CHUNK_SIZE * 2) + 10);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(frames.get(0));
+
+        byte[] forged = decodeFrame(frames.get(1));
+        ByteBuffer.wrap(forged).putInt(OFS_TOTAL_LENGTH, data.length + 1);
+        assertFalse(r.offer(encodeFrame(withCrc(forged))));
+        assertEquals(1, r.getFramesReceived());
+    }
+
+    @Test
+    public void frameFromAnotherTransferStartsOver()
+    {
+        Random rnd = new Random(7);
+        byte[] first = randomBytes(rnd, CHUNK_SIZE * 2);
+        byte[] second = randomBytes(rnd, CHUNK_SIZE * 2);
+        List<String> a = ChunkedQrTransfer.buildFrames(VERSION_BINARY, first, CHUNK_SIZE, 0);
+        List<String> b = ChunkedQrTransfer.buildFrames(VERSION_BINARY, second, CHUNK_SIZE, 0);
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        r.offer(a.get(0));
+        r.offer(b.get(0));
+        assertEquals(1, r.getFramesReceived());
+
+        // Nothing of the first transfer is mixed into the second
+        r.offer(b.get(1));
+        assertArrayEquals(second, r.getData());
+    }
+
+    @Test
+    public void deflectionUrlIsSkipped()
+    {
+        byte[] data = randomBytes(new Random(8), 10);
+        List<String> frames = ChunkedQrTransfer.buildFrames(VERSION_BINARY, data, CHUNK_SIZE, 0);
+        String scanned = "https://example.com/m" + Constants.QR_DEFLECTION_URL_SEP + frames.get(0);//NON-NLS
+
+        ChunkedQrTransfer.Reassembler r = new ChunkedQrTransfer.Reassembler();
+        assertTrue(ChunkedQrTransfer.isChunkFrame(scanned));
+        assertTrue(r.offer(scanned));
+        assertArrayEquals(data, r.getData());
+    }
+
+    private static String prefix()
+    {
+        return Constants.QR_CODE_HEADER + Constants.QR_VERSION_CHUNKED;
+    }
+
+    private static byte[] decodeFrame(String s)
+    {
+        return Base91.decode(s, prefix().length(), s.length());
+    }
+
+    private static String encodeFrame(byte[] frame)
+    {
+        return prefix() + Base91.encodeToString(frame, 0, frame.length);
+    }
+
+    // Recomputes the trailing CRC so the frame gets past that check
+    private static byte[] withCrc(byte[] frame)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(frame, 0, frame.length - 4);
+        ByteBuffer.wrap(frame).putInt(frame.length - 4, (int) crc.getValue());
+        return frame;
+    }
+
+    private static byte[] randomBytes(Random rnd, int len)
+    {
+        byte[] rc = new byte[len];
+        rnd.nextBytes(rc);
+        return rc;
+    }
+}
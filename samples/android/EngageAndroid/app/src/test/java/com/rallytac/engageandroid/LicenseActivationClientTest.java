@@ -0,0 +1,479 @@
+package com.rallytac.engageandroid;
+
+import android.content.SharedPreferences;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The activation client against a mock licensing server - remembering the last good code,
+ * falling back to it only when that's safe, and forgetting it when the server says no.
+ */
+public class LicenseActivationClientTest
+{
+    private static final String ENTITLEMENT = "{d8d689b8-7f13-48b1-94e0-091e679058d6}";//NON-NLS
+    private static final String KEY = "KEY-ONE";//NON-NLS
+    private static final String DEVICE = "device-1";//NON-NLS
+
+    private HttpServer _server;
+    private final List<String> _bodies = Collections.synchronizedList(new ArrayList<String>());
+
+    // What the server does next: an HTTP status, and for a 200 the returnCode and code
+    private volatile int _status = 200;
+    private volatile int _returnCode = 0;
+    private volatile String _activationCode = "CODE-1";//NON-NLS
+    private volatile CountDownLatch _hold = null;
+
+    private MemoryPreferences _sp;
+    private LicenseActivationClient _client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        _server.createContext("/", new HttpHandler()//NON-NLS
+        {
+            @Override
+            public void handle(HttpExchange ex) throws IOException
+            {
+                try
+                {
+                    _bodies.add(new String(readAll(ex.getRequestBody()), StandardCharsets.UTF_8));
+
+                    CountDownLatch hold = _hold;
+                    if(hold != null)
+                    {
+                        hold.await(5, TimeUnit.SECONDS);
+                    }
+
+                    if(_status != 200)
+                    {
+                        ex.sendResponseHeaders(_status, -1);
+                        return;
+                    }
+
+                    JSONObject obj = new JSONObject();
+                    obj.put("returnCode", _returnCode);//NON-NLS
+                    obj.put("returnCodeDescr", (_returnCode == 0) ? "ok" : "revoked");//NON-NLS
+                    if(_returnCode == 0)
+                    {
+                        obj.put("activationCode", _activationCode);//NON-NLS
+                    }
+
+                    byte[] body = obj.toString().getBytes(StandardCharsets.UTF_8);
+                    ex.sendResponseHeaders(200, body.length);
+                    ex.getResponseBody().write(body);
+                }
+                catch (Exception e)
+                {
+                    throw new IOException(e);
+                }
+                finally
+                {
+                    ex.close();
+                }
+            }
+        });
+        _server.start();
+
+        _sp = new MemoryPreferences();
+        _client = new TestClient(_sp);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _server.stop(0);
+    }
+
+    @Test
+    public void successIsRememberedAndReused() throws Exception
+    {
+        Answer first = activate(KEY, "");
+        assertEquals(0, first.result);
+        assertEquals("CODE-1", first.activationCode);//NON-NLS
+
+        // Asked again straight away - no need to bother the server
+        Answer second = activate(KEY, "");
+        assertEquals(0, second.result);
+        assertEquals("CODE-1", second.activationCode);//NON-NLS
+        assertEquals(1, _bodies.size());
+    }
+
+    @Test
+    public void unreachableFallsBackWhenNoCodeIsInUse() throws Exception
+    {
+        seedLastGood(KEY, "CODE-OLD");//NON-NLS
+        _status = 503;
+
+        Answer answer = activate(KEY, "");
+
+        assertEquals(0, answer.result);
+        assertEquals("CODE-OLD", answer.activationCode);//NON-NLS
+        assertEquals(Constants.LICENSE_ACTIVATION_MAX_ATTEMPTS, _bodies.size());
+    }
+
+    @Test
+    public void unreachableDoesNotFallBackWhenACodeIsInUse() throws Exception
+    {
+        seedLastGood(KEY, "CODE-OLD");//NON-NLS
+        _status = 503;
+
+        Answer answer = activate(KEY, "CODE-CURRENT");//NON-NLS
+
+        assertNotEquals(0, answer.result);
+        assertNull(answer.activationCode);
+    }
+
+    @Test
+    public void lastGoodForAnotherKeyIsNeverUsed() throws Exception
+    {
+        seedLastGood("KEY-TWO", "CODE-OLD");//NON-NLS
+        _status = 503;
+
+        Answer answer = activate(KEY, "");
+
+        assertNotEquals(0, answer.result);
+    }
+
+    @Test
+    public void refusalForgetsTheLastGoodCode() throws Exception
+    {
+        seedLastGood(KEY, "CODE-OLD");//NON-NLS
+        _returnCode = 7;
+
+        Answer refused = activate(KEY, "");
+        assertEquals(7, refused.result);
+        assertFalse(_sp.contains(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD));
+
+        // ... so a revoked code doesn't come back when the server can't be reached
+        _status = 503;
+        Answer unreachable = activate(KEY, "");
+        assertNotEquals(0, unreachable.result);
+        assertNull(unreachable.activationCode);
+    }
+
+    @Test
+    public void clientErrorsDoNotForgetTheLastGoodCode() throws Exception
+    {
+        seedLastGood(KEY, "CODE-OLD");//NON-NLS
+        _status = 404;
+
+        Answer answer = activate(KEY, "");
+
+        assertNotEquals(0, answer.result);
+        assertEquals(1, _bodies.size());
+        assertTrue(_sp.contains(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD));
+    }
+
+    @Test
+    public void clearLastGoodForgetsIt() throws Exception
+    {
+        assertEquals(0, activate(KEY, "").result);
+        assertTrue(_sp.contains(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD));
+
+        _client.clearLastGood();
+        _status = 503;
+
+        Answer answer = activate(KEY, "");
+        assertNotEquals(0, answer.result);
+        assertFalse(_sp.contains(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD));
+    }
+
+    @Test
+    public void identicalRequestsShareOneExchange() throws Exception
+    {
+        _hold = new CountDownLatch(1);
+
+        Waiter a = new Waiter();
+        Waiter b = new Waiter();
+        _client.activate(request(KEY, ""), a);
+        _client.activate(request(KEY, ""), b);
+        _hold.countDown();
+
+        assertEquals("CODE-1", a.await().activationCode);//NON-NLS
+        assertEquals("CODE-1", b.await().activationCode);//NON-NLS
+        assertEquals(1, _bodies.size());
+        assertEquals(1, _client.toJson().getLong("joined"));//NON-NLS
+    }
+
+    private LicenseActivationClient.Request request(String key, String activationCode)
+    {
+        String url = "http://127.0.0.1:" + _server.getAddress().getPort() + "/activate";//NON-NLS
+        return new LicenseActivationClient.Request(url, ENTITLEMENT, key, activationCode, DEVICE, "h");//NON-NLS
+    }
+
+    private Answer activate(String key, String activationCode) throws Exception
+    {
+        Waiter w = new Waiter();
+        _client.activate(request(key, activationCode), w);
+        return w.await();
+    }
+
+    // As if the server had handed out a code for this key longer ago than we'd reuse it
+    private void seedLastGood(String key, String activationCode) throws Exception
+    {
+        JSONObject obj = new JSONObject();
+        obj.put("identity", request(key, "").identity());//NON-NLS
+        obj.put("sentActivationCode", "");//NON-NLS
+        obj.put("activationCode", activationCode);//NON-NLS
+        obj.put("ts", System.currentTimeMillis() - Constants.LICENSE_ACTIVATION_REUSE_MS - 1000);//NON-NLS
+        _sp.edit().putString(PreferenceKeys.LICENSE_ACTIVATION_LAST_GOOD, obj.toString()).apply();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int len;
+        while((len = in.read(buffer)) > 0)
+        {
+            bos.write(buffer, 0, len);
+        }
+        return bos.toByteArray();
+    }
+
+    private static class Answer
+    {
+        int result;
+        String activationCode;
+    }
+
+    private static class Waiter implements LicenseActivationClient.ITaskCompletionNotification
+    {
+        private final CountDownLatch _done = new CountDownLatch(1);
+        private final Answer _answer = new Answer();
+
+        @Override
+        public void onLicenseActivationTaskComplete(int result, String activationCode, String resultMessage)
+        {
+            _answer.result = result;
+            _answer.activationCode = activationCode;
+            _done.countDown();
+        }
+
+        Answer await() throws InterruptedException
+        {
+            assertTrue("no answer", _done.await(10, TimeUnit.SECONDS));//NON-NLS
+            return _answer;
+        }
+    }
+
+    // No engine, app or UI thread here - answers come back on the worker and requests
+    // carry just what the mock server needs
+    private static class TestClient extends LicenseActivationClient
+    {
+        TestClient(SharedPreferences sp)
+        {
+            super(sp, new Executor()
+            {
+                @Override
+                public void execute(Runnable r)
+                {
+                    r.run();
+                }
+            });
+        }
+
+        @Override
+        void validate(Request req)
+        {
+        }
+
+        @Override
+        String buildRequestBody(Request req) throws Exception
+        {
+            JSONObject obj = new JSONObject();
+            obj.put("licenseId", req.key);//NON-NLS
+            obj.put("activationCode", req.activationCode);//NON-NLS
+            return obj.toString();
+        }
+
+        @Override
+        long retryDelay(int attempt)
+        {
+            return 0;
+        }
+    }
+
+    private static class MemoryPreferences implements SharedPreferences
+    {
+        private final HashMap<String, Object> _values = new HashMap<>();
+
+        @Override
+        public synchronized Map<String, ?> getAll()
+        {
+            return new HashMap<>(_values);
+        }
+
+        @Override
+        public synchronized String getString(String key, String defValue)
+        {
+            return _values.containsKey(key) ? (String) _values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized Set<String> getStringSet(String key, Set<String> defValues)
+        {
+            return _values.containsKey(key) ? (Set<String>) _values.get(key) : defValues;
+        }
+
+        @Override
+        public synchronized int getInt(String key, int defValue)
+        {
+            return _values.containsKey(key) ? (Integer) _values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized long getLong(String key, long defValue)
+        {
+            return _values.containsKey(key) ? (Long) _values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized float getFloat(String key, float defValue)
+        {
+            return _values.containsKey(key) ? (Float) _values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean getBoolean(String key, boolean defValue)
+        {
+            return _values.containsKey(key) ? (Boolean) _values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean contains(String key)
+        {
+            return _values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit()
+        {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+        {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+        {
+        }
+
+        private class MemoryEditor implements Editor
+        {
+            private final HashMap<String, Object> _puts = new HashMap<>();
+            private final ArrayList<String> _removes = new ArrayList<>();
+            private boolean _clear = false;
+
+            @Override
+            public Editor putString(String key, String value)
+            {
+                _puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values)
+            {
+                _puts.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value)
+            {
+                _puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value)
+            {
+                _puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value)
+            {
+                _puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value)
+            {
+                _puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key)
+            {
+                _removes.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear()
+            {
+                _clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit()
+            {
+                synchronized (MemoryPreferences.this)
+                {
+                    if(_clear)
+                    {
+                        _values.clear();
+                    }
+                    for(String key : _removes)
+                    {
+                        _values.remove(key);
+                    }
+                    _values.putAll(_puts);
+                }
+                return true;
+            }
+
+            @Override
+            public void apply()
+            {
+                commit();
+            }
+        }
+    }
+}
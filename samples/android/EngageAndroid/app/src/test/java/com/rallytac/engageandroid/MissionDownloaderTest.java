@@ -0,0 +1,482 @@
+package com.rallytac.engageandroid;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resume, revalidation, gzip and retry behaviour of the mission downloader against a
+ * local HTTP server.
+ */
+public class MissionDownloaderTest
+{
+    private static final String ETAG = "\"v1\"";//NON-NLS
+
+    // What the handler is asked to do with each request, in turn
+    private interface Step
+    {
+        void respond(HttpExchange ex) throws IOException;
+    }
+
+    private HttpServer _server;
+    private final List<Step> _steps = Collections.synchronizedList(new ArrayList<Step>());
+    private final List<HttpExchange> _requests = Collections.synchronizedList(new ArrayList<HttpExchange>());
+    private File _cacheDir;
+    private byte[] _mission;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _cacheDir = Files.createTempDirectory("missions").toFile();//NON-NLS
+
+        Random rnd = new Random(45);
+        StringBuilder sb = new StringBuilder("{\"id\":\"mission\",\"groups\":[");//NON-NLS
+        for(int x = 0; x < 2000; x++)
+        {
+            sb.append((x == 0) ? "" : ",").append(rnd.nextInt(100000));
+        }
+        _mission = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);//NON-NLS
+
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        _server.createContext("/", new HttpHandler()//NON-NLS
+        {
+            @Override
+            public void handle(HttpExchange ex) throws IOException
+            {
+                Step step;
+                synchronized (_steps)
+                {
+                    step = _steps.isEmpty() ? null : _steps.remove(0);
+                }
+                _requests.add(ex);
+
+                try
+                {
+                    if(step == null)
+                    {
+                        ex.sendResponseHeaders(500, -1);
+                    }
+                    else
+                    {
+                        step.respond(ex);
+                    }
+                }
+                catch (IOException e)
+                {
+                    // Truncated on purpose
+                }
+                finally
+                {
+                    ex.close();
+                }
+            }
+        });
+        _server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        _server.stop(0);
+        deleteAll(_cacheDir);
+    }
+
+    @Test
+    public void plainDownload() throws Exception
+    {
+        _steps.add(full(_mission, null));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertTrue(result.isOk());
+        assertArrayEquals(_mission, result.data);
+        assertEquals(1, result.attempts);
+        assertFalse(result.resumed);
+    }
+
+    @Test
+    public void truncatedBodyIsRetriedAndResumed() throws Exception
+    {
+        int cut = _mission.length / 3;
+        _steps.add(truncated(_mission, cut, null));
+        _steps.add(partial(_mission, cut, Integer.toString(_mission.length), null));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertEquals("bytes=" + cut + "-", header(1, "Range"));//NON-NLS
+        assertEquals(ETAG, header(1, "If-Range"));//NON-NLS
+        assertTrue(result.errorMsg, result.isOk());
+        assertArrayEquals(_mission, result.data);
+        assertEquals(2, result.attempts);
+        assertTrue(result.resumed);
+        assertEquals(_mission.length, result.bytesTransferred);
+    }
+
+    @Test
+    public void changedMissionStartsAgain() throws Exception
+    {
+        final byte[] changed = "{\"id\":\"mission\",\"version\":2}".getBytes(StandardCharsets.UTF_8);//NON-NLS
+
+        _steps.add(truncated(_mission, _mission.length / 2, null));
+        _steps.add(new Step()
+        {
+            @Override
+            public void respond(HttpExchange ex) throws IOException
+            {
+                // If-Range didn't match so the server sends the whole of the new one
+                ex.getResponseHeaders().set("ETag", "\"v2\"");//NON-NLS
+                ex.sendResponseHeaders(200, changed.length);
+                ex.getResponseBody().write(changed);
+            }
+        });
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertNotNull(header(1, "Range"));//NON-NLS
+        assertArrayEquals(changed, result.data);
+        assertFalse(result.resumed);
+    }
+
+    @Test
+    public void resumeFromTheWrongPlaceIsRejected() throws Exception
+    {
+        int cut = _mission.length / 2;
+        _steps.add(truncated(_mission, cut, null));
+        _steps.add(partial(_mission, cut - 10, Integer.toString(_mission.length), null));
+        _steps.add(full(_mission, null));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertArrayEquals(_mission, result.data);
+        assertEquals(3, result.attempts);
+        assertNull(header(2, "Range"));//NON-NLS
+    }
+
+    @Test
+    public void notModifiedReusesOurCopy() throws Exception
+    {
+        _steps.add(full(_mission, null));
+        assertTrue(newDownloader().download(url()).isOk());
+
+        _steps.add(status(304));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertEquals(ETAG, header(1, "If-None-Match"));//NON-NLS
+        assertTrue(result.notModified);
+        assertArrayEquals(_mission, result.data);
+        assertEquals(0, result.bytesTransferred);
+    }
+
+    @Test
+    public void gzipBodyIsDecoded() throws Exception
+    {
+        byte[] gz = gzip(_mission);
+        _steps.add(full(gz, "gzip"));//NON-NLS
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertEquals("gzip", header(0, "Accept-Encoding"));//NON-NLS
+        assertArrayEquals(_mission, result.data);
+        assertEquals(gz.length, result.bytesTransferred);
+    }
+
+    @Test
+    public void truncatedGzipIsResumedAndDecoded() throws Exception
+    {
+        byte[] gz = gzip(_mission);
+        int cut = gz.length / 2;
+        _steps.add(truncated(gz, cut, "gzip"));//NON-NLS
+        _steps.add(partial(gz, cut, Integer.toString(gz.length), "gzip"));//NON-NLS
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertArrayEquals(_mission, result.data);
+        assertTrue(result.resumed);
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws Exception
+    {
+        _steps.add(status(503));
+        _steps.add(status(503));
+        _steps.add(full(_mission, null));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertArrayEquals(_mission, result.data);
+        assertEquals(3, result.attempts);
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws Exception
+    {
+        _steps.add(status(404));
+
+        MissionDownloader.Result result = newDownloader().download(url());
+
+        assertFalse(result.isOk());
+        assertEquals(404, result.responseCode);
+        assertEquals(1, result.attempts);
+    }
+
+    @Test
+    public void gzipWithoutLengthIsOnlyCompleteWhenItDecodes() throws Exception
+    {
+        // No Content-Length and no chunking - the body ends when the connection closes, so
+        // only the gzip trailer tells a cut-off body from a whole one
+        byte[] gz = gzip(_mission);
+        int cut = gz.length / 2;
+
+        RawServer raw = new RawServer();
+        raw.responses.add(rawResponse("200 OK", "Content-Encoding: gzip\r\n", Arrays.copyOfRange(gz, 0, cut)));//NON-NLS
+        raw.responses.add(rawResponse("206 Partial Content",//NON-NLS
+                "Content-Encoding: gzip\r\nContent-Range: bytes " + cut + "-" + (gz.length - 1) + "/*\r\n",//NON-NLS
+                Arrays.copyOfRange(gz, cut, gz.length)));
+        raw.start();
+
+        try
+        {
+            MissionDownloader.Result result = newDownloader().download(raw.url());
+
+            assertTrue(result.errorMsg, result.isOk());
+            assertArrayEquals(_mission, result.data);
+            assertEquals(2, result.attempts);
+            assertTrue(result.resumed);
+            assertTrue(raw.requests.get(1).contains("Range: bytes=" + cut + "-"));//NON-NLS
+        }
+        finally
+        {
+            raw.stop();
+        }
+    }
+
+    @Test
+    public void identityWithoutLengthIsTakenAsIs() throws Exception
+    {
+        RawServer raw = new RawServer();
+        raw.responses.add(rawResponse("200 OK", "", _mission));//NON-NLS
+        raw.start();
+
+        try
+        {
+            MissionDownloader.Result result = newDownloader().download(raw.url());
+
+            assertArrayEquals(_mission, result.data);
+            assertEquals(1, result.attempts);
+        }
+        finally
+        {
+            raw.stop();
+        }
+    }
+
+    private MissionDownloader newDownloader()
+    {
+        return new MissionDownloader(_cacheDir, 0);
+    }
+
+    private String url()
+    {
+        return "http://127.0.0.1:" + _server.getAddress().getPort() + "/mission.json";//NON-NLS
+    }
+
+    private String header(int request, String name)
+    {
+        return _requests.get(request).getRequestHeaders().getFirst(name);
+    }
+
+    private static Step full(final byte[] data, final String encoding)
+    {
+        return new Step()
+        {
+            @Override
+            public void respond(HttpExchange ex) throws IOException
+            {
+                headers(ex, encoding);
+                ex.sendResponseHeaders(200, data.length);
+                ex.getResponseBody().write(data);
+            }
+        };
+    }
+
+    // Promises all of data and then drops the connection after len bytes
+    private static Step truncated(final byte[] data, final int len, final String encoding)
+    {
+        return new Step()
+        {
+            @Override
+            public void respond(HttpExchange ex) throws IOException
+            {
+                headers(ex, encoding);
+                ex.sendResponseHeaders(200, data.length);
+                OutputStream os = ex.getResponseBody();
+                os.write(data, 0, len);
+                os.flush();
+            }
+        };
+    }
+
+    private static Step status(final int code)
+    {
+        return new Step()
+        {
+            @Override
+            public void respond(HttpExchange ex) throws IOException
+            {
+                ex.sendResponseHeaders(code, -1);
+            }
+        };
+    }
+
+    private static Step partial(final byte[] data, final int from, final String total, final String encoding)
+    {
+        return new Step()
+        {
+            @Override
+            public void respond(HttpExchange ex) throws IOException
+            {
+                headers(ex, encoding);
+                ex.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (data.length - 1) + "/" + total);//NON-NLS
+                ex.sendResponseHeaders(206, data.length - from);
+                ex.getResponseBody().write(data, from, data.length - from);
+            }
+        };
+    }
+
+    private static void headers(HttpExchange ex, String encoding)
+    {
+        ex.getResponseHeaders().set("ETag", ETAG);//NON-NLS
+        if(encoding != null)
+        {
+            ex.getResponseHeaders().set("Content-Encoding", encoding);//NON-NLS
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gos = new GZIPOutputStream(bos);
+        gos.write(data);
+        gos.close();
+        return bos.toByteArray();
+    }
+
+    private static byte[] rawResponse(String status, String extraHeaders, byte[] body)
+    {
+        String head = "HTTP/1.1 " + status + "\r\nETag: " + ETAG + "\r\n" + extraHeaders + "Connection: close\r\n\r\n";//NON-NLS
+        byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] rc = Arrays.copyOf(headBytes, headBytes.length + body.length);
+        System.arraycopy(body, 0, rc, headBytes.length, body.length);
+        return rc;
+    }
+
+    private static void deleteAll(File fd)
+    {
+        File[] children = fd.listFiles();
+        if(children != null)
+        {
+            for(File f : children)
+            {
+                deleteAll(f);
+            }
+        }
+        fd.delete();
+    }
+
+    // HttpServer always frames its bodies, so bodies delimited by the connection closing
+    // come from here - one canned response per connection
+    private static class RawServer implements Runnable
+    {
+        final List<byte[]> responses = new ArrayList<>();
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private ServerSocket _socket;
+        private Thread _thread;
+
+        void start() throws IOException
+        {
+            _socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+            _thread = new Thread(this);
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        void stop() throws Exception
+        {
+            _socket.close();
+            _thread.join(5000);
+        }
+
+        String url()
+        {
+            return "http://127.0.0.1:" + _socket.getLocalPort() + "/mission.json";//NON-NLS
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while(!responses.isEmpty())
+                {
+                    Socket s = _socket.accept();
+                    try
+                    {
+                        requests.add(readHeaders(s.getInputStream()));
+                        OutputStream os = s.getOutputStream();
+                        os.write(responses.remove(0));
+                        os.flush();
+                    }
+                    finally
+                    {
+                        s.close();
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // Stopped
+            }
+        }
+
+        private static String readHeaders(InputStream in) throws IOException
+        {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while((c = in.read()) >= 0)
+            {
+                sb.append((char) c);
+                if(sb.length() >= 4 && sb.lastIndexOf("\r\n\r\n") == sb.length() - 4)//NON-NLS
+                {
+                    break;
+                }
+            }
+
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.rallytac.engageandroid;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Finding PTT commands in an accessory's byte stream however it's split up and whatever
+ * surrounds it.
+ */
+public class PttCommandMatcherTest
+{
+    private static final String PTT_ON = "+PTT=P";//NON-NLS
+    private static final String PTT_OFF = "+PTT=R";//NON-NLS
+    private static final int ON = 0;
+    private static final int OFF = 1;
+
+    @Test
+    public void singleCommand()
+    {
+        assertEquals(Arrays.asList(ON), feed(new PttCommandMatcher(PTT_ON, PTT_OFF), PTT_ON));
+    }
+
+    @Test
+    public void commandSplitAcrossReads()
+    {
+        // Every possible place to split it - progress has to carry over from one read to the next
+        for(int split = 1; split < PTT_OFF.length(); split++)
+        {
+            PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+            List<Integer> found = feed(m, PTT_OFF.substring(0, split));
+            assertTrue(found.isEmpty());
+
+            found = feed(m, PTT_OFF.substring(split));
+            assertEquals("split at " + split, Arrays.asList(OFF), found);//NON-NLS
+        }
+    }
+
+    @Test
+    public void commandSplitOneByteAtATime()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+        List<Integer> found = new ArrayList<>();
+
+        for(char c : ("\r\n" + PTT_ON + "\r\n").toCharArray())//NON-NLS
+        {
+            found.addAll(feed(m, String.valueOf(c)));
+        }
+
+        assertEquals(Arrays.asList(ON), found);
+    }
+
+    @Test
+    public void lineEndingsAroundCommands()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        assertEquals(Arrays.asList(ON), feed(m, "\r\n" + PTT_ON + "\r\n"));//NON-NLS
+        assertEquals(Arrays.asList(OFF), feed(m, "\r" + PTT_OFF + "\n"));//NON-NLS
+        assertEquals(Arrays.asList(ON, OFF), feed(m, "\n\n" + PTT_ON + "\r\n\r\n" + PTT_OFF + "\r\n"));//NON-NLS
+    }
+
+    @Test
+    public void otherChatterIsSkipped()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        assertEquals(Arrays.asList(ON), feed(m, "AT+BRSF=24\r\nOK\r\n" + PTT_ON + "\r\nAT+CIND?\r\n"));//NON-NLS
+    }
+
+    @Test
+    public void overlappingPrefixes()
+    {
+        // Both share "+PTT=" - the last byte decides, and neither steals the other's progress
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        assertEquals(Arrays.asList(OFF), feed(m, PTT_OFF));
+        assertEquals(Arrays.asList(ON), feed(m, PTT_ON));
+        assertTrue(feed(m, "+PTT=X").isEmpty());//NON-NLS
+    }
+
+    @Test
+    public void nearMissDoesNotLoseTheRealStart()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        // A false start immediately followed by the real thing
+        assertEquals(Arrays.asList(ON), feed(m, "+PT+PTT=P"));//NON-NLS
+        assertEquals(Arrays.asList(OFF), feed(m, "+PTT=+PTT=R"));//NON-NLS
+        assertEquals(Arrays.asList(ON), feed(m, "++PTT=P"));//NON-NLS
+    }
+
+    @Test
+    public void selfOverlappingCommand()
+    {
+        // "abab" inside "ababab" - the fallback table has to pick up the second one
+        PttCommandMatcher m = new PttCommandMatcher("abab");//NON-NLS
+
+        assertEquals(Arrays.asList(0), feed(m, "abaabab"));//NON-NLS
+        assertEquals(Arrays.asList(0, 0), feed(new PttCommandMatcher("abab"), "ababab"));//NON-NLS
+    }
+
+    @Test
+    public void backToBackCommands()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        assertEquals(Arrays.asList(ON, OFF, ON, OFF), feed(m, PTT_ON + PTT_OFF + PTT_ON + PTT_OFF));
+        assertEquals(Arrays.asList(ON, ON), feed(m, PTT_ON + PTT_ON));
+    }
+
+    @Test
+    public void resetForgetsProgress()
+    {
+        PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+
+        assertTrue(feed(m, "+PTT=").isEmpty());//NON-NLS
+        m.reset();
+        assertTrue(feed(m, "P").isEmpty());//NON-NLS
+        assertEquals(Arrays.asList(ON), feed(m, PTT_ON));
+    }
+
+    @Test
+    public void emptyCommandNeverMatches()
+    {
+        PttCommandMatcher m = new PttCommandMatcher("", PTT_OFF);//NON-NLS
+
+        assertEquals(Arrays.asList(1), feed(m, "xx" + PTT_OFF));//NON-NLS
+    }
+
+    @Test
+    public void randomSplitsFindEveryCommand()
+    {
+        Random rnd = new Random(48);
+        String[] noise = { "", "\r", "\n", "\r\n", "OK", "+P", "+PTT", "+PTT=", "AT" };//NON-NLS
+
+        for(int run = 0; run < 200; run++)
+        {
+            StringBuilder sb = new StringBuilder();
+            List<Integer> expected = new ArrayList<>();
+
+            for(int x = 0; x < 20; x++)
+            {
+                sb.append(noise[rnd.nextInt(noise.length)]);
+                boolean on = rnd.nextBoolean();
+                sb.append(on ? PTT_ON : PTT_OFF);
+                expected.add(on ? ON : OFF);
+            }
+
+            byte[] stream = sb.toString().getBytes(StandardCharsets.UTF_8);
+            PttCommandMatcher m = new PttCommandMatcher(PTT_ON, PTT_OFF);
+            List<Integer> found = new ArrayList<>();
+
+            int pos = 0;
+            while(pos < stream.length)
+            {
+                int len = Math.min(1 + rnd.nextInt(8), stream.length - pos);
+                found.addAll(feed(m, stream, pos, len));
+                pos += len;
+            }
+
+            assertEquals(sb.toString(), expected, found);
+        }
+    }
+
+    private static List<Integer> feed(PttCommandMatcher m, String s)
+    {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return feed(m, b, 0, b.length);
+    }
+
+    // What one read of len bytes turns up
+    private static List<Integer> feed(PttCommandMatcher m, byte[] b, int offset, int len)
+    {
+        List<Integer> rc = new ArrayList<>();
+        for(int x = offset; x < offset + len; x++)
+        {
+            int cmd = m.next(b[x]);
+            if(cmd != PttCommandMatcher.NO_MATCH)
+            {
+                rc.add(cmd);
+            }
+        }
+
+        return rc;
+    }
+}
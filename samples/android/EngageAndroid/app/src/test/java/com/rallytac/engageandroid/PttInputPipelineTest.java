@@ -0,0 +1,298 @@
+package com.rallytac.engageandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sources pressing and releasing PTT - bounces, overlaps, TX ending underneath and
+ * releaseAll - with the release debounce timers run by hand.
+ */
+public class PttInputPipelineTest
+{
+    private static final PttInputPipeline.Source KEY = PttInputPipeline.Source.KEY;
+    private static final PttInputPipeline.Source SCREEN = PttInputPipeline.Source.SCREEN;
+
+    @Test
+    public void pressBeginsAndReleaseEndsAfterDebounce()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        assertEquals(1, p.sink.begins.size());
+
+        p.release(KEY);
+        assertTrue(p.sink.ends.isEmpty());
+
+        p.runTimers();
+        assertEquals(p.sink.begins, p.sink.ends);
+    }
+
+    @Test
+    public void bounceIsAbsorbed()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        p.release(KEY);
+        p.press(KEY, 0);
+
+        // The timer for the release that never happened finds nothing to do
+        p.runTimers();
+        assertEquals(1, p.sink.begins.size());
+        assertTrue(p.sink.ends.isEmpty());
+        assertEquals(1, stat(p, "bouncesAbsorbed"));//NON-NLS
+
+        p.release(KEY);
+        p.runTimers();
+        assertEquals(p.sink.begins, p.sink.ends);
+    }
+
+    @Test
+    public void repeatedBouncesOnlyEndOnce()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        for(int x = 0; x < 5; x++)
+        {
+            p.release(KEY);
+            p.press(KEY, 0);
+        }
+        p.release(KEY);
+        p.runTimers();
+
+        assertEquals(1, p.sink.begins.size());
+        assertEquals(p.sink.begins, p.sink.ends);
+    }
+
+    @Test
+    public void duplicatesDoNotReachTheSink()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.release(KEY);
+        assertTrue(p.timers.isEmpty());
+
+        p.press(KEY, 0);
+        p.press(KEY, 0);
+        assertEquals(1, p.sink.begins.size());
+
+        p.release(KEY);
+        p.release(KEY);
+        assertEquals(1, p.timers.size());
+
+        p.runTimers();
+        assertEquals(1, p.sink.ends.size());
+        assertEquals(2, stat(p, "duplicates"));//NON-NLS
+    }
+
+    @Test
+    public void overlappingSourcesShareOneTx()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        p.press(SCREEN, 0);
+        assertEquals(1, p.sink.begins.size());
+
+        p.release(KEY);
+        p.runTimers();
+        assertTrue(p.sink.ends.isEmpty());
+
+        p.release(SCREEN);
+        p.runTimers();
+        assertEquals(p.sink.begins, p.sink.ends);
+        assertEquals(1, stat(p, "overlaps"));//NON-NLS
+    }
+
+    @Test
+    public void txEndedUnderneathNeedsANewPress()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        long first = p.sink.begins.get(0);
+
+        p.onTxEnded(first);
+        assertEquals(1, stat(p, "endedUnderneath"));//NON-NLS
+
+        // Still physically down, but that TX is gone - only a new press gets another
+        p.release(KEY);
+        assertTrue(p.timers.isEmpty());
+
+        p.press(KEY, 0);
+        assertEquals(2, p.sink.begins.size());
+        assertTrue(p.sink.begins.get(1) > first);
+    }
+
+    @Test
+    public void pressAfterEndedUnderneathIsNotABounce()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        p.release(KEY);
+        p.onTxEnded(p.sink.begins.get(0));
+
+        // The pending release went with the TX, so this begins a new one
+        p.press(KEY, 0);
+        assertEquals(2, p.sink.begins.size());
+        assertEquals(0, stat(p, "bouncesAbsorbed"));//NON-NLS
+
+        // ... and the old timer mustn't end it
+        p.runTimers();
+        assertTrue(p.sink.ends.isEmpty());
+    }
+
+    @Test
+    public void endOfAnEarlierTxIsIgnored()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        long first = p.sink.begins.get(0);
+        p.releaseAll();
+
+        p.press(KEY, 0);
+        long second = p.sink.begins.get(1);
+
+        p.onTxEnded(first);
+        assertEquals(0, stat(p, "endedUnderneath"));//NON-NLS
+
+        p.release(KEY);
+        p.runTimers();
+        assertEquals(second, (long) p.sink.ends.get(p.sink.ends.size() - 1));
+    }
+
+    @Test
+    public void releaseAllEndsEverythingOnce()
+    {
+        TestPipeline p = new TestPipeline();
+
+        p.press(KEY, 0);
+        p.press(SCREEN, 0);
+        p.release(KEY);
+
+        p.releaseAll();
+        assertEquals(p.sink.begins, p.sink.ends);
+
+        // Nothing left for the pending timer or a second releaseAll to do
+        p.runTimers();
+        p.releaseAll();
+        assertEquals(1, p.sink.ends.size());
+
+        p.press(SCREEN, 0);
+        assertEquals(2, p.sink.begins.size());
+    }
+
+    @Test
+    public void pressRacingTheReleaseTimerNeverLeavesTxHalfEnded() throws Exception
+    {
+        final TestPipeline p = new TestPipeline();
+        final int rounds = 20000;
+
+        // One thread bounces the key while the other runs its release timers as they come up
+        Thread keyer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for(int x = 0; x < rounds; x++)
+                {
+                    p.press(KEY, 0);
+                    p.release(KEY);
+                }
+            }
+        });
+
+        Thread timers = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for(int x = 0; x < rounds; x++)
+                {
+                    p.runTimers();
+                }
+            }
+        });
+
+        keyer.start();
+        timers.start();
+        keyer.join();
+        timers.join();
+        p.runTimers();
+
+        // Every TX begun was ended exactly once, in order
+        assertEquals(p.sink.begins, p.sink.ends);
+    }
+
+    private static long stat(PttInputPipeline p, String name)
+    {
+        return p.toJson().optLong(name);
+    }
+
+    private static class RecordingSink implements PttInputPipeline.ITxSink
+    {
+        final List<Long> begins = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+
+        @Override
+        public synchronized void onPttBegin(long generation, int priority, int flags)
+        {
+            begins.add(generation);
+        }
+
+        @Override
+        public synchronized void onPttEnd(long generation)
+        {
+            ends.add(generation);
+        }
+    }
+
+    // Release timers wait here until the test runs them
+    private static class TestPipeline extends PttInputPipeline
+    {
+        final RecordingSink sink;
+        final List<Runnable> timers = new ArrayList<>();
+
+        TestPipeline()
+        {
+            this(new RecordingSink());
+        }
+
+        private TestPipeline(RecordingSink sink)
+        {
+            super(sink);
+            this.sink = sink;
+        }
+
+        @Override
+        void scheduleRelease(Source src, Runnable release)
+        {
+            synchronized (timers)
+            {
+                timers.add(release);
+            }
+        }
+
+        void runTimers()
+        {
+            List<Runnable> due;
+            synchronized (timers)
+            {
+                due = new ArrayList<>(timers);
+                timers.clear();
+            }
+
+            for(Runnable r : due)
+            {
+                r.run();
+            }
+        }
+    }
+}